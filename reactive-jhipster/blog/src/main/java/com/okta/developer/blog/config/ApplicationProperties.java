@@ -1,5 +1,6 @@
 package com.okta.developer.blog.config;
 
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -10,7 +11,135 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    private final Security security = new Security();
+
+    private final ResponseCaching responseCaching = new ResponseCaching();
+
     // jhipster-needle-application-properties-property
+
+    public Security getSecurity() {
+        return security;
+    }
+
+    public ResponseCaching getResponseCaching() {
+        return responseCaching;
+    }
+
     // jhipster-needle-application-properties-property-getter
+
+    public static class Security {
+
+        private final JwtCache jwtCache = new JwtCache();
+
+        private final Jwks jwks = new Jwks();
+
+        public JwtCache getJwtCache() {
+            return jwtCache;
+        }
+
+        public Jwks getJwks() {
+            return jwks;
+        }
+
+        public static class JwtCache {
+
+            private boolean enabled = false;
+
+            private long maximumSize = 10_000;
+
+            private Duration expiryMargin = Duration.ofSeconds(30);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getMaximumSize() {
+                return maximumSize;
+            }
+
+            public void setMaximumSize(long maximumSize) {
+                this.maximumSize = maximumSize;
+            }
+
+            public Duration getExpiryMargin() {
+                return expiryMargin;
+            }
+
+            public void setExpiryMargin(Duration expiryMargin) {
+                this.expiryMargin = expiryMargin;
+            }
+        }
+
+        public static class Jwks {
+
+            private Duration refreshInterval = Duration.ofMinutes(5);
+
+            private double jitter = 0.1;
+
+            private Duration minimumRefreshInterval = Duration.ofSeconds(30);
+
+            private Duration fetchTimeout = Duration.ofSeconds(5);
+
+            public Duration getRefreshInterval() {
+                return refreshInterval;
+            }
+
+            public void setRefreshInterval(Duration refreshInterval) {
+                this.refreshInterval = refreshInterval;
+            }
+
+            public double getJitter() {
+                return jitter;
+            }
+
+            public void setJitter(double jitter) {
+                this.jitter = jitter;
+            }
+
+            public Duration getMinimumRefreshInterval() {
+                return minimumRefreshInterval;
+            }
+
+            public void setMinimumRefreshInterval(Duration minimumRefreshInterval) {
+                this.minimumRefreshInterval = minimumRefreshInterval;
+            }
+
+            public Duration getFetchTimeout() {
+                return fetchTimeout;
+            }
+
+            public void setFetchTimeout(Duration fetchTimeout) {
+                this.fetchTimeout = fetchTimeout;
+            }
+        }
+    }
+
+    public static class ResponseCaching {
+
+        private Duration maxAge = Duration.ofSeconds(10);
+
+        private Duration staleWhileRevalidate = Duration.ofSeconds(30);
+
+        public Duration getMaxAge() {
+            return maxAge;
+        }
+
+        public void setMaxAge(Duration maxAge) {
+            this.maxAge = maxAge;
+        }
+
+        public Duration getStaleWhileRevalidate() {
+            return staleWhileRevalidate;
+        }
+
+        public void setStaleWhileRevalidate(Duration staleWhileRevalidate) {
+            this.staleWhileRevalidate = staleWhileRevalidate;
+        }
+    }
     // jhipster-needle-application-properties-property-class
 }
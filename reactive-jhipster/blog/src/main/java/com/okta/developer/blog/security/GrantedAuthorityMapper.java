@@ -0,0 +1,50 @@
+package com.okta.developer.blog.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Maps the roles claimed by the IdP to granted authorities.
+ * <p>
+ * Most users share a handful of role sets, so the immutable authority lists are cached per distinct list of roles, and the
+ * authorities themselves are interned. Both caches are bounded.
+ */
+public final class GrantedAuthorityMapper {
+
+    private final Cache<List<String>, List<GrantedAuthority>> authorityLists;
+
+    private final Cache<String, GrantedAuthority> authorities;
+
+    public GrantedAuthorityMapper(long maximumSize) {
+        this.authorityLists = Caffeine.newBuilder().maximumSize(maximumSize).build();
+        this.authorities = Caffeine.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Maps the roles starting with {@code ROLE_} to authorities.
+     *
+     * @param roles the roles claimed by the IdP.
+     * @return the authorities, as an immutable list.
+     */
+    public List<GrantedAuthority> map(Collection<String> roles) {
+        List<String> key = roles instanceof List<String> list ? list : List.copyOf(roles);
+        List<GrantedAuthority> mapped = authorityLists.getIfPresent(key);
+        if (mapped == null) {
+            // the claims are mutable, so they're copied before being kept
+            mapped = authorityLists.get(List.copyOf(key), this::toAuthorities);
+        }
+        return mapped;
+    }
+
+    private List<GrantedAuthority> toAuthorities(List<String> roles) {
+        return roles
+            .stream()
+            .filter(role -> role.startsWith("ROLE_"))
+            .map(role -> authorities.get(role, SimpleGrantedAuthority::new))
+            .toList();
+    }
+}
@@ -0,0 +1,92 @@
+package com.okta.developer.blog.security;
+
+import org.springframework.security.authorization.AuthenticatedReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorityReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import reactor.core.publisher.Mono;
+
+/**
+ * Authorizes exchanges with the rule of the first path pattern matching their path, like the {@code pathMatchers(...)} of
+ * {@code authorizeExchange()} do, but with the patterns compiled once into a {@link PathPatternTrie} instead of being tried
+ * one after another on every request.
+ * <p>
+ * Exchanges matching none of the patterns are denied.
+ */
+public final class PathAuthorizationManager implements ReactiveAuthorizationManager<AuthorizationContext> {
+
+    private static final Mono<AuthorizationDecision> GRANTED = Mono.just(new AuthorizationDecision(true));
+
+    private static final Mono<AuthorizationDecision> DENIED = Mono.just(new AuthorizationDecision(false));
+
+    private final PathPatternTrie<ReactiveAuthorizationManager<AuthorizationContext>> rules;
+
+    private PathAuthorizationManager(PathPatternTrie<ReactiveAuthorizationManager<AuthorizationContext>> rules) {
+        this.rules = rules;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Mono<AuthorizationDecision> check(Mono<Authentication> authentication, AuthorizationContext context) {
+        ReactiveAuthorizationManager<AuthorizationContext> rule = rules.match(
+            context.getExchange().getRequest().getPath().pathWithinApplication()
+        );
+        return rule != null ? rule.check(authentication, context) : DENIED;
+    }
+
+    public static final class Builder {
+
+        private final PathPatternTrie.Builder<ReactiveAuthorizationManager<AuthorizationContext>> rules = PathPatternTrie.builder();
+
+        private Builder() {}
+
+        /**
+         * @param patterns the path patterns the next rule applies to.
+         * @return the rule, to be completed with the access it grants.
+         */
+        public Rule pathMatchers(String... patterns) {
+            return new Rule(patterns);
+        }
+
+        public PathAuthorizationManager build() {
+            return new PathAuthorizationManager(rules.build());
+        }
+
+        public final class Rule {
+
+            private final String[] patterns;
+
+            private Rule(String[] patterns) {
+                this.patterns = patterns;
+            }
+
+            public Builder permitAll() {
+                return access((authentication, context) -> GRANTED);
+            }
+
+            public Builder denyAll() {
+                return access((authentication, context) -> DENIED);
+            }
+
+            public Builder authenticated() {
+                return access(AuthenticatedReactiveAuthorizationManager.authenticated());
+            }
+
+            public Builder hasAuthority(String authority) {
+                return access(AuthorityReactiveAuthorizationManager.hasAuthority(authority));
+            }
+
+            public Builder access(ReactiveAuthorizationManager<AuthorizationContext> manager) {
+                for (String pattern : patterns) {
+                    rules.add(pattern, manager);
+                }
+                return Builder.this;
+            }
+        }
+    }
+}
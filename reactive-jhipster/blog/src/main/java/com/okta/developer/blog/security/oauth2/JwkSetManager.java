@@ -0,0 +1,213 @@
+package com.okta.developer.blog.security.oauth2;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps the JWK set of the IdP up to date, so key rotations don't stall the requests.
+ * <p>
+ * The set is refreshed in the background on a jittered schedule, and early when a token refers to an unknown key. Only one
+ * fetch is in flight at a time, and the last good keys keep being served while the IdP is failing or slow.
+ */
+public class JwkSetManager implements Function<SignedJWT, Flux<JWK>>, MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(JwkSetManager.class);
+
+    private final WebClient webClient;
+    private final String jwkSetUri;
+    private final Duration refreshInterval;
+    private final double jitter;
+    private final Duration minimumRefreshInterval;
+    private final Duration fetchTimeout;
+
+    private final AtomicReference<CompletableFuture<JWKSet>> inFlight = new AtomicReference<>();
+    private volatile JWKSet jwkSet = new JWKSet();
+    private volatile long lastFetchNanos;
+    private volatile Disposable schedule;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshNanos = new AtomicLong();
+    private final AtomicLong lastRefreshNanos = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong stalledRequests = new AtomicLong();
+
+    public JwkSetManager(
+        WebClient webClient,
+        String jwkSetUri,
+        Duration refreshInterval,
+        double jitter,
+        Duration minimumRefreshInterval,
+        Duration fetchTimeout
+    ) {
+        this.webClient = webClient;
+        this.jwkSetUri = jwkSetUri;
+        this.refreshInterval = refreshInterval;
+        this.jitter = jitter;
+        this.minimumRefreshInterval = minimumRefreshInterval;
+        this.fetchTimeout = fetchTimeout;
+    }
+
+    /**
+     * Fetches the JWK set right away, then refreshes it on schedule until {@link #stop()} is called.
+     */
+    public synchronized void start() {
+        if (schedule == null) {
+            schedule =
+                Mono
+                    .defer(() -> Mono.fromFuture(refresh().copy()))
+                    .then(Mono.defer(() -> Mono.delay(nextRefreshDelay())))
+                    .repeat()
+                    .subscribe();
+        }
+    }
+
+    public synchronized void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+            schedule = null;
+        }
+    }
+
+    /**
+     * Selects the keys matching the header of the token, refreshing the JWK set first if none is known.
+     *
+     * @param jwt the token to verify.
+     * @return the candidate keys for the verification of the token.
+     */
+    @Override
+    public Flux<JWK> apply(SignedJWT jwt) {
+        JWKSelector selector = new JWKSelector(JWKMatcher.forJWSHeader(jwt.getHeader()));
+        List<JWK> keys = selector.select(jwkSet);
+        if (!keys.isEmpty()) {
+            return Flux.fromIterable(keys);
+        }
+        CompletableFuture<JWKSet> refresh = inFlight.get();
+        if (refresh == null) {
+            // Don't let tokens with made-up key ids hammer the IdP
+            if (lastFetchNanos != 0 && System.nanoTime() - lastFetchNanos < minimumRefreshInterval.toNanos()) {
+                return Flux.empty();
+            }
+            log.debug("Unknown key '{}', refreshing the JWK set", jwt.getHeader().getKeyID());
+            refresh = refresh();
+        }
+        stalledRequests.incrementAndGet();
+        return Mono.fromFuture(refresh.copy()).flatMapIterable(selector::select);
+    }
+
+    public JWKSet getJwkSet() {
+        return jwkSet;
+    }
+
+    /**
+     * @return the number of requests which had to wait for the JWK set to be fetched.
+     */
+    public long getStalledRequests() {
+        return stalledRequests.get();
+    }
+
+    /**
+     * @return the duration of the last fetch of the JWK set.
+     */
+    public Duration getLastRefreshLatency() {
+        return Duration.ofNanos(lastRefreshNanos.get());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer
+            .builder(
+                "oauth2.jwks.refresh",
+                this,
+                manager -> manager.refreshes.get(),
+                manager -> manager.refreshNanos.get(),
+                TimeUnit.NANOSECONDS
+            )
+            .description("Fetches of the JWK set")
+            .register(registry);
+        FunctionCounter
+            .builder("oauth2.jwks.refresh.failures", this, manager -> manager.failures.get())
+            .description("Failed fetches of the JWK set, the last good keys being kept")
+            .register(registry);
+        FunctionCounter
+            .builder("oauth2.jwks.stalled.requests", this, manager -> manager.stalledRequests.get())
+            .description("Requests which waited for the JWK set to be fetched")
+            .register(registry);
+        Gauge.builder("oauth2.jwks.keys", this, manager -> manager.jwkSet.getKeys().size()).description("Known keys").register(registry);
+    }
+
+    /**
+     * Fetches the JWK set, or joins the fetch already in flight.
+     *
+     * @return the refreshed JWK set, or the last good one if the fetch failed.
+     */
+    CompletableFuture<JWKSet> refresh() {
+        CompletableFuture<JWKSet> refresh = new CompletableFuture<>();
+        if (!inFlight.compareAndSet(null, refresh)) {
+            CompletableFuture<JWKSet> current = inFlight.get();
+            return current != null ? current : refresh();
+        }
+        long start = System.nanoTime();
+        lastFetchNanos = start;
+        webClient
+            .get()
+            .uri(jwkSetUri)
+            .retrieve()
+            .bodyToMono(String.class)
+            .map(this::parse)
+            .timeout(fetchTimeout)
+            .doOnNext(keys -> jwkSet = keys)
+            .doOnError(error -> {
+                failures.incrementAndGet();
+                log.warn("Could not refresh the JWK set from {}, keeping the last good keys: {}", jwkSetUri, error.getMessage());
+            })
+            .onErrorResume(error -> Mono.empty())
+            .doFinally(signal -> completed(refresh, start))
+            .subscribe();
+        return refresh;
+    }
+
+    private void completed(CompletableFuture<JWKSet> refresh, long start) {
+        long elapsed = System.nanoTime() - start;
+        refreshes.incrementAndGet();
+        refreshNanos.addAndGet(elapsed);
+        lastRefreshNanos.set(elapsed);
+        inFlight.compareAndSet(refresh, null);
+        refresh.complete(jwkSet);
+    }
+
+    private JWKSet parse(String body) {
+        try {
+            return JWKSet.parse(body);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Invalid JWK set: " + e.getMessage(), e);
+        }
+    }
+
+    private Duration nextRefreshDelay() {
+        double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Duration.ofMillis((long) (refreshInterval.toMillis() * factor));
+    }
+}
@@ -1,5 +1,6 @@
 package com.okta.developer.blog.web.rest;
 
+import com.okta.developer.blog.config.ApplicationProperties;
 import com.okta.developer.blog.domain.Post;
 import com.okta.developer.blog.repository.PostRepository;
 import com.okta.developer.blog.web.rest.errors.BadRequestAlertException;
@@ -17,6 +18,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -47,8 +49,17 @@ public class PostResource {
 
     private final PostRepository postRepository;
 
-    public PostResource(PostRepository postRepository) {
+    // the lists of posts being the same for every user, shared caches may keep them
+    private final CacheControl listCacheControl;
+
+    public PostResource(PostRepository postRepository, ApplicationProperties applicationProperties) {
         this.postRepository = postRepository;
+        ApplicationProperties.ResponseCaching responseCaching = applicationProperties.getResponseCaching();
+        this.listCacheControl =
+            CacheControl
+                .maxAge(responseCaching.getMaxAge())
+                .cachePublic()
+                .staleWhileRevalidate(responseCaching.getStaleWhileRevalidate());
     }
 
     /**
@@ -198,6 +209,7 @@ public class PostResource {
             .map(countWithEntities ->
                 ResponseEntity
                     .ok()
+                    .cacheControl(listCacheControl)
                     .headers(
                         PaginationUtil.generatePaginationHttpHeaders(
                             UriComponentsBuilder.fromHttpRequest(request),
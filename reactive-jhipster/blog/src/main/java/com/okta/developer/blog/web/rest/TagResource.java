@@ -1,5 +1,6 @@
 package com.okta.developer.blog.web.rest;
 
+import com.okta.developer.blog.config.ApplicationProperties;
 import com.okta.developer.blog.domain.Tag;
 import com.okta.developer.blog.repository.TagRepository;
 import com.okta.developer.blog.web.rest.errors.BadRequestAlertException;
@@ -17,6 +18,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -47,8 +49,17 @@ public class TagResource {
 
     private final TagRepository tagRepository;
 
-    public TagResource(TagRepository tagRepository) {
+    // the lists of tags being the same for every user, shared caches may keep them
+    private final CacheControl listCacheControl;
+
+    public TagResource(TagRepository tagRepository, ApplicationProperties applicationProperties) {
         this.tagRepository = tagRepository;
+        ApplicationProperties.ResponseCaching responseCaching = applicationProperties.getResponseCaching();
+        this.listCacheControl =
+            CacheControl
+                .maxAge(responseCaching.getMaxAge())
+                .cachePublic()
+                .staleWhileRevalidate(responseCaching.getStaleWhileRevalidate());
     }
 
     /**
@@ -190,6 +201,7 @@ public class TagResource {
             .map(countWithEntities ->
                 ResponseEntity
                     .ok()
+                    .cacheControl(listCacheControl)
                     .headers(
                         PaginationUtil.generatePaginationHttpHeaders(
                             UriComponentsBuilder.fromHttpRequest(request),
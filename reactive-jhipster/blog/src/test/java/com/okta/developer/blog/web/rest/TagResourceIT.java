@@ -18,6 +18,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -155,6 +156,8 @@ class TagResourceIT {
             .isOk()
             .expectHeader()
             .contentType(MediaType.APPLICATION_JSON)
+            .expectHeader()
+            .valueEquals(HttpHeaders.CACHE_CONTROL, "max-age=10, public, stale-while-revalidate=30")
             .expectBody()
             .jsonPath("$.[*].name")
             .value(hasItem(DEFAULT_NAME));
@@ -0,0 +1,97 @@
+package com.okta.developer.gateway.repository;
+
+import com.okta.developer.gateway.domain.User;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.dialect.DialectResolver;
+import org.springframework.data.r2dbc.dialect.R2dbcDialect;
+import org.springframework.data.r2dbc.query.UpdateMapper;
+import org.springframework.data.relational.core.dialect.RenderContextFactory;
+import org.springframework.data.relational.core.sql.Condition;
+import org.springframework.data.relational.core.sql.Conditions;
+import org.springframework.data.relational.core.sql.SQL;
+import org.springframework.data.relational.core.sql.Select;
+import org.springframework.data.relational.core.sql.SelectBuilder;
+import org.springframework.data.relational.core.sql.Table;
+import org.springframework.data.relational.core.sql.render.SqlRenderer;
+
+/**
+ * Compares rendering the SQL of a page of users, sorted by login and filtered by a condition, each time, as done before, and
+ * through the cache of {@link EntityManager#createSelect(SelectBuilder.SelectFromAndJoin, Class, Pageable, Condition)}, the
+ * page being picked at random.
+ * <p>
+ * Nothing is run: the H2 connection factory is only there for its dialect.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntityManagerBenchmark {
+
+    private static final Table TABLE = Table.create("jhi_user").as(EntityManager.ENTITY_ALIAS);
+
+    private static final Condition WHERE = Conditions.isEqual(TABLE.column("activated"), SQL.bindMarker(":activated"));
+
+    private static final Sort SORT = Sort.by("login");
+
+    private EntityManager entityManager;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ConnectionFactory connectionFactory = ConnectionFactories.get("r2dbc:h2:mem:///select-benchmark");
+        R2dbcEntityTemplate r2dbcEntityTemplate = new R2dbcEntityTemplate(connectionFactory);
+        R2dbcDialect dialect = DialectResolver.getDialect(connectionFactory);
+        entityManager =
+            new EntityManager(
+                SqlRenderer.create(new RenderContextFactory(dialect).createRenderContext()),
+                new UpdateMapper(dialect, r2dbcEntityTemplate.getConverter()),
+                r2dbcEntityTemplate
+            );
+    }
+
+    @Benchmark
+    public String rendered() {
+        Pageable pageable = page();
+        return entityManager.renderSelect(
+            select().limitOffset(pageable.getPageSize(), pageable.getOffset()).where(WHERE),
+            User.class,
+            pageable.getSort()
+        );
+    }
+
+    @Benchmark
+    public String cached() {
+        return entityManager.createSelect(select(), User.class, page(), WHERE);
+    }
+
+    private static Pageable page() {
+        return PageRequest.of(ThreadLocalRandom.current().nextInt(100), 20, SORT);
+    }
+
+    private static SelectBuilder.SelectFromAndJoin select() {
+        return Select
+            .builder()
+            .select(
+                TABLE.column("id").as(EntityManager.ALIAS_PREFIX + "id"),
+                TABLE.column("login").as(EntityManager.ALIAS_PREFIX + "login"),
+                TABLE.column("first_name").as(EntityManager.ALIAS_PREFIX + "first_name"),
+                TABLE.column("last_name").as(EntityManager.ALIAS_PREFIX + "last_name"),
+                TABLE.column("email").as(EntityManager.ALIAS_PREFIX + "email"),
+                TABLE.column("activated").as(EntityManager.ALIAS_PREFIX + "activated")
+            )
+            .from(TABLE);
+    }
+}
@@ -0,0 +1,163 @@
+package com.okta.developer.gateway.repository;
+
+import com.okta.developer.gateway.config.Constants;
+import com.okta.developer.gateway.domain.Authority;
+import com.okta.developer.gateway.domain.User;
+import com.okta.developer.gateway.security.AuthoritiesConstants;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.commons.beanutils.BeanComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.util.function.Tuples;
+
+/**
+ * Compares reading a page of users with their authorities by reading, grouping and sorting all the users in memory, as done
+ * before, and by selecting and sorting the page in SQL, with {@link UserRepositoryInternal#findAllWithAuthorities(Pageable)}.
+ * <p>
+ * The users, 100,000 of them with one or two authorities each, are in an in-memory H2 database with the same tables as the
+ * Liquibase changelog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class UserRepositoryBenchmark {
+
+    private static final int USERS = 100_000;
+
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * The page read, sorted by login.
+     */
+    @Param({ "0", "2500" })
+    private int page;
+
+    private DatabaseClient db;
+
+    private R2dbcEntityTemplate r2dbcEntityTemplate;
+
+    private UserRepositoryInternal userRepository;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ConnectionFactory connectionFactory = ConnectionFactories.get("r2dbc:h2:mem:///user-benchmark;DB_CLOSE_DELAY=-1");
+        r2dbcEntityTemplate = new R2dbcEntityTemplate(connectionFactory);
+        db = r2dbcEntityTemplate.getDatabaseClient();
+        userRepository = new UserRepositoryInternalImpl(db, r2dbcEntityTemplate, r2dbcEntityTemplate.getConverter());
+
+        Flux
+            .just(
+                "CREATE TABLE jhi_user (id VARCHAR(100) PRIMARY KEY, login VARCHAR(50) NOT NULL UNIQUE, first_name VARCHAR(50), " +
+                "last_name VARCHAR(50), email VARCHAR(191) UNIQUE, image_url VARCHAR(256), activated BOOLEAN NOT NULL, " +
+                "lang_key VARCHAR(10), created_by VARCHAR(50) NOT NULL, created_date TIMESTAMP, last_modified_by VARCHAR(50), " +
+                "last_modified_date TIMESTAMP)",
+                "CREATE TABLE jhi_authority (name VARCHAR(50) PRIMARY KEY)",
+                "CREATE TABLE jhi_user_authority (user_id VARCHAR(100) NOT NULL REFERENCES jhi_user(id), " +
+                "authority_name VARCHAR(50) NOT NULL REFERENCES jhi_authority(name), PRIMARY KEY (user_id, authority_name))"
+            )
+            .concatMap(ddl -> db.sql(ddl).then())
+            .then(userRepository.createMissingAuthorities(List.of(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER)))
+            .block();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(user(i));
+            if (users.size() == 1_000) {
+                userRepository.createAll(users).block();
+                users.clear();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        db.sql("DROP ALL OBJECTS").then().block();
+    }
+
+    @Benchmark
+    public List<User> sortedInMemory() {
+        long size = PAGE_SIZE;
+        return db
+            .sql("SELECT * FROM jhi_user u LEFT JOIN jhi_user_authority ua ON u.id=ua.user_id")
+            .map((row, metadata) ->
+                Tuples.of(
+                    r2dbcEntityTemplate.getConverter().read(User.class, row, metadata),
+                    Optional.ofNullable(row.get("authority_name", String.class))
+                )
+            )
+            .all()
+            .groupBy(t -> t.getT1().getLogin())
+            .flatMap(l ->
+                l
+                    .collectList()
+                    .map(t -> {
+                        User user = t.get(0).getT1();
+                        user.setAuthorities(
+                            t
+                                .stream()
+                                .filter(userAuthority -> userAuthority.getT2().isPresent())
+                                .map(userAuthority -> authority(userAuthority.getT2().get()))
+                                .collect(Collectors.toSet())
+                        );
+                        return user;
+                    })
+            )
+            .sort(new BeanComparator<>("login"))
+            .skip(page * size)
+            .take(size)
+            .collectList()
+            .block();
+    }
+
+    @Benchmark
+    public List<User> pagedInSql() {
+        return userRepository.findAllWithAuthorities(PageRequest.of(page, PAGE_SIZE, Sort.by("login"))).collectList().block();
+    }
+
+    private static User user(int index) {
+        User user = new User();
+        user.setId("id-" + index);
+        // not in the order of the ids
+        user.setLogin("user-" + Integer.toHexString(Integer.reverse(index)));
+        user.setEmail(user.getLogin() + "@localhost");
+        user.setFirstName("First " + index);
+        user.setLastName("Last " + index);
+        user.setActivated(true);
+        user.setLangKey("en");
+        user.setCreatedBy(Constants.SYSTEM);
+        Set<Authority> authorities = new HashSet<>();
+        authorities.add(authority(AuthoritiesConstants.USER));
+        if (index % 100 == 0) {
+            authorities.add(authority(AuthoritiesConstants.ADMIN));
+        }
+        user.setAuthorities(authorities);
+        return user;
+    }
+
+    private static Authority authority(String name) {
+        Authority authority = new Authority();
+        authority.setName(name);
+        return authority;
+    }
+}
@@ -0,0 +1,122 @@
+package com.okta.developer.gateway.repository.rowmapper;
+
+import com.okta.developer.gateway.config.DatabaseConfiguration;
+import com.okta.developer.gateway.domain.User;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.data.r2dbc.convert.MappingR2dbcConverter;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.dialect.MySqlDialect;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+
+/**
+ * Compares mapping a row to a {@link User} as done before, the names of the columns being concatenated for each row and the
+ * values taken from the driver first, falling back on a conversion when it throws, and with the {@link UserRowMapper}.
+ * <p>
+ * The row is held in a map, its driver converting a value only to its own type, or throwing. With the {@code BIT} activated
+ * column, read as a {@link BitSet} as by MySQL, the driver throws for that column on every row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class UserRowMapperBenchmark {
+
+    /**
+     * The type of the activated column.
+     */
+    @Param({ "BOOLEAN", "BIT" })
+    private String activatedType;
+
+    private ColumnConverter converter;
+
+    private UserRowMapper userRowMapper;
+
+    private Row row;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        R2dbcCustomConversions conversions = R2dbcCustomConversions.of(
+            MySqlDialect.INSTANCE,
+            List.of(DatabaseConfiguration.BitSetReadConverter.INSTANCE)
+        );
+        converter = new ColumnConverter(conversions, new MappingR2dbcConverter(new R2dbcMappingContext(), conversions));
+        userRowMapper = new UserRowMapper(converter);
+        Map<String, Object> values = new HashMap<>();
+        values.put("e_id", "user-1");
+        values.put("e_login", "johndoe");
+        values.put("e_first_name", "John");
+        values.put("e_last_name", "Doe");
+        values.put("e_email", "johndoe@localhost");
+        values.put("e_activated", activatedType.equals("BIT") ? BitSet.valueOf(new byte[] { 1 }) : Boolean.TRUE);
+        values.put("e_lang_key", "en");
+        values.put("e_image_url", "http://placehold.it/50x50");
+        row = new MapRow(values);
+    }
+
+    @Benchmark
+    public User concatenated() {
+        String prefix = "e";
+        User entity = new User();
+        entity.setId(row.get(prefix + "_id", String.class));
+        entity.setLogin(fromRow(prefix + "_login", String.class));
+        entity.setFirstName(fromRow(prefix + "_first_name", String.class));
+        entity.setLastName(fromRow(prefix + "_last_name", String.class));
+        entity.setEmail(fromRow(prefix + "_email", String.class));
+        entity.setActivated(Boolean.TRUE.equals(fromRow(prefix + "_activated", Boolean.class)));
+        entity.setLangKey(fromRow(prefix + "_lang_key", String.class));
+        entity.setImageUrl(fromRow(prefix + "_image_url", String.class));
+        return entity;
+    }
+
+    @Benchmark
+    public User precompiled() {
+        return userRowMapper.apply(row, "e");
+    }
+
+    /**
+     * How {@link ColumnConverter#fromRow(Row, String, Class)} converted a value before.
+     */
+    private <T> T fromRow(String columnName, Class<T> target) {
+        try {
+            return row.get(columnName, target);
+        } catch (Exception e) {
+            Object obj = row.get(columnName);
+            return converter.convert(obj, target);
+        }
+    }
+
+    private record MapRow(Map<String, Object> values) implements Row {
+        @Override
+        public <T> T get(int index, Class<T> type) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T> T get(String name, Class<T> type) {
+            Object value = values.get(name);
+            if (value == null || type.isInstance(value)) {
+                return type.cast(value);
+            }
+            throw new IllegalArgumentException("Cannot decode value of type " + value.getClass().getName() + " to " + type.getName());
+        }
+
+        @Override
+        public RowMetadata getMetadata() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.okta.developer.gateway.security;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Compares mapping the roles of a token to authorities with a new stream and new authorities for every token, as done
+ * before, and with the {@link GrantedAuthorityMapper}.
+ * <p>
+ * Every token has its own copy of the claims, as decoded from JSON, picked among a few distinct role sets. Run with
+ * {@code -PjmhProfilers=gc} to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(4)
+public class GrantedAuthorityMapperBenchmark {
+
+    /**
+     * Number of roles claimed by a user.
+     */
+    @Param({ "2", "8", "32" })
+    private int rolesCount;
+
+    private final GrantedAuthorityMapper mapper = new GrantedAuthorityMapper(1_000);
+
+    private List<Map<String, Object>> tokens;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tokens = new ArrayList<>();
+        for (int token = 0; token < 1_024; token++) {
+            // 16 distinct role sets, as users share roles
+            int roleSet = token % 16;
+            List<String> roles = new ArrayList<>();
+            roles.add(AuthoritiesConstants.USER);
+            for (int role = 1; role < rolesCount; role++) {
+                roles.add((role % 3 == 0 ? "Group " : "ROLE_") + roleSet + "_" + role);
+            }
+            tokens.add(Map.of("sub", "user-" + token, "groups", roles));
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        Map<String, Object> next(List<Map<String, Object>> tokens) {
+            next = (next + 1) & (tokens.size() - 1);
+            return tokens.get(next);
+        }
+    }
+
+    @Benchmark
+    public List<GrantedAuthority> streamed(Cursor cursor) {
+        Collection<String> roles = roles(cursor.next(tokens));
+        return roles.stream().filter(role -> role.startsWith("ROLE_")).map(SimpleGrantedAuthority::new).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<GrantedAuthority> mapped(Cursor cursor) {
+        return mapper.map(roles(cursor.next(tokens)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<String> roles(Map<String, Object> claims) {
+        return (Collection<String>) claims.get("groups");
+    }
+}
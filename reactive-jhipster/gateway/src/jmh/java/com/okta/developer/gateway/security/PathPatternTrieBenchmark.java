@@ -0,0 +1,108 @@
+package com.okta.developer.gateway.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+/**
+ * Compares finding the first authorization rule matching a request path by trying the path patterns of the gateway one after
+ * another, as the {@code pathMatchers(...)} do, and with a {@link PathPatternTrie}.
+ * <p>
+ * The paths are a mix of the gateway traffic: API and proxied calls mostly, which come late in the rules, some static
+ * files and management endpoints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PathPatternTrieBenchmark {
+
+    private static final List<String> PATTERNS = List.of(
+        "/",
+        "/*.*",
+        "/api/authenticate",
+        "/api/auth-info",
+        "/api/admin/**",
+        "/api/**",
+        "/services/*/management/health/readiness",
+        "/services/*/v3/api-docs",
+        "/services/**",
+        "/v3/api-docs/**",
+        "/management/health",
+        "/management/health/**",
+        "/management/info",
+        "/management/prometheus",
+        "/management/**"
+    );
+
+    private static final List<String> PATHS = List.of(
+        "/api/account",
+        "/api/blogs/42",
+        "/api/posts",
+        "/services/blog/api/blogs",
+        "/services/blog/api/posts/42",
+        "/services/store/api/products",
+        "/services/store/api/products/42",
+        "/services/store/management/health/readiness",
+        "/api/admin/users",
+        "/index.html",
+        "/management/health/liveness",
+        "/management/prometheus",
+        "/api/auth-info",
+        "/",
+        "/unknown/path",
+        "/services/blog/api/tags"
+    );
+
+    private final List<PathPattern> patterns = new ArrayList<>();
+
+    private PathPatternTrie<Integer> trie;
+
+    private PathContainer[] paths;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PathPatternTrie.Builder<Integer> builder = PathPatternTrie.builder();
+        for (int i = 0; i < PATTERNS.size(); i++) {
+            patterns.add(PathPatternParser.defaultInstance.parse(PATTERNS.get(i)));
+            builder.add(PATTERNS.get(i), i);
+        }
+        trie = builder.build();
+        // the requests come with their path already parsed
+        paths = PATHS.stream().map(PathContainer::parsePath).toArray(PathContainer[]::new);
+    }
+
+    @Benchmark
+    public int sequential() {
+        PathContainer path = nextPath();
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matches(path)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Benchmark
+    public int trie() {
+        Integer index = trie.match(nextPath());
+        return index != null ? index : -1;
+    }
+
+    private PathContainer nextPath() {
+        next = (next + 1) & (paths.length - 1);
+        return paths[next];
+    }
+}
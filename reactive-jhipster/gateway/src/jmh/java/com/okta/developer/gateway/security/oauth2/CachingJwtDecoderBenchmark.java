@@ -0,0 +1,87 @@
+package com.okta.developer.gateway.security.oauth2;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+
+/**
+ * Compares decoding a bearer token with the {@link NimbusReactiveJwtDecoder} alone, and behind the {@link CachingJwtDecoder}.
+ * <p>
+ * Tokens are RS256 signed with a 2048 bits key, and padded with custom claims to the sizes sent by the usual IdPs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CachingJwtDecoderBenchmark {
+
+    /**
+     * Approximate size of the claims set, in bytes.
+     */
+    @Param({ "512", "2048", "8192" })
+    private int claimsSize;
+
+    private String token;
+
+    private ReactiveJwtDecoder nimbusJwtDecoder;
+
+    private ReactiveJwtDecoder cachingJwtDecoder;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException, JOSEException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+        Instant now = Instant.now();
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder()
+            .issuer("http://localhost:9080/realms/jhipster")
+            .subject("4c973896-5761-41fc-8217-07c5d13a004b")
+            .audience("account")
+            .issueTime(Date.from(now))
+            .expirationTime(Date.from(now.plus(Duration.ofHours(1))))
+            .claim("preferred_username", "admin")
+            .claim("groups", List.of("ROLE_ADMIN", "ROLE_USER"));
+        for (int i = 0; claims.build().toString().length() < claimsSize; i++) {
+            claims.claim("https://www.jhipster.tech/claim-" + i, "value-" + i);
+        }
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("benchmark").build(), claims.build());
+        jwt.sign(new RSASSASigner(keyPair.getPrivate()));
+        token = jwt.serialize();
+
+        nimbusJwtDecoder = NimbusReactiveJwtDecoder.withPublicKey((RSAPublicKey) keyPair.getPublic()).build();
+        cachingJwtDecoder = new CachingJwtDecoder(nimbusJwtDecoder, 10_000, Duration.ofSeconds(30));
+    }
+
+    @Benchmark
+    public Jwt uncached() {
+        return nimbusJwtDecoder.decode(token).block();
+    }
+
+    @Benchmark
+    public Jwt cached() {
+        return cachingJwtDecoder.decode(token).block();
+    }
+}
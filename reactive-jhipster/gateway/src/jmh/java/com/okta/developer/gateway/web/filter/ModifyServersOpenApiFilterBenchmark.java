@@ -0,0 +1,101 @@
+package com.okta.developer.gateway.web.filter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Compares rewriting the servers of a gzipped api-doc as done before, gunzipping it to a string, parsing it to a tree with
+ * a new {@link ObjectMapper} and gzipping it again, with the streaming rewrite of {@link ModifyServersOpenApiFilter}.
+ * <p>
+ * The filter only rewrites a doc when it changed, so most requests cost a digest of the upstream doc, or nothing when the
+ * service sends an ETag: the {@code digest} benchmark measures the former.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModifyServersOpenApiFilterBenchmark {
+
+    private static final String SERVER_URL = "/services/blog/blog:8081";
+
+    /**
+     * Number of operations in the api-doc.
+     */
+    @Param({ "50", "500", "2000" })
+    private int operationsCount;
+
+    private byte[] zippedApiDocs;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        StringBuilder apiDocs = new StringBuilder("{\"openapi\":\"3.0.1\",\"info\":{\"title\":\"API\",\"version\":\"0.0.1\"},");
+        apiDocs.append("\"servers\":[{\"url\":\"http://10.0.0.1:8081\",\"description\":\"Generated server url\"}],\"paths\":{");
+        for (int operation = 0; operation < operationsCount; operation++) {
+            if (operation > 0) {
+                apiDocs.append(',');
+            }
+            apiDocs
+                .append("\"/api/entity-")
+                .append(operation)
+                .append("/{id}\":{\"get\":{\"tags\":[\"entity-resource\"],\"operationId\":\"getEntity")
+                .append(operation)
+                .append("\",\"parameters\":[{\"name\":\"id\",\"in\":\"path\",\"required\":true,\"schema\":{\"type\":\"integer\",")
+                .append("\"format\":\"int64\"}}],\"responses\":{\"200\":{\"description\":\"OK\",\"content\":{\"*/*\":{\"schema\":")
+                .append("{\"$ref\":\"#/components/schemas/Entity")
+                .append(operation)
+                .append("\"}}}}}}}");
+        }
+        apiDocs.append("}}");
+        zippedApiDocs = zip(apiDocs.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public byte[] tree() throws IOException {
+        String body = new String(new GZIPInputStream(new ByteArrayInputStream(zippedApiDocs)).readAllBytes(), StandardCharsets.UTF_8);
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode jsonBody = mapper.readTree(body);
+        ObjectNode server = mapper.createObjectNode();
+        server.set("url", mapper.valueToTree(SERVER_URL));
+        server.set("description", mapper.valueToTree("added by global filter"));
+        ArrayNode servers = mapper.createArrayNode();
+        servers.add(server);
+        ((ObjectNode) jsonBody).set("servers", servers);
+        return zip(jsonBody.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public byte[] streaming() throws IOException {
+        return zip(ModifyServersOpenApiFilter.rewriteServers(new GZIPInputStream(new ByteArrayInputStream(zippedApiDocs)), SERVER_URL));
+    }
+
+    @Benchmark
+    public String digest() {
+        return DigestUtils.md5DigestAsHex(zippedApiDocs);
+    }
+
+    private static byte[] zip(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(content);
+        }
+        return bytes.toByteArray();
+    }
+}
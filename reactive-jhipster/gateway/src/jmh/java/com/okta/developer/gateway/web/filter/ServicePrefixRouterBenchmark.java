@@ -0,0 +1,169 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.cloud.client.discovery.simple.reactive.SimpleReactiveDiscoveryClient;
+import org.springframework.cloud.client.discovery.simple.reactive.SimpleReactiveDiscoveryProperties;
+import org.springframework.cloud.gateway.filter.FilteringWebHandler;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.filter.factory.RewritePathGatewayFilterFactory;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Compares routing the {@code /services/**} requests with the routes of the discovery locator, a {@code Path} predicate and a
+ * {@code RewritePath} filter per service, as done before, and with the {@link ServicePrefixRouter}.
+ * <p>
+ * A request is routed as the gateway does it: its route is looked up as {@code RoutePredicateHandlerMapping} does, by
+ * evaluating the predicates of the routes in order, and then goes through the filters of the route and the global filters,
+ * up to a stand-in backend, which takes the URL the load balancer would resolve. Run with {@code -PjmhProfilers=gc} to
+ * compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ServicePrefixRouterBenchmark {
+
+    /**
+     * Number of registered services.
+     */
+    @Param({ "4", "32", "128" })
+    private int servicesCount;
+
+    private List<String> uris;
+
+    private List<Route> discoveryLocatorRoutes;
+
+    private FilteringWebHandler discoveryLocatorHandler;
+
+    private List<Route> servicePrefixRoutes;
+
+    private FilteringWebHandler servicePrefixHandler;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<String> serviceIds = new ArrayList<>();
+        uris = new ArrayList<>();
+        for (int service = 0; service < servicesCount; service++) {
+            serviceIds.add("service-" + service);
+            uris.add("/services/service-" + service + "/api/entities/" + service + "?page=0&size=20");
+        }
+        GlobalFilter backend = new StandInBackend();
+
+        PathRoutePredicateFactory path = new PathRoutePredicateFactory();
+        RewritePathGatewayFilterFactory rewritePath = new RewritePathGatewayFilterFactory();
+        discoveryLocatorRoutes = new ArrayList<>();
+        for (String serviceId : serviceIds) {
+            discoveryLocatorRoutes.add(
+                Route
+                    .async()
+                    .id("ReactiveCompositeDiscoveryClient_" + serviceId.toUpperCase())
+                    .uri("lb://" + serviceId.toUpperCase())
+                    .asyncPredicate(path.applyAsync(config -> config.setPatterns(List.of("/services/" + serviceId + "/**"))))
+                    .filter(
+                        new OrderedGatewayFilter(
+                            rewritePath.apply(config ->
+                                config.setRegexp("/services/" + serviceId + "/(?<remaining>.*)").setReplacement("/${remaining}")
+                            ),
+                            1
+                        )
+                    )
+                    .build()
+            );
+        }
+        discoveryLocatorHandler = new FilteringWebHandler(List.of(new RouteToRequestUrlFilter(), backend));
+
+        ServicePrefixRouter router = new ServicePrefixRouter(
+            new SimpleReactiveDiscoveryClient(new SimpleReactiveDiscoveryProperties()),
+            event -> {}
+        );
+        router.update(serviceIds);
+        servicePrefixRoutes = List.of(
+            Route
+                .async()
+                .id(ServicePrefixRouter.ROUTE_ID)
+                .uri("no://op")
+                .asyncPredicate(new ServicePrefixRoutePredicateFactory(router).applyAsync(new ServicePrefixRoutePredicateFactory.Config()))
+                .build()
+        );
+        servicePrefixHandler = new FilteringWebHandler(List.of(new RouteToRequestUrlFilter(), router, backend));
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        String next(List<String> uris) {
+            next = (next + 1) % uris.size();
+            return uris.get(next);
+        }
+    }
+
+    @Benchmark
+    public URI discoveryLocator(Cursor cursor) {
+        return route(cursor.next(uris), discoveryLocatorRoutes, discoveryLocatorHandler);
+    }
+
+    @Benchmark
+    public URI servicePrefixRouter(Cursor cursor) {
+        return route(cursor.next(uris), servicePrefixRoutes, servicePrefixHandler);
+    }
+
+    private static URI route(String uri, List<Route> routes, FilteringWebHandler handler) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.method(HttpMethod.GET, URI.create(uri)));
+        // as RoutePredicateHandlerMapping does
+        Route route = Flux
+            .fromIterable(routes)
+            .concatMap(candidate -> Mono.just(candidate).filterWhen(r -> r.getPredicate().apply(exchange)))
+            .next()
+            .block();
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, route);
+        handler.handle(exchange).block();
+        return exchange.getAttribute(StandInBackend.URL_ATTR);
+    }
+
+    /**
+     * Takes the URL which the load balancer would resolve, rather than sending the request.
+     */
+    private static class StandInBackend implements GlobalFilter, Ordered {
+
+        private static final String URL_ATTR = StandInBackend.class.getName() + ".url";
+
+        @Override
+        public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+            exchange.getAttributes().put(URL_ATTR, exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR));
+            return Mono.empty();
+        }
+
+        @Override
+        public int getOrder() {
+            // where ReactiveLoadBalancerClientFilter is
+            return 10150;
+        }
+    }
+}
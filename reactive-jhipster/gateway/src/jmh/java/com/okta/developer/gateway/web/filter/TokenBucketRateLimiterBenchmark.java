@@ -0,0 +1,103 @@
+package com.okta.developer.gateway.web.filter;
+
+import com.okta.developer.gateway.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+
+/**
+ * Compares taking a token from the buckets of the {@link StripedTokenBuckets}, and from buckets locked while refilled and
+ * taken from, as usually done, with many threads taking from a single hot key, or from many keys.
+ * <p>
+ * The rate is high enough for the tokens to be taken, not denied, every bucket being updated by every request. The
+ * {@code rateLimiter} benchmark measures the whole {@link TokenBucketRateLimiter#isAllowed(String, String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(64)
+public class TokenBucketRateLimiterBenchmark {
+
+    private static final long RATE = 1_000_000_000;
+
+    /**
+     * Number of keys the requests are spread over.
+     */
+    @Param({ "1", "10000" })
+    private int keysCount;
+
+    private String[] keys;
+
+    private StripedTokenBuckets stripedBuckets;
+
+    private final Map<String, LockedBucket> lockedBuckets = new ConcurrentHashMap<>();
+
+    private TokenBucketRateLimiter rateLimiter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        keys = new String[keysCount];
+        for (int i = 0; i < keysCount; i++) {
+            keys[i] = "user:user-" + i;
+        }
+        stripedBuckets = new StripedTokenBuckets(Duration.ofMinutes(5), false, System::nanoTime);
+        ApplicationProperties.RateLimiting properties = new ApplicationProperties.RateLimiting();
+        properties.setReplenishRate(RATE);
+        properties.setBurstCapacity(RATE);
+        rateLimiter = new TokenBucketRateLimiter(null, new SimpleMeterRegistry(), properties, null, System::nanoTime);
+    }
+
+    @Benchmark
+    public long locked() {
+        return lockedBuckets.computeIfAbsent(key(), key -> new LockedBucket()).tryConsume(1);
+    }
+
+    @Benchmark
+    public long striped() {
+        return stripedBuckets.tryConsume(key(), RATE, RATE, 1);
+    }
+
+    @Benchmark
+    public RateLimiter.Response rateLimiter() {
+        return rateLimiter.isAllowed("services", key()).block();
+    }
+
+    private String key() {
+        return keys.length == 1 ? keys[0] : keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    /**
+     * A bucket holding a count of tokens, refilled from the time elapsed since the previous request.
+     */
+    private static final class LockedBucket {
+
+        private double tokens = RATE;
+
+        private long refilled = System.nanoTime();
+
+        synchronized long tryConsume(long requested) {
+            long now = System.nanoTime();
+            tokens = Math.min(RATE, tokens + (now - refilled) * (RATE / 1e9));
+            refilled = now;
+            if (tokens < requested) {
+                return -1;
+            }
+            tokens -= requested;
+            return (long) tokens;
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package com.okta.developer.gateway.config;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
 
 /**
  * Properties specific to Gateway.
@@ -10,7 +14,560 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    private final Security security = new Security();
+
+    private final UserSync userSync = new UserSync();
+
+    private final Session session = new Session();
+
+    private final LoadBalancer loadBalancer = new LoadBalancer();
+
+    private final ConnectionPools connectionPools = new ConnectionPools();
+
+    private final ResponseCache responseCache = new ResponseCache();
+
+    private final Hedging hedging = new Hedging();
+
+    private final RateLimiting rateLimiting = new RateLimiting();
+
     // jhipster-needle-application-properties-property
+
+    public Security getSecurity() {
+        return security;
+    }
+
+    public UserSync getUserSync() {
+        return userSync;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    public ConnectionPools getConnectionPools() {
+        return connectionPools;
+    }
+
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public Hedging getHedging() {
+        return hedging;
+    }
+
+    public RateLimiting getRateLimiting() {
+        return rateLimiting;
+    }
+
     // jhipster-needle-application-properties-property-getter
+
+    public static class Security {
+
+        private final JwtCache jwtCache = new JwtCache();
+
+        private final Jwks jwks = new Jwks();
+
+        private final TokenRefresh tokenRefresh = new TokenRefresh();
+
+        public JwtCache getJwtCache() {
+            return jwtCache;
+        }
+
+        public Jwks getJwks() {
+            return jwks;
+        }
+
+        public TokenRefresh getTokenRefresh() {
+            return tokenRefresh;
+        }
+
+        public static class JwtCache {
+
+            private boolean enabled = false;
+
+            private long maximumSize = 10_000;
+
+            private Duration expiryMargin = Duration.ofSeconds(30);
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getMaximumSize() {
+                return maximumSize;
+            }
+
+            public void setMaximumSize(long maximumSize) {
+                this.maximumSize = maximumSize;
+            }
+
+            public Duration getExpiryMargin() {
+                return expiryMargin;
+            }
+
+            public void setExpiryMargin(Duration expiryMargin) {
+                this.expiryMargin = expiryMargin;
+            }
+        }
+
+        public static class Jwks {
+
+            private Duration refreshInterval = Duration.ofMinutes(5);
+
+            private double jitter = 0.1;
+
+            private Duration minimumRefreshInterval = Duration.ofSeconds(30);
+
+            private Duration fetchTimeout = Duration.ofSeconds(5);
+
+            public Duration getRefreshInterval() {
+                return refreshInterval;
+            }
+
+            public void setRefreshInterval(Duration refreshInterval) {
+                this.refreshInterval = refreshInterval;
+            }
+
+            public double getJitter() {
+                return jitter;
+            }
+
+            public void setJitter(double jitter) {
+                this.jitter = jitter;
+            }
+
+            public Duration getMinimumRefreshInterval() {
+                return minimumRefreshInterval;
+            }
+
+            public void setMinimumRefreshInterval(Duration minimumRefreshInterval) {
+                this.minimumRefreshInterval = minimumRefreshInterval;
+            }
+
+            public Duration getFetchTimeout() {
+                return fetchTimeout;
+            }
+
+            public void setFetchTimeout(Duration fetchTimeout) {
+                this.fetchTimeout = fetchTimeout;
+            }
+        }
+
+        public static class TokenRefresh {
+
+            private Duration refreshAhead = Duration.ofMinutes(2);
+
+            private Duration clockSkew = Duration.ofSeconds(60);
+
+            public Duration getRefreshAhead() {
+                return refreshAhead;
+            }
+
+            public void setRefreshAhead(Duration refreshAhead) {
+                this.refreshAhead = refreshAhead;
+            }
+
+            public Duration getClockSkew() {
+                return clockSkew;
+            }
+
+            public void setClockSkew(Duration clockSkew) {
+                this.clockSkew = clockSkew;
+            }
+        }
+    }
+
+    public static class UserSync {
+
+        private long maximumSize = 10_000;
+
+        private Duration timeToLive = Duration.ofMinutes(10);
+
+        private final WriteBehind writeBehind = new WriteBehind();
+
+        public long getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public Duration getTimeToLive() {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        public WriteBehind getWriteBehind() {
+            return writeBehind;
+        }
+
+        public static class WriteBehind {
+
+            private boolean enabled = false;
+
+            private int batchSize = 100;
+
+            private Duration flushInterval = Duration.ofMillis(250);
+
+            private int maxPending = 10_000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getBatchSize() {
+                return batchSize;
+            }
+
+            public void setBatchSize(int batchSize) {
+                this.batchSize = batchSize;
+            }
+
+            public Duration getFlushInterval() {
+                return flushInterval;
+            }
+
+            public void setFlushInterval(Duration flushInterval) {
+                this.flushInterval = flushInterval;
+            }
+
+            public int getMaxPending() {
+                return maxPending;
+            }
+
+            public void setMaxPending(int maxPending) {
+                this.maxPending = maxPending;
+            }
+        }
+    }
+
+    public static class Session {
+
+        private Store store = Store.MEMORY;
+
+        private long nearCacheMaximumSize = 10_000;
+
+        private Duration nearCacheTimeToLive = Duration.ofSeconds(10);
+
+        private Duration touchInterval = Duration.ofMinutes(1);
+
+        private Duration cleanupInterval = Duration.ofMinutes(5);
+
+        public Store getStore() {
+            return store;
+        }
+
+        public void setStore(Store store) {
+            this.store = store;
+        }
+
+        public long getNearCacheMaximumSize() {
+            return nearCacheMaximumSize;
+        }
+
+        public void setNearCacheMaximumSize(long nearCacheMaximumSize) {
+            this.nearCacheMaximumSize = nearCacheMaximumSize;
+        }
+
+        public Duration getNearCacheTimeToLive() {
+            return nearCacheTimeToLive;
+        }
+
+        public void setNearCacheTimeToLive(Duration nearCacheTimeToLive) {
+            this.nearCacheTimeToLive = nearCacheTimeToLive;
+        }
+
+        public Duration getTouchInterval() {
+            return touchInterval;
+        }
+
+        public void setTouchInterval(Duration touchInterval) {
+            this.touchInterval = touchInterval;
+        }
+
+        public Duration getCleanupInterval() {
+            return cleanupInterval;
+        }
+
+        public void setCleanupInterval(Duration cleanupInterval) {
+            this.cleanupInterval = cleanupInterval;
+        }
+
+        public enum Store {
+            /**
+             * Sessions and authorized clients are kept in the memory of each instance.
+             */
+            MEMORY,
+            /**
+             * Sessions and authorized clients are shared through the database, see {@code WebSessionConfiguration}.
+             */
+            R2DBC
+        }
+    }
+
+    public static class LoadBalancer {
+
+        private Duration decayTime = Duration.ofSeconds(10);
+
+        private Duration failurePenalty = Duration.ofSeconds(5);
+
+        public Duration getDecayTime() {
+            return decayTime;
+        }
+
+        public void setDecayTime(Duration decayTime) {
+            this.decayTime = decayTime;
+        }
+
+        public Duration getFailurePenalty() {
+            return failurePenalty;
+        }
+
+        public void setFailurePenalty(Duration failurePenalty) {
+            this.failurePenalty = failurePenalty;
+        }
+    }
+
+    public static class ConnectionPools {
+
+        private final Pool defaults = new Pool(1000, 2000, Duration.ofSeconds(10), Duration.ofSeconds(30), false);
+
+        private final Map<String, Pool> services = new HashMap<>();
+
+        public Pool getDefaults() {
+            return defaults;
+        }
+
+        public Map<String, Pool> getServices() {
+            return services;
+        }
+
+        /**
+         * @return the pool of a service, its settings defaulting to the ones of {@link #getDefaults()}.
+         */
+        public Pool forService(String serviceId) {
+            Pool pool = services.get(serviceId);
+            if (pool == null) {
+                return defaults;
+            }
+            return new Pool(
+                pool.maxConnections != null ? pool.maxConnections : defaults.maxConnections,
+                pool.pendingAcquireMaxCount != null ? pool.pendingAcquireMaxCount : defaults.pendingAcquireMaxCount,
+                pool.pendingAcquireTimeout != null ? pool.pendingAcquireTimeout : defaults.pendingAcquireTimeout,
+                pool.maxIdleTime != null ? pool.maxIdleTime : defaults.maxIdleTime,
+                pool.h2c != null ? pool.h2c : defaults.h2c
+            );
+        }
+
+        /**
+         * The settings of the connection pool of a service, unset ones defaulting to the ones of the default pool.
+         */
+        public static class Pool {
+
+            private Integer maxConnections;
+
+            private Integer pendingAcquireMaxCount;
+
+            private Duration pendingAcquireTimeout;
+
+            private Duration maxIdleTime;
+
+            private Boolean h2c;
+
+            public Pool() {}
+
+            public Pool(
+                Integer maxConnections,
+                Integer pendingAcquireMaxCount,
+                Duration pendingAcquireTimeout,
+                Duration maxIdleTime,
+                Boolean h2c
+            ) {
+                this.maxConnections = maxConnections;
+                this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+                this.pendingAcquireTimeout = pendingAcquireTimeout;
+                this.maxIdleTime = maxIdleTime;
+                this.h2c = h2c;
+            }
+
+            public Integer getMaxConnections() {
+                return maxConnections;
+            }
+
+            public void setMaxConnections(Integer maxConnections) {
+                this.maxConnections = maxConnections;
+            }
+
+            public Integer getPendingAcquireMaxCount() {
+                return pendingAcquireMaxCount;
+            }
+
+            public void setPendingAcquireMaxCount(Integer pendingAcquireMaxCount) {
+                this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+            }
+
+            public Duration getPendingAcquireTimeout() {
+                return pendingAcquireTimeout;
+            }
+
+            public void setPendingAcquireTimeout(Duration pendingAcquireTimeout) {
+                this.pendingAcquireTimeout = pendingAcquireTimeout;
+            }
+
+            public Duration getMaxIdleTime() {
+                return maxIdleTime;
+            }
+
+            public void setMaxIdleTime(Duration maxIdleTime) {
+                this.maxIdleTime = maxIdleTime;
+            }
+
+            public Boolean getH2c() {
+                return h2c;
+            }
+
+            public void setH2c(Boolean h2c) {
+                this.h2c = h2c;
+            }
+        }
+    }
+
+    public static class ResponseCache {
+
+        private boolean enabled = true;
+
+        private DataSize maximumSize = DataSize.ofMegabytes(64);
+
+        private DataSize maximumEntrySize = DataSize.ofKilobytes(512);
+
+        private boolean offHeap = false;
+
+        private Duration staleWhileRevalidate = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public DataSize getMaximumSize() {
+            return maximumSize;
+        }
+
+        public void setMaximumSize(DataSize maximumSize) {
+            this.maximumSize = maximumSize;
+        }
+
+        public DataSize getMaximumEntrySize() {
+            return maximumEntrySize;
+        }
+
+        public void setMaximumEntrySize(DataSize maximumEntrySize) {
+            this.maximumEntrySize = maximumEntrySize;
+        }
+
+        public boolean isOffHeap() {
+            return offHeap;
+        }
+
+        public void setOffHeap(boolean offHeap) {
+            this.offHeap = offHeap;
+        }
+
+        public Duration getStaleWhileRevalidate() {
+            return staleWhileRevalidate;
+        }
+
+        public void setStaleWhileRevalidate(Duration staleWhileRevalidate) {
+            this.staleWhileRevalidate = staleWhileRevalidate;
+        }
+    }
+
+    public static class Hedging {
+
+        private double budget = 0.1;
+
+        private int maxBurst = 100;
+
+        public double getBudget() {
+            return budget;
+        }
+
+        public void setBudget(double budget) {
+            this.budget = budget;
+        }
+
+        public int getMaxBurst() {
+            return maxBurst;
+        }
+
+        public void setMaxBurst(int maxBurst) {
+            this.maxBurst = maxBurst;
+        }
+    }
+
+    public static class RateLimiting {
+
+        private long replenishRate = 100;
+
+        private long burstCapacity = 200;
+
+        private Duration idleTimeout = Duration.ofMinutes(5);
+
+        private Duration syncInterval = Duration.ofSeconds(1);
+
+        public long getReplenishRate() {
+            return replenishRate;
+        }
+
+        public void setReplenishRate(long replenishRate) {
+            this.replenishRate = replenishRate;
+        }
+
+        public long getBurstCapacity() {
+            return burstCapacity;
+        }
+
+        public void setBurstCapacity(long burstCapacity) {
+            this.burstCapacity = burstCapacity;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public Duration getSyncInterval() {
+            return syncInterval;
+        }
+
+        public void setSyncInterval(Duration syncInterval) {
+            this.syncInterval = syncInterval;
+        }
+    }
+
     // jhipster-needle-application-properties-property-class
 }
@@ -0,0 +1,60 @@
+package com.okta.developer.gateway.config;
+
+import com.okta.developer.gateway.loadbalancer.PeakEwmaLoadBalancer;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Balances the {@code lb://} requests to the services with the {@link PeakEwmaLoadBalancer} rather than round-robin.
+ * <p>
+ * The instances come from the zone preference supplier ({@code spring.cloud.loadbalancer.configurations: zone-preference}),
+ * which keeps the ones in the zone of the gateway when there are, the zone being the one in the Eureka metadata map.
+ */
+@Configuration
+@LoadBalancerClients(defaultConfiguration = LoadBalancerConfiguration.PeakEwmaLoadBalancerClientConfiguration.class)
+public class LoadBalancerConfiguration {
+
+    /**
+     * Removes the header of the instance the {@link PeakEwmaLoadBalancer} is not to choose, from the requests sent to the
+     * services.
+     */
+    @Bean
+    public HttpHeadersFilter excludedInstanceHeaderFilter() {
+        return (input, exchange) -> {
+            if (!input.containsKey(PeakEwmaLoadBalancer.EXCLUDED_INSTANCE_HEADER)) {
+                return input;
+            }
+            HttpHeaders filtered = new HttpHeaders();
+            filtered.putAll(input);
+            filtered.remove(PeakEwmaLoadBalancer.EXCLUDED_INSTANCE_HEADER);
+            return filtered;
+        };
+    }
+
+    /**
+     * Registered in the context of each service, rather than in the application context, so not a {@code @Configuration}.
+     */
+    static class PeakEwmaLoadBalancerClientConfiguration {
+
+        @Bean
+        PeakEwmaLoadBalancer peakEwmaLoadBalancer(
+            Environment environment,
+            LoadBalancerClientFactory loadBalancerClientFactory,
+            ApplicationProperties applicationProperties
+        ) {
+            String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+            return new PeakEwmaLoadBalancer(
+                serviceId,
+                loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+                applicationProperties.getLoadBalancer().getDecayTime(),
+                applicationProperties.getLoadBalancer().getFailurePenalty()
+            );
+        }
+    }
+}
@@ -1,25 +1,25 @@
 package com.okta.developer.gateway.config;
 
 import static org.springframework.security.config.Customizer.withDefaults;
-import static org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers.pathMatchers;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import com.okta.developer.gateway.security.AuthoritiesConstants;
+import com.okta.developer.gateway.security.PathAuthorizationManager;
+import com.okta.developer.gateway.security.PathPatternTrie;
 import com.okta.developer.gateway.security.SecurityUtils;
 import com.okta.developer.gateway.security.oauth2.AudienceValidator;
+import com.okta.developer.gateway.security.oauth2.CachingJwtDecoder;
+import com.okta.developer.gateway.security.oauth2.JwkSetManager;
 import com.okta.developer.gateway.security.oauth2.JwtGrantedAuthorityConverter;
+import com.okta.developer.gateway.security.oauth2.RefreshAheadAuthorizedClientManager;
+import com.okta.developer.gateway.security.oauth2.UserInfoEnrichingJwtDecoder;
 import com.okta.developer.gateway.web.filter.SpaWebFilter;
-import java.time.Duration;
-import java.util.Arrays;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
@@ -27,13 +27,17 @@ import org.springframework.security.config.annotation.web.reactive.EnableWebFlux
 import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProvider;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientProviderBuilder;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcReactiveOAuth2UserService;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
 import org.springframework.security.oauth2.client.registration.ClientRegistration;
 import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
 import org.springframework.security.oauth2.client.userinfo.ReactiveOAuth2UserService;
+import org.springframework.security.oauth2.client.web.DefaultReactiveOAuth2AuthorizedClientManager;
 import org.springframework.security.oauth2.client.web.server.DefaultServerOAuth2AuthorizationRequestResolver;
 import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizationRequestResolver;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
 import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
 import org.springframework.security.oauth2.core.OAuth2TokenValidator;
 import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
@@ -49,7 +53,6 @@ import org.springframework.security.web.server.csrf.ServerCsrfTokenRequestAttrib
 import org.springframework.security.web.server.header.ReferrerPolicyServerHttpHeadersWriter;
 import org.springframework.security.web.server.header.XFrameOptionsServerHttpHeadersWriter.Mode;
 import org.springframework.security.web.server.util.matcher.NegatedServerWebExchangeMatcher;
-import org.springframework.security.web.server.util.matcher.OrServerWebExchangeMatcher;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 import tech.jhipster.config.JHipsterProperties;
@@ -62,32 +65,36 @@ public class SecurityConfiguration {
 
     private final JHipsterProperties jHipsterProperties;
 
+    private final ApplicationProperties applicationProperties;
+
     @Value("${spring.security.oauth2.client.provider.oidc.issuer-uri}")
     private String issuerUri;
 
     private final ReactiveClientRegistrationRepository clientRegistrationRepository;
 
-    // See https://github.com/jhipster/generator-jhipster/issues/18868
-    // We don't use a distributed cache or the user selected cache implementation here on purpose
-    private final Cache<String, Mono<Jwt>> users = Caffeine
-        .newBuilder()
-        .maximumSize(10_000)
-        .expireAfterWrite(Duration.ofHours(1))
-        .recordStats()
-        .build();
+    private final WebClient webClient;
+
+    private final MeterRegistry meterRegistry;
 
-    public SecurityConfiguration(ReactiveClientRegistrationRepository clientRegistrationRepository, JHipsterProperties jHipsterProperties) {
+    public SecurityConfiguration(
+        ReactiveClientRegistrationRepository clientRegistrationRepository,
+        JHipsterProperties jHipsterProperties,
+        ApplicationProperties applicationProperties,
+        WebClient.Builder webClientBuilder,
+        MeterRegistry meterRegistry
+    ) {
         this.clientRegistrationRepository = clientRegistrationRepository;
         this.jHipsterProperties = jHipsterProperties;
+        this.applicationProperties = applicationProperties;
+        this.webClient = webClientBuilder.build();
+        this.meterRegistry = meterRegistry;
     }
 
     @Bean
     public SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity http) {
         http
             .securityMatcher(
-                new NegatedServerWebExchangeMatcher(
-                    new OrServerWebExchangeMatcher(pathMatchers("/app/**", "/i18n/**", "/content/**", "/swagger-ui/**"))
-                )
+                new NegatedServerWebExchangeMatcher(PathPatternTrie.matcher("/app/**", "/i18n/**", "/content/**", "/swagger-ui/**"))
             )
             .csrf(csrf ->
                 csrf
@@ -111,31 +118,40 @@ public class SecurityConfiguration {
                         )
                     )
             )
-            .authorizeExchange(authz ->
-                // prettier-ignore
-                authz
-                    .pathMatchers("/").permitAll()
-                    .pathMatchers("/*.*").permitAll()
-                    .pathMatchers("/api/authenticate").permitAll()
-                    .pathMatchers("/api/auth-info").permitAll()
-                    .pathMatchers("/api/admin/**").hasAuthority(AuthoritiesConstants.ADMIN)
-                    .pathMatchers("/api/**").authenticated()
-                    .pathMatchers("/services/*/management/health/readiness").permitAll()
-                    .pathMatchers("/services/*/v3/api-docs").hasAuthority(AuthoritiesConstants.ADMIN)
-                    .pathMatchers("/services/**").authenticated()
-                    .pathMatchers("/v3/api-docs/**").hasAuthority(AuthoritiesConstants.ADMIN)
-                    .pathMatchers("/management/health").permitAll()
-                    .pathMatchers("/management/health/**").permitAll()
-                    .pathMatchers("/management/info").permitAll()
-                    .pathMatchers("/management/prometheus").permitAll()
-                    .pathMatchers("/management/**").hasAuthority(AuthoritiesConstants.ADMIN)
-            )
+            .authorizeExchange(authz -> authz.anyExchange().access(authorizationManager()))
             .oauth2Login(oauth2 -> oauth2.authorizationRequestResolver(authorizationRequestResolver(this.clientRegistrationRepository)))
             .oauth2Client(withDefaults())
             .oauth2ResourceServer(oauth2 -> oauth2.jwt(jwt -> jwt.jwtAuthenticationConverter(jwtAuthenticationConverter())));
         return http.build();
     }
 
+    /**
+     * The authorization rules, the first rule whose path pattern matches applying. They're compiled once into a single trie
+     * rather than tried one after another on every request, see {@link PathAuthorizationManager}.
+     *
+     * @return the authorization manager of the exchanges.
+     */
+    static PathAuthorizationManager authorizationManager() {
+        // prettier-ignore
+        return PathAuthorizationManager.builder()
+            .pathMatchers("/").permitAll()
+            .pathMatchers("/*.*").permitAll()
+            .pathMatchers("/api/authenticate").permitAll()
+            .pathMatchers("/api/auth-info").permitAll()
+            .pathMatchers("/api/admin/**").hasAuthority(AuthoritiesConstants.ADMIN)
+            .pathMatchers("/api/**").authenticated()
+            .pathMatchers("/services/*/management/health/readiness").permitAll()
+            .pathMatchers("/services/*/v3/api-docs").hasAuthority(AuthoritiesConstants.ADMIN)
+            .pathMatchers("/services/**").authenticated()
+            .pathMatchers("/v3/api-docs/**").hasAuthority(AuthoritiesConstants.ADMIN)
+            .pathMatchers("/management/health").permitAll()
+            .pathMatchers("/management/health/**").permitAll()
+            .pathMatchers("/management/info").permitAll()
+            .pathMatchers("/management/prometheus").permitAll()
+            .pathMatchers("/management/**").hasAuthority(AuthoritiesConstants.ADMIN)
+            .build();
+    }
+
     private ServerOAuth2AuthorizationRequestResolver authorizationRequestResolver(
         ReactiveClientRegistrationRepository clientRegistrationRepository
     ) {
@@ -193,80 +209,93 @@ public class SecurityConfiguration {
         };
     }
 
+    /**
+     * Renews the access tokens ahead of their expiry, see {@link RefreshAheadAuthorizedClientManager}.
+     * <p>
+     * Also replaces the manager of the {@code TokenRelay} filter, so proxied requests take the same fast path.
+     *
+     * @return the authorized client manager.
+     */
     @Bean
-    ReactiveJwtDecoder jwtDecoder(ReactiveClientRegistrationRepository registrations) {
+    RefreshAheadAuthorizedClientManager authorizedClientManager(
+        ReactiveClientRegistrationRepository registrations,
+        ServerOAuth2AuthorizedClientRepository authorizedClientRepository
+    ) {
+        ApplicationProperties.Security.TokenRefresh tokenRefresh = applicationProperties.getSecurity().getTokenRefresh();
+        ReactiveOAuth2AuthorizedClientProvider authorizedClientProvider = ReactiveOAuth2AuthorizedClientProviderBuilder
+            .builder()
+            .authorizationCode()
+            .refreshToken(refreshToken -> refreshToken.clockSkew(tokenRefresh.getRefreshAhead()))
+            .build();
+        DefaultReactiveOAuth2AuthorizedClientManager authorizedClientManager = new DefaultReactiveOAuth2AuthorizedClientManager(
+            registrations,
+            authorizedClientRepository
+        );
+        authorizedClientManager.setAuthorizedClientProvider(authorizedClientProvider);
+        return new RefreshAheadAuthorizedClientManager(
+            authorizedClientManager,
+            authorizedClientRepository,
+            tokenRefresh.getRefreshAhead(),
+            tokenRefresh.getClockSkew()
+        );
+    }
+
+    /**
+     * Keeps the keys of the IdP up to date in the background, see {@link JwkSetManager}.
+     *
+     * @return the JWK set manager of the "oidc" provider.
+     */
+    @Bean(destroyMethod = "stop")
+    JwkSetManager jwkSetManager(ReactiveClientRegistrationRepository registrations) {
+        ApplicationProperties.Security.Jwks jwks = applicationProperties.getSecurity().getJwks();
+        String jwkSetUri = registrations.findByRegistrationId("oidc").map(oidc -> oidc.getProviderDetails().getJwkSetUri()).block();
+        return new JwkSetManager(
+            webClient,
+            jwkSetUri,
+            jwks.getRefreshInterval(),
+            jwks.getJitter(),
+            jwks.getMinimumRefreshInterval(),
+            jwks.getFetchTimeout()
+        );
+    }
+
+    @Bean
+    ReactiveJwtDecoder jwtDecoder(ReactiveClientRegistrationRepository registrations, JwkSetManager jwkSetManager) {
         Mono<ClientRegistration> clientRegistration = registrations.findByRegistrationId("oidc");
 
+        // Prefetch the keys, so the first requests don't have to wait for them
+        jwkSetManager.start();
         return clientRegistration
             .map(oidc ->
                 createJwtDecoder(
                     oidc.getProviderDetails().getIssuerUri(),
-                    oidc.getProviderDetails().getJwkSetUri(),
+                    jwkSetManager,
                     oidc.getProviderDetails().getUserInfoEndpoint().getUri()
                 )
             )
             .block();
     }
 
-    private ReactiveJwtDecoder createJwtDecoder(String issuerUri, String jwkSetUri, String userInfoUri) {
-        NimbusReactiveJwtDecoder jwtDecoder = new NimbusReactiveJwtDecoder(jwkSetUri);
+    private ReactiveJwtDecoder createJwtDecoder(String issuerUri, JwkSetManager jwkSetManager, String userInfoUri) {
+        NimbusReactiveJwtDecoder jwtDecoder = NimbusReactiveJwtDecoder.withJwkSource(jwkSetManager).build();
         OAuth2TokenValidator<Jwt> audienceValidator = new AudienceValidator(jHipsterProperties.getSecurity().getOauth2().getAudience());
         OAuth2TokenValidator<Jwt> withIssuer = JwtValidators.createDefaultWithIssuer(issuerUri);
         OAuth2TokenValidator<Jwt> withAudience = new DelegatingOAuth2TokenValidator<>(withIssuer, audienceValidator);
 
         jwtDecoder.setJwtValidator(withAudience);
 
-        return new ReactiveJwtDecoder() {
-            @Override
-            public Mono<Jwt> decode(String token) throws JwtException {
-                return jwtDecoder.decode(token).flatMap(jwt -> enrich(token, jwt));
-            }
-
-            private Mono<Jwt> enrich(String token, Jwt jwt) {
-                // Only look up user information if identity claims are missing
-                if (jwt.hasClaim("given_name") && jwt.hasClaim("family_name")) {
-                    return Mono.just(jwt);
-                }
-                // Retrieve user info from OAuth provider if not already loaded
-                return users.get(
-                    jwt.getSubject(),
-                    s -> {
-                        WebClient webClient = WebClient.create();
+        UserInfoEnrichingJwtDecoder userInfoJwtDecoder = new UserInfoEnrichingJwtDecoder(withJwtCache(jwtDecoder), webClient, userInfoUri);
+        userInfoJwtDecoder.bindTo(meterRegistry);
+        return userInfoJwtDecoder;
+    }
 
-                        return webClient
-                            .get()
-                            .uri(userInfoUri)
-                            .headers(headers -> headers.setBearerAuth(token))
-                            .retrieve()
-                            .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {})
-                            .map(userInfo ->
-                                Jwt
-                                    .withTokenValue(jwt.getTokenValue())
-                                    .subject(jwt.getSubject())
-                                    .audience(jwt.getAudience())
-                                    .headers(headers -> headers.putAll(jwt.getHeaders()))
-                                    .claims(claims -> {
-                                        String username = userInfo.get("preferred_username").toString();
-                                        // special handling for Auth0
-                                        if (userInfo.get("sub").toString().contains("|") && username.contains("@")) {
-                                            userInfo.put("email", username);
-                                        }
-                                        // Allow full name in a name claim - happens with Auth0
-                                        if (userInfo.get("name") != null) {
-                                            String[] name = userInfo.get("name").toString().split("\\s+");
-                                            if (name.length > 0) {
-                                                userInfo.put("given_name", name[0]);
-                                                userInfo.put("family_name", String.join(" ", Arrays.copyOfRange(name, 1, name.length)));
-                                            }
-                                        }
-                                        claims.putAll(userInfo);
-                                    })
-                                    .claims(claims -> claims.putAll(jwt.getClaims()))
-                                    .build()
-                            );
-                    }
-                );
-            }
-        };
+    private ReactiveJwtDecoder withJwtCache(ReactiveJwtDecoder jwtDecoder) {
+        ApplicationProperties.Security.JwtCache jwtCache = applicationProperties.getSecurity().getJwtCache();
+        if (!jwtCache.isEnabled()) {
+            return jwtDecoder;
+        }
+        CachingJwtDecoder cachingJwtDecoder = new CachingJwtDecoder(jwtDecoder, jwtCache.getMaximumSize(), jwtCache.getExpiryMargin());
+        cachingJwtDecoder.bindTo(meterRegistry);
+        return cachingJwtDecoder;
     }
 }
@@ -1,10 +1,18 @@
 package com.okta.developer.gateway.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.okta.developer.gateway.web.filter.IndexHtmlWebFilter;
+import com.okta.developer.gateway.web.resource.PrecompressedAssets;
+import com.okta.developer.gateway.web.resource.PrecompressedResourceResolver;
 import com.okta.developer.gateway.web.rest.errors.ExceptionTranslator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.web.WebProperties;
 import org.springframework.boot.autoconfigure.web.reactive.ResourceHandlerRegistrationCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -12,6 +20,8 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.core.annotation.Order;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.data.web.ReactivePageableHandlerMethodArgumentResolver;
 import org.springframework.data.web.ReactiveSortHandlerMethodArgumentResolver;
 import org.springframework.util.CollectionUtils;
@@ -35,9 +45,12 @@ public class WebConfigurer implements WebFluxConfigurer {
 
     private final Logger log = LoggerFactory.getLogger(WebConfigurer.class);
 
+    private final Environment env;
+
     private final JHipsterProperties jHipsterProperties;
 
     public WebConfigurer(Environment env, JHipsterProperties jHipsterProperties) {
+        this.env = env;
         this.jHipsterProperties = jHipsterProperties;
         if (env.acceptsProfiles(Profiles.of(JHipsterConstants.SPRING_PROFILE_DEVELOPMENT))) {
             try {
@@ -85,9 +98,46 @@ public class WebConfigurer implements WebFluxConfigurer {
     }
 
     @Bean
-    ResourceHandlerRegistrationCustomizer registrationCustomizer() {
-        // Disable built-in cache control to use our custom filter instead
-        return registration -> registration.setCacheControl(null);
+    ResourceHandlerRegistrationCustomizer registrationCustomizer(PrecompressedAssets precompressedAssets) {
+        return registration -> {
+            // Disable built-in cache control to use our custom filter instead
+            registration.setCacheControl(null);
+            if (!precompressedAssets.isEmpty()) {
+                registration.resourceChain(true).addResolver(new PrecompressedResourceResolver(precompressedAssets));
+            }
+        };
+    }
+
+    @Bean(destroyMethod = "destroy")
+    public PrecompressedAssets precompressedAssets(WebProperties webProperties, ResourceLoader resourceLoader) {
+        Resource manifest = staticResource(webProperties, resourceLoader, PrecompressedAssets.MANIFEST_FILENAME);
+        try {
+            return PrecompressedAssets.load(manifest.createRelative("./"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Bean
+    public IndexHtmlWebFilter indexHtmlWebFilter(WebProperties webProperties, ResourceLoader resourceLoader) {
+        Resource indexHtml = staticResource(webProperties, resourceLoader, "index.html");
+        // reloaded when the client is rebuilt in development
+        Duration reloadInterval = env.acceptsProfiles(Profiles.of(JHipsterConstants.SPRING_PROFILE_DEVELOPMENT))
+            ? Duration.ofSeconds(1)
+            : null;
+        return new IndexHtmlWebFilter(indexHtml, reloadInterval);
+    }
+
+    /**
+     * The file in the first static location which has it, or in {@code classpath:/static/} until the client is built.
+     */
+    private static Resource staticResource(WebProperties webProperties, ResourceLoader resourceLoader, String filename) {
+        return Arrays
+            .stream(webProperties.getResources().getStaticLocations())
+            .map(location -> resourceLoader.getResource(location + filename))
+            .filter(Resource::exists)
+            .findFirst()
+            .orElseGet(() -> resourceLoader.getResource("classpath:/static/" + filename));
     }
 
     @Bean
@@ -0,0 +1,76 @@
+package com.okta.developer.gateway.config;
+
+import com.okta.developer.gateway.repository.PersistentAuthorizedClientRepository;
+import com.okta.developer.gateway.repository.WebSessionRepository;
+import com.okta.developer.gateway.security.oauth2.SharedOAuth2AuthorizedClientService;
+import com.okta.developer.gateway.security.session.SharedWebSessionStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.WebSessionIdResolver;
+import org.springframework.web.server.session.WebSessionManager;
+
+/**
+ * Shares the web sessions and the OAuth2 authorized clients between the gateway instances through the database, so users
+ * don't need to stick to an instance and keep their session over redeployments.
+ * <p>
+ * Enabled with {@code application.session.store=r2dbc}, otherwise they're kept in memory.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "application.session", name = "store", havingValue = "r2dbc")
+public class WebSessionConfiguration {
+
+    private final ApplicationProperties.Session session;
+
+    public WebSessionConfiguration(ApplicationProperties applicationProperties) {
+        this.session = applicationProperties.getSession();
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    SharedWebSessionStore webSessionStore(WebSessionRepository webSessionRepository, ServerProperties serverProperties) {
+        return new SharedWebSessionStore(
+            webSessionRepository,
+            serverProperties.getReactive().getSession().getTimeout(),
+            session.getNearCacheMaximumSize(),
+            session.getNearCacheTimeToLive(),
+            session.getTouchInterval(),
+            session.getCleanupInterval()
+        );
+    }
+
+    /**
+     * Replaces the session manager of Spring Boot, which keeps the sessions in memory.
+     *
+     * @return the web session manager.
+     */
+    @Bean(WebHttpHandlerBuilder.WEB_SESSION_MANAGER_BEAN_NAME)
+    WebSessionManager webSessionManager(SharedWebSessionStore webSessionStore, ObjectProvider<WebSessionIdResolver> webSessionIdResolver) {
+        DefaultWebSessionManager webSessionManager = new DefaultWebSessionManager();
+        webSessionManager.setSessionStore(webSessionStore);
+        webSessionIdResolver.ifAvailable(webSessionManager::setSessionIdResolver);
+        return webSessionManager;
+    }
+
+    /**
+     * Replaces the authorized client service of Spring Boot, which keeps the tokens of the authenticated users in memory.
+     *
+     * @return the authorized client service.
+     */
+    @Bean
+    SharedOAuth2AuthorizedClientService authorizedClientService(
+        PersistentAuthorizedClientRepository authorizedClientRepository,
+        ReactiveClientRegistrationRepository clientRegistrationRepository
+    ) {
+        return new SharedOAuth2AuthorizedClientService(
+            authorizedClientRepository,
+            clientRegistrationRepository,
+            session.getNearCacheMaximumSize(),
+            session.getNearCacheTimeToLive()
+        );
+    }
+}
@@ -0,0 +1,13 @@
+package com.okta.developer.gateway.domain;
+
+import java.time.Instant;
+
+/**
+ * The tokens of an OAuth2 client authorized by a user, shared by the gateway instances.
+ *
+ * @param clientRegistrationId the registration id of the client.
+ * @param principalName the name of the user.
+ * @param tokens the access and refresh tokens, as encoded by the authorized client service.
+ * @param lastModifiedDate when the tokens were last saved.
+ */
+public record PersistentAuthorizedClient(String clientRegistrationId, String principalName, byte[] tokens, Instant lastModifiedDate) {}
@@ -0,0 +1,23 @@
+package com.okta.developer.gateway.domain;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A web session, shared by the gateway instances.
+ *
+ * @param id the session id.
+ * @param creationTime when the session was created.
+ * @param lastAccessTime when the session was last accessed, as last recorded.
+ * @param maxIdleTime how long the session lives without being accessed, negative if it never expires.
+ * @param expiryTime when the session expires, {@code null} if it never does.
+ * @param attributes the attributes of the session, as encoded by the session store.
+ */
+public record PersistentWebSession(
+    String id,
+    Instant creationTime,
+    Instant lastAccessTime,
+    Duration maxIdleTime,
+    Instant expiryTime,
+    byte[] attributes
+) {}
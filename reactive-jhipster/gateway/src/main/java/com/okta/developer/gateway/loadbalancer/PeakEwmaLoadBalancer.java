@@ -0,0 +1,267 @@
+package com.okta.developer.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.client.loadbalancer.TimedRequestContext;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.SelectedInstanceCallback;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+/**
+ * Picks the instance of a service with the power of two choices: of two random instances, the one with the lowest moving
+ * average of its latency, multiplied by its number of requests in flight.
+ * <p>
+ * The average is a peak EWMA: a sample above it replaces it, so an instance which slows down is avoided at once, while the
+ * older samples fade out over the decay time. Between samples, the average decays toward zero, so idle instances, like one
+ * which was slow, get requests again and are measured anew. The samples are fed by the load balancer filter of the gateway,
+ * through the {@link LoadBalancerLifecycle} callbacks, with the time the HTTP client took to get the response. Failures and
+ * 5xx responses count as a latency of at least the failure penalty.
+ * <p>
+ * The instances are the ones in the zone of the gateway when there are, as filtered by the zone preference supplier, but for
+ * the one named by the {@link #EXCLUDED_INSTANCE_HEADER} of the request, when there are others, as for a hedged request.
+ * The requests cancelled before their response, like the hedged requests which lost, are completed with the
+ * {@link CompletionContext.Status#DISCARD} status by the {@code LoadBalancerDiscardFilter}, which takes them out of the
+ * requests in flight without a sample.
+ */
+public class PeakEwmaLoadBalancer
+    implements ReactorServiceInstanceLoadBalancer, LoadBalancerLifecycle<Object, Object, ServiceInstance> {
+
+    /**
+     * The header naming an instance not to choose, see {@link #instanceId(ServiceInstance)}, removed before the request is
+     * sent.
+     */
+    public static final String EXCLUDED_INSTANCE_HEADER = "X-Gateway-Excluded-Instance";
+
+    private final Logger log = LoggerFactory.getLogger(PeakEwmaLoadBalancer.class);
+
+    private final String serviceId;
+
+    private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+
+    private final double decayNanos;
+
+    private final double failurePenaltyNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final Supplier<RandomGenerator> random;
+
+    private final Map<String, InstanceStats> stats = new ConcurrentHashMap<>();
+
+    private volatile long nextPrune;
+
+    public PeakEwmaLoadBalancer(
+        String serviceId,
+        ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+        Duration decayTime,
+        Duration failurePenalty
+    ) {
+        this(serviceId, serviceInstanceListSupplierProvider, decayTime, failurePenalty, System::nanoTime, ThreadLocalRandom::current);
+    }
+
+    PeakEwmaLoadBalancer(
+        String serviceId,
+        ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+        Duration decayTime,
+        Duration failurePenalty,
+        LongSupplier nanoClock,
+        Supplier<RandomGenerator> random
+    ) {
+        this.serviceId = serviceId;
+        this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+        this.decayNanos = decayTime.toNanos();
+        this.failurePenaltyNanos = failurePenalty.toNanos();
+        this.nanoClock = nanoClock;
+        this.random = random;
+        this.nextPrune = nanoClock.getAsLong() + decayTime.toNanos();
+    }
+
+    @Override
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        return supplier
+            .get(request)
+            .next()
+            .map(instances -> {
+                Response<ServiceInstance> response = choose(exclude(instances, request));
+                if (supplier instanceof SelectedInstanceCallback callback && response.hasServer()) {
+                    callback.selectedServiceInstance(response.getServer());
+                }
+                return response;
+            });
+    }
+
+    private static List<ServiceInstance> exclude(List<ServiceInstance> instances, Request request) {
+        if (
+            instances.size() < 2 ||
+            !(request.getContext() instanceof RequestDataContext context) ||
+            context.getClientRequest() == null ||
+            context.getClientRequest().getHeaders() == null
+        ) {
+            return instances;
+        }
+        String excluded = context.getClientRequest().getHeaders().getFirst(EXCLUDED_INSTANCE_HEADER);
+        if (excluded == null) {
+            return instances;
+        }
+        List<ServiceInstance> others = new ArrayList<>(instances.size());
+        for (ServiceInstance instance : instances) {
+            if (!excluded.equals(instanceId(instance))) {
+                others.add(instance);
+            }
+        }
+        return others.isEmpty() ? instances : others;
+    }
+
+    private Response<ServiceInstance> choose(List<ServiceInstance> instances) {
+        if (instances.isEmpty()) {
+            log.warn("No servers available for service: {}", serviceId);
+            return new EmptyResponse();
+        }
+        long now = nanoClock.getAsLong();
+        prune(instances, now);
+        if (instances.size() == 1) {
+            return new DefaultResponse(instances.get(0));
+        }
+        RandomGenerator randomGenerator = random.get();
+        int first = randomGenerator.nextInt(instances.size());
+        int second = randomGenerator.nextInt(instances.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceInstance a = instances.get(first);
+        ServiceInstance b = instances.get(second);
+        return new DefaultResponse(cost(a, now) <= cost(b, now) ? a : b);
+    }
+
+    double cost(ServiceInstance instance, long now) {
+        InstanceStats instanceStats = stats.get(instanceId(instance));
+        return instanceStats != null ? instanceStats.cost(now) : 0;
+    }
+
+    @Override
+    public boolean supports(Class requestContextClass, Class responseClass, Class serverTypeClass) {
+        return ServiceInstance.class.isAssignableFrom(serverTypeClass);
+    }
+
+    @Override
+    public void onStart(Request<Object> request) {}
+
+    @Override
+    public void onStartRequest(Request<Object> request, Response<ServiceInstance> lbResponse) {
+        if (request.getContext() instanceof TimedRequestContext context) {
+            context.setRequestStartTime(nanoClock.getAsLong());
+        }
+        if (lbResponse.hasServer()) {
+            stats.computeIfAbsent(instanceId(lbResponse.getServer()), key -> new InstanceStats()).inFlight.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onComplete(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+        Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+        if (lbResponse == null || !lbResponse.hasServer()) {
+            return;
+        }
+        InstanceStats instanceStats = stats.get(instanceId(lbResponse.getServer()));
+        if (instanceStats == null) {
+            return;
+        }
+        // never below zero, should a hedged request be discarded as it completes
+        instanceStats.inFlight.updateAndGet(inFlight -> Math.max(0, inFlight - 1));
+        if (completionContext.status() == CompletionContext.Status.DISCARD) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        Request<Object> request = completionContext.getLoadBalancerRequest();
+        if (request == null || !(request.getContext() instanceof TimedRequestContext context) || context.getRequestStartTime() == 0) {
+            return;
+        }
+        double latency = now - context.getRequestStartTime();
+        boolean failed =
+            completionContext.status() == CompletionContext.Status.FAILED ||
+            (completionContext.getClientResponse() instanceof ResponseData response &&
+                response.getHttpStatus() != null &&
+                response.getHttpStatus().is5xxServerError());
+        instanceStats.observe(failed ? Math.max(latency, failurePenaltyNanos) : latency, now);
+    }
+
+    /**
+     * Forgets the instances which are gone, at most once per decay time.
+     */
+    private void prune(List<ServiceInstance> instances, long now) {
+        if (now - nextPrune < 0 || stats.size() <= instances.size()) {
+            return;
+        }
+        nextPrune = now + (long) decayNanos;
+        Set<String> keys = new HashSet<>();
+        for (ServiceInstance instance : instances) {
+            keys.add(instanceId(instance));
+        }
+        stats.entrySet().removeIf(entry -> !keys.contains(entry.getKey()) && entry.getValue().inFlight.get() == 0);
+    }
+
+    /**
+     * @return the id of an instance, as used by the {@link #EXCLUDED_INSTANCE_HEADER}.
+     */
+    public static String instanceId(ServiceInstance instance) {
+        return instance.getInstanceId() != null ? instance.getInstanceId() : instance.getHost() + ":" + instance.getPort();
+    }
+
+    /**
+     * The requests in flight to an instance, and the moving average of its latency.
+     */
+    private final class InstanceStats {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        // in nanoseconds, 0 until the first sample
+        private double ewma;
+
+        private long lastSample;
+
+        synchronized void observe(double latency, long now) {
+            if (latency > ewma) {
+                ewma = latency;
+            } else {
+                double weight = Math.exp(-(now - lastSample) / decayNanos);
+                ewma = ewma * weight + latency * (1 - weight);
+            }
+            lastSample = now;
+        }
+
+        synchronized double cost(long now) {
+            double latency = ewma * Math.exp(-Math.max(now - lastSample, 0) / decayNanos);
+            int pending = inFlight.get();
+            if (ewma == 0 && pending > 0) {
+                // no response yet, which may be as slow as a failure
+                latency = failurePenaltyNanos;
+            }
+            return latency * (pending + 1);
+        }
+    }
+}
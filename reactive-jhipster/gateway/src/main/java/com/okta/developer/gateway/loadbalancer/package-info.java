@@ -0,0 +1,4 @@
+/**
+ * Load balancing of the requests routed to the services.
+ */
+package com.okta.developer.gateway.loadbalancer;
@@ -1,10 +1,19 @@
 package com.okta.developer.gateway.repository;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -17,30 +26,41 @@ import org.springframework.data.relational.core.mapping.RelationalPersistentEnti
 import org.springframework.data.relational.core.query.Criteria;
 import org.springframework.data.relational.core.sql.Condition;
 import org.springframework.data.relational.core.sql.Conditions;
+import org.springframework.data.relational.core.sql.ConstantCondition;
+import org.springframework.data.relational.core.sql.Expressions;
+import org.springframework.data.relational.core.sql.Literal;
 import org.springframework.data.relational.core.sql.OrderByField;
 import org.springframework.data.relational.core.sql.Select;
 import org.springframework.data.relational.core.sql.SelectBuilder.SelectFromAndJoin;
 import org.springframework.data.relational.core.sql.SelectBuilder.SelectFromAndJoinCondition;
 import org.springframework.data.relational.core.sql.SelectBuilder.SelectOrdered;
+import org.springframework.data.relational.core.sql.SelectBuilder.SelectWhere;
 import org.springframework.data.relational.core.sql.SqlIdentifier;
 import org.springframework.data.relational.core.sql.Table;
 import org.springframework.data.relational.core.sql.render.SqlRenderer;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.r2dbc.core.Parameter;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 /**
  * Helper class to create SQL selects based on the entity, paging parameters and criteria.
- *
+ * <p>
+ * The selects are rendered once by shape, and cached, the cache being exported as the {@code gateway.sql.selects} metrics.
  */
 @Component
-public class EntityManager {
+public class EntityManager implements MeterBinder {
 
     public static final String ENTITY_ALIAS = "e";
     public static final String ALIAS_PREFIX = "e_";
 
+    private static final int MAXIMUM_SELECTS = 1_000;
+
+    // the page size and offset the paged selects are rendered with, to be replaced by those of each page
+    private static final long LIMIT_MARKER = 1_000_000_007L;
+    private static final long OFFSET_MARKER = 2_000_000_011L;
+
     public static class LinkTable {
 
         final String tableName;
@@ -61,6 +81,7 @@ public class EntityManager {
     private final UpdateMapper updateMapper;
     private final R2dbcEntityTemplate r2dbcEntityTemplate;
     private final StatementMapper statementMapper;
+    private final Cache<SelectShape, RenderedSelect> selects = Caffeine.newBuilder().maximumSize(MAXIMUM_SELECTS).recordStats().build();
 
     public EntityManager(SqlRenderer sqlRenderer, UpdateMapper updateMapper, R2dbcEntityTemplate r2dbcEntityTemplate) {
         this.sqlRenderer = sqlRenderer;
@@ -71,6 +92,11 @@ public class EntityManager {
 
     /**
      * Creates an SQL select statement from the given fragment and pagination parameters.
+     * <p>
+     * The SQL is rendered once by shape, and cached: the selects of the same entity type with the same sort and condition only
+     * differ by their page, put in place in the cached SQL. The select of an entity type is expected to always list the same
+     * columns, and the condition to compare them with bind markers, as {@code SQL.bindMarker(":login")}. A condition with
+     * literals, or SQL text, changing with the values, its selects are rendered each time rather than cached by value.
      * @param selectFrom a representation of a select statement.
      * @param entityType the entity type which holds the table name.
      * @param pageable page parameter, or null, if everything needs to be returned.
@@ -78,31 +104,36 @@ public class EntityManager {
      * @return sql select statement
      */
     public String createSelect(SelectFromAndJoin selectFrom, Class<?> entityType, Pageable pageable, Condition where) {
-        if (pageable != null) {
-            if (where != null) {
-                return createSelectImpl(
-                    selectFrom.limitOffset(pageable.getPageSize(), pageable.getOffset()).where(where),
-                    entityType,
-                    pageable.getSort()
-                );
-            } else {
-                return createSelectImpl(
-                    selectFrom.limitOffset(pageable.getPageSize(), pageable.getOffset()),
-                    entityType,
-                    pageable.getSort()
-                );
-            }
-        } else {
-            if (where != null) {
-                return createSelectImpl(selectFrom.where(where), entityType, null);
-            } else {
-                return createSelectImpl(selectFrom, entityType, null);
-            }
+        if (hasValues(where)) {
+            SelectWhere paged = pageable != null ? selectFrom.limitOffset(pageable.getPageSize(), pageable.getOffset()) : selectFrom;
+            return renderSelect(paged.where(where), entityType, pageable != null ? pageable.getSort() : null);
         }
+        SelectShape shape = new SelectShape(entityType, false, pageable, where);
+        return selects
+            .get(
+                shape,
+                key -> {
+                    if (pageable != null) {
+                        if (where != null) {
+                            return renderPaged(selectFrom.limitOffset(LIMIT_MARKER, OFFSET_MARKER).where(where), entityType, key.sort());
+                        } else {
+                            return renderPaged(selectFrom.limitOffset(LIMIT_MARKER, OFFSET_MARKER), entityType, key.sort());
+                        }
+                    } else {
+                        if (where != null) {
+                            return new RenderedSelect(renderSelect(selectFrom.where(where), entityType, null));
+                        } else {
+                            return new RenderedSelect(renderSelect(selectFrom, entityType, null));
+                        }
+                    }
+                }
+            )
+            .withPage(pageable);
     }
 
     /**
-     * Creates an SQL select statement from the given fragment and pagination parameters.
+     * Creates an SQL select statement from the given fragment and pagination parameters, cached by shape as
+     * {@link #createSelect(SelectFromAndJoin, Class, Pageable, Condition)}.
      * @param selectFrom a representation of a select statement.
      * @param entityType the entity type which holds the table name.
      * @param pageable page parameter, or null, if everything needs to be returned
@@ -110,27 +141,31 @@ public class EntityManager {
      * @return sql select statement
      */
     public String createSelect(SelectFromAndJoinCondition selectFrom, Class<?> entityType, Pageable pageable, Condition where) {
-        if (pageable != null) {
-            if (where != null) {
-                return createSelectImpl(
-                    selectFrom.limitOffset(pageable.getPageSize(), pageable.getOffset()).where(where),
-                    entityType,
-                    pageable.getSort()
-                );
-            } else {
-                return createSelectImpl(
-                    selectFrom.limitOffset(pageable.getPageSize(), pageable.getOffset()),
-                    entityType,
-                    pageable.getSort()
-                );
-            }
-        } else {
-            if (where != null) {
-                return createSelectImpl(selectFrom.where(where), entityType, null);
-            } else {
-                return createSelectImpl(selectFrom, entityType, null);
-            }
+        if (hasValues(where)) {
+            SelectWhere paged = pageable != null ? selectFrom.limitOffset(pageable.getPageSize(), pageable.getOffset()) : selectFrom;
+            return renderSelect(paged.where(where), entityType, pageable != null ? pageable.getSort() : null);
         }
+        SelectShape shape = new SelectShape(entityType, true, pageable, where);
+        return selects
+            .get(
+                shape,
+                key -> {
+                    if (pageable != null) {
+                        if (where != null) {
+                            return renderPaged(selectFrom.limitOffset(LIMIT_MARKER, OFFSET_MARKER).where(where), entityType, key.sort());
+                        } else {
+                            return renderPaged(selectFrom.limitOffset(LIMIT_MARKER, OFFSET_MARKER), entityType, key.sort());
+                        }
+                    } else {
+                        if (where != null) {
+                            return new RenderedSelect(renderSelect(selectFrom.where(where), entityType, null));
+                        } else {
+                            return new RenderedSelect(renderSelect(selectFrom, entityType, null));
+                        }
+                    }
+                }
+            )
+            .withPage(pageable);
     }
 
     /**
@@ -173,29 +208,41 @@ public class EntityManager {
 
     /**
      * Updates the table, which links the entity with the referred entities.
+     * <p>
+     * Only the links which changed are written: the current ones are read, those no longer referred are deleted by a single
+     * statement, and the new ones inserted by a single multi-row statement, so that saving an entity with unchanged links
+     * costs one select, whatever their number.
      * @param table describes the link table, it contains a table name, the column name for the id, and for the referred entity id.
      * @param entityId the id of the entity, for which the links are created.
      * @param referencedIds the id of the referred entities.
-     * @return the number of inserted rows.
+     * @return the number of links of the entity, the ones kept counting as inserted, as when all of them were written again.
      */
     public Mono<Long> updateLinkTable(LinkTable table, Object entityId, Stream<?> referencedIds) {
-        return deleteFromLinkTable(table, entityId)
-            .then(
-                Flux
-                    .fromStream(referencedIds)
-                    .flatMap((Object referenceId) -> {
-                        StatementMapper.InsertSpec insert = r2dbcEntityTemplate
-                            .getDataAccessStrategy()
-                            .getStatementMapper()
-                            .createInsert(table.tableName)
-                            .withColumn(table.idColumn, Parameter.from(entityId))
-                            .withColumn(table.referenceColumn, Parameter.from(referenceId));
-
-                        return r2dbcEntityTemplate.getDatabaseClient().sql(statementMapper.getMappedObject(insert)).fetch().rowsUpdated();
-                    })
-                    .collectList()
-                    .map((List<Long> updates) -> updates.stream().reduce(Long::sum).orElse(0l))
-            );
+        Assert.notNull(entityId, "entityId is null");
+        Set<Object> referenced = referencedIds.collect(Collectors.toCollection(LinkedHashSet::new));
+        if (referenced.isEmpty()) {
+            return deleteFromLinkTable(table, entityId).thenReturn(0L);
+        }
+        // read as the type of the given ids, to compare them
+        Class<?> referenceType = referenced.iterator().next().getClass();
+        StatementMapper.SelectSpec selectSpec = statementMapper
+            .createSelect(table.tableName)
+            .withProjection(table.referenceColumn)
+            .withCriteria(Criteria.where(table.idColumn).is(entityId));
+        return r2dbcEntityTemplate
+            .getDatabaseClient()
+            .sql(statementMapper.getMappedObject(selectSpec))
+            .map((row, metadata) -> (Object) row.get(0, referenceType))
+            .all()
+            .collect(Collectors.toSet())
+            .flatMap((Set<Object> existing) -> {
+                List<Object> removed = existing.stream().filter(id -> !referenced.contains(id)).toList();
+                List<Object> added = referenced.stream().filter(id -> !existing.contains(id)).toList();
+                long kept = referenced.size() - added.size();
+                return deleteFromLinkTable(table, entityId, removed)
+                    .then(insertIntoLinkTable(table, entityId, added))
+                    .map(inserted -> kept + inserted);
+            });
     }
 
     public Mono<Void> deleteFromLinkTable(LinkTable table, Object entityId) {
@@ -208,7 +255,74 @@ public class EntityManager {
         return r2dbcEntityTemplate.getDatabaseClient().sql(statementMapper.getMappedObject(deleteSpec)).then();
     }
 
-    private String createSelectImpl(SelectOrdered selectFrom, Class<?> entityType, Sort sortParameter) {
+    private Mono<Long> deleteFromLinkTable(LinkTable table, Object entityId, Collection<Object> referencedIds) {
+        if (referencedIds.isEmpty()) {
+            return Mono.just(0L);
+        }
+        StatementMapper.DeleteSpec deleteSpec = statementMapper
+            .createDelete(table.tableName)
+            .withCriteria(Criteria.where(table.idColumn).is(entityId).and(table.referenceColumn).in(referencedIds));
+        return r2dbcEntityTemplate.getDatabaseClient().sql(statementMapper.getMappedObject(deleteSpec)).fetch().rowsUpdated();
+    }
+
+    private Mono<Long> insertIntoLinkTable(LinkTable table, Object entityId, Collection<Object> referencedIds) {
+        if (referencedIds.isEmpty()) {
+            return Mono.just(0L);
+        }
+        StringJoiner tuples = new StringJoiner(", ");
+        for (int i = 0; i < referencedIds.size(); i++) {
+            tuples.add("(:entityId, :p" + i + ")");
+        }
+        DatabaseClient.GenericExecuteSpec insert = r2dbcEntityTemplate
+            .getDatabaseClient()
+            .sql("INSERT INTO " + table.tableName + " (" + table.idColumn + ", " + table.referenceColumn + ") VALUES " + tuples)
+            .bind("entityId", Parameter.from(entityId));
+        int i = 0;
+        for (Object referenceId : referencedIds) {
+            insert = insert.bind("p" + i++, Parameter.from(referenceId));
+        }
+        return insert.fetch().rowsUpdated();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, selects, "gateway.sql.selects");
+    }
+
+    private RenderedSelect renderPaged(SelectOrdered selectFrom, Class<?> entityType, Sort sort) {
+        String sql = renderSelect(selectFrom, entityType, sort);
+        int limitIndex = sql.indexOf(String.valueOf(LIMIT_MARKER));
+        int offsetIndex = sql.indexOf(String.valueOf(OFFSET_MARKER));
+        Assert.state(
+            limitIndex >= 0 &&
+            offsetIndex >= 0 &&
+            limitIndex == sql.lastIndexOf(String.valueOf(LIMIT_MARKER)) &&
+            offsetIndex == sql.lastIndexOf(String.valueOf(OFFSET_MARKER)),
+            () -> "The page of the select is not rendered once as given: " + sql
+        );
+        return new RenderedSelect(sql, limitIndex, offsetIndex);
+    }
+
+    /**
+     * Whether the condition holds values, or SQL text which may, rather than only columns and bind markers.
+     */
+    static boolean hasValues(Condition where) {
+        if (where == null) {
+            return false;
+        }
+        boolean[] values = { false };
+        where.visit(segment -> {
+            if (segment instanceof Literal<?> || segment instanceof ConstantCondition || segment instanceof Expressions.SimpleExpression) {
+                values[0] = true;
+            }
+        });
+        return values[0];
+    }
+
+    /**
+     * Renders the given select, without caching it.
+     */
+    String renderSelect(SelectOrdered selectFrom, Class<?> entityType, Sort sortParameter) {
         if (sortParameter != null && sortParameter.isSorted()) {
             RelationalPersistentEntity<?> entity = getPersistentEntity(entityType);
             if (entity != null) {
@@ -236,4 +350,51 @@ public class EntityManager {
 
         return fields;
     }
+
+    /**
+     * What the SQL of a select depends on, but for the columns of the entity, and the values of its page, the condition having
+     * no values of its own.
+     */
+    private record SelectShape(Class<?> entityType, boolean joined, boolean paged, Sort sort, String where) {
+        SelectShape(Class<?> entityType, boolean joined, Pageable pageable, Condition where) {
+            this(
+                entityType,
+                joined,
+                pageable != null,
+                pageable != null ? pageable.getSort() : Sort.unsorted(),
+                where != null ? where.toString() : null
+            );
+        }
+    }
+
+    /**
+     * The SQL of a select, with the indexes of the markers its page size and offset were rendered as, or -1 when not paged.
+     */
+    private record RenderedSelect(String sql, int limitIndex, int offsetIndex) {
+        private static final int LIMIT_MARKER_LENGTH = String.valueOf(LIMIT_MARKER).length();
+        private static final int OFFSET_MARKER_LENGTH = String.valueOf(OFFSET_MARKER).length();
+
+        RenderedSelect(String sql) {
+            this(sql, -1, -1);
+        }
+
+        String withPage(Pageable pageable) {
+            if (pageable == null || limitIndex < 0) {
+                return sql;
+            }
+            // in the order the dialect renders them
+            boolean limitFirst = limitIndex < offsetIndex;
+            int first = limitFirst ? limitIndex : offsetIndex;
+            int firstEnd = first + (limitFirst ? LIMIT_MARKER_LENGTH : OFFSET_MARKER_LENGTH);
+            int second = limitFirst ? offsetIndex : limitIndex;
+            int secondEnd = second + (limitFirst ? OFFSET_MARKER_LENGTH : LIMIT_MARKER_LENGTH);
+            return new StringBuilder(sql.length())
+                .append(sql, 0, first)
+                .append(limitFirst ? pageable.getPageSize() : pageable.getOffset())
+                .append(sql, firstEnd, second)
+                .append(limitFirst ? pageable.getOffset() : pageable.getPageSize())
+                .append(sql, secondEnd, sql.length())
+                .toString();
+        }
+    }
 }
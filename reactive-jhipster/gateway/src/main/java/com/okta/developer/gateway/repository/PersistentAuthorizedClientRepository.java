@@ -0,0 +1,21 @@
+package com.okta.developer.gateway.repository;
+
+import com.okta.developer.gateway.domain.PersistentAuthorizedClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * Repository for the {@link PersistentAuthorizedClient}s, the backend of the shared authorized client service.
+ */
+public interface PersistentAuthorizedClientRepository {
+    Mono<PersistentAuthorizedClient> findById(String clientRegistrationId, String principalName);
+
+    /**
+     * Inserts the authorized client, or updates it if it exists.
+     *
+     * @param authorizedClient the authorized client.
+     * @return a {@link Mono} completing once saved.
+     */
+    Mono<Void> save(PersistentAuthorizedClient authorizedClient);
+
+    Mono<Void> deleteById(String clientRegistrationId, String principalName);
+}
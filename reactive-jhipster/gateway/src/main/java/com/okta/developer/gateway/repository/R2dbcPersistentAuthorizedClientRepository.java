@@ -0,0 +1,101 @@
+package com.okta.developer.gateway.repository;
+
+import com.okta.developer.gateway.domain.PersistentAuthorizedClient;
+import io.r2dbc.spi.Row;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link PersistentAuthorizedClientRepository} storing the authorized clients in the {@code jhi_authorized_client} table.
+ */
+@Repository
+public class R2dbcPersistentAuthorizedClientRepository implements PersistentAuthorizedClientRepository {
+
+    private final DatabaseClient db;
+
+    public R2dbcPersistentAuthorizedClientRepository(DatabaseClient db) {
+        this.db = db;
+    }
+
+    @Override
+    public Mono<PersistentAuthorizedClient> findById(String clientRegistrationId, String principalName) {
+        return db
+            .sql(
+                "SELECT client_registration_id, principal_name, tokens, last_modified_date FROM jhi_authorized_client " +
+                "WHERE client_registration_id = :clientRegistrationId AND principal_name = :principalName"
+            )
+            .bind("clientRegistrationId", clientRegistrationId)
+            .bind("principalName", principalName)
+            .map((row, metadata) -> toAuthorizedClient(row))
+            .one();
+    }
+
+    @Override
+    public Mono<Void> save(PersistentAuthorizedClient authorizedClient) {
+        // the row usually exists, as the tokens are saved again on every refresh
+        return update(authorizedClient)
+            .filter(updated -> updated == 0)
+            .flatMap(updated ->
+                insert(authorizedClient)
+                    // inserted meanwhile by another request or gateway instance
+                    .onErrorResume(DataIntegrityViolationException.class, e -> update(authorizedClient).then())
+            )
+            .then();
+    }
+
+    @Override
+    public Mono<Void> deleteById(String clientRegistrationId, String principalName) {
+        return db
+            .sql(
+                "DELETE FROM jhi_authorized_client WHERE client_registration_id = :clientRegistrationId AND principal_name = :principalName"
+            )
+            .bind("clientRegistrationId", clientRegistrationId)
+            .bind("principalName", principalName)
+            .then();
+    }
+
+    private Mono<Long> update(PersistentAuthorizedClient authorizedClient) {
+        return db
+            .sql(
+                "UPDATE jhi_authorized_client SET tokens = :tokens, last_modified_date = :lastModifiedDate " +
+                "WHERE client_registration_id = :clientRegistrationId AND principal_name = :principalName"
+            )
+            .bind("clientRegistrationId", authorizedClient.clientRegistrationId())
+            .bind("principalName", authorizedClient.principalName())
+            .bind("tokens", ByteBuffer.wrap(authorizedClient.tokens()))
+            .bind("lastModifiedDate", LocalDateTime.ofInstant(authorizedClient.lastModifiedDate(), ZoneOffset.UTC))
+            .fetch()
+            .rowsUpdated();
+    }
+
+    private Mono<Void> insert(PersistentAuthorizedClient authorizedClient) {
+        return db
+            .sql(
+                "INSERT INTO jhi_authorized_client (client_registration_id, principal_name, tokens, last_modified_date) " +
+                "VALUES (:clientRegistrationId, :principalName, :tokens, :lastModifiedDate)"
+            )
+            .bind("clientRegistrationId", authorizedClient.clientRegistrationId())
+            .bind("principalName", authorizedClient.principalName())
+            .bind("tokens", ByteBuffer.wrap(authorizedClient.tokens()))
+            .bind("lastModifiedDate", LocalDateTime.ofInstant(authorizedClient.lastModifiedDate(), ZoneOffset.UTC))
+            .then();
+    }
+
+    private static PersistentAuthorizedClient toAuthorizedClient(Row row) {
+        ByteBuffer tokens = row.get("tokens", ByteBuffer.class);
+        byte[] bytes = new byte[tokens.remaining()];
+        tokens.get(bytes);
+        return new PersistentAuthorizedClient(
+            row.get("client_registration_id", String.class),
+            row.get("principal_name", String.class),
+            bytes,
+            row.get("last_modified_date", LocalDateTime.class).toInstant(ZoneOffset.UTC)
+        );
+    }
+}
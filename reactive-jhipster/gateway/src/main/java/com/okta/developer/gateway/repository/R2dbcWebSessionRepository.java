@@ -0,0 +1,114 @@
+package com.okta.developer.gateway.repository;
+
+import com.okta.developer.gateway.domain.PersistentWebSession;
+import io.r2dbc.spi.Row;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link WebSessionRepository} storing the sessions in the {@code jhi_web_session} table.
+ */
+@Repository
+public class R2dbcWebSessionRepository implements WebSessionRepository {
+
+    private final DatabaseClient db;
+
+    public R2dbcWebSessionRepository(DatabaseClient db) {
+        this.db = db;
+    }
+
+    @Override
+    public Mono<PersistentWebSession> findById(String id) {
+        return db
+            .sql(
+                "SELECT id, creation_time, last_access_time, max_idle_time, expiry_time, attributes FROM jhi_web_session WHERE id = :id"
+            )
+            .bind("id", id)
+            .map((row, metadata) -> toWebSession(row))
+            .one();
+    }
+
+    @Override
+    public Mono<Void> insert(PersistentWebSession session) {
+        return db
+            .sql(
+                "INSERT INTO jhi_web_session (id, creation_time, last_access_time, max_idle_time, expiry_time, attributes) " +
+                "VALUES (:id, :creationTime, :lastAccessTime, :maxIdleTime, :expiryTime, :attributes)"
+            )
+            .bind("id", session.id())
+            .bind("creationTime", toLocalDateTime(session.creationTime()))
+            .bind("lastAccessTime", toLocalDateTime(session.lastAccessTime()))
+            .bind("maxIdleTime", session.maxIdleTime().toMillis())
+            .bind("expiryTime", Parameter.fromOrEmpty(toLocalDateTime(session.expiryTime()), LocalDateTime.class))
+            .bind("attributes", ByteBuffer.wrap(session.attributes()))
+            .then();
+    }
+
+    @Override
+    public Mono<Void> update(PersistentWebSession session) {
+        return db
+            .sql(
+                "UPDATE jhi_web_session SET last_access_time = :lastAccessTime, max_idle_time = :maxIdleTime, " +
+                "expiry_time = :expiryTime, attributes = :attributes WHERE id = :id"
+            )
+            .bind("id", session.id())
+            .bind("lastAccessTime", toLocalDateTime(session.lastAccessTime()))
+            .bind("maxIdleTime", session.maxIdleTime().toMillis())
+            .bind("expiryTime", Parameter.fromOrEmpty(toLocalDateTime(session.expiryTime()), LocalDateTime.class))
+            .bind("attributes", ByteBuffer.wrap(session.attributes()))
+            .then();
+    }
+
+    @Override
+    public Mono<Void> updateLastAccessTime(String id, Instant lastAccessTime, Instant expiryTime) {
+        return db
+            .sql("UPDATE jhi_web_session SET last_access_time = :lastAccessTime, expiry_time = :expiryTime WHERE id = :id")
+            .bind("id", id)
+            .bind("lastAccessTime", toLocalDateTime(lastAccessTime))
+            .bind("expiryTime", Parameter.fromOrEmpty(toLocalDateTime(expiryTime), LocalDateTime.class))
+            .then();
+    }
+
+    @Override
+    public Mono<Void> deleteById(String id) {
+        return db.sql("DELETE FROM jhi_web_session WHERE id = :id").bind("id", id).then();
+    }
+
+    @Override
+    public Mono<Long> deleteAllExpiredBefore(Instant time) {
+        return db
+            .sql("DELETE FROM jhi_web_session WHERE expiry_time < :time")
+            .bind("time", toLocalDateTime(time))
+            .fetch()
+            .rowsUpdated();
+    }
+
+    private static PersistentWebSession toWebSession(Row row) {
+        ByteBuffer attributes = row.get("attributes", ByteBuffer.class);
+        byte[] bytes = new byte[attributes.remaining()];
+        attributes.get(bytes);
+        return new PersistentWebSession(
+            row.get("id", String.class),
+            toInstant(row.get("creation_time", LocalDateTime.class)),
+            toInstant(row.get("last_access_time", LocalDateTime.class)),
+            Duration.ofMillis(row.get("max_idle_time", Long.class)),
+            toInstant(row.get("expiry_time", LocalDateTime.class)),
+            bytes
+        );
+    }
+
+    private static LocalDateTime toLocalDateTime(Instant instant) {
+        return instant != null ? LocalDateTime.ofInstant(instant, ZoneOffset.UTC) : null;
+    }
+
+    private static Instant toInstant(LocalDateTime localDateTime) {
+        return localDateTime != null ? localDateTime.toInstant(ZoneOffset.UTC) : null;
+    }
+}
@@ -5,21 +5,33 @@ import static org.springframework.data.relational.core.query.Query.query;
 
 import com.okta.developer.gateway.domain.Authority;
 import com.okta.developer.gateway.domain.User;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-import org.apache.commons.beanutils.BeanComparator;
 import org.springframework.data.domain.*;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.r2dbc.convert.R2dbcConverter;
 import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.relational.core.query.Criteria;
 import org.springframework.data.relational.core.sql.Column;
 import org.springframework.data.relational.core.sql.Expression;
 import org.springframework.data.relational.core.sql.Table;
 import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.Parameter;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -33,6 +45,8 @@ import reactor.util.function.Tuples;
 public interface UserRepository extends R2dbcRepository<User, String>, UserRepositoryInternal {
     Mono<User> findOneByLogin(String login);
 
+    Flux<User> findAllByLoginIn(Collection<String> logins);
+
     Flux<User> findAllByIdNotNull(Pageable pageable);
 
     Flux<User> findAllByIdNotNullAndActivatedIsTrue(Pageable pageable);
@@ -55,10 +69,62 @@ interface UserRepositoryInternal {
     Mono<User> create(User user);
 
     Flux<User> findAllWithAuthorities(Pageable pageable);
+
+    /**
+     * Finds the users after the last one of the previous page, in an order by {@code id}, or by {@code login} then id, without
+     * skipping over the users before it.
+     *
+     * @param order the order of the users.
+     * @param afterValue the sort key of the last user of the previous page, or {@code null} for the first page.
+     * @param afterId the id of the last user of the previous page.
+     * @param limit the maximum number of users.
+     */
+    Flux<User> findAllWithAuthoritiesAfter(Sort.Order order, String afterValue, String afterId, int limit);
+
+    /**
+     * Finds the activated users after the last one of the previous page, as {@link #findAllWithAuthoritiesAfter}, without
+     * their authorities.
+     */
+    Flux<User> findAllActivatedAfter(Sort.Order order, String afterValue, String afterId, int limit);
+
+    /**
+     * Inserts the authorities which are not in the database yet, in a single statement.
+     */
+    Mono<Void> createMissingAuthorities(Collection<String> names);
+
+    /**
+     * Inserts the users and their authorities, in a single statement per table.
+     */
+    Mono<Void> createAll(Collection<User> users);
+
+    /**
+     * Inserts the authorities of a user, in a single statement.
+     */
+    Mono<Void> saveUserAuthorities(String userId, Collection<String> authorities);
+
+    /**
+     * Updates the profile of the users found by login, in a single batched statement.
+     */
+    Mono<Void> updateAllProfiles(Collection<User> users);
 }
 
 class UserRepositoryInternalImpl implements UserRepositoryInternal {
 
+    // the properties the users can be sorted by, which are not checked against the columns otherwise
+    private static final Set<String> SORTABLE_PROPERTIES = Set.of(
+        "id",
+        "login",
+        "firstName",
+        "lastName",
+        "email",
+        "activated",
+        "langKey",
+        "createdBy",
+        "createdDate",
+        "lastModifiedBy",
+        "lastModifiedDate"
+    );
+
     private final DatabaseClient db;
     private final R2dbcEntityTemplate r2dbcEntityTemplate;
     private final R2dbcConverter r2dbcConverter;
@@ -76,28 +142,75 @@ class UserRepositoryInternalImpl implements UserRepositoryInternal {
 
     @Override
     public Flux<User> findAllWithAuthorities(Pageable pageable) {
-        String property = pageable.getSort().stream().map(Sort.Order::getProperty).findFirst().orElse("id");
-        String direction = String.valueOf(
-            pageable.getSort().stream().map(Sort.Order::getDirection).findFirst().orElse(Sort.DEFAULT_DIRECTION)
-        );
-        long page = pageable.getPageNumber();
-        long size = pageable.getPageSize();
+        Optional<String> unsortable = pageable
+            .getSort()
+            .stream()
+            .map(Sort.Order::getProperty)
+            .filter(property -> !SORTABLE_PROPERTIES.contains(property))
+            .findFirst();
+        if (unsortable.isPresent()) {
+            return Flux.error(new IllegalArgumentException("The users can't be sorted by " + unsortable.get()));
+        }
+        // by id last, for the pages not to overlap
+        Sort sort = pageable.getSort().getOrderFor("id") != null ? pageable.getSort() : pageable.getSort().and(Sort.by("id"));
+        org.springframework.data.relational.core.query.Query page = query(Criteria.empty()).sort(sort);
+        if (pageable.isPaged()) {
+            page = page.limit(pageable.getPageSize()).offset(pageable.getOffset());
+        }
+        return r2dbcEntityTemplate.select(page, User.class).collectList().flatMapMany(this::withAuthorities);
+    }
+
+    @Override
+    public Flux<User> findAllWithAuthoritiesAfter(Sort.Order order, String afterValue, String afterId, int limit) {
+        return selectAfter(Criteria.empty(), order, afterValue, afterId, limit).collectList().flatMapMany(this::withAuthorities);
+    }
+
+    @Override
+    public Flux<User> findAllActivatedAfter(Sort.Order order, String afterValue, String afterId, int limit) {
+        return selectAfter(where("activated").isTrue(), order, afterValue, afterId, limit);
+    }
+
+    private Flux<User> selectAfter(Criteria filter, Sort.Order order, String afterValue, String afterId, int limit) {
+        String property = order.getProperty();
+        if (!property.equals("id") && !property.equals("login")) {
+            return Flux.error(new IllegalArgumentException("The users can't be listed after a cursor by " + property));
+        }
+        Sort.Direction direction = order.getDirection();
+        Sort sort = property.equals("id") ? Sort.by(direction, "id") : Sort.by(direction, property, "id");
+        Criteria criteria = filter;
+        if (afterValue != null) {
+            // a range of the indexes, rather than the users before skipped over
+            Criteria after = property.equals("id")
+                ? after(direction, "id", afterId)
+                : after(direction, property, afterValue).or(where(property).is(afterValue).and(after(direction, "id", afterId)));
+            criteria = filter.isEmpty() ? after : filter.and(after);
+        }
+        return r2dbcEntityTemplate.select(query(criteria).sort(sort).limit(limit), User.class);
+    }
 
+    private static Criteria after(Sort.Direction direction, String property, String value) {
+        return direction.isAscending() ? where(property).greaterThan(value) : where(property).lessThan(value);
+    }
+
+    /**
+     * Reads the authorities of the users, in a single statement.
+     */
+    private Flux<User> withAuthorities(List<User> users) {
+        if (users.isEmpty()) {
+            return Flux.empty();
+        }
+        Map<String, User> usersById = users.stream().collect(Collectors.toMap(User::getId, Function.identity()));
         return db
-            .sql("SELECT * FROM jhi_user u LEFT JOIN jhi_user_authority ua ON u.id=ua.user_id")
-            .map((row, metadata) ->
-                Tuples.of(r2dbcConverter.read(User.class, row, metadata), Optional.ofNullable(row.get("authority_name", String.class)))
-            )
+            .sql("SELECT user_id, authority_name FROM jhi_user_authority WHERE user_id IN (:ids)")
+            .bind("ids", usersById.keySet())
+            .map((row, metadata) -> Tuples.of(row.get("user_id", String.class), row.get("authority_name", String.class)))
             .all()
-            .groupBy(t -> t.getT1().getLogin())
-            .flatMap(l -> l.collectList().map(t -> updateUserWithAuthorities(t.get(0).getT1(), t)))
-            .sort(
-                Sort.Direction.fromString(direction) == Sort.DEFAULT_DIRECTION
-                    ? new BeanComparator<>(property)
-                    : new BeanComparator<>(property).reversed()
-            )
-            .skip(page * size)
-            .take(size);
+            .doOnNext(userAuthority -> {
+                Authority authority = new Authority();
+                authority.setName(userAuthority.getT2());
+                usersById.get(userAuthority.getT1()).getAuthorities().add(authority);
+            })
+            .thenMany(Flux.fromIterable(users));
     }
 
     @Override
@@ -105,6 +218,148 @@ class UserRepositoryInternalImpl implements UserRepositoryInternal {
         return r2dbcEntityTemplate.insert(User.class).using(user).defaultIfEmpty(user);
     }
 
+    @Override
+    public Mono<Void> createMissingAuthorities(Collection<String> names) {
+        if (names.isEmpty()) {
+            return Mono.empty();
+        }
+        return db
+            .sql("SELECT name FROM jhi_authority WHERE name IN (:names)")
+            .bind("names", names)
+            .map((row, metadata) -> row.get("name", String.class))
+            .all()
+            .collect(Collectors.toSet())
+            .flatMap(existing -> {
+                List<String> missing = names.stream().filter(name -> !existing.contains(name)).distinct().toList();
+                return insertAll("jhi_authority", List.of("name"), missing, name -> List.of(Parameter.from(name)));
+            });
+    }
+
+    @Override
+    public Mono<Void> createAll(Collection<User> users) {
+        List<String> columns = List.of(
+            "id",
+            "login",
+            "first_name",
+            "last_name",
+            "email",
+            "image_url",
+            "activated",
+            "lang_key",
+            "created_by",
+            "created_date",
+            "last_modified_by",
+            "last_modified_date"
+        );
+        List<Tuple2<String, String>> userAuthorities = users
+            .stream()
+            .flatMap(user -> user.getAuthorities().stream().map(authority -> Tuples.of(user.getId(), authority.getName())))
+            .toList();
+        return insertAll(
+            "jhi_user",
+            columns,
+            users,
+            user ->
+                List.of(
+                    Parameter.from(user.getId()),
+                    Parameter.from(user.getLogin()),
+                    Parameter.fromOrEmpty(user.getFirstName(), String.class),
+                    Parameter.fromOrEmpty(user.getLastName(), String.class),
+                    Parameter.fromOrEmpty(user.getEmail(), String.class),
+                    Parameter.fromOrEmpty(user.getImageUrl(), String.class),
+                    Parameter.from(user.isActivated()),
+                    Parameter.fromOrEmpty(user.getLangKey(), String.class),
+                    Parameter.from(user.getCreatedBy()),
+                    Parameter.fromOrEmpty(toLocalDateTime(user.getCreatedDate()), LocalDateTime.class),
+                    Parameter.fromOrEmpty(user.getLastModifiedBy(), String.class),
+                    Parameter.fromOrEmpty(toLocalDateTime(user.getLastModifiedDate()), LocalDateTime.class)
+                )
+        )
+            .then(
+                insertAll(
+                    "jhi_user_authority",
+                    List.of("user_id", "authority_name"),
+                    userAuthorities,
+                    userAuthority -> List.of(Parameter.from(userAuthority.getT1()), Parameter.from(userAuthority.getT2()))
+                )
+            );
+    }
+
+    @Override
+    public Mono<Void> saveUserAuthorities(String userId, Collection<String> authorities) {
+        return insertAll(
+            "jhi_user_authority",
+            List.of("user_id", "authority_name"),
+            authorities,
+            authority -> List.of(Parameter.from(userId), Parameter.from(authority))
+        );
+    }
+
+    @Override
+    public Mono<Void> updateAllProfiles(Collection<User> users) {
+        if (users.isEmpty()) {
+            return Mono.empty();
+        }
+        return db
+            .inConnectionMany(connection -> {
+                Statement statement = connection.createStatement(
+                    "UPDATE jhi_user SET first_name = $1, last_name = $2, email = $3, lang_key = $4, image_url = $5, " +
+                    "last_modified_by = $6 WHERE login = $7"
+                );
+                Iterator<User> iterator = users.iterator();
+                while (iterator.hasNext()) {
+                    User user = iterator.next();
+                    bind(statement, 0, user.getFirstName());
+                    bind(statement, 1, user.getLastName());
+                    bind(statement, 2, user.getEmail());
+                    bind(statement, 3, user.getLangKey());
+                    bind(statement, 4, user.getImageUrl());
+                    bind(statement, 5, user.getLastModifiedBy());
+                    bind(statement, 6, user.getLogin());
+                    if (iterator.hasNext()) {
+                        statement.add();
+                    }
+                }
+                return Flux.from(statement.execute()).flatMap(Result::getRowsUpdated);
+            })
+            .then();
+    }
+
+    private <T> Mono<Void> insertAll(String table, List<String> columns, Collection<T> rows, Function<T, List<Parameter>> values) {
+        if (rows.isEmpty()) {
+            return Mono.empty();
+        }
+        StringJoiner tuples = new StringJoiner(", ");
+        List<Parameter> parameters = new ArrayList<>();
+        for (T row : rows) {
+            StringJoiner tuple = new StringJoiner(", ", "(", ")");
+            for (Parameter value : values.apply(row)) {
+                tuple.add(":p" + parameters.size());
+                parameters.add(value);
+            }
+            tuples.add(tuple.toString());
+        }
+        DatabaseClient.GenericExecuteSpec insert = db.sql(
+            "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES " + tuples
+        );
+        for (int i = 0; i < parameters.size(); i++) {
+            insert = insert.bind("p" + i, parameters.get(i));
+        }
+        return insert.then();
+    }
+
+    private static void bind(Statement statement, int index, String value) {
+        if (value != null) {
+            statement.bind(index, value);
+        } else {
+            statement.bindNull(index, String.class);
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Instant instant) {
+        return instant != null ? LocalDateTime.ofInstant(instant, ZoneOffset.UTC) : null;
+    }
+
     private Mono<User> findOneWithAuthoritiesBy(String fieldName, Object fieldValue) {
         return db
             .sql("SELECT * FROM jhi_user u LEFT JOIN jhi_user_authority ua ON u.id=ua.user_id WHERE u." + fieldName + " = :" + fieldName)
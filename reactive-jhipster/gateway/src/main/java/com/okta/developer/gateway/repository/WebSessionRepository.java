@@ -0,0 +1,34 @@
+package com.okta.developer.gateway.repository;
+
+import com.okta.developer.gateway.domain.PersistentWebSession;
+import java.time.Instant;
+import reactor.core.publisher.Mono;
+
+/**
+ * Repository for the {@link PersistentWebSession}s, the backend of the shared session store.
+ */
+public interface WebSessionRepository {
+    Mono<PersistentWebSession> findById(String id);
+
+    Mono<Void> insert(PersistentWebSession session);
+
+    Mono<Void> update(PersistentWebSession session);
+
+    /**
+     * Records an access to a session, whose attributes didn't change.
+     *
+     * @param id the session id.
+     * @param lastAccessTime when the session was accessed.
+     * @param expiryTime when the session expires, {@code null} if it never does.
+     * @return a {@link Mono} completing once recorded.
+     */
+    Mono<Void> updateLastAccessTime(String id, Instant lastAccessTime, Instant expiryTime);
+
+    Mono<Void> deleteById(String id);
+
+    /**
+     * @param time the current time.
+     * @return the number of deleted sessions.
+     */
+    Mono<Long> deleteAllExpiredBefore(Instant time);
+}
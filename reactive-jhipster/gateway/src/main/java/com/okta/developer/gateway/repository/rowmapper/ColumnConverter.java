@@ -1,7 +1,11 @@
 package com.okta.developer.gateway.repository.rowmapper;
 
 import io.r2dbc.spi.Row;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.converter.GenericConverter.ConvertiblePair;
 import org.springframework.data.r2dbc.convert.R2dbcConverter;
 import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
 import org.springframework.lang.Nullable;
@@ -15,8 +19,12 @@ import tech.jhipster.service.ColumnConverterReactive;
 @Component
 public class ColumnConverter implements ColumnConverterReactive {
 
+    // marks the pairs of types the conversion service can't convert
+    private static final Function<Object, ?> BY_DRIVER = value -> value;
+
     private final ConversionService conversionService;
     private final R2dbcCustomConversions conversions;
+    private final Map<ConvertiblePair, Function<Object, ?>> resolved = new ConcurrentHashMap<>();
 
     public ColumnConverter(R2dbcCustomConversions conversions, R2dbcConverter r2dbcConverter) {
         this.conversionService = r2dbcConverter.getConversionService();
@@ -50,6 +58,9 @@ public class ColumnConverter implements ColumnConverterReactive {
 
     /**
      * Convert a value from the {@link Row} to a type - throws an exception, it it's impossible.
+     * <p>
+     * The value is converted as resolved by {@link #resolve(Class, Class)} for its type, and by the driver only when the
+     * {@link ConversionService} can't convert it.
      * @param row which contains the column values.
      * @param target class.
      * @param columnName the name of the column which to convert.
@@ -57,12 +68,44 @@ public class ColumnConverter implements ColumnConverterReactive {
      * @return the value which can be constructed from the input.
      */
     public <T> T fromRow(Row row, String columnName, Class<T> target) {
-        try {
-            // try, directly the driver
-            return row.get(columnName, target);
-        } catch (Exception e) {
-            Object obj = row.get(columnName);
-            return convert(obj, target);
+        Object value = row.get(columnName);
+        if (value == null) {
+            return null;
+        }
+        Function<Object, T> conversion = resolve(value.getClass(), target);
+        return conversion != null ? conversion.apply(value) : row.get(columnName, target);
+    }
+
+    /**
+     * Resolves how the values of a type read from a column are converted to the target class, once for each pair of types, as
+     * {@link #convert(Object, Class)} does.
+     * @param sourceType the type of the values, as read by the driver.
+     * @param target class.
+     * @param <T> the parameter for the intended type.
+     * @return the conversion, or null if the {@link ConversionService} can't convert the values, to be converted by the driver.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Function<Object, T> resolve(Class<?> sourceType, Class<T> target) {
+        Function<Object, ?> conversion = resolved.computeIfAbsent(new ConvertiblePair(sourceType, target), this::conversion);
+        return conversion == BY_DRIVER ? null : (Function<Object, T>) conversion;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Function<Object, ?> conversion(ConvertiblePair types) {
+        Class<?> sourceType = types.getSourceType();
+        Class<?> target = types.getTargetType();
+        if (ClassUtils.isAssignable(target, sourceType)) {
+            return Function.identity();
+        }
+        if (conversions.hasCustomReadTarget(sourceType, target)) {
+            return value -> conversionService.convert(value, target);
+        }
+        if (Enum.class.isAssignableFrom(target)) {
+            return value -> Enum.valueOf((Class<Enum>) target, value.toString());
+        }
+        if (conversionService.canConvert(sourceType, target)) {
+            return value -> conversionService.convert(value, target);
         }
+        return BY_DRIVER;
     }
 }
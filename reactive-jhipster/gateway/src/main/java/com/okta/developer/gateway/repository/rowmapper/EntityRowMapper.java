@@ -0,0 +1,138 @@
+package com.okta.developer.gateway.repository.rowmapper;
+
+import io.r2dbc.spi.Row;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.springframework.util.Assert;
+
+/**
+ * Converter between {@link Row} and an entity, reading the columns listed once, by their name after a prefix.
+ * <p>
+ * The names of the columns are computed once per prefix, and the conversion of each column resolved once per type read from
+ * it, with the {@link ColumnConverter}, so that mapping a row only reads and converts its values.
+ *
+ * @param <E> the type of the entity.
+ */
+public final class EntityRowMapper<E> implements BiFunction<Row, String, E> {
+
+    private final Supplier<E> factory;
+
+    private final List<Column<E, ?>> columns;
+
+    // the names of the columns, by prefix, the prefixes being the few aliases of the selects
+    private final Map<String, String[]> namesByPrefix = new ConcurrentHashMap<>();
+
+    private EntityRowMapper(Supplier<E> factory, List<Column<E, ?>> columns) {
+        this.factory = factory;
+        this.columns = columns;
+    }
+
+    /**
+     * @param factory creates the entity, before its columns are set.
+     */
+    public static <E> Builder<E> builder(Supplier<E> factory) {
+        return new Builder<>(factory);
+    }
+
+    /**
+     * Take a {@link Row} and a column prefix, and extract all the fields.
+     * @return the entity stored in the database.
+     */
+    @Override
+    public E apply(Row row, String prefix) {
+        String[] names = namesByPrefix.get(prefix);
+        if (names == null) {
+            names = namesByPrefix.computeIfAbsent(prefix, this::names);
+        }
+        E entity = factory.get();
+        for (int i = 0; i < names.length; i++) {
+            columns.get(i).read(row, names[i], entity);
+        }
+        return entity;
+    }
+
+    private String[] names(String prefix) {
+        return columns.stream().map(column -> prefix + "_" + column.name).toArray(String[]::new);
+    }
+
+    public static final class Builder<E> {
+
+        private final Supplier<E> factory;
+
+        private final List<Column<E, ?>> columns = new ArrayList<>();
+
+        private Builder(Supplier<E> factory) {
+            Assert.notNull(factory, "factory is null");
+            this.factory = factory;
+        }
+
+        /**
+         * Adds a column, read after the prefix and an underscore, converted to the given type, and set on the entity, null
+         * values included.
+         */
+        public <T> Builder<E> column(String name, Class<T> type, BiConsumer<E, ? super T> setter) {
+            Assert.notNull(name, "name is null");
+            Assert.notNull(type, "type is null");
+            Assert.notNull(setter, "setter is null");
+            columns.add(new Column<>(name, type, setter));
+            return this;
+        }
+
+        public EntityRowMapper<E> build(ColumnConverter converter) {
+            List<Column<E, ?>> bound = columns.stream().<Column<E, ?>>map(column -> column.bind(converter)).toList();
+            return new EntityRowMapper<>(factory, bound);
+        }
+    }
+
+    private static final class Column<E, T> {
+
+        private final String name;
+
+        private final Class<T> type;
+
+        private final BiConsumer<E, ? super T> setter;
+
+        private final ColumnConverter converter;
+
+        // the conversion of the last type read, the same one for every row but with the odd driver
+        private volatile Conversion<T> conversion;
+
+        private Column(String name, Class<T> type, BiConsumer<E, ? super T> setter) {
+            this(name, type, setter, null);
+        }
+
+        private Column(String name, Class<T> type, BiConsumer<E, ? super T> setter, ColumnConverter converter) {
+            this.name = name;
+            this.type = type;
+            this.setter = setter;
+            this.converter = converter;
+        }
+
+        private Column<E, T> bind(ColumnConverter converter) {
+            return new Column<>(name, type, setter, converter);
+        }
+
+        private void read(Row row, String columnName, E entity) {
+            Object value = row.get(columnName);
+            setter.accept(entity, value != null ? convert(row, columnName, value) : null);
+        }
+
+        private T convert(Row row, String columnName, Object value) {
+            Conversion<T> last = conversion;
+            if (last == null || last.sourceType() != value.getClass()) {
+                last = new Conversion<>(value.getClass(), converter.resolve(value.getClass(), type));
+                conversion = last;
+            }
+            // by the driver, when the conversion service can't convert the value
+            return last.function() != null ? last.function().apply(value) : row.get(columnName, type);
+        }
+    }
+
+    private record Conversion<T>(Class<?> sourceType, Function<Object, T> function) {}
+}
@@ -2,7 +2,6 @@ package com.okta.developer.gateway.repository.rowmapper;
 
 import com.okta.developer.gateway.domain.User;
 import io.r2dbc.spi.Row;
-import java.time.Instant;
 import java.util.function.BiFunction;
 import org.springframework.stereotype.Service;
 
@@ -12,10 +11,21 @@ import org.springframework.stereotype.Service;
 @Service
 public class UserRowMapper implements BiFunction<Row, String, User> {
 
-    private final ColumnConverter converter;
+    private final EntityRowMapper<User> mapper;
 
     public UserRowMapper(ColumnConverter converter) {
-        this.converter = converter;
+        this.mapper =
+            EntityRowMapper
+                .builder(User::new)
+                .column("id", String.class, User::setId)
+                .column("login", String.class, User::setLogin)
+                .column("first_name", String.class, User::setFirstName)
+                .column("last_name", String.class, User::setLastName)
+                .column("email", String.class, User::setEmail)
+                .column("activated", Boolean.class, (User user, Boolean activated) -> user.setActivated(Boolean.TRUE.equals(activated)))
+                .column("lang_key", String.class, User::setLangKey)
+                .column("image_url", String.class, User::setImageUrl)
+                .build(converter);
     }
 
     /**
@@ -24,15 +34,6 @@ public class UserRowMapper implements BiFunction<Row, String, User> {
      */
     @Override
     public User apply(Row row, String prefix) {
-        User entity = new User();
-        entity.setId(row.get(prefix + "_id", String.class));
-        entity.setLogin(converter.fromRow(row, prefix + "_login", String.class));
-        entity.setFirstName(converter.fromRow(row, prefix + "_first_name", String.class));
-        entity.setLastName(converter.fromRow(row, prefix + "_last_name", String.class));
-        entity.setEmail(converter.fromRow(row, prefix + "_email", String.class));
-        entity.setActivated(Boolean.TRUE.equals(converter.fromRow(row, prefix + "_activated", Boolean.class)));
-        entity.setLangKey(converter.fromRow(row, prefix + "_lang_key", String.class));
-        entity.setImageUrl(converter.fromRow(row, prefix + "_image_url", String.class));
-        return entity;
+        return mapper.apply(row, prefix);
     }
 }
@@ -0,0 +1,117 @@
+package com.okta.developer.gateway.security.oauth2;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link ReactiveJwtDecoder} remembering the tokens its delegate has already parsed and verified.
+ * <p>
+ * Entries are keyed by a SHA-256 digest of the token and kept until shortly before the token expires. A cache hit skips
+ * parsing and signature verification, only the time-based validation runs again.
+ */
+public class CachingJwtDecoder implements ReactiveJwtDecoder, MeterBinder {
+
+    public static final String CACHE_NAME = "oauth2.jwt";
+
+    private final ReactiveJwtDecoder delegate;
+    private final Duration expiryMargin;
+    private final Clock clock;
+    private final OAuth2TokenValidator<Jwt> timestampValidator;
+    private final Cache<String, Jwt> tokens;
+
+    public CachingJwtDecoder(ReactiveJwtDecoder delegate, long maximumSize, Duration expiryMargin) {
+        this(delegate, maximumSize, expiryMargin, Clock.systemUTC());
+    }
+
+    public CachingJwtDecoder(ReactiveJwtDecoder delegate, long maximumSize, Duration expiryMargin, Clock clock) {
+        this.delegate = delegate;
+        this.expiryMargin = expiryMargin;
+        this.clock = clock;
+        JwtTimestampValidator jwtTimestampValidator = new JwtTimestampValidator();
+        jwtTimestampValidator.setClock(clock);
+        this.timestampValidator = jwtTimestampValidator;
+        this.tokens = Caffeine.newBuilder().maximumSize(maximumSize).expireAfter(new TokenExpiry()).recordStats().build();
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) throws JwtException {
+        String key = digest(token);
+        Jwt cached = tokens.getIfPresent(key);
+        if (cached != null && cached.getTokenValue().equals(token)) {
+            if (!timestampValidator.validate(cached).hasErrors()) {
+                return Mono.just(cached);
+            }
+            // let the delegate report why the token isn't valid anymore
+            tokens.invalidate(key);
+        }
+        return delegate
+            .decode(token)
+            .doOnNext(jwt -> {
+                if (timeToLive(jwt) > 0) {
+                    tokens.put(key, jwt);
+                }
+            });
+    }
+
+    /**
+     * Publishes hit, miss and eviction statistics of the verified token cache.
+     *
+     * @param registry the registry to bind the cache metrics to.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, tokens, CACHE_NAME);
+    }
+
+    private long timeToLive(Jwt jwt) {
+        Instant expiresAt = jwt.getExpiresAt();
+        if (expiresAt == null) {
+            return 0;
+        }
+        return Math.max(0, Duration.between(clock.instant(), expiresAt.minus(expiryMargin)).toNanos());
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private class TokenExpiry implements Expiry<String, Jwt> {
+
+        @Override
+        public long expireAfterCreate(String key, Jwt jwt, long currentTime) {
+            return timeToLive(jwt);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return timeToLive(jwt);
+        }
+
+        @Override
+        public long expireAfterRead(String key, Jwt jwt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.okta.developer.gateway.security.oauth2;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebSession;
+import reactor.core.publisher.Mono;
+
+/**
+ * Authorizes clients without going through the delegate manager while their access token has enough lifetime left.
+ * <p>
+ * Within the refresh-ahead window the current token is returned, and renewed in the background. Once it is about to expire,
+ * requests wait for the renewal. Either way, a single refresh is in flight per session and client registration, the other
+ * requests of the session joining it.
+ */
+public class RefreshAheadAuthorizedClientManager implements ReactiveOAuth2AuthorizedClientManager, MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(RefreshAheadAuthorizedClientManager.class);
+
+    private final ReactiveOAuth2AuthorizedClientManager delegate;
+    private final ServerOAuth2AuthorizedClientRepository authorizedClientRepository;
+    private final Duration refreshAhead;
+    private final Duration clockSkew;
+    private final Clock clock;
+
+    private final ConcurrentMap<String, CompletableFuture<OAuth2AuthorizedClient>> refreshes = new ConcurrentHashMap<>();
+
+    private final AtomicLong fastPathHits = new AtomicLong();
+    private final AtomicLong aheadRefreshes = new AtomicLong();
+    private final AtomicLong blockingRefreshes = new AtomicLong();
+    private final AtomicLong coalescedWaiters = new AtomicLong();
+
+    /**
+     * @param delegate the manager renewing the tokens, whose refresh token provider must use {@code refreshAhead} as clock skew.
+     * @param authorizedClientRepository the repository the delegate stores the authorized clients in.
+     * @param refreshAhead how long before their expiry tokens are renewed in the background.
+     * @param clockSkew how long before their expiry tokens are not used anymore, requests waiting for their renewal.
+     */
+    public RefreshAheadAuthorizedClientManager(
+        ReactiveOAuth2AuthorizedClientManager delegate,
+        ServerOAuth2AuthorizedClientRepository authorizedClientRepository,
+        Duration refreshAhead,
+        Duration clockSkew
+    ) {
+        this(delegate, authorizedClientRepository, refreshAhead, clockSkew, Clock.systemUTC());
+    }
+
+    public RefreshAheadAuthorizedClientManager(
+        ReactiveOAuth2AuthorizedClientManager delegate,
+        ServerOAuth2AuthorizedClientRepository authorizedClientRepository,
+        Duration refreshAhead,
+        Duration clockSkew,
+        Clock clock
+    ) {
+        this.delegate = delegate;
+        this.authorizedClientRepository = authorizedClientRepository;
+        this.refreshAhead = refreshAhead;
+        this.clockSkew = clockSkew;
+        this.clock = clock;
+    }
+
+    @Override
+    public Mono<OAuth2AuthorizedClient> authorize(OAuth2AuthorizeRequest authorizeRequest) {
+        ServerWebExchange exchange = authorizeRequest.getAttribute(ServerWebExchange.class.getName());
+        if (exchange == null || authorizeRequest.getAuthorizedClient() != null) {
+            return delegate.authorize(authorizeRequest);
+        }
+        String registrationId = authorizeRequest.getClientRegistrationId();
+        return authorizedClientRepository
+            .loadAuthorizedClient(registrationId, authorizeRequest.getPrincipal(), exchange)
+            .flatMap(authorizedClient -> {
+                Duration timeLeft = timeLeft(authorizedClient.getAccessToken());
+                if (timeLeft == null || timeLeft.compareTo(refreshAhead) > 0 || authorizedClient.getRefreshToken() == null) {
+                    fastPathHits.incrementAndGet();
+                    return Mono.just(authorizedClient);
+                }
+                return exchange
+                    .getSession()
+                    .map(WebSession::getId)
+                    .flatMap(sessionId -> {
+                        String key = sessionId + ':' + registrationId;
+                        if (timeLeft.compareTo(clockSkew) > 0) {
+                            refresh(key, authorizeRequest, aheadRefreshes);
+                            return Mono.just(authorizedClient);
+                        }
+                        return Mono.fromFuture(refresh(key, authorizeRequest, blockingRefreshes).copy());
+                    });
+            })
+            .switchIfEmpty(Mono.defer(() -> delegate.authorize(authorizeRequest)));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter
+            .builder("oauth2.authorized.clients.fast.path", this, manager -> manager.fastPathHits.get())
+            .description("Authorizations served from the stored client, without going through the delegate manager")
+            .register(registry);
+        FunctionCounter
+            .builder("oauth2.authorized.clients.refreshes", this, manager -> manager.aheadRefreshes.get())
+            .tag("mode", "ahead")
+            .description("Tokens renewed in the background before they expire")
+            .register(registry);
+        FunctionCounter
+            .builder("oauth2.authorized.clients.refreshes", this, manager -> manager.blockingRefreshes.get())
+            .tag("mode", "blocking")
+            .description("Tokens renewed while requests were waiting")
+            .register(registry);
+        FunctionCounter
+            .builder("oauth2.authorized.clients.coalesced", this, manager -> manager.coalescedWaiters.get())
+            .description("Authorizations which joined the refresh in flight for their session")
+            .register(registry);
+    }
+
+    /**
+     * Starts a refresh unless one is in flight for the key, in which case it is joined.
+     */
+    private CompletableFuture<OAuth2AuthorizedClient> refresh(String key, OAuth2AuthorizeRequest authorizeRequest, AtomicLong counter) {
+        CompletableFuture<OAuth2AuthorizedClient> refresh = new CompletableFuture<>();
+        CompletableFuture<OAuth2AuthorizedClient> inFlight = refreshes.putIfAbsent(key, refresh);
+        if (inFlight != null) {
+            coalescedWaiters.incrementAndGet();
+            return inFlight;
+        }
+        counter.incrementAndGet();
+        String registrationId = authorizeRequest.getClientRegistrationId();
+        log.debug("Refreshing the tokens of client '{}'", registrationId);
+        delegate
+            .authorize(authorizeRequest)
+            .toFuture()
+            .whenComplete((authorizedClient, error) -> {
+                refreshes.remove(key, refresh);
+                if (error != null) {
+                    log.debug("Could not refresh the tokens of client '{}': {}", registrationId, error.getMessage());
+                    refresh.completeExceptionally(error);
+                } else {
+                    refresh.complete(authorizedClient);
+                }
+            });
+        return refresh;
+    }
+
+    private Duration timeLeft(OAuth2AccessToken accessToken) {
+        Instant expiresAt = accessToken.getExpiresAt();
+        return expiresAt != null ? Duration.between(clock.instant(), expiresAt) : null;
+    }
+}
@@ -0,0 +1,204 @@
+package com.okta.developer.gateway.security.oauth2;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.okta.developer.gateway.domain.PersistentAuthorizedClient;
+import com.okta.developer.gateway.repository.PersistentAuthorizedClientRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link ReactiveOAuth2AuthorizedClientService} sharing the authorized clients between the gateway instances through a
+ * {@link PersistentAuthorizedClientRepository}, with an in-process near cache read first.
+ * <p>
+ * Only the tokens are stored, in a compact binary form: the client registration is looked up again when they are loaded.
+ */
+public class SharedOAuth2AuthorizedClientService implements ReactiveOAuth2AuthorizedClientService, MeterBinder {
+
+    private static final byte VERSION = 1;
+
+    private final PersistentAuthorizedClientRepository authorizedClientRepository;
+    private final ReactiveClientRegistrationRepository clientRegistrationRepository;
+    private final Clock clock;
+
+    private final AsyncCache<Key, OAuth2AuthorizedClient> nearCache;
+
+    private final AtomicLong remoteReads = new AtomicLong();
+
+    private record Key(String clientRegistrationId, String principalName) {}
+
+    /**
+     * @param authorizedClientRepository the repository the authorized clients are shared through.
+     * @param clientRegistrationRepository the client registrations.
+     * @param nearCacheMaximumSize how many authorized clients are kept in the near cache.
+     * @param nearCacheTimeToLive how long authorized clients are kept in the near cache.
+     */
+    public SharedOAuth2AuthorizedClientService(
+        PersistentAuthorizedClientRepository authorizedClientRepository,
+        ReactiveClientRegistrationRepository clientRegistrationRepository,
+        long nearCacheMaximumSize,
+        Duration nearCacheTimeToLive
+    ) {
+        this(authorizedClientRepository, clientRegistrationRepository, nearCacheMaximumSize, nearCacheTimeToLive, Clock.systemUTC());
+    }
+
+    public SharedOAuth2AuthorizedClientService(
+        PersistentAuthorizedClientRepository authorizedClientRepository,
+        ReactiveClientRegistrationRepository clientRegistrationRepository,
+        long nearCacheMaximumSize,
+        Duration nearCacheTimeToLive,
+        Clock clock
+    ) {
+        this.authorizedClientRepository = authorizedClientRepository;
+        this.clientRegistrationRepository = clientRegistrationRepository;
+        this.clock = clock;
+        this.nearCache =
+            Caffeine.newBuilder().maximumSize(nearCacheMaximumSize).expireAfterWrite(nearCacheTimeToLive).recordStats().buildAsync();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends OAuth2AuthorizedClient> Mono<T> loadAuthorizedClient(String clientRegistrationId, String principalName) {
+        Key key = new Key(clientRegistrationId, principalName);
+        return Mono
+            .fromFuture(() -> nearCache.get(key, (k, executor) -> load(k).toFuture()).copy())
+            .map(authorizedClient -> (T) authorizedClient);
+    }
+
+    @Override
+    public Mono<Void> saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal) {
+        Key key = new Key(authorizedClient.getClientRegistration().getRegistrationId(), principal.getName());
+        nearCache.put(key, CompletableFuture.completedFuture(authorizedClient));
+        return authorizedClientRepository.save(
+            new PersistentAuthorizedClient(key.clientRegistrationId(), key.principalName(), encode(authorizedClient), clock.instant())
+        );
+    }
+
+    @Override
+    public Mono<Void> removeAuthorizedClient(String clientRegistrationId, String principalName) {
+        nearCache.synchronous().invalidate(new Key(clientRegistrationId, principalName));
+        return authorizedClientRepository.deleteById(clientRegistrationId, principalName);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, nearCache.synchronous(), "oauth2.authorized.clients");
+        FunctionCounter
+            .builder("oauth2.authorized.clients.remote.reads", this, service -> service.remoteReads.get())
+            .description("Authorized clients read from the repository, on a near cache miss")
+            .register(registry);
+    }
+
+    private Mono<OAuth2AuthorizedClient> load(Key key) {
+        remoteReads.incrementAndGet();
+        return clientRegistrationRepository
+            .findByRegistrationId(key.clientRegistrationId())
+            .flatMap(clientRegistration ->
+                authorizedClientRepository
+                    .findById(key.clientRegistrationId(), key.principalName())
+                    .map(authorizedClient -> decode(clientRegistration, authorizedClient))
+            );
+    }
+
+    static byte[] encode(OAuth2AuthorizedClient authorizedClient) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            OAuth2AccessToken accessToken = authorizedClient.getAccessToken();
+            writeString(out, accessToken.getTokenValue());
+            writeInstant(out, accessToken.getIssuedAt());
+            writeInstant(out, accessToken.getExpiresAt());
+            out.writeInt(accessToken.getScopes().size());
+            for (String scope : accessToken.getScopes()) {
+                writeString(out, scope);
+            }
+            OAuth2RefreshToken refreshToken = authorizedClient.getRefreshToken();
+            out.writeBoolean(refreshToken != null);
+            if (refreshToken != null) {
+                writeString(out, refreshToken.getTokenValue());
+                writeInstant(out, refreshToken.getIssuedAt());
+                writeInstant(out, refreshToken.getExpiresAt());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static OAuth2AuthorizedClient decode(ClientRegistration clientRegistration, PersistentAuthorizedClient authorizedClient) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(authorizedClient.tokens()))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unknown version " + version);
+            }
+            String tokenValue = readString(in);
+            Instant issuedAt = readInstant(in);
+            Instant expiresAt = readInstant(in);
+            int scopesCount = in.readInt();
+            Set<String> scopes = new HashSet<>(scopesCount);
+            for (int i = 0; i < scopesCount; i++) {
+                scopes.add(readString(in));
+            }
+            // Bearer is the only token type
+            OAuth2AccessToken accessToken = new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER,
+                tokenValue,
+                issuedAt,
+                expiresAt,
+                scopes
+            );
+            OAuth2RefreshToken refreshToken = in.readBoolean()
+                ? new OAuth2RefreshToken(readString(in), readInstant(in), readInstant(in))
+                : null;
+            return new OAuth2AuthorizedClient(clientRegistration, authorizedClient.principalName(), accessToken, refreshToken);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant instant) throws IOException {
+        out.writeBoolean(instant != null);
+        if (instant != null) {
+            out.writeLong(instant.getEpochSecond());
+            out.writeInt(instant.getNano());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        return in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+    }
+}
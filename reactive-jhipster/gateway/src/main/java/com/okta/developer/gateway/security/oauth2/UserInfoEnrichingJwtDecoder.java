@@ -0,0 +1,165 @@
+package com.okta.developer.gateway.security.oauth2;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link ReactiveJwtDecoder} adding the identity claims of the OIDC userinfo endpoint to access tokens which don't carry them.
+ * <p>
+ * Resolved userinfo claims are cached by subject: concurrent misses for the same subject share a single upstream call, and
+ * an entry expires together with the token that loaded it.
+ */
+public class UserInfoEnrichingJwtDecoder implements ReactiveJwtDecoder, MeterBinder {
+
+    public static final String CACHE_NAME = "oauth2.userinfo";
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 10_000;
+    private static final Duration DEFAULT_MAXIMUM_TIME_TO_LIVE = Duration.ofHours(1);
+    private static final ParameterizedTypeReference<Map<String, Object>> USER_INFO_TYPE = new ParameterizedTypeReference<>() {};
+
+    private final ReactiveJwtDecoder delegate;
+    private final WebClient webClient;
+    private final String userInfoUri;
+    private final Duration maximumTimeToLive;
+    private final Clock clock;
+
+    // See https://github.com/jhipster/generator-jhipster/issues/18868
+    // We don't use a distributed cache or the user selected cache implementation here on purpose
+    private final AsyncCache<String, UserInfo> users;
+
+    public UserInfoEnrichingJwtDecoder(ReactiveJwtDecoder delegate, WebClient webClient, String userInfoUri) {
+        this(delegate, webClient, userInfoUri, DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_TIME_TO_LIVE, Clock.systemUTC());
+    }
+
+    public UserInfoEnrichingJwtDecoder(
+        ReactiveJwtDecoder delegate,
+        WebClient webClient,
+        String userInfoUri,
+        long maximumSize,
+        Duration maximumTimeToLive,
+        Clock clock
+    ) {
+        this.delegate = delegate;
+        this.webClient = webClient;
+        this.userInfoUri = userInfoUri;
+        this.maximumTimeToLive = maximumTimeToLive;
+        this.clock = clock;
+        this.users = Caffeine.newBuilder().maximumSize(maximumSize).expireAfter(new UserInfoExpiry()).recordStats().buildAsync();
+    }
+
+    @Override
+    public Mono<Jwt> decode(String token) throws JwtException {
+        return delegate.decode(token).flatMap(this::enrich);
+    }
+
+    /**
+     * Publishes hit, miss, eviction and load time statistics of the userinfo cache.
+     *
+     * @param registry the registry to bind the cache metrics to.
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, users, CACHE_NAME);
+    }
+
+    private Mono<Jwt> enrich(Jwt jwt) {
+        // Only look up user information if identity claims are missing
+        if (jwt.hasClaim("given_name") && jwt.hasClaim("family_name")) {
+            return Mono.just(jwt);
+        }
+        // Retrieve user info from OAuth provider if not already loaded, joining a load already in flight
+        CompletableFuture<UserInfo> userInfo = users.get(jwt.getSubject(), (subject, executor) -> fetchUserInfo(jwt));
+        UserInfo loaded = userInfo.getNow(null);
+        if (loaded != null && !loaded.expiresAt().isAfter(clock.instant())) {
+            // the expiry of an entry being set once its load completes, an expired entry may be read just after
+            users.asMap().remove(jwt.getSubject(), userInfo);
+            userInfo = users.get(jwt.getSubject(), (subject, executor) -> fetchUserInfo(jwt));
+        }
+        // Subscribe to a copy, so a cancelled request doesn't cancel a load shared with other requests
+        return Mono.fromFuture(userInfo.copy()).map(info -> withUserInfo(jwt, info.claims()));
+    }
+
+    private CompletableFuture<UserInfo> fetchUserInfo(Jwt jwt) {
+        return webClient
+            .get()
+            .uri(userInfoUri)
+            .headers(headers -> headers.setBearerAuth(jwt.getTokenValue()))
+            .retrieve()
+            .bodyToMono(USER_INFO_TYPE)
+            .map(userInfo -> new UserInfo(normalize(userInfo), expiresAt(jwt)))
+            .toFuture();
+    }
+
+    private Instant expiresAt(Jwt jwt) {
+        Instant maximum = clock.instant().plus(maximumTimeToLive);
+        Instant expiresAt = jwt.getExpiresAt();
+        return expiresAt != null && expiresAt.isBefore(maximum) ? expiresAt : maximum;
+    }
+
+    private static Map<String, Object> normalize(Map<String, Object> userInfo) {
+        Map<String, Object> claims = new HashMap<>(userInfo);
+        String username = claims.get("preferred_username").toString();
+        // special handling for Auth0
+        if (claims.get("sub").toString().contains("|") && username.contains("@")) {
+            claims.put("email", username);
+        }
+        // Allow full name in a name claim - happens with Auth0
+        if (claims.get("name") != null) {
+            String[] name = claims.get("name").toString().split("\\s+");
+            if (name.length > 0) {
+                claims.put("given_name", name[0]);
+                claims.put("family_name", String.join(" ", Arrays.copyOfRange(name, 1, name.length)));
+            }
+        }
+        return Collections.unmodifiableMap(claims);
+    }
+
+    private static Jwt withUserInfo(Jwt jwt, Map<String, Object> userInfo) {
+        return Jwt
+            .withTokenValue(jwt.getTokenValue())
+            .subject(jwt.getSubject())
+            .audience(jwt.getAudience())
+            .headers(headers -> headers.putAll(jwt.getHeaders()))
+            .claims(claims -> claims.putAll(userInfo))
+            .claims(claims -> claims.putAll(jwt.getClaims()))
+            .build();
+    }
+
+    private record UserInfo(Map<String, Object> claims, Instant expiresAt) {}
+
+    private class UserInfoExpiry implements Expiry<String, UserInfo> {
+
+        @Override
+        public long expireAfterCreate(String subject, UserInfo userInfo, long currentTime) {
+            return Math.max(0, Duration.between(clock.instant(), userInfo.expiresAt()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String subject, UserInfo userInfo, long currentTime, long currentDuration) {
+            return expireAfterCreate(subject, userInfo, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String subject, UserInfo userInfo, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package com.okta.developer.gateway.security.session;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.okta.developer.gateway.domain.PersistentWebSession;
+import com.okta.developer.gateway.repository.WebSessionRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.IdGenerator;
+import org.springframework.util.JdkIdGenerator;
+import org.springframework.web.server.WebSession;
+import org.springframework.web.server.session.WebSessionStore;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * {@link WebSessionStore} sharing the sessions between the gateway instances through a {@link WebSessionRepository}, so users
+ * don't need to stick to an instance, and keep their session over redeployments.
+ * <p>
+ * The sessions are kept in an in-process near cache, the repository being read on a miss only. The near cache entries live for
+ * a short time, which bounds how long a change made by another instance, like a logout, can go unnoticed. Sessions are written
+ * back when their attributes changed, otherwise their last access time is recorded at most once per touch interval.
+ * <p>
+ * Changes to the attributes are detected when they are put or removed: a mutable value changed in place has to be put again,
+ * as Spring Security does.
+ */
+public class SharedWebSessionStore implements WebSessionStore, MeterBinder {
+
+    private final Logger log = LoggerFactory.getLogger(SharedWebSessionStore.class);
+
+    private static final IdGenerator idGenerator = new JdkIdGenerator();
+
+    private final WebSessionRepository webSessionRepository;
+    private final Duration maxIdleTime;
+    private final Duration touchInterval;
+    private final Duration cleanupInterval;
+    private final Clock clock;
+
+    private final AsyncCache<String, SharedWebSession> nearCache;
+
+    private final AtomicLong remoteReads = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong touches = new AtomicLong();
+    private final AtomicLong expiredDeletions = new AtomicLong();
+
+    private Disposable cleanup;
+
+    /**
+     * @param webSessionRepository the repository the sessions are shared through.
+     * @param maxIdleTime how long new sessions live without being accessed.
+     * @param nearCacheMaximumSize how many sessions are kept in the near cache.
+     * @param nearCacheTimeToLive how long sessions are kept in the near cache.
+     * @param touchInterval how often the last access time of sessions whose attributes didn't change is recorded.
+     * @param cleanupInterval how often the expired sessions are deleted from the repository.
+     */
+    public SharedWebSessionStore(
+        WebSessionRepository webSessionRepository,
+        Duration maxIdleTime,
+        long nearCacheMaximumSize,
+        Duration nearCacheTimeToLive,
+        Duration touchInterval,
+        Duration cleanupInterval
+    ) {
+        this(
+            webSessionRepository,
+            maxIdleTime,
+            nearCacheMaximumSize,
+            nearCacheTimeToLive,
+            touchInterval,
+            cleanupInterval,
+            Clock.systemUTC()
+        );
+    }
+
+    public SharedWebSessionStore(
+        WebSessionRepository webSessionRepository,
+        Duration maxIdleTime,
+        long nearCacheMaximumSize,
+        Duration nearCacheTimeToLive,
+        Duration touchInterval,
+        Duration cleanupInterval,
+        Clock clock
+    ) {
+        this.webSessionRepository = webSessionRepository;
+        this.maxIdleTime = maxIdleTime;
+        this.touchInterval = touchInterval;
+        this.cleanupInterval = cleanupInterval;
+        this.clock = clock;
+        this.nearCache =
+            Caffeine.newBuilder().maximumSize(nearCacheMaximumSize).expireAfterWrite(nearCacheTimeToLive).recordStats().buildAsync();
+    }
+
+    /**
+     * Starts deleting the expired sessions from the repository in the background.
+     */
+    public void start() {
+        cleanup =
+            Flux
+                .interval(cleanupInterval, cleanupInterval)
+                .onBackpressureDrop()
+                .concatMap(tick ->
+                    deleteExpiredSessions()
+                        .onErrorResume(e -> {
+                            log.warn("Could not delete the expired sessions: {}", e.getMessage());
+                            return Mono.empty();
+                        })
+                )
+                .subscribe();
+    }
+
+    public void stop() {
+        if (cleanup != null) {
+            cleanup.dispose();
+        }
+    }
+
+    Mono<Long> deleteExpiredSessions() {
+        return webSessionRepository
+            .deleteAllExpiredBefore(clock.instant())
+            .doOnNext(deleted -> {
+                expiredDeletions.addAndGet(deleted);
+                log.debug("Deleted {} expired sessions", deleted);
+            });
+    }
+
+    @Override
+    public Mono<WebSession> createWebSession() {
+        // the session ids come from a SecureRandom, which may block
+        return Mono
+            .fromSupplier(() -> new SharedWebSession(idGenerator.generateId().toString(), clock.instant()))
+            .subscribeOn(Schedulers.boundedElastic())
+            .publishOn(Schedulers.parallel())
+            .cast(WebSession.class);
+    }
+
+    @Override
+    public Mono<WebSession> retrieveSession(String sessionId) {
+        return Mono
+            .fromFuture(() -> nearCache.get(sessionId, load()).copy())
+            .flatMap(session ->
+                session.isExpired() ? removeSession(sessionId).then(Mono.<WebSession>empty()) : Mono.<WebSession>just(session)
+            );
+    }
+
+    @Override
+    public Mono<Void> removeSession(String sessionId) {
+        nearCache.synchronous().invalidate(sessionId);
+        return webSessionRepository.deleteById(sessionId);
+    }
+
+    @Override
+    public Mono<WebSession> updateLastAccessTime(WebSession webSession) {
+        return Mono.fromSupplier(() -> {
+            ((SharedWebSession) webSession).lastAccessTime = clock.instant();
+            return webSession;
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, nearCache.synchronous(), "web.sessions");
+        FunctionCounter
+            .builder("web.sessions.remote.reads", this, store -> store.remoteReads.get())
+            .description("Sessions read from the repository, on a near cache miss")
+            .register(registry);
+        FunctionCounter
+            .builder("web.sessions.writes", this, store -> store.writes.get())
+            .description("Sessions written to the repository, as they were created or changed")
+            .register(registry);
+        FunctionCounter
+            .builder("web.sessions.touches", this, store -> store.touches.get())
+            .description("Last access times recorded in the repository, for sessions which didn't change")
+            .register(registry);
+        FunctionCounter
+            .builder("web.sessions.expired.deletions", this, store -> store.expiredDeletions.get())
+            .description("Expired sessions deleted from the repository")
+            .register(registry);
+    }
+
+    private BiFunction<String, Executor, CompletableFuture<SharedWebSession>> load() {
+        return (sessionId, executor) -> {
+            remoteReads.incrementAndGet();
+            return webSessionRepository.findById(sessionId).map(SharedWebSession::new).toFuture();
+        };
+    }
+
+    private Instant expiryTime(Instant lastAccessTime, Duration maxIdleTime) {
+        return maxIdleTime.isNegative() ? null : lastAccessTime.plus(maxIdleTime);
+    }
+
+    private enum State {
+        NEW,
+        STARTED,
+        EXPIRED
+    }
+
+    private class SharedWebSession implements WebSession {
+
+        private final AtomicReference<String> id;
+
+        private final Instant creationTime;
+
+        private final AttributeMap attributes;
+
+        private final AtomicReference<State> state;
+
+        private volatile Instant lastAccessTime;
+
+        private volatile Duration maxIdleTime;
+
+        // the id and last access time the repository holds, the id being null until the session is inserted
+        private String persistedId;
+
+        private Instant persistedLastAccessTime;
+
+        // the writes of a session are chained, so they don't overtake each other
+        private CompletableFuture<Void> lastWrite = CompletableFuture.completedFuture(null);
+
+        private SharedWebSession(String id, Instant creationTime) {
+            this.id = new AtomicReference<>(id);
+            this.creationTime = creationTime;
+            this.lastAccessTime = creationTime;
+            this.maxIdleTime = SharedWebSessionStore.this.maxIdleTime;
+            this.attributes = new AttributeMap(Map.of());
+            this.state = new AtomicReference<>(State.NEW);
+        }
+
+        private SharedWebSession(PersistentWebSession session) {
+            this.id = new AtomicReference<>(session.id());
+            this.creationTime = session.creationTime();
+            this.lastAccessTime = session.lastAccessTime();
+            this.maxIdleTime = session.maxIdleTime();
+            this.attributes = new AttributeMap(WebSessionAttributesCodec.decode(session.attributes()));
+            this.state = new AtomicReference<>(State.STARTED);
+            this.persistedId = session.id();
+            this.persistedLastAccessTime = session.lastAccessTime();
+        }
+
+        @Override
+        public String getId() {
+            return id.get();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return creationTime;
+        }
+
+        @Override
+        public Instant getLastAccessTime() {
+            return lastAccessTime;
+        }
+
+        @Override
+        public void setMaxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+            attributes.dirty.set(true);
+        }
+
+        @Override
+        public Duration getMaxIdleTime() {
+            return maxIdleTime;
+        }
+
+        @Override
+        public void start() {
+            state.compareAndSet(State.NEW, State.STARTED);
+        }
+
+        @Override
+        public boolean isStarted() {
+            return state.get() == State.STARTED || !attributes.isEmpty();
+        }
+
+        @Override
+        public Mono<Void> changeSessionId() {
+            // the session ids come from a SecureRandom, which may block
+            return Mono
+                .fromSupplier(() -> idGenerator.generateId().toString())
+                .subscribeOn(Schedulers.boundedElastic())
+                .publishOn(Schedulers.parallel())
+                .doOnNext(newId -> {
+                    String oldId = id.getAndSet(newId);
+                    nearCache.synchronous().invalidate(oldId);
+                    nearCache.put(newId, CompletableFuture.completedFuture(this));
+                })
+                // the session is written under its new id on save
+                .then();
+        }
+
+        @Override
+        public Mono<Void> invalidate() {
+            state.set(State.EXPIRED);
+            attributes.clear();
+            nearCache.synchronous().invalidate(getId());
+            return write(() -> {
+                String deletedId = persistedId;
+                persistedId = null;
+                return deletedId != null ? webSessionRepository.deleteById(deletedId) : Mono.empty();
+            });
+        }
+
+        @Override
+        public Mono<Void> save() {
+            if (!attributes.isEmpty()) {
+                state.compareAndSet(State.NEW, State.STARTED);
+            }
+            if (state.get() == State.EXPIRED) {
+                return Mono.error(new IllegalStateException("Session was invalidated"));
+            }
+            if (!isStarted()) {
+                return Mono.empty();
+            }
+            // not replacing the cached session, so its entry still expires and another instance's changes are seen
+            nearCache.asMap().putIfAbsent(getId(), CompletableFuture.completedFuture(this));
+            return write(this::persist);
+        }
+
+        @Override
+        public boolean isExpired() {
+            if (state.get() == State.EXPIRED) {
+                return true;
+            }
+            if (!maxIdleTime.isNegative() && clock.instant().minus(maxIdleTime).isAfter(lastAccessTime)) {
+                state.set(State.EXPIRED);
+                return true;
+            }
+            return false;
+        }
+
+        private Mono<Void> write(Supplier<Mono<Void>> write) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = lastWrite.handle((result, error) -> null).thenCompose(previous -> write.get().toFuture());
+                lastWrite = next;
+            }
+            return Mono.fromFuture(next.copy());
+        }
+
+        /**
+         * Writes what changed since the session was last persisted, called once the previous writes completed.
+         */
+        private Mono<Void> persist() {
+            if (state.get() == State.EXPIRED) {
+                return Mono.empty();
+            }
+            String currentId = getId();
+            Instant currentLastAccessTime = lastAccessTime;
+            if (!currentId.equals(persistedId)) {
+                // a new session, or a session whose id changed
+                String previousId = persistedId;
+                attributes.dirty.set(false);
+                persistedId = currentId;
+                persistedLastAccessTime = currentLastAccessTime;
+                writes.incrementAndGet();
+                Mono<Void> deletePrevious = previousId != null ? webSessionRepository.deleteById(previousId) : Mono.empty();
+                return deletePrevious
+                    .then(webSessionRepository.insert(toPersistentWebSession(currentId, currentLastAccessTime)))
+                    .doOnError(e -> persistedId = null);
+            }
+            if (attributes.dirty.getAndSet(false)) {
+                persistedLastAccessTime = currentLastAccessTime;
+                writes.incrementAndGet();
+                return webSessionRepository
+                    .update(toPersistentWebSession(currentId, currentLastAccessTime))
+                    .doOnError(e -> attributes.dirty.set(true));
+            }
+            if (Duration.between(persistedLastAccessTime, currentLastAccessTime).compareTo(touchInterval) >= 0) {
+                persistedLastAccessTime = currentLastAccessTime;
+                touches.incrementAndGet();
+                return webSessionRepository.updateLastAccessTime(
+                    currentId,
+                    currentLastAccessTime,
+                    expiryTime(currentLastAccessTime, maxIdleTime)
+                );
+            }
+            return Mono.empty();
+        }
+
+        private PersistentWebSession toPersistentWebSession(String id, Instant lastAccessTime) {
+            Duration maxIdleTime = this.maxIdleTime;
+            return new PersistentWebSession(
+                id,
+                creationTime,
+                lastAccessTime,
+                maxIdleTime,
+                expiryTime(lastAccessTime, maxIdleTime),
+                WebSessionAttributesCodec.encode(attributes)
+            );
+        }
+    }
+
+    /**
+     * The attributes of a session, tracking whether they changed.
+     */
+    private static class AttributeMap extends ConcurrentHashMap<String, Object> {
+
+        private final AtomicBoolean dirty = new AtomicBoolean();
+
+        private AttributeMap(Map<String, Object> attributes) {
+            // not through the overridden methods, which would flag the attributes as changed
+            super.putAll(attributes);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            dirty.set(true);
+            return super.put(key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends String, ?> m) {
+            dirty.set(true);
+            super.putAll(m);
+        }
+
+        @Override
+        public Object putIfAbsent(String key, Object value) {
+            dirty.set(true);
+            return super.putIfAbsent(key, value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            dirty.set(true);
+            return super.remove(key);
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            dirty.set(true);
+            return super.remove(key, value);
+        }
+
+        @Override
+        public Object replace(String key, Object value) {
+            dirty.set(true);
+            return super.replace(key, value);
+        }
+
+        @Override
+        public boolean replace(String key, Object oldValue, Object newValue) {
+            dirty.set(true);
+            return super.replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+            dirty.set(true);
+            return super.computeIfAbsent(key, mappingFunction);
+        }
+
+        @Override
+        public Object computeIfPresent(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+            dirty.set(true);
+            return super.computeIfPresent(key, remappingFunction);
+        }
+
+        @Override
+        public Object compute(String key, BiFunction<? super String, ? super Object, ?> remappingFunction) {
+            dirty.set(true);
+            return super.compute(key, remappingFunction);
+        }
+
+        @Override
+        public Object merge(String key, Object value, BiFunction<? super Object, ? super Object, ?> remappingFunction) {
+            dirty.set(true);
+            return super.merge(key, value, remappingFunction);
+        }
+
+        @Override
+        public void clear() {
+            dirty.set(true);
+            super.clear();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.okta.developer.gateway.security.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Encodes the attributes of web sessions in a compact binary form.
+ * <p>
+ * Strings, numbers, booleans and instants are written as such, other values with Java serialization. Attributes whose
+ * encoded form is large, usually the security context, are deflated. Values which can't be encoded or decoded, e.g. after
+ * an upgrade changed their class, are left out with a warning rather than failing the whole session.
+ * <p>
+ * The sessions being read from a table shared by the instances, the serialized values are only read back when made of the
+ * classes sessions hold, see {@link #SERIALIZED_CLASSES}: the security context and its tokens, the OAuth2 authorization
+ * requests, and the collections, numbers and dates of their claims. Other values are left out as undecodable.
+ */
+final class WebSessionAttributesCodec {
+
+    private static final Logger log = LoggerFactory.getLogger(WebSessionAttributesCodec.class);
+
+    private static final byte VERSION = 1;
+
+    private static final int DEFLATE_THRESHOLD = 512;
+
+    private static final byte STRING = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte INTEGER = 3;
+    private static final byte LONG = 4;
+    private static final byte INSTANT = 5;
+    private static final byte SERIALIZED = 6;
+    private static final byte DEFLATED = 7;
+
+    /**
+     * The classes allowed in the serialized values, and the limits on their size.
+     */
+    static final ObjectInputFilter SERIALIZED_CLASSES = ObjectInputFilter.Config.createFilter(
+        String.join(
+            ";",
+            "maxdepth=20",
+            "maxrefs=10000",
+            "maxarray=10000",
+            "maxbytes=262144",
+            "java.lang.Object",
+            "java.lang.String",
+            "java.lang.Boolean",
+            "java.lang.Number",
+            "java.lang.Integer",
+            "java.lang.Long",
+            "java.lang.Double",
+            "java.lang.Enum",
+            "java.util.*",
+            "java.time.*",
+            // the issuer of the ID tokens
+            "java.net.URL",
+            "org.springframework.security.core.context.SecurityContextImpl",
+            "org.springframework.security.core.authority.*",
+            "org.springframework.security.authentication.*",
+            "org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken",
+            "org.springframework.security.oauth2.core.**",
+            "!*"
+        )
+    );
+
+    private WebSessionAttributesCodec() {}
+
+    static byte[] encode(Map<String, Object> attributes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            Map<String, byte[]> values = new HashMap<>();
+            attributes.forEach((name, value) -> {
+                byte[] encoded = encodeValue(name, value);
+                if (encoded != null) {
+                    values.put(name, encoded);
+                }
+            });
+            out.writeInt(values.size());
+            for (Map.Entry<String, byte[]> value : values.entrySet()) {
+                writeString(out, value.getKey());
+                out.writeInt(value.getValue().length);
+                out.write(value.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Map<String, Object> decode(byte[] encoded) {
+        Map<String, Object> attributes = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                log.warn("Ignoring the attributes of a session encoded with version {}", version);
+                return attributes;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                String name = readString(in);
+                byte[] value = in.readNBytes(in.readInt());
+                try {
+                    attributes.put(name, decodeValue(value));
+                } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                    log.warn("Ignoring session attribute '{}', which can't be decoded: {}", name, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return attributes;
+    }
+
+    private static byte[] encodeValue(String name, Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (value instanceof String string) {
+                out.writeByte(STRING);
+                writeString(out, string);
+            } else if (value instanceof Boolean bool) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean(bool);
+            } else if (value instanceof Integer integer) {
+                out.writeByte(INTEGER);
+                out.writeInt(integer);
+            } else if (value instanceof Long number) {
+                out.writeByte(LONG);
+                out.writeLong(number);
+            } else if (value instanceof Instant instant) {
+                out.writeByte(INSTANT);
+                out.writeLong(instant.getEpochSecond());
+                out.writeInt(instant.getNano());
+            } else if (value instanceof Serializable) {
+                out.writeByte(SERIALIZED);
+                out.flush();
+                try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+                    objects.writeObject(value);
+                }
+            } else {
+                log.warn("Session attribute '{}' of type {} isn't serializable, it won't be shared", name, value.getClass().getName());
+                return null;
+            }
+        } catch (IOException e) {
+            log.warn("Session attribute '{}' can't be serialized, it won't be shared: {}", name, e.getMessage());
+            return null;
+        }
+        return bytes.size() > DEFLATE_THRESHOLD ? deflate(bytes.toByteArray()) : bytes.toByteArray();
+    }
+
+    private static Object decodeValue(byte[] value) throws IOException, ClassNotFoundException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            return decodeValue(in.readByte(), in);
+        }
+    }
+
+    private static Object decodeValue(byte type, DataInputStream in) throws IOException, ClassNotFoundException {
+        return switch (type) {
+            case STRING -> readString(in);
+            case BOOLEAN -> in.readBoolean();
+            case INTEGER -> in.readInt();
+            case LONG -> in.readLong();
+            case INSTANT -> Instant.ofEpochSecond(in.readLong(), in.readInt());
+            case SERIALIZED -> readObject(in);
+            case DEFLATED -> {
+                DataInputStream inflated = new DataInputStream(new InflaterInputStream(in));
+                yield decodeValue(inflated.readByte(), inflated);
+            }
+            default -> throw new IOException("Unknown attribute type " + type);
+        };
+    }
+
+    private static Object readObject(InputStream in) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream objects = new ObjectInputStream(in)) {
+            objects.setObjectInputFilter(SERIALIZED_CLASSES);
+            return objects.readObject();
+        }
+    }
+
+    private static byte[] deflate(byte[] value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(value.length / 2);
+        bytes.write(DEFLATED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.size() < value.length ? bytes.toByteArray() : value;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+}
@@ -1,5 +1,8 @@
 package com.okta.developer.gateway.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.okta.developer.gateway.config.ApplicationProperties;
 import com.okta.developer.gateway.config.Constants;
 import com.okta.developer.gateway.domain.Authority;
 import com.okta.developer.gateway.domain.User;
@@ -7,7 +10,13 @@ import com.okta.developer.gateway.repository.AuthorityRepository;
 import com.okta.developer.gateway.repository.UserRepository;
 import com.okta.developer.gateway.security.SecurityUtils;
 import com.okta.developer.gateway.service.dto.AdminUserDTO;
+import com.okta.developer.gateway.service.dto.UserCursor;
 import com.okta.developer.gateway.service.dto.UserDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -36,9 +45,32 @@ public class UserService {
 
     private final AuthorityRepository authorityRepository;
 
-    public UserService(UserRepository userRepository, AuthorityRepository authorityRepository) {
+    /**
+     * Fingerprints of the identity claims and authorities last synchronized, by login.
+     */
+    private final Cache<String, String> syncedUsers;
+
+    private final UserSyncWriter userSyncWriter;
+
+    public UserService(
+        UserRepository userRepository,
+        AuthorityRepository authorityRepository,
+        UserSyncWriter userSyncWriter,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry
+    ) {
         this.userRepository = userRepository;
         this.authorityRepository = authorityRepository;
+        this.userSyncWriter = userSyncWriter;
+        ApplicationProperties.UserSync userSync = applicationProperties.getUserSync();
+        this.syncedUsers =
+            Caffeine
+                .newBuilder()
+                .maximumSize(userSync.getMaximumSize())
+                .expireAfterWrite(userSync.getTimeToLive())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, syncedUsers, "users.sync");
     }
 
     /**
@@ -85,6 +117,8 @@ public class UserService {
                     user.setCreatedBy(login);
                 }
                 user.setLastModifiedBy(login);
+                // the local copy doesn't match the last synchronized claims anymore
+                syncedUsers.invalidate(user.getLogin());
                 // Saving the relationship can be done in an entity callback
                 // once https://github.com/spring-projects/spring-data-r2dbc/issues/215 is done
                 Mono<User> persistedUser;
@@ -94,9 +128,8 @@ public class UserService {
                     persistedUser = userRepository.save(user);
                 }
                 return persistedUser.flatMap(savedUser ->
-                    Flux
-                        .fromIterable(user.getAuthorities())
-                        .flatMap(authority -> userRepository.saveUserAuthority(savedUser.getId(), authority.getName()))
+                    userRepository
+                        .saveUserAuthorities(savedUser.getId(), user.getAuthorities().stream().map(Authority::getName).toList())
                         .then(Mono.just(savedUser))
                 );
             });
@@ -107,11 +140,30 @@ public class UserService {
         return userRepository.findAllWithAuthorities(pageable).map(AdminUserDTO::new);
     }
 
+    /**
+     * Gets the users after a cursor, without skipping over the users before it.
+     *
+     * @param cursor the last user of the previous page, and the order of the users.
+     * @param limit the maximum number of users.
+     */
+    @Transactional(readOnly = true)
+    public Flux<AdminUserDTO> getAllManagedUsers(UserCursor cursor, int limit) {
+        return userRepository.findAllWithAuthoritiesAfter(cursor.order(), cursor.value(), cursor.id(), limit).map(AdminUserDTO::new);
+    }
+
     @Transactional(readOnly = true)
     public Flux<UserDTO> getAllPublicUsers(Pageable pageable) {
         return userRepository.findAllByIdNotNullAndActivatedIsTrue(pageable).map(UserDTO::new);
     }
 
+    /**
+     * Gets the activated users after a cursor, as {@link #getAllManagedUsers(UserCursor, int)}.
+     */
+    @Transactional(readOnly = true)
+    public Flux<UserDTO> getAllPublicUsers(UserCursor cursor, int limit) {
+        return userRepository.findAllActivatedAfter(cursor.order(), cursor.value(), cursor.id(), limit).map(UserDTO::new);
+    }
+
     @Transactional(readOnly = true)
     public Mono<Long> countManagedUsers() {
         return userRepository.count();
@@ -135,34 +187,15 @@ public class UserService {
         // save authorities in to sync user roles/groups between IdP and JHipster's local database
         Collection<String> userAuthorities = user.getAuthorities().stream().map(Authority::getName).toList();
 
-        return getAuthorities()
-            .collectList()
-            .flatMapMany(dbAuthorities -> {
-                List<Authority> authoritiesToSave = userAuthorities
-                    .stream()
-                    .filter(authority -> !dbAuthorities.contains(authority))
-                    .map(authority -> {
-                        Authority authorityToSave = new Authority();
-                        authorityToSave.setName(authority);
-                        return authorityToSave;
-                    })
-                    .toList();
-                return Flux.fromIterable(authoritiesToSave);
-            })
-            .doOnNext(authority -> log.debug("Saving authority '{}' in local database", authority))
-            .flatMap(authorityRepository::save)
+        return userRepository
+            .createMissingAuthorities(userAuthorities)
             .then(userRepository.findOneByLogin(user.getLogin()))
             .switchIfEmpty(saveUser(user, true))
             .flatMap(existingUser -> {
                 // if IdP sends last updated information, use it to determine if an update should happen
-                if (details.get("updated_at") != null) {
+                Instant idpModifiedDate = getIdpModifiedDate(details);
+                if (idpModifiedDate != null) {
                     Instant dbModifiedDate = existingUser.getLastModifiedDate();
-                    Instant idpModifiedDate;
-                    if (details.get("updated_at") instanceof Instant) {
-                        idpModifiedDate = (Instant) details.get("updated_at");
-                    } else {
-                        idpModifiedDate = Instant.ofEpochSecond((Integer) details.get("updated_at"));
-                    }
                     if (idpModifiedDate.isAfter(dbModifiedDate)) {
                         log.debug("Updating user '{}' in local database", user.getLogin());
                         return updateUser(user.getFirstName(), user.getLastName(), user.getEmail(), user.getLangKey(), user.getImageUrl());
@@ -177,6 +210,16 @@ public class UserService {
             .thenReturn(user);
     }
 
+    private static Instant getIdpModifiedDate(Map<String, Object> details) {
+        if (details.get("updated_at") == null) {
+            return null;
+        }
+        if (details.get("updated_at") instanceof Instant) {
+            return (Instant) details.get("updated_at");
+        }
+        return Instant.ofEpochSecond((Integer) details.get("updated_at"));
+    }
+
     /**
      * Returns the user from an OAuth 2.0 login or resource server with JWT.
      * Synchronizes the user in the local repository.
@@ -208,7 +251,57 @@ public class UserService {
                 .collect(Collectors.toSet())
         );
 
-        return syncUserWithIdP(attributes, user).flatMap(u -> Mono.just(new AdminUserDTO(u)));
+        // skip the database when nothing changed since the last synchronization, as the SPA polls the account
+        String fingerprint = fingerprint(attributes, user);
+        if (fingerprint.equals(syncedUsers.getIfPresent(user.getLogin()))) {
+            log.debug("User '{}' is already synchronized with the IdP", user.getLogin());
+            return Mono.just(new AdminUserDTO(user));
+        }
+        return SecurityUtils
+            .getCurrentUserLogin()
+            .switchIfEmpty(Mono.just(Constants.SYSTEM))
+            .flatMap(login -> {
+                // write the user in the background, unless the writer is saturated
+                UserSyncWriter.Change change = new UserSyncWriter.Change(
+                    user,
+                    getIdpModifiedDate(attributes),
+                    login,
+                    () -> syncedUsers.invalidate(user.getLogin())
+                );
+                // copied before the writer gets the user
+                AdminUserDTO userDTO = new AdminUserDTO(user);
+                if (userSyncWriter.submit(change)) {
+                    syncedUsers.put(user.getLogin(), fingerprint);
+                    return Mono.just(userDTO);
+                }
+                return syncUserWithIdP(attributes, user)
+                    .doOnNext(u -> syncedUsers.put(u.getLogin(), fingerprint))
+                    .flatMap(u -> Mono.just(new AdminUserDTO(u)));
+            });
+    }
+
+    /**
+     * Digests everything {@link #syncUserWithIdP(Map, User)} depends on, i.e. the identity claims, the authorities and
+     * the {@code updated_at} claim.
+     */
+    private static String fingerprint(Map<String, Object> details, User user) {
+        StringJoiner joiner = new StringJoiner("\u0000")
+            .add(user.getId())
+            .add(user.getLogin())
+            .add(user.getFirstName())
+            .add(user.getLastName())
+            .add(user.getEmail())
+            .add(user.getLangKey())
+            .add(user.getImageUrl())
+            .add(String.valueOf(user.isActivated()))
+            .add(String.valueOf(details.get("updated_at")));
+        user.getAuthorities().stream().map(Authority::getName).sorted().forEach(joiner::add);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(joiner.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
 
     private static User getUser(Map<String, Object> details) {
@@ -0,0 +1,264 @@
+package com.okta.developer.gateway.service;
+
+import com.okta.developer.gateway.config.ApplicationProperties;
+import com.okta.developer.gateway.domain.Authority;
+import com.okta.developer.gateway.domain.User;
+import com.okta.developer.gateway.repository.UserRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Writes the users synchronized from the IdP in the background, in batches.
+ * <p>
+ * Changes are merged by login until they are flushed, as soon as a batch is full or every flush interval. When too many
+ * logins are waiting, changes are refused, and the caller has to write them itself, but for the logins pending or being
+ * written, which are merged, so that the caller doesn't insert a user the writer is inserting too. On shutdown, the flush in
+ * progress is waited for, and all the pending changes are written.
+ */
+@Service
+public class UserSyncWriter implements MeterBinder {
+
+    private static final Duration STOP_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Logger log = LoggerFactory.getLogger(UserSyncWriter.class);
+
+    /**
+     * A user to synchronize, with the {@code updated_at} claim of the IdP, if any.
+     */
+    public record Change(User user, Instant idpModifiedDate, String modifiedBy, Runnable onFailure) {}
+
+    private final UserRepository userRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final ApplicationProperties.UserSync.WriteBehind writeBehind;
+
+    private final ConcurrentMap<String, Change> pending = new ConcurrentHashMap<>();
+    // the logins drained from pending, until their flush ends
+    private final Set<String> writing = ConcurrentHashMap.newKeySet();
+    private final Semaphore flushing = new Semaphore(1);
+    private volatile Disposable schedule;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong batchNanos = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public UserSyncWriter(
+        UserRepository userRepository,
+        ReactiveTransactionManager transactionManager,
+        ApplicationProperties applicationProperties
+    ) {
+        this.userRepository = userRepository;
+        this.transactionalOperator = TransactionalOperator.create(transactionManager);
+        this.writeBehind = applicationProperties.getUserSync().getWriteBehind();
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (writeBehind.isEnabled() && schedule == null) {
+            schedule = Flux.interval(writeBehind.getFlushInterval()).onBackpressureDrop().concatMap(tick -> flush()).subscribe();
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        Disposable stopped = schedule;
+        if (stopped == null) {
+            return;
+        }
+        // the changes submitted from now on are refused, and written by their callers
+        schedule = null;
+        boolean acquired = false;
+        try {
+            // the flush in progress is waited for, as cancelling it with the schedule would lose the changes it drained
+            acquired = flushing.tryAcquire(STOP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!acquired) {
+            log.warn("The users being written took more than {}, writing the pending ones along", STOP_TIMEOUT);
+        }
+        try {
+            stopped.dispose();
+            while (!pending.isEmpty()) {
+                writeBatches(drain()).block(STOP_TIMEOUT);
+            }
+        } finally {
+            if (acquired) {
+                flushing.release();
+            }
+        }
+    }
+
+    /**
+     * Queues a user to be written, replacing the change still pending for the same login.
+     *
+     * @param change the user to synchronize.
+     * @return {@code false} if the change was refused, because the writer is stopped or too many logins are pending.
+     */
+    public boolean submit(Change change) {
+        if (schedule == null) {
+            return false;
+        }
+        String login = change.user().getLogin();
+        if (pending.size() >= writeBehind.getMaxPending() && !pending.containsKey(login) && !writing.contains(login)) {
+            refused.incrementAndGet();
+            return false;
+        }
+        if (pending.put(login, change) != null) {
+            merged.incrementAndGet();
+        }
+        if (schedule == null && pending.remove(login, change)) {
+            // stopped meanwhile, once the pending changes were written
+            return false;
+        }
+        if (pending.size() >= writeBehind.getBatchSize()) {
+            flush().subscribe();
+        }
+        return true;
+    }
+
+    /**
+     * Writes all the pending changes, unless a flush is already running.
+     *
+     * @return a {@link Mono} completing once the changes are written.
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            if (pending.isEmpty() || !flushing.tryAcquire()) {
+                return Mono.empty();
+            }
+            return writeBatches(drain()).doFinally(signal -> flushing.release());
+        });
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer
+            .builder("users.sync.batches", this, writer -> writer.batches.get(), writer -> writer.batchNanos.get(), TimeUnit.NANOSECONDS)
+            .description("Batches of users written to the database")
+            .register(registry);
+        FunctionCounter
+            .builder("users.sync.written", this, writer -> writer.written.get())
+            .description("Users written to the database in the background")
+            .register(registry);
+        FunctionCounter
+            .builder("users.sync.merged", this, writer -> writer.merged.get())
+            .description("Changes replacing a change still pending for the same login")
+            .register(registry);
+        FunctionCounter
+            .builder("users.sync.refused", this, writer -> writer.refused.get())
+            .description("Changes refused because too many logins were pending, and written on the request path")
+            .register(registry);
+        FunctionCounter
+            .builder("users.sync.failures", this, writer -> writer.failures.get())
+            .description("Users which could not be written")
+            .register(registry);
+        Gauge.builder("users.sync.pending", pending, ConcurrentMap::size).description("Logins waiting to be written").register(registry);
+    }
+
+    private List<Change> drain() {
+        List<Change> changes = new ArrayList<>();
+        for (String login : pending.keySet()) {
+            // before it leaves pending, so that submit sees it in either
+            writing.add(login);
+            Change change = pending.remove(login);
+            if (change != null) {
+                changes.add(change);
+            } else {
+                writing.remove(login);
+            }
+        }
+        return changes;
+    }
+
+    private Mono<Void> writeBatches(List<Change> changes) {
+        return Flux
+            .fromIterable(changes)
+            .buffer(writeBehind.getBatchSize())
+            .concatMap(this::writeBatch)
+            .doFinally(signal -> changes.forEach(change -> writing.remove(change.user().getLogin())))
+            .then();
+    }
+
+    private Mono<Void> writeBatch(List<Change> changes) {
+        long start = System.nanoTime();
+        return write(changes)
+            .doOnSuccess(result -> {
+                batches.incrementAndGet();
+                batchNanos.addAndGet(System.nanoTime() - start);
+                written.addAndGet(changes.size());
+            })
+            .onErrorResume(error -> {
+                if (changes.size() == 1) {
+                    Change change = changes.get(0);
+                    failures.incrementAndGet();
+                    log.warn("Could not synchronize user '{}' in local database: {}", change.user().getLogin(), error.getMessage());
+                    change.onFailure().run();
+                    return Mono.empty();
+                }
+                // isolate the offending user
+                log.debug("Could not write a batch of {} users, writing them one at a time: {}", changes.size(), error.getMessage());
+                return Flux.fromIterable(changes).concatMap(change -> writeBatch(List.of(change))).then();
+            });
+    }
+
+    private Mono<Void> write(List<Change> changes) {
+        Set<String> authorities = changes
+            .stream()
+            .flatMap(change -> change.user().getAuthorities().stream())
+            .map(Authority::getName)
+            .collect(Collectors.toSet());
+        Set<String> logins = changes.stream().map(change -> change.user().getLogin()).collect(Collectors.toSet());
+
+        return userRepository
+            .createMissingAuthorities(authorities)
+            .then(userRepository.findAllByLoginIn(logins).collectMap(User::getLogin))
+            .flatMap(existingUsers -> {
+                List<User> created = new ArrayList<>();
+                List<User> updated = new ArrayList<>();
+                for (Change change : changes) {
+                    User user = change.user();
+                    User existingUser = existingUsers.get(user.getLogin());
+                    user.setLastModifiedBy(change.modifiedBy());
+                    if (existingUser == null) {
+                        user.setCreatedBy(change.modifiedBy());
+                        created.add(user);
+                    } else if (
+                        // if IdP sends last updated information, use it to determine if an update should happen
+                        change.idpModifiedDate() == null || change.idpModifiedDate().isAfter(existingUser.getLastModifiedDate())
+                    ) {
+                        updated.add(user);
+                    }
+                }
+                log.debug("Writing {} new and {} updated users in local database", created.size(), updated.size());
+                return userRepository.createAll(created).then(userRepository.updateAllProfiles(updated));
+            })
+            .as(transactionalOperator::transactional);
+    }
+}
@@ -0,0 +1,56 @@
+package com.okta.developer.gateway.service.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Set;
+import org.springframework.data.domain.Sort;
+
+/**
+ * A position in the users sorted by {@code id}, or by {@code login} then id: the sort key and id of the last user of a page, or
+ * none before the first page. It's handed to the clients as an opaque token, for them to get the next page.
+ */
+public record UserCursor(Sort.Order order, String value, String id) {
+    /**
+     * The properties the users can be listed by with a cursor, unique and never null.
+     */
+    public static final Set<String> PROPERTIES = Set.of("id", "login");
+
+    private static final String SEPARATOR = "\n";
+
+    public UserCursor {
+        if (!PROPERTIES.contains(order.getProperty())) {
+            throw new IllegalArgumentException("The users can't be listed with a cursor by " + order.getProperty());
+        }
+    }
+
+    /**
+     * @return the cursor before the first page, in the first order of the sort, by id if none.
+     */
+    public static UserCursor first(Sort sort) {
+        Sort.Order order = sort.stream().findFirst().orElse(Sort.Order.asc("id"));
+        return new UserCursor(new Sort.Order(order.getDirection(), order.getProperty()), null, null);
+    }
+
+    /**
+     * @return the cursor after the given user, in the same order.
+     */
+    public UserCursor after(String id, String login) {
+        return new UserCursor(order, order.getProperty().equals("login") ? login : id, id);
+    }
+
+    public String encode() {
+        String cursor = String.join(SEPARATOR, order.getProperty(), order.getDirection().name(), value, id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token isn't one of {@link #encode()}.
+     */
+    public static UserCursor decode(String token) {
+        String[] cursor = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR, -1);
+        if (cursor.length != 4) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new UserCursor(new Sort.Order(Sort.Direction.fromString(cursor[1]), cursor[0]), cursor[2], cursor[3]);
+    }
+}
@@ -0,0 +1,207 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.springframework.cloud.gateway.support.GatewayToStringStyler.filterToStringCreator;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.setResponseStatus;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+/**
+ * The {@code AdaptiveConcurrency} filter, which limits the requests in flight to the backend of a route, the limit being
+ * adjusted from their round-trip times by an {@link AdaptiveConcurrencyLimiter}. On the {@code services} route, each service
+ * has a limit of its own.
+ * <p>
+ * The requests over the limit wait for a permit, in a bounded queue and for a bounded time, and are rejected with a 503
+ * past either. The limits, the requests in flight and waiting, and the rejections are published as the
+ * {@code gateway.concurrency.*} metrics, tagged with the route and the service.
+ */
+@Component
+public class AdaptiveConcurrencyGatewayFilterFactory extends AbstractGatewayFilterFactory<AdaptiveConcurrencyGatewayFilterFactory.Config> {
+
+    private final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyGatewayFilterFactory.class);
+
+    private final MeterRegistry meterRegistry;
+
+    // by route and service, kept when the routes are refreshed
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    public AdaptiveConcurrencyGatewayFilterFactory(MeterRegistry meterRegistry) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        AdaptiveConcurrencyLimiter.Limits limits = config.limits();
+        return new GatewayFilter() {
+            @Override
+            public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+                String serviceId = ServicePrefixRouter.serviceId(exchange);
+                String name = serviceId != null ? serviceId : config.getRouteId();
+                AdaptiveConcurrencyLimiter limiter = limiter(config.getRouteId(), name, limits);
+                return limiter
+                    .acquire()
+                    .map(permit -> forward(exchange, chain, permit))
+                    .defaultIfEmpty(Mono.defer(() -> reject(exchange, config.getRouteId(), name)))
+                    .flatMap(Function.identity());
+            }
+
+            @Override
+            public String toString() {
+                return filterToStringCreator(AdaptiveConcurrencyGatewayFilterFactory.this).append("limits", limits).toString();
+            }
+        };
+    }
+
+    private static Mono<Void> forward(ServerWebExchange exchange, GatewayFilterChain chain, AdaptiveConcurrencyLimiter.Permit permit) {
+        exchange
+            .getResponse()
+            .beforeCommit(() -> {
+                permit.responded();
+                return Mono.empty();
+            });
+        return chain.filter(exchange).doFinally(signal -> permit.release(signal != SignalType.CANCEL));
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, String routeId, String name) {
+        log.debug("Rejecting a request to {} of the route {}, over its concurrency limit", name, routeId);
+        meterRegistry.counter("gateway.concurrency.rejected", "route", routeId, "service", name).increment();
+        setResponseStatus(exchange, HttpStatus.SERVICE_UNAVAILABLE);
+        return exchange.getResponse().setComplete();
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(String routeId, String name, AdaptiveConcurrencyLimiter.Limits limits) {
+        String key = routeId + '/' + name;
+        AdaptiveConcurrencyLimiter limiter = limiters.get(key);
+        if (limiter != null && limiter.limits().equals(limits)) {
+            return limiter;
+        }
+        return limiters.compute(
+            key,
+            (k, existing) -> {
+                if (existing != null && existing.limits().equals(limits)) {
+                    return existing;
+                }
+                if (existing == null) {
+                    Tags tags = Tags.of("route", routeId, "service", name);
+                    gauge("gateway.concurrency.limit", "The limit of the requests in flight", key, tags, AdaptiveConcurrencyLimiter::limit);
+                    gauge("gateway.concurrency.in.flight", "The requests in flight", key, tags, AdaptiveConcurrencyLimiter::inFlight);
+                    gauge("gateway.concurrency.queued", "The requests waiting to be sent", key, tags, AdaptiveConcurrencyLimiter::queued);
+                }
+                return new AdaptiveConcurrencyLimiter(limits, System::nanoTime);
+            }
+        );
+    }
+
+    // on the current limiter, replaced when the limits of its route change
+    private void gauge(String name, String description, String key, Tags tags, ToIntFunction<AdaptiveConcurrencyLimiter> value) {
+        Gauge
+            .builder(
+                name,
+                limiters,
+                map -> {
+                    AdaptiveConcurrencyLimiter limiter = map.get(key);
+                    return limiter != null ? value.applyAsInt(limiter) : Double.NaN;
+                }
+            )
+            .description(description)
+            .tags(tags)
+            .register(meterRegistry);
+    }
+
+    public static class Config implements HasRouteId {
+
+        private String routeId;
+
+        private int initialLimit = 20;
+
+        private int minLimit = 5;
+
+        private int maxLimit = 500;
+
+        private double tolerance = 1.5;
+
+        private int maxQueueSize = 100;
+
+        private Duration maxWait = Duration.ofMillis(500);
+
+        @Override
+        public void setRouteId(String routeId) {
+            this.routeId = routeId;
+        }
+
+        @Override
+        public String getRouteId() {
+            return routeId;
+        }
+
+        public int getInitialLimit() {
+            return initialLimit;
+        }
+
+        public void setInitialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+        }
+
+        public int getMinLimit() {
+            return minLimit;
+        }
+
+        public void setMinLimit(int minLimit) {
+            this.minLimit = minLimit;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+
+        public double getTolerance() {
+            return tolerance;
+        }
+
+        public void setTolerance(double tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        public int getMaxQueueSize() {
+            return maxQueueSize;
+        }
+
+        public void setMaxQueueSize(int maxQueueSize) {
+            this.maxQueueSize = maxQueueSize;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        AdaptiveConcurrencyLimiter.Limits limits() {
+            return new AdaptiveConcurrencyLimiter.Limits(initialLimit, minLimit, maxLimit, tolerance, maxQueueSize, maxWait);
+        }
+    }
+}
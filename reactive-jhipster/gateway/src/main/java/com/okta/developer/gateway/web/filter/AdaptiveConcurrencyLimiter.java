@@ -0,0 +1,186 @@
+package com.okta.developer.gateway.web.filter;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * A limit on the requests in flight to a backend, adjusted from their round-trip times as Netflix's {@code Gradient2Limit}
+ * does: when the latest RTT grows past the long-term average RTT, times a tolerance, the limit is lowered in proportion, by at
+ * most half, and otherwise it grows by a few requests. The limit isn't changed while less than half of it is used.
+ * <p>
+ * The requests over the limit wait for a permit in a bounded queue, for a bounded time, and are rejected past either.
+ */
+final class AdaptiveConcurrencyLimiter {
+
+    // the long-term RTT is an exponential moving average over about 600 samples
+    private static final double LONG_RTT_WEIGHT = 2.0 / (600 + 1);
+
+    // the weight of a new limit in the limit
+    private static final double SMOOTHING = 0.2;
+
+    // the requests the limit grows by, before smoothing, when the RTT doesn't grow
+    private static final int GROWTH = 4;
+
+    /**
+     * The settings of a limiter.
+     */
+    record Limits(int initialLimit, int minLimit, int maxLimit, double tolerance, int maxQueueSize, Duration maxWait) {}
+
+    private final Limits limits;
+
+    private final LongSupplier nanoClock;
+
+    private final Deque<Sinks.One<Permit>> waiters = new ArrayDeque<>();
+
+    private double limit;
+
+    private double longRtt;
+
+    private int inFlight;
+
+    AdaptiveConcurrencyLimiter(Limits limits, LongSupplier nanoClock) {
+        this.limits = limits;
+        this.nanoClock = nanoClock;
+        this.limit = Math.max(limits.minLimit(), Math.min(limits.maxLimit(), limits.initialLimit()));
+    }
+
+    Limits limits() {
+        return limits;
+    }
+
+    synchronized int limit() {
+        return (int) limit;
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int queued() {
+        return waiters.size();
+    }
+
+    /**
+     * @return a permit to send a request, at once or after waiting for one, or an empty {@link Mono} when the request is
+     * rejected. The permit is to be released when the request completes.
+     */
+    Mono<Permit> acquire() {
+        return Mono.defer(() -> {
+            Sinks.One<Permit> waiter;
+            synchronized (this) {
+                if (inFlight < (int) limit) {
+                    inFlight++;
+                    return Mono.just(new Permit(inFlight));
+                }
+                if (waiters.size() >= limits.maxQueueSize()) {
+                    return Mono.empty();
+                }
+                waiter = Sinks.one();
+                waiters.add(waiter);
+            }
+            // a permit given as the wait ends is kept in the sink
+            return waiter
+                .asMono()
+                .timeout(limits.maxWait(), Mono.defer(() -> abandon(waiter) ? Mono.empty() : waiter.asMono()))
+                .doOnCancel(() -> {
+                    if (!abandon(waiter)) {
+                        waiter.asMono().subscribe(permit -> permit.release(false));
+                    }
+                });
+        });
+    }
+
+    /**
+     * @return whether the waiter left the queue before being given a permit.
+     */
+    private synchronized boolean abandon(Sinks.One<Permit> waiter) {
+        return waiters.remove(waiter);
+    }
+
+    private void release(Permit permit, boolean sample, long rtt) {
+        List<Sinks.One<Permit>> granted = null;
+        List<Permit> permits = null;
+        synchronized (this) {
+            inFlight--;
+            if (sample) {
+                update(rtt, permit.inFlight);
+            }
+            while (inFlight < (int) limit && !waiters.isEmpty()) {
+                if (granted == null) {
+                    granted = new ArrayList<>();
+                    permits = new ArrayList<>();
+                }
+                inFlight++;
+                granted.add(waiters.poll());
+                permits.add(new Permit(inFlight));
+            }
+        }
+        // outside of the lock, as the requests given a permit are sent by the current thread
+        for (int i = 0; granted != null && i < granted.size(); i++) {
+            if (granted.get(i).tryEmitValue(permits.get(i)).isFailure()) {
+                permits.get(i).release(false);
+            }
+        }
+    }
+
+    private void update(long rtt, int inFlightAtStart) {
+        double shortRtt = Math.max(1, rtt);
+        longRtt = longRtt == 0 ? shortRtt : longRtt + LONG_RTT_WEIGHT * (shortRtt - longRtt);
+        // the long-term RTT catches up faster when the backend recovers
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        if (inFlightAtStart < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, limits.tolerance() * longRtt / shortRtt));
+        double newLimit = limit * gradient + GROWTH;
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(limits.minLimit(), Math.min(limits.maxLimit(), newLimit));
+    }
+
+    /**
+     * A permit to send a request, which times the request until its response.
+     */
+    final class Permit {
+
+        private final long start = nanoClock.getAsLong();
+
+        private final int inFlight;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private volatile long responded;
+
+        private Permit(int inFlight) {
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * Ends the RTT of the request, when the backend responded, before its body is sent to the client.
+         */
+        void responded() {
+            if (responded == 0) {
+                responded = nanoClock.getAsLong();
+            }
+        }
+
+        /**
+         * @param sample whether the RTT of the request is a sample of the latency of the backend, rather than of a
+         * cancelled request.
+         */
+        void release(boolean sample) {
+            if (released.compareAndSet(false, true)) {
+                long end = responded != 0 ? responded : nanoClock.getAsLong();
+                AdaptiveConcurrencyLimiter.this.release(this, sample, end - start);
+            }
+        }
+    }
+}
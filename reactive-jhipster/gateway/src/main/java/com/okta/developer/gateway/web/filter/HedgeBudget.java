@@ -0,0 +1,52 @@
+package com.okta.developer.gateway.web.filter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A budget of hedged requests, as a fraction of the requests: each request deposits the fraction of a hedged request, and
+ * each hedged request withdraws a whole one, so the hedged requests never outnumber that fraction of the requests, plus the
+ * bounded savings spent on a burst of slow responses.
+ */
+final class HedgeBudget {
+
+    // in thousandths of a hedged request
+    private static final long UNIT = 1000;
+
+    private final long deposit;
+
+    private final long capacity;
+
+    private final AtomicLong balance = new AtomicLong();
+
+    HedgeBudget(double ratio, int maxBurst) {
+        this.deposit = Math.round(ratio * UNIT);
+        this.capacity = Math.max(1, maxBurst) * UNIT;
+    }
+
+    void deposit() {
+        if (balance.get() < capacity) {
+            balance.accumulateAndGet(deposit, (current, amount) -> Math.min(capacity, current + amount));
+        }
+    }
+
+    /**
+     * @return whether a hedged request can be sent.
+     */
+    boolean withdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < UNIT) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - UNIT));
+        return true;
+    }
+
+    /**
+     * @return the hedged requests that can be sent now.
+     */
+    double available() {
+        return (double) balance.get() / UNIT;
+    }
+}
@@ -0,0 +1,491 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.springframework.cloud.gateway.support.GatewayToStringStyler.filterToStringCreator;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR;
+
+import com.okta.developer.gateway.config.ApplicationProperties;
+import com.okta.developer.gateway.loadbalancer.PeakEwmaLoadBalancer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.HasRouteId;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebExchangeDecorator;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.Connection;
+import reactor.util.context.ContextView;
+
+/**
+ * The {@code Hedging} filter, which sends a GET or HEAD request again, to another instance, when its response is later than
+ * a percentile of the latencies of the route, and uses the first of the two responses, the other request being cancelled. On
+ * the {@code services} route, each service has a percentile of its own, see {@link LatencyPercentile}, and no request is
+ * hedged until it has enough samples. With {@code paths}, only the requests matching one of these path patterns are hedged.
+ * <p>
+ * The hedged requests of all the routes share a {@link HedgeBudget}, {@code application.hedging.budget}, which keeps them
+ * under a fraction of the requests. The hedged requests sent, won, and not sent for want of budget are published as the
+ * {@code gateway.hedging.*} metrics, tagged with the route and the service.
+ * <p>
+ * The filters after this one run once per request sent, each time with attributes and a response of their own, and the
+ * status, headers and attributes of the first response are copied to the exchange, whose body is then written by the
+ * {@code NettyWriteResponseFilter}. The {@link PeakEwmaLoadBalancer} is told which instance to avoid with the
+ * {@link PeakEwmaLoadBalancer#EXCLUDED_INSTANCE_HEADER}, and of the requests cancelled by the {@link LoadBalancerDiscardFilter}.
+ */
+@Component
+public class HedgingGatewayFilterFactory extends AbstractGatewayFilterFactory<HedgingGatewayFilterFactory.Config> {
+
+    private final Logger log = LoggerFactory.getLogger(HedgingGatewayFilterFactory.class);
+
+    private final MeterRegistry meterRegistry;
+
+    private final HedgeBudget budget;
+
+    private final Scheduler scheduler;
+
+    private final LongSupplier nanoClock;
+
+    // by route and service, kept when the routes are refreshed
+    private final Map<String, LatencyPercentile> latencies = new ConcurrentHashMap<>();
+
+    @Autowired
+    public HedgingGatewayFilterFactory(MeterRegistry meterRegistry, ApplicationProperties applicationProperties) {
+        this(
+            meterRegistry,
+            new HedgeBudget(applicationProperties.getHedging().getBudget(), applicationProperties.getHedging().getMaxBurst()),
+            Schedulers.parallel(),
+            System::nanoTime
+        );
+    }
+
+    HedgingGatewayFilterFactory(MeterRegistry meterRegistry, HedgeBudget budget, Scheduler scheduler, LongSupplier nanoClock) {
+        super(Config.class);
+        this.meterRegistry = meterRegistry;
+        this.budget = budget;
+        this.scheduler = scheduler;
+        this.nanoClock = nanoClock;
+        Gauge
+            .builder("gateway.hedging.budget", budget, HedgeBudget::available)
+            .description("The hedged requests which can be sent")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        long minDelay = config.getMinDelay().toNanos();
+        List<PathPattern> paths = config.getPaths().stream().map(PathPatternParser.defaultInstance::parse).toList();
+        return new GatewayFilter() {
+            @Override
+            public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+                HttpMethod method = exchange.getRequest().getMethod();
+                if ((!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) || !matches(paths, exchange)) {
+                    return chain.filter(exchange);
+                }
+                String serviceId = ServicePrefixRouter.serviceId(exchange);
+                String name = serviceId != null ? serviceId : config.getRouteId();
+                LatencyPercentile percentile = latencies(config.getRouteId(), name, config.getPercentile());
+                budget.deposit();
+                long delay = percentile.value();
+                if (delay < 0) {
+                    return timed(exchange, chain, percentile);
+                }
+                Tags tags = Tags.of("route", config.getRouteId(), "service", name);
+                return new HedgedRequest(exchange, chain, percentile, Math.max(delay, minDelay), tags).send();
+            }
+
+            @Override
+            public String toString() {
+                return filterToStringCreator(HedgingGatewayFilterFactory.this)
+                    .append("percentile", config.getPercentile())
+                    .append("minDelay", config.getMinDelay())
+                    .append("paths", config.getPaths())
+                    .toString();
+            }
+        };
+    }
+
+    private static boolean matches(List<PathPattern> paths, ServerWebExchange exchange) {
+        if (paths.isEmpty()) {
+            return true;
+        }
+        PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+        for (PathPattern pattern : paths) {
+            if (pattern.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Mono<Void> timed(ServerWebExchange exchange, GatewayFilterChain chain, LatencyPercentile percentile) {
+        return Mono.defer(() -> {
+            long start = nanoClock.getAsLong();
+            return chain.filter(exchange).doOnSuccess(done -> percentile.record(nanoClock.getAsLong() - start));
+        });
+    }
+
+    private LatencyPercentile latencies(String routeId, String name, double percentile) {
+        String key = routeId + '/' + name;
+        LatencyPercentile latencyPercentile = latencies.get(key);
+        if (latencyPercentile != null && latencyPercentile.percentile() == percentile) {
+            return latencyPercentile;
+        }
+        return latencies.compute(
+            key,
+            (k, existing) -> {
+                if (existing != null && existing.percentile() == percentile) {
+                    return existing;
+                }
+                if (existing == null) {
+                    // on the current percentile, replaced when the percentile of its route changes
+                    TimeGauge
+                        .builder(
+                            "gateway.hedging.delay",
+                            latencies,
+                            TimeUnit.NANOSECONDS,
+                            map -> {
+                                LatencyPercentile current = map.get(key);
+                                return current != null && current.value() >= 0 ? current.value() : Double.NaN;
+                            }
+                        )
+                        .description("The latency past which the requests are hedged")
+                        .tags(Tags.of("route", routeId, "service", name))
+                        .register(meterRegistry);
+                }
+                return new LatencyPercentile(percentile, nanoClock);
+            }
+        );
+    }
+
+    /**
+     * A request sent once, then again to another instance when its response is late, the first response being used.
+     */
+    private final class HedgedRequest {
+
+        private final ServerWebExchange exchange;
+
+        private final GatewayFilterChain chain;
+
+        private final LatencyPercentile latencies;
+
+        private final long delay;
+
+        private final Tags tags;
+
+        private final Sinks.One<Attempt> response = Sinks.one();
+
+        private final Disposable.Swap timer = Disposables.swap();
+
+        // the fields below are guarded by this
+
+        private final List<Attempt> attempts = new ArrayList<>(2);
+
+        private int inFlight;
+
+        private Attempt winner;
+
+        private boolean closed;
+
+        private HedgedRequest(ServerWebExchange exchange, GatewayFilterChain chain, LatencyPercentile latencies, long delay, Tags tags) {
+            this.exchange = exchange;
+            this.chain = chain;
+            this.latencies = latencies;
+            this.delay = delay;
+            this.tags = tags;
+        }
+
+        Mono<Void> send() {
+            return Mono
+                .deferContextual(context -> {
+                    Attempt primary = new Attempt(exchange, exchange.getRequest(), false);
+                    synchronized (this) {
+                        attempts.add(primary);
+                        inFlight++;
+                    }
+                    timer.update(Mono.delay(Duration.ofNanos(delay), scheduler).subscribe(tick -> hedge(primary, context)));
+                    start(primary, context);
+                    return response.asMono();
+                })
+                .doOnNext(this::respond)
+                .doFinally(signal -> close())
+                .then();
+        }
+
+        private void start(Attempt attempt, ContextView context) {
+            attempt.subscription.update(
+                chain.filter(attempt).contextWrite(context).subscribe(null, error -> failed(attempt, error), () -> responded(attempt))
+            );
+        }
+
+        private void hedge(Attempt primary, ContextView context) {
+            Attempt hedge;
+            synchronized (this) {
+                if (closed || winner != null || inFlight == 0) {
+                    return;
+                }
+                if (!budget.withdraw()) {
+                    meterRegistry.counter("gateway.hedging.throttled", tags).increment();
+                    return;
+                }
+                hedge = new Attempt(exchange, excluding(primary), true);
+                attempts.add(hedge);
+                inFlight++;
+            }
+            log.debug("Hedging a request to {}, without a response after {}ms", tags, TimeUnit.NANOSECONDS.toMillis(delay));
+            meterRegistry.counter("gateway.hedging.sent", tags).increment();
+            start(hedge, context);
+        }
+
+        /**
+         * @return the request, telling the load balancer not to choose the instance of the given attempt.
+         */
+        private ServerHttpRequest excluding(Attempt attempt) {
+            Response<ServiceInstance> loadBalancerResponse = attempt.getAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+            if (loadBalancerResponse == null || !loadBalancerResponse.hasServer()) {
+                return exchange.getRequest();
+            }
+            String instanceId = PeakEwmaLoadBalancer.instanceId(loadBalancerResponse.getServer());
+            return exchange.getRequest().mutate().header(PeakEwmaLoadBalancer.EXCLUDED_INSTANCE_HEADER, instanceId).build();
+        }
+
+        private void responded(Attempt attempt) {
+            boolean won;
+            synchronized (this) {
+                won = !attempt.done && !closed && winner == null;
+                if (!attempt.done) {
+                    attempt.done = true;
+                    inFlight--;
+                }
+                if (won) {
+                    winner = attempt;
+                }
+            }
+            latencies.record(nanoClock.getAsLong() - attempt.start);
+            if (!won || response.tryEmitValue(attempt).isFailure()) {
+                // too late, its body is not read
+                Connection connection = attempt.getAttribute(CLIENT_RESPONSE_CONN_ATTR);
+                if (connection != null) {
+                    connection.dispose();
+                }
+            }
+        }
+
+        private void failed(Attempt attempt, Throwable error) {
+            boolean last;
+            synchronized (this) {
+                if (attempt.done) {
+                    return;
+                }
+                attempt.done = true;
+                inFlight--;
+                // the other request may still respond
+                last = inFlight == 0 && winner == null;
+            }
+            if (last) {
+                close();
+                response.tryEmitError(error);
+            }
+        }
+
+        private void respond(Attempt attempt) {
+            close();
+            ServerHttpResponse attemptResponse = attempt.getResponse();
+            if (attemptResponse.getStatusCode() != null) {
+                exchange.getResponse().setStatusCode(attemptResponse.getStatusCode());
+            }
+            exchange.getResponse().getHeaders().putAll(attemptResponse.getHeaders());
+            exchange.getAttributes().putAll(attempt.getAttributes());
+            if (attempt.hedge) {
+                meterRegistry.counter("gateway.hedging.won", tags).increment();
+            }
+        }
+
+        /**
+         * Cancels the requests still waiting for their response, and the hedged request not sent yet.
+         */
+        private void close() {
+            List<Attempt> cancelled = new ArrayList<>(2);
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                for (Attempt attempt : attempts) {
+                    if (!attempt.done) {
+                        attempt.done = true;
+                        cancelled.add(attempt);
+                    }
+                }
+            }
+            timer.dispose();
+            for (Attempt attempt : cancelled) {
+                attempt.subscription.dispose();
+                if (!attempt.hedge) {
+                    // at least
+                    latencies.record(nanoClock.getAsLong() - attempt.start);
+                }
+            }
+        }
+    }
+
+    /**
+     * A request sent by the filters after this one, with attributes and a response of its own.
+     */
+    private final class Attempt extends ServerWebExchangeDecorator {
+
+        private final ServerHttpRequest request;
+
+        private final AttemptResponse response;
+
+        private final Map<String, Object> attributes;
+
+        private final boolean hedge;
+
+        private final long start = nanoClock.getAsLong();
+
+        private final Disposable.Swap subscription = Disposables.swap();
+
+        // guarded by the hedged request
+        private boolean done;
+
+        private Attempt(ServerWebExchange exchange, ServerHttpRequest request, boolean hedge) {
+            super(exchange);
+            this.request = request;
+            this.response = new AttemptResponse(exchange.getResponse().bufferFactory());
+            this.attributes = new ConcurrentHashMap<>(exchange.getAttributes());
+            // added to by the load balancer filter
+            this.attributes.computeIfPresent(GATEWAY_ORIGINAL_REQUEST_URL_ATTR, (name, urls) -> new LinkedHashSet<>((Set<?>) urls));
+            this.hedge = hedge;
+        }
+
+        @Override
+        public ServerHttpRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public ServerHttpResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+    }
+
+    /**
+     * The response of a request, whose status and headers are set by the routing filter, and whose body is written by the
+     * {@code NettyWriteResponseFilter}, before this filter, to the response of the exchange.
+     */
+    private static final class AttemptResponse extends AbstractServerHttpResponse {
+
+        private AttemptResponse(DataBufferFactory bufferFactory) {
+            super(bufferFactory);
+        }
+
+        @Override
+        public <T> T getNativeResponse() {
+            throw new IllegalStateException("The response of a hedged request has no native response");
+        }
+
+        @Override
+        protected void applyStatusCode() {}
+
+        @Override
+        protected void applyHeaders() {}
+
+        @Override
+        protected void applyCookies() {}
+
+        @Override
+        protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+            return Mono.error(new IllegalStateException("The body of a hedged request is written to the response of the exchange"));
+        }
+
+        @Override
+        protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return Mono.error(new IllegalStateException("The body of a hedged request is written to the response of the exchange"));
+        }
+    }
+
+    public static class Config implements HasRouteId {
+
+        private String routeId;
+
+        private double percentile = 0.95;
+
+        private Duration minDelay = Duration.ofMillis(10);
+
+        // the path patterns of the requests to hedge, all of them when empty
+        private List<String> paths = new ArrayList<>();
+
+        @Override
+        public void setRouteId(String routeId) {
+            this.routeId = routeId;
+        }
+
+        @Override
+        public String getRouteId() {
+            return routeId;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public Duration getMinDelay() {
+            return minDelay;
+        }
+
+        public void setMinDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        public void setPaths(List<String> paths) {
+            this.paths = paths;
+        }
+    }
+}
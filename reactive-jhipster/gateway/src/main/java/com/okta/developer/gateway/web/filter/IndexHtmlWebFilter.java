@@ -0,0 +1,198 @@
+package com.okta.developer.gateway.web.filter;
+
+import com.okta.developer.gateway.web.resource.ContentCodings;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Serves the client {@code index.html}, which {@link SpaWebFilter} forwards the deep links of the client to, from an
+ * in-memory copy rather than through the static resources chain.
+ * <p>
+ * The copy is gzipped once, and also served with brotli when the build wrote an {@code index.html.br} next to it. It's served
+ * with an ETag and {@code Cache-Control: no-cache}, so browsers revalidate it and get a 304 while it didn't change. When a
+ * reload interval is given, in development, the file is checked for changes at most once per interval.
+ */
+public class IndexHtmlWebFilter implements WebFilter {
+
+    private static final String INDEX_HTML_PATH = "/index.html";
+
+    private static final MediaType TEXT_HTML_UTF8 = new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+
+    private final Logger log = LoggerFactory.getLogger(IndexHtmlWebFilter.class);
+
+    private final Resource indexHtml;
+
+    private final Duration reloadInterval;
+
+    private volatile IndexHtml current;
+
+    private volatile long nextReloadCheck;
+
+    /**
+     * @param indexHtml the client {@code index.html}.
+     * @param reloadInterval how often the file is checked for changes, {@code null} to never reload it.
+     */
+    public IndexHtmlWebFilter(Resource indexHtml, Duration reloadInterval) {
+        this.indexHtml = indexHtml;
+        this.reloadInterval = reloadInterval;
+        this.current = load();
+        if (reloadInterval != null) {
+            this.nextReloadCheck = System.nanoTime() + reloadInterval.toNanos();
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (
+            !INDEX_HTML_PATH.equals(request.getURI().getPath()) ||
+            (request.getMethod() != HttpMethod.GET && request.getMethod() != HttpMethod.HEAD)
+        ) {
+            return chain.filter(exchange);
+        }
+        return current().flatMap(index -> index.identity != null ? write(exchange, index) : chain.filter(exchange));
+    }
+
+    private Mono<IndexHtml> current() {
+        if (reloadInterval == null || System.nanoTime() - nextReloadCheck < 0) {
+            return Mono.just(current);
+        }
+        // reading the file blocks
+        return Mono.fromCallable(this::reloadIfModified).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private synchronized IndexHtml reloadIfModified() {
+        if (System.nanoTime() - nextReloadCheck >= 0) {
+            if (lastModified(indexHtml) != current.lastModified) {
+                log.debug("Reloading {}", indexHtml);
+                current = load();
+            }
+            nextReloadCheck = System.nanoTime() + reloadInterval.toNanos();
+        }
+        return current;
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, IndexHtml index) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders headers = response.getHeaders();
+        headers.setCacheControl(CacheControl.noCache());
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        if (exchange.checkNotModified(index.eTag)) {
+            return response.setComplete();
+        }
+        List<String> acceptEncoding = exchange.getRequest().getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING);
+        byte[] body = index.identity;
+        if (index.brotli != null && ContentCodings.accepts(acceptEncoding, "br")) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "br");
+            body = index.brotli;
+        } else if (index.gzip != null && ContentCodings.accepts(acceptEncoding, "gzip")) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            body = index.gzip;
+        }
+        response.setStatusCode(HttpStatus.OK);
+        headers.setContentType(TEXT_HTML_UTF8);
+        headers.setContentLength(body.length);
+        if (exchange.getRequest().getMethod() == HttpMethod.HEAD) {
+            return response.setComplete();
+        }
+        byte[] content = body;
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(content)));
+    }
+
+    private IndexHtml load() {
+        long lastModified = lastModified(indexHtml);
+        if (!indexHtml.exists()) {
+            log.debug("{} was not found, it will be served by the static resources chain", indexHtml);
+            return new IndexHtml(null, null, null, lastModified);
+        }
+        byte[] identity = read(indexHtml);
+        byte[] gzip = gzip(identity);
+        byte[] brotli = null;
+        try {
+            Resource brotliIndexHtml = indexHtml.createRelative("index.html.br");
+            // unless it was left over by a previous build
+            if (brotliIndexHtml.exists() && lastModified(brotliIndexHtml) >= lastModified) {
+                brotli = read(brotliIndexHtml);
+            }
+        } catch (IOException e) {
+            log.debug("No brotli-compressed copy of {}: {}", indexHtml, e.getMessage());
+        }
+        return new IndexHtml(identity, gzip.length < identity.length ? gzip : null, brotli, lastModified);
+    }
+
+    private static byte[] read(Resource resource) {
+        try (InputStream in = resource.getInputStream()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long lastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2);
+        try (
+            GZIPOutputStream out = new GZIPOutputStream(bytes) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }
+        ) {
+            out.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The content of {@code index.html}, null when the file doesn't exist, and its compressed copies.
+     */
+    private static final class IndexHtml {
+
+        private final byte[] identity;
+        private final byte[] gzip;
+        private final byte[] brotli;
+        private final long lastModified;
+        private final String eTag;
+
+        private IndexHtml(byte[] identity, byte[] gzip, byte[] brotli, long lastModified) {
+            this.identity = identity;
+            this.gzip = gzip;
+            this.brotli = brotli;
+            this.lastModified = lastModified;
+            // weak, as the content is the same whatever its coding
+            this.eTag = identity != null ? "W/\"" + DigestUtils.md5DigestAsHex(identity) + "\"" : null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.okta.developer.gateway.web.filter;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A percentile of the latencies of the last 5 to 10 seconds, from two histograms of 5 seconds each, the older one being
+ * replaced by a new one every 5 seconds.
+ * <p>
+ * The histograms have 8 buckets per power of two of microseconds, so the percentile, the upper bound of its bucket, is at most
+ * 12.5% over the exact one. It's computed again every few samples, and read without locking.
+ */
+final class LatencyPercentile {
+
+    private static final long HALF_WINDOW = TimeUnit.SECONDS.toNanos(5);
+
+    // fewer samples don't tell a percentile apart from the maximum
+    private static final int MIN_SAMPLES = 50;
+
+    private static final int UPDATE_INTERVAL = 16;
+
+    private static final int SUB_BUCKETS = 8;
+
+    // up to 2^40 microseconds, 12 days
+    private static final int BUCKETS = (40 - 1) * SUB_BUCKETS;
+
+    private final double percentile;
+
+    private final LongSupplier nanoClock;
+
+    private long[] current = new long[BUCKETS];
+
+    private long[] previous = new long[BUCKETS];
+
+    private int currentCount;
+
+    private int previousCount;
+
+    private long rotation;
+
+    private int sinceUpdate;
+
+    // in nanoseconds, -1 until there are enough samples
+    private volatile long value = -1;
+
+    LatencyPercentile(double percentile, LongSupplier nanoClock) {
+        this.percentile = percentile;
+        this.nanoClock = nanoClock;
+        this.rotation = nanoClock.getAsLong() + HALF_WINDOW;
+    }
+
+    double percentile() {
+        return percentile;
+    }
+
+    /**
+     * @return the percentile of the latencies, in nanoseconds, or -1 when there are too few recent samples.
+     */
+    long value() {
+        return value;
+    }
+
+    synchronized void record(long latency) {
+        long now = nanoClock.getAsLong();
+        boolean rotated = rotate(now);
+        current[bucket(TimeUnit.NANOSECONDS.toMicros(latency))]++;
+        currentCount++;
+        if (rotated || ++sinceUpdate >= UPDATE_INTERVAL) {
+            sinceUpdate = 0;
+            value = compute();
+        }
+    }
+
+    private boolean rotate(long now) {
+        if (now - rotation < 0) {
+            return false;
+        }
+        long[] older = previous;
+        Arrays.fill(older, 0);
+        if (now - rotation < HALF_WINDOW) {
+            previous = current;
+            previousCount = currentCount;
+        } else {
+            // no sample for a whole window
+            Arrays.fill(current, 0);
+            previous = current;
+            previousCount = 0;
+        }
+        current = older;
+        currentCount = 0;
+        rotation = now + HALF_WINDOW;
+        return true;
+    }
+
+    private long compute() {
+        int count = currentCount + previousCount;
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        long rank = (long) Math.ceil(percentile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += current[i] + previous[i];
+            if (seen >= rank) {
+                return TimeUnit.MICROSECONDS.toNanos(upperBound(i));
+            }
+        }
+        return TimeUnit.MICROSECONDS.toNanos(upperBound(BUCKETS - 1));
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int index = (exponent - 2) * SUB_BUCKETS + (int) ((micros >>> (exponent - 3)) & (SUB_BUCKETS - 1));
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 2;
+        return ((SUB_BUCKETS + bucket % SUB_BUCKETS + 1L) << (exponent - 3)) - 1;
+    }
+}
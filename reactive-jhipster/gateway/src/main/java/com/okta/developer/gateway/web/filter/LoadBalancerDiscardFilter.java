@@ -0,0 +1,85 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycleValidator;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Tells the load balancer that a request was cancelled before its response, by completing it with the
+ * {@link CompletionContext.Status#DISCARD} status, as the gateway's load balancer filter only completes the requests which
+ * succeeded or failed. Otherwise, the requests cancelled when their client goes away, when they time out, or when a hedged
+ * request wins, would be counted in flight to their instance for good by the {@code PeakEwmaLoadBalancer}.
+ * <p>
+ * It runs right after the load balancer filter, once the instance is chosen.
+ */
+@Component
+public class LoadBalancerDiscardFilter implements GlobalFilter, Ordered {
+
+    private final LoadBalancerClientFactory loadBalancerClientFactory;
+
+    public LoadBalancerDiscardFilter(LoadBalancerClientFactory loadBalancerClientFactory) {
+        this.loadBalancerClientFactory = loadBalancerClientFactory;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        return chain.filter(exchange).doOnCancel(() -> discard(exchange));
+    }
+
+    @Override
+    public int getOrder() {
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+    }
+
+    private void discard(ServerWebExchange exchange) {
+        Response<ServiceInstance> loadBalancerResponse = exchange.getAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        String serviceId = loadBalancedServiceId(exchange);
+        if (loadBalancerResponse == null || !loadBalancerResponse.hasServer() || serviceId == null) {
+            return;
+        }
+        Map<String, LoadBalancerLifecycle> lifecycles = loadBalancerClientFactory.getInstances(serviceId, LoadBalancerLifecycle.class);
+        if (lifecycles == null || lifecycles.isEmpty()) {
+            return;
+        }
+        Request<RequestDataContext> request = new DefaultRequest<>(new RequestDataContext(new RequestData(exchange.getRequest())));
+        LoadBalancerLifecycleValidator
+            .getSupportedLifecycleProcessors(lifecycles, RequestDataContext.class, ResponseData.class, ServiceInstance.class)
+            .forEach(lifecycle ->
+                lifecycle.onComplete(new CompletionContext<>(CompletionContext.Status.DISCARD, request, loadBalancerResponse))
+            );
+    }
+
+    /**
+     * @return the id of the service of the {@code lb://} URL of the request, as known to the load balancer.
+     */
+    private static String loadBalancedServiceId(ServerWebExchange exchange) {
+        Set<URI> urls = exchange.getAttributeOrDefault(GATEWAY_ORIGINAL_REQUEST_URL_ATTR, Set.of());
+        for (URI url : urls) {
+            if ("lb".equals(url.getScheme())) {
+                return url.getHost();
+            }
+        }
+        return null;
+    }
+}
@@ -1,14 +1,22 @@
 package com.okta.developer.gateway.web.filter;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 import java.util.zip.GZIPInputStream;
@@ -22,31 +30,61 @@ import org.springframework.core.Ordered;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
 import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+/**
+ * Sets the servers of the services' OpenAPI docs to the gateway route of the service.
+ * <p>
+ * The rewritten docs are cached until the service's doc changes, which is detected with its ETag, or with a digest of its
+ * content when the service doesn't send one. A cached doc is revalidated with a conditional request to the service, and
+ * served with an ETag of its own, so the conditional requests of the clients are answered with a 304. The JSON tokens are
+ * copied as they are parsed, rather than building a tree of the whole doc.
+ */
 @Component
-public class ModifyServersOpenApiFilter implements GlobalFilter, Ordered {
+public class ModifyServersOpenApiFilter implements GlobalFilter, Ordered, MeterBinder {
 
     private static final String OPEN_API_PATH = "/v3/api-docs";
     private static final Logger log = LoggerFactory.getLogger(ModifyServersOpenApiFilter.class);
 
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private static final int CACHE_MAXIMUM_SIZE = 500;
+
+    private final Cache<String, RewrittenApiDocs> cache = Caffeine
+        .newBuilder()
+        .maximumSize(CACHE_MAXIMUM_SIZE)
+        .expireAfterAccess(Duration.ofHours(1))
+        .recordStats()
+        .build();
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        String path = exchange.getRequest().getURI().getPath();
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getURI().getPath();
         if (path.startsWith("/services") && path.contains(OPEN_API_PATH)) {
             ServerHttpResponse originalResponse = exchange.getResponse();
             DataBufferFactory bufferFactory = originalResponse.bufferFactory();
-            ServerHttpResponseDecorator decoratedResponse = createModifyServersOpenApiInterceptor(path, originalResponse, bufferFactory);
+            ModifyServersOpenApiInterceptor decoratedResponse = createModifyServersOpenApiInterceptor(
+                path,
+                request,
+                originalResponse,
+                bufferFactory
+            );
+            ServerHttpRequest upstreamRequest = request.mutate().headers(decoratedResponse::setUpstreamConditions).build();
 
             // replace response with decorator
-            return chain.filter(exchange.mutate().response(decoratedResponse).build());
+            return chain.filter(exchange.mutate().request(upstreamRequest).response(decoratedResponse).build());
         } else {
             return chain.filter(exchange);
         }
@@ -57,91 +95,218 @@ public class ModifyServersOpenApiFilter implements GlobalFilter, Ordered {
         return -1;
     }
 
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "gateway.api.docs");
+    }
+
     public ModifyServersOpenApiInterceptor createModifyServersOpenApiInterceptor(
         String path,
+        ServerHttpRequest request,
         ServerHttpResponse originalResponse,
         DataBufferFactory bufferFactory
     ) {
-        return new ModifyServersOpenApiInterceptor(path, originalResponse, bufferFactory);
+        return new ModifyServersOpenApiInterceptor(path, request, originalResponse, bufferFactory);
+    }
+
+    /**
+     * Copies an api-doc, setting its servers to the given url.
+     */
+    static byte[] rewriteServers(InputStream content, String serverUrl) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+        try (JsonParser parser = jsonFactory.createParser(content); JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "The api-doc isn't a JSON object");
+            }
+            generator.writeStartObject();
+            boolean serversWritten = false;
+            JsonToken token;
+            while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                if ("servers".equals(name)) {
+                    // replaced where it was
+                    parser.skipChildren();
+                    if (!serversWritten) {
+                        writeServers(generator, serverUrl);
+                        serversWritten = true;
+                    }
+                } else {
+                    generator.writeFieldName(name);
+                    generator.copyCurrentStructure(parser);
+                }
+            }
+            if (token != JsonToken.END_OBJECT) {
+                throw new JsonParseException(parser, "The api-doc is truncated");
+            }
+            if (!serversWritten) {
+                writeServers(generator, serverUrl);
+            }
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeServers(JsonGenerator generator, String serverUrl) throws IOException {
+        generator.writeArrayFieldStart("servers");
+        generator.writeStartObject();
+        generator.writeStringField("url", serverUrl);
+        generator.writeStringField("description", "added by global filter");
+        generator.writeEndObject();
+        generator.writeEndArray();
     }
 
     public class ModifyServersOpenApiInterceptor extends ServerHttpResponseDecorator {
 
         private final String path;
+        private final String cacheKey;
+        private final HttpHeaders requestHeaders;
+        // the conditions of the client, read before they're replaced in the request sent to the service
+        private final List<String> ifNoneMatch;
         private final ServerHttpResponse originalResponse;
         private final DataBufferFactory bufferFactory;
-        private String rewritedBody = "";
 
-        private ModifyServersOpenApiInterceptor(String path, ServerHttpResponse originalResponse, DataBufferFactory bufferFactory) {
+        // the doc cached when the request was received, which the service is asked to revalidate
+        private final RewrittenApiDocs cached;
+
+        private RewrittenApiDocs rewritten;
+
+        private ModifyServersOpenApiInterceptor(
+            String path,
+            ServerHttpRequest request,
+            ServerHttpResponse originalResponse,
+            DataBufferFactory bufferFactory
+        ) {
             super(originalResponse);
             this.path = path;
+            String query = request.getURI().getRawQuery();
+            this.cacheKey = query == null ? path : path + '?' + query;
+            this.requestHeaders = request.getHeaders();
+            this.ifNoneMatch = ifNoneMatch(path, requestHeaders);
             this.originalResponse = originalResponse;
             this.bufferFactory = bufferFactory;
+            this.cached = cache.getIfPresent(cacheKey);
         }
 
         public String getRewritedBody() {
-            return rewritedBody;
+            return rewritten != null ? new String(rewritten.body, StandardCharsets.UTF_8) : "";
+        }
+
+        /**
+         * Replaces the client's conditions, which are on the rewritten doc, with a condition on the doc of the service.
+         */
+        private void setUpstreamConditions(HttpHeaders headers) {
+            headers.remove(HttpHeaders.IF_NONE_MATCH);
+            headers.remove(HttpHeaders.IF_MODIFIED_SINCE);
+            if (cached != null && cached.upstreamETag != null) {
+                headers.setIfNoneMatch(cached.upstreamETag);
+            }
         }
 
         @Override
         public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
-            rewritedBody = "";
+            rewritten = null;
             if (body instanceof Flux) {
                 Flux<? extends DataBuffer> fluxBody = (Flux<? extends DataBuffer>) body;
-
-                return super.writeWith(fluxBody.buffer().map(dataBuffers -> rewriteBodyWithServers(dataBuffers)));
+                HttpStatusCode statusCode = getStatusCode();
+                if (statusCode != null && statusCode.value() == HttpStatus.NOT_MODIFIED.value() && cached != null) {
+                    // the doc of the service didn't change
+                    return fluxBody.doOnNext(DataBufferUtils::release).then(Mono.defer(this::writeRevalidated));
+                }
+                if (statusCode != null && !statusCode.is2xxSuccessful()) {
+                    return super.writeWith(body);
+                }
+                return DataBufferUtils
+                    .join(fluxBody)
+                    .map(join -> {
+                        byte[] content = new byte[join.readableByteCount()];
+                        join.read(content);
+                        // release memory
+                        DataBufferUtils.release(join);
+                        return content;
+                    })
+                    .defaultIfEmpty(new byte[0])
+                    .flatMap(this::writeRewritten);
             }
             // when body is not a flux
             return super.writeWith(body);
         }
 
-        private DataBuffer rewriteBodyWithServers(List<? extends DataBuffer> dataBuffers) {
-            DataBufferFactory dataBufferFactory = new DefaultDataBufferFactory();
-            DataBuffer join = dataBufferFactory.join(dataBuffers);
-            byte[] content = new byte[join.readableByteCount()];
-            join.read(content);
+        private Mono<Void> writeRevalidated() {
+            HttpHeaders headers = originalResponse.getHeaders();
+            setStatusCode(HttpStatus.OK);
+            if (cached.contentType != null) {
+                headers.setContentType(cached.contentType);
+            }
+            boolean zipped = requestHeaders.getOrEmpty(HttpHeaders.ACCEPT_ENCODING).stream().anyMatch(value -> value.contains("gzip"));
+            if (zipped) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            } else {
+                headers.remove(HttpHeaders.CONTENT_ENCODING);
+            }
+            return write(cached, zipped);
+        }
 
-            // release memory
-            DataBufferUtils.release(join);
-            String strBody = contentToString(content);
+        private Mono<Void> writeRewritten(byte[] content) {
+            RewrittenApiDocs docs = rewriteBodyWithServers(content);
+            if (docs == null) {
+                return super.writeWith(Mono.just(bufferFactory.wrap(content)));
+            }
+            return write(docs, isZippedResponse());
+        }
 
-            try {
-                // create custom server
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode jsonBody = mapper.readTree(strBody);
-                ObjectNode serversToJson = mapper.createObjectNode();
-                serversToJson.set("url", mapper.valueToTree(path.replaceFirst(OPEN_API_PATH + "(/.*)?$", "")));
-                serversToJson.set("description", mapper.valueToTree("added by global filter"));
-
-                // add custom server
-                ArrayNode servers = mapper.createArrayNode();
-                servers.add(serversToJson);
-                ((ObjectNode) jsonBody).set("servers", servers);
-
-                rewritedBody = jsonBody.toString();
-                return rewritedBodyToDataBuffer();
-            } catch (JsonProcessingException e) {
+        private RewrittenApiDocs rewriteBodyWithServers(byte[] content) {
+            String upstreamETag = originalResponse.getHeaders().getETag();
+            String contentDigest = upstreamETag == null ? DigestUtils.md5DigestAsHex(content) : null;
+            if (cached != null && cached.isRewriteOf(upstreamETag, contentDigest)) {
+                return cached;
+            }
+            try (
+                InputStream in = isZippedResponse()
+                    ? new GZIPInputStream(new ByteArrayInputStream(content))
+                    : new ByteArrayInputStream(content)
+            ) {
+                byte[] body = rewriteServers(in, path.replaceFirst(OPEN_API_PATH + "(/.*)?$", ""));
+                RewrittenApiDocs docs = new RewrittenApiDocs(
+                    upstreamETag,
+                    contentDigest,
+                    originalResponse.getHeaders().getContentType(),
+                    body
+                );
+                cache.put(cacheKey, docs);
+                return docs;
+            } catch (IOException e) {
                 log.error("Error when modify servers from api-doc of {}: {}", path, e.getMessage());
             }
-            return join;
+            return null;
         }
 
-        private DataBuffer rewritedBodyToDataBuffer() {
-            if (isZippedResponse()) {
-                byte[] zippedBody = zipContent(rewritedBody);
-                originalResponse.getHeaders().setContentLength(zippedBody.length);
-                return bufferFactory.wrap(zippedBody);
+        private Mono<Void> write(RewrittenApiDocs docs, boolean zipped) {
+            rewritten = docs;
+            HttpHeaders headers = originalResponse.getHeaders();
+            headers.setETag(docs.eTag);
+            headers.remove(HttpHeaders.TRANSFER_ENCODING);
+            // zipped depending on the request, whether the service said so or not
+            if (headers.getVary().stream().noneMatch(HttpHeaders.ACCEPT_ENCODING::equalsIgnoreCase)) {
+                headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
             }
-            originalResponse.getHeaders().setContentLength(rewritedBody.getBytes().length);
-            return bufferFactory.wrap(rewritedBody.getBytes());
+            if (docs.matches(ifNoneMatch)) {
+                setStatusCode(HttpStatus.NOT_MODIFIED);
+                headers.remove(HttpHeaders.CONTENT_LENGTH);
+                return setComplete();
+            }
+            byte[] body = zipped ? docs.zipped() : docs.body;
+            headers.setContentLength(body.length);
+            return super.writeWith(Mono.just(bufferFactory.wrap(body)));
         }
 
-        private String contentToString(byte[] content) {
-            if (isZippedResponse()) {
-                byte[] unzippedContent = unzipContent(content);
-                return new String(unzippedContent, StandardCharsets.UTF_8);
+        private static List<String> ifNoneMatch(String path, HttpHeaders requestHeaders) {
+            try {
+                return requestHeaders.getIfNoneMatch();
+            } catch (IllegalArgumentException e) {
+                log.debug("Ignoring the invalid If-None-Match header of a request for {}: {}", path, e.getMessage());
+                return List.of();
             }
-            return new String(content, StandardCharsets.UTF_8);
         }
 
         private boolean isZippedResponse() {
@@ -151,31 +316,64 @@ public class ModifyServersOpenApiFilter implements GlobalFilter, Ordered {
                 Objects.requireNonNull(originalResponse.getHeaders().get(HttpHeaders.CONTENT_ENCODING)).contains("gzip")
             );
         }
+    }
 
-        private byte[] unzipContent(byte[] content) {
-            try {
-                GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(content));
-                byte[] unzippedContent = gzipInputStream.readAllBytes();
-                gzipInputStream.close();
-                return unzippedContent;
-            } catch (IOException e) {
-                log.error("Error when unzip content during modify servers from api-doc of {}: {}", path, e.getMessage());
+    /**
+     * An api-doc whose servers were rewritten, along with what identifies the doc of the service it was rewritten from.
+     */
+    private static final class RewrittenApiDocs {
+
+        private final String upstreamETag;
+        private final String contentDigest;
+        private final MediaType contentType;
+        private final byte[] body;
+        private final String eTag;
+
+        private volatile byte[] zipped;
+
+        private RewrittenApiDocs(String upstreamETag, String contentDigest, MediaType contentType, byte[] body) {
+            this.upstreamETag = upstreamETag;
+            this.contentDigest = contentDigest;
+            this.contentType = contentType;
+            this.body = body;
+            // weak, as the doc is the same whether it's zipped or not
+            this.eTag = "W/\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        }
+
+        private boolean isRewriteOf(String upstreamETag, String contentDigest) {
+            return upstreamETag != null ? upstreamETag.equals(this.upstreamETag) : contentDigest.equals(this.contentDigest);
+        }
+
+        private boolean matches(List<String> ifNoneMatch) {
+            for (String candidate : ifNoneMatch) {
+                if ("*".equals(candidate) || opaqueTag(candidate).equals(opaqueTag(eTag))) {
+                    return true;
+                }
             }
-            return content;
+            return false;
         }
 
-        private byte[] zipContent(String content) {
-            try {
-                ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(content.length());
-                GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream);
-                gzipOutputStream.write(content.getBytes(StandardCharsets.UTF_8));
-                gzipOutputStream.flush();
-                gzipOutputStream.close();
-                return byteArrayOutputStream.toByteArray();
+        private byte[] zipped() {
+            byte[] result = zipped;
+            if (result == null) {
+                result = zipContent(body);
+                zipped = result;
+            }
+            return result;
+        }
+
+        private static String opaqueTag(String eTag) {
+            return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+        }
+
+        private static byte[] zipContent(byte[] content) {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(content.length / 4);
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+                gzipOutputStream.write(content);
             } catch (IOException e) {
-                log.error("Error when zip content during modify servers from api-doc of {}: {}", path, e.getMessage());
+                throw new UncheckedIOException(e);
             }
-            return content.getBytes();
+            return byteArrayOutputStream.toByteArray();
         }
     }
 }
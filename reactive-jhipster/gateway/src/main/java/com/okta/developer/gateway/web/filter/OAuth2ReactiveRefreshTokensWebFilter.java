@@ -12,6 +12,9 @@ import reactor.core.publisher.Mono;
 
 /**
  * Refresh oauth2 tokens based on TokenRelayGatewayFilterFactory.
+ * <p>
+ * The manager is the {@link com.okta.developer.gateway.security.oauth2.RefreshAheadAuthorizedClientManager}, which only goes
+ * through the refresh logic when the access token is about to expire.
  */
 @Component
 public class OAuth2ReactiveRefreshTokensWebFilter implements WebFilter {
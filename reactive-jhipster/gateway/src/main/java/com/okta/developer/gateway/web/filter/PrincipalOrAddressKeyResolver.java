@@ -0,0 +1,32 @@
+package com.okta.developer.gateway.web.filter;
+
+import com.okta.developer.gateway.security.SecurityUtils;
+import java.net.InetSocketAddress;
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Resolves the key of the rate limits of a request: the login of the user when authenticated, or else the address of the
+ * client, so that the anonymous users don't share a single limit. There's no key, and the request is denied by the
+ * {@code RequestRateLimiter} filter, when neither is known.
+ */
+@Component
+public class PrincipalOrAddressKeyResolver implements KeyResolver {
+
+    @Override
+    public Mono<String> resolve(ServerWebExchange exchange) {
+        return SecurityUtils
+            .isAuthenticated()
+            .filter(Boolean::booleanValue)
+            .flatMap(authenticated -> SecurityUtils.getCurrentUserLogin())
+            .map(login -> "user:" + login)
+            .switchIfEmpty(Mono.fromSupplier(() -> address(exchange)));
+    }
+
+    private static String address(ServerWebExchange exchange) {
+        InetSocketAddress remoteAddress = exchange.getRequest().getRemoteAddress();
+        return remoteAddress != null ? "ip:" + remoteAddress.getHostString() : null;
+    }
+}
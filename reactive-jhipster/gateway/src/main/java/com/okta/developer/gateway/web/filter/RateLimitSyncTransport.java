@@ -0,0 +1,23 @@
+package com.okta.developer.gateway.web.filter;
+
+import java.util.Map;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Carries the tokens taken from the buckets of the {@link TokenBucketRateLimiter} between the gateways, for each to take them
+ * from its own buckets as well. The counts may be late, lost or merged, the limits between the gateways being approximate.
+ */
+public interface RateLimitSyncTransport {
+    /**
+     * Sends the tokens taken on this gateway to the others.
+     *
+     * @param granted the tokens taken since the previous call, by bucket.
+     */
+    Mono<Void> publish(Map<String, Long> granted);
+
+    /**
+     * @return the tokens taken on the other gateways, as they are published, but not the ones published by this one.
+     */
+    Flux<Map<String, Long>> received();
+}
@@ -0,0 +1,742 @@
+package com.okta.developer.gateway.web.filter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.okta.developer.gateway.config.ApplicationProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.context.ContextView;
+
+/**
+ * Caches the responses of the services to the GET requests under {@code /services/}, as a shared cache would, so the read-heavy
+ * endpoints aren't proxied on every call.
+ * <p>
+ * A 200 is cached when its {@code Cache-Control} gives it a {@code max-age} or an {@code s-maxage}, and has no
+ * {@code no-store}, {@code no-cache} or {@code private}, and when it sets no cookie. The services seeing the token of the
+ * user, the response to an authenticated request is only cached when it's {@code public} or has an {@code s-maxage}, and it's
+ * then only served to the users with the same authorities. The request headers named by {@code Vary} are part of the key.
+ * <p>
+ * Concurrent misses on a response are coalesced into a single request to the service. An expired response is still served
+ * during its {@code stale-while-revalidate}, while it's revalidated in the background with a conditional request.
+ * <p>
+ * The cache is bounded by the bytes of the responses. Its hits, stale hits, misses and bytes are published as the
+ * {@code gateway.responses.cache.*} metrics, its evictions as the {@code cache.*} ones of the {@code gateway.responses} cache.
+ */
+@Component
+public class ResponseCacheFilter implements GlobalFilter, Ordered, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseCacheFilter.class);
+
+    // cached by the ModifyServersOpenApiFilter
+    private static final String OPEN_API_PATH = "/v3/api-docs";
+
+    private static final AuthorizationScope ANONYMOUS = new AuthorizationScope(false, "anonymous");
+
+    // the Vary of the resources whose responses aren't cacheable
+    private static final List<String> UNCACHEABLE = List.of("*");
+
+    // how long the Vary of a resource is remembered, or that its responses aren't cacheable
+    private static final Duration RESOURCE_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+    private static final int MAXIMUM_RESOURCES = 10_000;
+
+    // an estimate of the bytes of an entry besides its key, headers and body
+    private static final int ENTRY_OVERHEAD = 256;
+
+    // the headers describing the connection or the transfer rather than the response, and the ones set on writing it
+    private static final Set<String> UNCACHED_HEADERS = Stream
+        .of(
+            HttpHeaders.AGE,
+            HttpHeaders.CONNECTION,
+            HttpHeaders.CONTENT_LENGTH,
+            HttpHeaders.SET_COOKIE,
+            HttpHeaders.TRANSFER_ENCODING,
+            HttpHeaders.UPGRADE,
+            "Keep-Alive",
+            "Proxy-Connection"
+        )
+        .collect(Collectors.toCollection(() -> new TreeSet<>(String.CASE_INSENSITIVE_ORDER)));
+
+    private enum Result {
+        HIT,
+        STALE,
+        MISS,
+        COALESCED,
+        UNCACHEABLE
+    }
+
+    /**
+     * Who a response is served to: anyone, or the users with the same authorities.
+     */
+    private record AuthorizationScope(boolean authenticated, String key) {}
+
+    /**
+     * How long a response is fresh, then served stale while revalidated, in nanoseconds.
+     */
+    private record Freshness(long freshFor, long staleFor) {}
+
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+
+    private final ApplicationProperties.ResponseCache properties;
+
+    private final Ticker ticker;
+
+    private final Cache<String, CachedResponse> cache;
+
+    // the request headers named by the Vary of the responses of a resource, by scope, path and query
+    private final Cache<String, List<String>> resources;
+
+    private final Map<String, Sinks.One<CachedResponse>> misses = new ConcurrentHashMap<>();
+
+    private final Set<String> revalidations = ConcurrentHashMap.newKeySet();
+
+    private final Map<Result, LongAdder> results = new EnumMap<>(Result.class);
+
+    @Autowired
+    public ResponseCacheFilter(ApplicationProperties applicationProperties) {
+        this(applicationProperties.getResponseCache(), Ticker.systemTicker());
+    }
+
+    ResponseCacheFilter(ApplicationProperties.ResponseCache properties, Ticker ticker) {
+        this.properties = properties;
+        this.ticker = ticker;
+        this.cache =
+            Caffeine
+                .newBuilder()
+                .maximumWeight(properties.getMaximumSize().toBytes())
+                .weigher((String key, CachedResponse response) -> response.weight(key))
+                .expireAfter(
+                    new Expiry<String, CachedResponse>() {
+                        @Override
+                        public long expireAfterCreate(String key, CachedResponse response, long currentTime) {
+                            return Math.max(0, response.staleUntil() - currentTime);
+                        }
+
+                        @Override
+                        public long expireAfterUpdate(String key, CachedResponse response, long currentTime, long currentDuration) {
+                            return Math.max(0, response.staleUntil() - currentTime);
+                        }
+
+                        @Override
+                        public long expireAfterRead(String key, CachedResponse response, long currentTime, long currentDuration) {
+                            return currentDuration;
+                        }
+                    }
+                )
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        this.resources =
+            Caffeine.newBuilder().maximumSize(MAXIMUM_RESOURCES).expireAfterWrite(RESOURCE_TIME_TO_LIVE).ticker(ticker).build();
+        for (Result result : Result.values()) {
+            results.put(result, new LongAdder());
+        }
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!properties.isEnabled() || !isCacheable(exchange.getRequest())) {
+            return chain.filter(exchange);
+        }
+        return exchange
+            .getPrincipal()
+            .map(this::authorizationScope)
+            .defaultIfEmpty(ANONYMOUS)
+            .flatMap(scope -> filter(exchange, chain, scope));
+    }
+
+    @Override
+    public int getOrder() {
+        // before the response is written by the NettyWriteResponseFilter, and before the route filters, skipped by the hits
+        return -2;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "gateway.responses");
+        Gauge
+            .builder("gateway.responses.cache.size", this, ResponseCacheFilter::weightedSize)
+            .description("The bytes of the cached responses")
+            .baseUnit(BaseUnits.BYTES)
+            .register(registry);
+        results.forEach((result, count) ->
+            FunctionCounter
+                .builder("gateway.responses.cache.requests", count, LongAdder::sum)
+                .description("The requests for cacheable responses, by whether they were served from the cache")
+                .tag("result", result.name().toLowerCase(Locale.ROOT))
+                .register(registry)
+        );
+    }
+
+    private static boolean isCacheable(ServerHttpRequest request) {
+        String path = request.getURI().getRawPath();
+        if (request.getMethod() != HttpMethod.GET || !path.startsWith(ServicePrefixRouter.PREFIX) || path.contains(OPEN_API_PATH)) {
+            return false;
+        }
+        HttpHeaders headers = request.getHeaders();
+        if (headers.containsKey(HttpHeaders.RANGE)) {
+            return false;
+        }
+        // the client asks for a response from the service
+        CacheDirectives directives = CacheDirectives.parse(headers.getCacheControl());
+        return !directives.has("no-cache") && !directives.has("no-store") && !headers.getOrEmpty(HttpHeaders.PRAGMA).contains("no-cache");
+    }
+
+    private AuthorizationScope authorizationScope(Principal principal) {
+        if (principal instanceof Authentication authentication) {
+            if (trustResolver.isAnonymous(authentication)) {
+                return ANONYMOUS;
+            }
+            return new AuthorizationScope(
+                true,
+                authentication
+                    .getAuthorities()
+                    .stream()
+                    .map(GrantedAuthority::getAuthority)
+                    .sorted()
+                    .distinct()
+                    .collect(Collectors.joining(",", "authorities:", ""))
+            );
+        }
+        return new AuthorizationScope(true, "principal:" + principal.getName());
+    }
+
+    private Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain, AuthorizationScope scope) {
+        ServerHttpRequest request = exchange.getRequest();
+        String query = request.getURI().getRawQuery();
+        String resource = scope.key() + ' ' + request.getURI().getRawPath() + (query != null ? '?' + query : "");
+        List<String> varyNames = resources.getIfPresent(resource);
+        if (varyNames == UNCACHEABLE) {
+            results.get(Result.UNCACHEABLE).increment();
+            return chain.filter(exchange);
+        }
+        String key = varyNames == null ? resource : variantKey(resource, varyNames, request.getHeaders());
+        CachedResponse cached = cache.getIfPresent(key);
+        long now = ticker.read();
+        if (cached != null && cached.isFresh(now)) {
+            results.get(Result.HIT).increment();
+            return write(exchange, cached);
+        }
+        if (cached != null && cached.isServableStale(now)) {
+            results.get(Result.STALE).increment();
+            return Mono.deferContextual(context -> {
+                revalidate(exchange, chain, scope, resource, key, cached, context);
+                return write(exchange, cached);
+            });
+        }
+        return fetch(exchange, chain, scope, resource, key);
+    }
+
+    /**
+     * Forwards a request to the service, unless the same request is already forwarded, whose response is then served too.
+     */
+    private Mono<Void> fetch(ServerWebExchange exchange, GatewayFilterChain chain, AuthorizationScope scope, String resource, String key) {
+        Sinks.One<CachedResponse> miss = Sinks.one();
+        Sinks.One<CachedResponse> pending = misses.putIfAbsent(key, miss);
+        if (pending != null) {
+            results.get(Result.COALESCED).increment();
+            HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+            return pending
+                .asMono()
+                .filter(cached -> cached.matches(requestHeaders))
+                .map(cached -> write(exchange, cached))
+                .defaultIfEmpty(Mono.defer(() -> chain.filter(exchange)))
+                .flatMap(Function.identity());
+        }
+        results.get(Result.MISS).increment();
+        CachingResponse response = new CachingResponse(exchange, scope, resource, key, miss);
+        return chain.filter(exchange.mutate().response(response).build()).doFinally(signal -> response.complete(null));
+    }
+
+    /**
+     * Asks the service, in the background, whether a stale response is still valid, and caches the valid response.
+     */
+    private void revalidate(
+        ServerWebExchange exchange,
+        GatewayFilterChain chain,
+        AuthorizationScope scope,
+        String resource,
+        String key,
+        CachedResponse stale,
+        ContextView context
+    ) {
+        if (!revalidations.add(key)) {
+            return;
+        }
+        HttpHeaders requestHeaders = new HttpHeaders();
+        requestHeaders.putAll(exchange.getRequest().getHeaders());
+        requestHeaders.remove(HttpHeaders.IF_NONE_MATCH);
+        requestHeaders.remove(HttpHeaders.IF_MODIFIED_SINCE);
+        if (stale.headers().getETag() != null) {
+            requestHeaders.setIfNoneMatch(stale.headers().getETag());
+        } else if (stale.headers().getLastModified() != -1) {
+            requestHeaders.setIfModifiedSince(stale.headers().getLastModified());
+        }
+        ServerHttpRequest request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+            @Override
+            public HttpHeaders getHeaders() {
+                return requestHeaders;
+            }
+        };
+        DetachedResponse response = new DetachedResponse(exchange.getResponse().bufferFactory());
+        chain
+            .filter(exchange.mutate().request(request).response(response).build())
+            .then(Mono.fromRunnable(() -> revalidated(scope, resource, key, requestHeaders, stale, response)))
+            .contextWrite(context)
+            .doFinally(signal -> revalidations.remove(key))
+            .subscribe(null, e -> log.debug("Could not revalidate the cached response of {}: {}", resource, e.getMessage()));
+    }
+
+    private void revalidated(
+        AuthorizationScope scope,
+        String resource,
+        String key,
+        HttpHeaders requestHeaders,
+        CachedResponse stale,
+        DetachedResponse response
+    ) {
+        HttpStatusCode status = response.getStatusCode();
+        if (status != null && status.value() == HttpStatus.NOT_MODIFIED.value()) {
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(stale.headers());
+            response
+                .getHeaders()
+                .forEach((name, values) -> {
+                    if (!UNCACHED_HEADERS.contains(name) && !name.regionMatches(true, 0, "Content-", 0, 8)) {
+                        headers.put(name, values);
+                    }
+                });
+            Freshness freshness = freshness(HttpStatus.OK, headers, scope.authenticated());
+            if (freshness == null) {
+                cache.invalidate(key);
+                return;
+            }
+            cache.put(key, stale.revalidated(HttpHeaders.readOnlyHttpHeaders(headers), freshness, ticker.read()));
+        } else if (status != null && status.value() == HttpStatus.OK.value()) {
+            cache.invalidate(key);
+            Freshness freshness = freshness(status, response.getHeaders(), scope.authenticated());
+            store(resource, requestHeaders, status, response.getHeaders(), freshness, response.body);
+        }
+        // the stale response is kept when the service fails
+    }
+
+    /**
+     * Caches a response, or remembers that the responses of its resource aren't cacheable.
+     *
+     * @return the cached response, or {@code null} when it's not cacheable.
+     */
+    private CachedResponse store(
+        String resource,
+        HttpHeaders requestHeaders,
+        HttpStatusCode status,
+        HttpHeaders responseHeaders,
+        Freshness freshness,
+        BodyCapture body
+    ) {
+        ByteBuffer content = freshness != null ? body.toByteBuffer() : null;
+        if (content == null) {
+            resources.put(resource, UNCACHEABLE);
+            return null;
+        }
+        List<String> varyNames = varyNames(responseHeaders);
+        HttpHeaders headers = new HttpHeaders();
+        responseHeaders.forEach((name, values) -> {
+            if (!UNCACHED_HEADERS.contains(name)) {
+                headers.put(name, values);
+            }
+        });
+        long now = ticker.read();
+        CachedResponse cached = new CachedResponse(
+            status,
+            HttpHeaders.readOnlyHttpHeaders(headers),
+            content,
+            varyNames,
+            varyValues(varyNames, requestHeaders),
+            now,
+            now + freshness.freshFor(),
+            now + freshness.freshFor() + freshness.staleFor()
+        );
+        resources.put(resource, varyNames);
+        cache.put(variantKey(resource, varyNames, requestHeaders), cached);
+        return cached;
+    }
+
+    /**
+     * @return how long a response may be served from the cache, or {@code null} when it's not cacheable.
+     */
+    private Freshness freshness(HttpStatusCode status, HttpHeaders headers, boolean authenticated) {
+        if (status == null || status.value() != HttpStatus.OK.value() || headers.containsKey(HttpHeaders.SET_COOKIE)) {
+            return null;
+        }
+        if (headers.getVary().contains("*")) {
+            return null;
+        }
+        CacheDirectives directives = CacheDirectives.parse(headers.getCacheControl());
+        if (directives.has("no-store") || directives.has("no-cache") || directives.has("private")) {
+            return null;
+        }
+        // as a shared cache, see RFC 9111, 3.5
+        if (authenticated && !directives.has("public") && !directives.has("s-maxage")) {
+            return null;
+        }
+        long maximumAge = directives.has("s-maxage") ? directives.seconds("s-maxage") : directives.seconds("max-age");
+        long freshFor = maximumAge - age(headers);
+        if (maximumAge < 0 || freshFor <= 0) {
+            return null;
+        }
+        long staleFor;
+        if (directives.has("must-revalidate") || directives.has("proxy-revalidate")) {
+            staleFor = 0;
+        } else if (directives.has("stale-while-revalidate")) {
+            staleFor = TimeUnit.SECONDS.toNanos(Math.max(0, directives.seconds("stale-while-revalidate")));
+        } else {
+            staleFor = properties.getStaleWhileRevalidate().toNanos();
+        }
+        return new Freshness(TimeUnit.SECONDS.toNanos(freshFor), staleFor);
+    }
+
+    private static long age(HttpHeaders headers) {
+        String age = headers.getFirst(HttpHeaders.AGE);
+        try {
+            return age != null ? Math.max(0, Long.parseLong(age.trim())) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static List<String> varyNames(HttpHeaders responseHeaders) {
+        List<String> varyNames = new ArrayList<>();
+        for (String name : responseHeaders.getVary()) {
+            varyNames.add(name.toLowerCase(Locale.ROOT));
+        }
+        // some services compress their responses without saying they vary on it
+        if (responseHeaders.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            varyNames.add("accept-encoding");
+        }
+        return varyNames.stream().sorted().distinct().toList();
+    }
+
+    private static List<String> varyValues(List<String> varyNames, HttpHeaders requestHeaders) {
+        return varyNames.stream().map(name -> String.join(",", requestHeaders.getOrEmpty(name))).toList();
+    }
+
+    private static String variantKey(String resource, List<String> varyNames, HttpHeaders requestHeaders) {
+        if (varyNames.isEmpty()) {
+            return resource;
+        }
+        return resource + '\n' + String.join("\n", varyValues(varyNames, requestHeaders));
+    }
+
+    private Mono<Void> write(ServerWebExchange exchange, CachedResponse cached) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(cached.status());
+        HttpHeaders headers = response.getHeaders();
+        headers.putAll(cached.headers());
+        headers.set(HttpHeaders.AGE, Long.toString(TimeUnit.NANOSECONDS.toSeconds(ticker.read() - cached.storedAt())));
+        String eTag = cached.headers().getETag();
+        if (eTag != null && exchange.checkNotModified(eTag)) {
+            return response.setComplete();
+        }
+        headers.setContentLength(cached.body().remaining());
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(cached.body().asReadOnlyBuffer())));
+    }
+
+    private long weightedSize() {
+        // the weights being added by the maintenance run after the writes, in the background
+        cache.cleanUp();
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    /**
+     * Copies the response of a miss as it's written, to cache it when complete, and serve it to the coalesced requests.
+     */
+    private class CachingResponse extends ServerHttpResponseDecorator {
+
+        private final HttpHeaders requestHeaders;
+        private final AuthorizationScope scope;
+        private final String resource;
+        private final String key;
+        private final Sinks.One<CachedResponse> miss;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private CachingResponse(
+            ServerWebExchange exchange,
+            AuthorizationScope scope,
+            String resource,
+            String key,
+            Sinks.One<CachedResponse> miss
+        ) {
+            super(exchange.getResponse());
+            this.requestHeaders = exchange.getRequest().getHeaders();
+            this.scope = scope;
+            this.resource = resource;
+            this.key = key;
+            this.miss = miss;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            HttpStatusCode status = getStatusCode();
+            Freshness freshness = freshness(status, getHeaders(), scope.authenticated());
+            if (freshness == null || getHeaders().getContentLength() > properties.getMaximumEntrySize().toBytes()) {
+                if (status != null && status.value() == HttpStatus.OK.value()) {
+                    resources.put(resource, UNCACHEABLE);
+                }
+                complete(null);
+                return super.writeWith(body);
+            }
+            BodyCapture capture = new BodyCapture();
+            return super.writeWith(
+                Flux
+                    .from(body)
+                    .doOnNext(capture::append)
+                    .doOnComplete(() -> complete(store(resource, requestHeaders, status, getHeaders(), freshness, capture)))
+            );
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            // streamed
+            resources.put(resource, UNCACHEABLE);
+            complete(null);
+            return super.writeAndFlushWith(body);
+        }
+
+        @Override
+        public Mono<Void> setComplete() {
+            complete(null);
+            return super.setComplete();
+        }
+
+        /**
+         * Releases the coalesced requests, which are served the cached response, or forwarded when there's none.
+         */
+        private void complete(CachedResponse cached) {
+            if (completed.compareAndSet(false, true)) {
+                misses.remove(key, miss);
+                if (cached != null) {
+                    miss.tryEmitValue(cached);
+                } else {
+                    miss.tryEmitEmpty();
+                }
+            }
+        }
+    }
+
+    /**
+     * The response of a revalidation, which isn't sent to any client.
+     */
+    private class DetachedResponse extends AbstractServerHttpResponse {
+
+        private final BodyCapture body = new BodyCapture();
+
+        private DetachedResponse(DataBufferFactory bufferFactory) {
+            super(bufferFactory);
+        }
+
+        @Override
+        public <T> T getNativeResponse() {
+            throw new IllegalStateException("A revalidation has no native response");
+        }
+
+        @Override
+        protected void applyStatusCode() {}
+
+        @Override
+        protected void applyHeaders() {}
+
+        @Override
+        protected void applyCookies() {}
+
+        @Override
+        protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+            return Flux.from(body).doOnNext(this.body::append).doOnNext(DataBufferUtils::release).then();
+        }
+
+        @Override
+        protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return writeWithInternal(Flux.from(body).concatMap(Function.identity()));
+        }
+    }
+
+    /**
+     * Copies the buffers of a body, unless it's over the maximum size of a cached response.
+     */
+    private class BodyCapture {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private boolean overflowed;
+
+        private void append(DataBuffer buffer) {
+            int count = buffer.readableByteCount();
+            if (overflowed || bytes.size() + (long) count > properties.getMaximumEntrySize().toBytes()) {
+                overflowed = true;
+                return;
+            }
+            byte[] chunk = new byte[count];
+            int readPosition = buffer.readPosition();
+            buffer.read(chunk);
+            buffer.readPosition(readPosition);
+            bytes.write(chunk, 0, count);
+        }
+
+        /**
+         * @return the body, on or off the heap, or {@code null} when it was too large.
+         */
+        private ByteBuffer toByteBuffer() {
+            if (overflowed) {
+                return null;
+            }
+            if (!properties.isOffHeap()) {
+                return ByteBuffer.wrap(bytes.toByteArray());
+            }
+            return ByteBuffer.allocateDirect(bytes.size()).put(bytes.toByteArray()).flip();
+        }
+    }
+
+    /**
+     * A cached response, along with the values of the request headers named by its Vary, and when it was cached, becomes
+     * stale, and expires, on the ticker of the cache.
+     */
+    private record CachedResponse(
+        HttpStatusCode status,
+        HttpHeaders headers,
+        ByteBuffer body,
+        List<String> varyNames,
+        List<String> varyValues,
+        long storedAt,
+        long freshUntil,
+        long staleUntil
+    ) {
+        private boolean isFresh(long now) {
+            return now - freshUntil < 0;
+        }
+
+        private boolean isServableStale(long now) {
+            return now - staleUntil < 0;
+        }
+
+        private boolean matches(HttpHeaders requestHeaders) {
+            return varyValues.equals(ResponseCacheFilter.varyValues(varyNames, requestHeaders));
+        }
+
+        private CachedResponse revalidated(HttpHeaders headers, Freshness freshness, long now) {
+            return new CachedResponse(
+                status,
+                headers,
+                body,
+                varyNames,
+                varyValues,
+                now,
+                now + freshness.freshFor(),
+                now + freshness.freshFor() + freshness.staleFor()
+            );
+        }
+
+        private int weight(String key) {
+            long weight = ENTRY_OVERHEAD + 2L * key.length() + body.capacity();
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                weight += header.getKey().length();
+                for (String value : header.getValue()) {
+                    weight += value.length();
+                }
+            }
+            return (int) Math.min(weight, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * The directives of a {@code Cache-Control} header, by lower case name.
+     */
+    private record CacheDirectives(Map<String, String> directives) {
+        private static CacheDirectives parse(String cacheControl) {
+            if (!StringUtils.hasText(cacheControl)) {
+                return new CacheDirectives(Map.of());
+            }
+            Map<String, String> directives = new HashMap<>();
+            for (String directive : cacheControl.split(",")) {
+                int equals = directive.indexOf('=');
+                String name = (equals < 0 ? directive : directive.substring(0, equals)).trim().toLowerCase(Locale.ROOT);
+                String value = equals < 0 ? "" : directive.substring(equals + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                if (!name.isEmpty()) {
+                    directives.putIfAbsent(name, value);
+                }
+            }
+            return new CacheDirectives(directives);
+        }
+
+        private boolean has(String name) {
+            return directives.containsKey(name);
+        }
+
+        /**
+         * @return the seconds of a directive, or -1 when it's missing or invalid.
+         */
+        private long seconds(String name) {
+            String value = directives.get(name);
+            try {
+                return value != null ? Long.parseLong(value) : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+}
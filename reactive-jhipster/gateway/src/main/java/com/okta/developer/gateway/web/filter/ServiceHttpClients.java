@@ -0,0 +1,102 @@
+package com.okta.developer.gateway.web.filter;
+
+import com.okta.developer.gateway.config.ApplicationProperties;
+import io.netty.channel.ChannelOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * The HTTP clients of the services, each with a connection provider of its own, so the connections, and the requests
+ * waiting for one, of a service are limited apart from the other services'.
+ * <p>
+ * The pools publish the {@code reactor.netty.connection.provider.*} metrics, tagged with the service id as {@code name}: the
+ * active, idle and pending connections, and the time to acquire one.
+ */
+public class ServiceHttpClients {
+
+    private final Logger log = LoggerFactory.getLogger(ServiceHttpClients.class);
+
+    private final ApplicationProperties.ConnectionPools connectionPools;
+
+    private final HttpClientProperties httpClientProperties;
+
+    private final List<HttpClientCustomizer> customizers;
+
+    private final Map<String, ConnectionProvider> connectionProviders = new ConcurrentHashMap<>();
+
+    private final Map<String, HttpClient> httpClients = new ConcurrentHashMap<>();
+
+    public ServiceHttpClients(
+        ApplicationProperties.ConnectionPools connectionPools,
+        HttpClientProperties httpClientProperties,
+        List<HttpClientCustomizer> customizers
+    ) {
+        this.connectionPools = connectionPools;
+        this.httpClientProperties = httpClientProperties;
+        this.customizers = customizers;
+    }
+
+    /**
+     * @return the HTTP client of a service, created on its first request.
+     */
+    public HttpClient get(String serviceId) {
+        return httpClients.computeIfAbsent(serviceId, this::create);
+    }
+
+    private HttpClient create(String serviceId) {
+        ApplicationProperties.ConnectionPools.Pool pool = connectionPools.forService(serviceId);
+        log.debug(
+            "Creating the connection pool of {}, {} connections per instance{}",
+            serviceId,
+            pool.getMaxConnections(),
+            pool.getH2c() ? " over h2c" : ""
+        );
+        ConnectionProvider connectionProvider = connectionProviders.computeIfAbsent(serviceId, name ->
+            ConnectionProvider
+                .builder(name)
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .metrics(true)
+                .build()
+        );
+        // as the gateway's own HTTP client, but for TLS, as the services are reached over plain HTTP
+        HttpClient httpClient = HttpClient
+            .create(connectionProvider)
+            .protocol(pool.getH2c() ? HttpProtocol.H2C : HttpProtocol.HTTP11)
+            .compress(httpClientProperties.isCompression())
+            .wiretap(httpClientProperties.isWiretap())
+            .httpResponseDecoder(spec -> {
+                if (httpClientProperties.getMaxHeaderSize() != null) {
+                    spec.maxHeaderSize((int) httpClientProperties.getMaxHeaderSize().toBytes());
+                }
+                if (httpClientProperties.getMaxInitialLineLength() != null) {
+                    spec.maxInitialLineLength((int) httpClientProperties.getMaxInitialLineLength().toBytes());
+                }
+                return spec;
+            });
+        if (httpClientProperties.getConnectTimeout() != null) {
+            httpClient = httpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, httpClientProperties.getConnectTimeout());
+        }
+        for (HttpClientCustomizer customizer : customizers) {
+            httpClient = customizer.customize(httpClient);
+        }
+        return httpClient;
+    }
+
+    /**
+     * Closes the connections of all the services.
+     */
+    public void dispose() {
+        connectionProviders.values().forEach(ConnectionProvider::dispose);
+    }
+}
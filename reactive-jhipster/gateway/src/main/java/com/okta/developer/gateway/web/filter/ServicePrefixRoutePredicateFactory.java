@@ -0,0 +1,39 @@
+package com.okta.developer.gateway.web.filter;
+
+import java.util.function.Predicate;
+import org.springframework.cloud.gateway.handler.predicate.AbstractRoutePredicateFactory;
+import org.springframework.cloud.gateway.handler.predicate.GatewayPredicate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * The {@code ServicePrefix} predicate, which matches the {@code /services/{serviceId}/**} requests of the services
+ * registered in the {@link ServicePrefixRouter}.
+ */
+@Component
+public class ServicePrefixRoutePredicateFactory extends AbstractRoutePredicateFactory<ServicePrefixRoutePredicateFactory.Config> {
+
+    private final ServicePrefixRouter router;
+
+    public ServicePrefixRoutePredicateFactory(ServicePrefixRouter router) {
+        super(Config.class);
+        this.router = router;
+    }
+
+    @Override
+    public Predicate<ServerWebExchange> apply(Config config) {
+        return new GatewayPredicate() {
+            @Override
+            public boolean test(ServerWebExchange exchange) {
+                return router.matches(exchange);
+            }
+
+            @Override
+            public String toString() {
+                return "ServicePrefix: [" + ServicePrefixRouter.PREFIX + "{serviceId}/**]";
+            }
+        };
+    }
+
+    public static class Config {}
+}
@@ -0,0 +1,150 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.addOriginalRequestUrl;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Routes the {@code /services/{serviceId}/**} requests to {@code lb://{serviceId}}, stripping the prefix, as the routes of
+ * the discovery locator did with a {@code Path} predicate and a {@code RewritePath} regular expression per service.
+ * <p>
+ * The service id is the path segment after {@code /services/}, looked up in a map of the registered services, which is
+ * replaced as a whole when the services registered in Eureka change. The {@code services} route, matched by the
+ * {@link ServicePrefixRoutePredicateFactory}, is declared in {@code application.yml}, so it gets the default filters.
+ */
+@Component
+public class ServicePrefixRouter implements GlobalFilter, Ordered {
+
+    /**
+     * The id of the route of the services.
+     */
+    public static final String ROUTE_ID = "services";
+
+    static final String PREFIX = "/services/";
+
+    private static final String SERVICE_ROUTE_ATTR = ServicePrefixRouter.class.getName() + ".serviceRoute";
+
+    private final Logger log = LoggerFactory.getLogger(ServicePrefixRouter.class);
+
+    /**
+     * A registered service, with the prefix of the URLs of its requests.
+     */
+    record ServiceRoute(String serviceId, String uri) {}
+
+    private final ReactiveDiscoveryClient discoveryClient;
+
+    private final ApplicationEventPublisher publisher;
+
+    private volatile Map<String, ServiceRoute> serviceRoutes = Map.of();
+
+    public ServicePrefixRouter(ReactiveDiscoveryClient discoveryClient, ApplicationEventPublisher publisher) {
+        this.discoveryClient = discoveryClient;
+        this.publisher = publisher;
+    }
+
+    /**
+     * Whether the request is for a registered service, which is then kept in the exchange for {@link #filter}.
+     */
+    boolean matches(ServerWebExchange exchange) {
+        String path = exchange.getRequest().getURI().getRawPath();
+        if (!path.startsWith(PREFIX)) {
+            return false;
+        }
+        int end = path.indexOf('/', PREFIX.length());
+        ServiceRoute serviceRoute = serviceRoutes.get(path.substring(PREFIX.length(), end < 0 ? path.length() : end));
+        if (serviceRoute == null) {
+            return false;
+        }
+        exchange.getAttributes().put(SERVICE_ROUTE_ATTR, serviceRoute);
+        return true;
+    }
+
+    /**
+     * @return the id of the registered service a request is for, or {@code null} when it's for none.
+     */
+    static String serviceId(ServerWebExchange exchange) {
+        ServiceRoute serviceRoute = exchange.getAttribute(SERVICE_ROUTE_ATTR);
+        return serviceRoute != null ? serviceRoute.serviceId() : null;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        ServiceRoute serviceRoute = exchange.getAttribute(SERVICE_ROUTE_ATTR);
+        Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+        if (serviceRoute == null || route == null || !ROUTE_ID.equals(route.getId())) {
+            return chain.filter(exchange);
+        }
+        ServerHttpRequest request = exchange.getRequest();
+        URI uri = request.getURI();
+        String rawPath = uri.getRawPath();
+        int start = PREFIX.length() + serviceRoute.serviceId().length();
+        String remaining = start < rawPath.length() ? rawPath.substring(start) : "/";
+        String query = uri.getRawQuery();
+        // what RewritePath did, so the X-Forwarded-Prefix header is still sent
+        addOriginalRequestUrl(exchange, uri);
+        exchange
+            .getAttributes()
+            .put(GATEWAY_REQUEST_URL_ATTR, URI.create(serviceRoute.uri() + remaining + (query != null ? "?" + query : "")));
+        return chain.filter(exchange.mutate().request(request.mutate().path(remaining).build()).build());
+    }
+
+    /**
+     * After {@link RouteToRequestUrlFilter}, whose URL is replaced, and before the load balancer filter resolves it.
+     */
+    @Override
+    public int getOrder() {
+        return RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 1;
+    }
+
+    /**
+     * @return the ids of the registered services.
+     */
+    public Set<String> serviceIds() {
+        return serviceRoutes.keySet();
+    }
+
+    @EventListener({ ApplicationReadyEvent.class, HeartbeatEvent.class })
+    public void refresh() {
+        discoveryClient
+            .getServices()
+            .collectList()
+            .subscribe(this::update, e -> log.warn("Could not refresh the registered services: {}", e.getMessage()));
+    }
+
+    synchronized void update(List<String> serviceIds) {
+        Map<String, ServiceRoute> updated = new HashMap<>();
+        for (String serviceId : serviceIds) {
+            String id = serviceId.toLowerCase(Locale.ROOT);
+            updated.put(id, new ServiceRoute(id, "lb://" + id));
+        }
+        if (!updated.keySet().equals(serviceRoutes.keySet())) {
+            serviceRoutes = Map.copyOf(updated);
+            log.debug("Routing to the services {}", serviceRoutes.keySet());
+            publisher.publishEvent(new RefreshRoutesEvent(this));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.springframework.cloud.gateway.support.RouteMetadataUtils.CONNECT_TIMEOUT_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+
+import com.okta.developer.gateway.config.ApplicationProperties;
+import io.netty.channel.ChannelOption;
+import java.util.List;
+import java.util.Locale;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.config.HttpClientCustomizer;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.netty.http.client.HttpClient;
+
+/**
+ * Sends the requests load balanced to an instance of a service with the HTTP client of the service, see
+ * {@link ServiceHttpClients}, and the other requests with the gateway's HTTP client.
+ * <p>
+ * It runs right before the gateway's routing filter, which then skips the requests already sent.
+ */
+@Component
+public class ServiceRoutingFilter extends NettyRoutingFilter implements DisposableBean {
+
+    private final ServiceHttpClients serviceHttpClients;
+
+    public ServiceRoutingFilter(
+        HttpClient httpClient,
+        ObjectProvider<List<HttpHeadersFilter>> headersFiltersProvider,
+        HttpClientProperties properties,
+        ApplicationProperties applicationProperties,
+        ObjectProvider<HttpClientCustomizer> customizers
+    ) {
+        super(httpClient, headersFiltersProvider, properties);
+        this.serviceHttpClients =
+            new ServiceHttpClients(applicationProperties.getConnectionPools(), properties, customizers.orderedStream().toList());
+    }
+
+    @Override
+    protected HttpClient getHttpClient(Route route, ServerWebExchange exchange) {
+        Response<ServiceInstance> loadBalancerResponse = exchange.getAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR);
+        if (loadBalancerResponse == null || !loadBalancerResponse.hasServer() || loadBalancerResponse.getServer().isSecure()) {
+            return super.getHttpClient(route, exchange);
+        }
+        // Eureka has the ids in upper case
+        HttpClient httpClient = serviceHttpClients.get(loadBalancerResponse.getServer().getServiceId().toLowerCase(Locale.ROOT));
+        Object connectTimeout = route.getMetadata().get(CONNECT_TIMEOUT_ATTR);
+        if (connectTimeout != null) {
+            return httpClient.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, Integer.parseInt(connectTimeout.toString()));
+        }
+        return httpClient;
+    }
+
+    @Override
+    public int getOrder() {
+        return super.getOrder() - 1;
+    }
+
+    @Override
+    public void destroy() {
+        serviceHttpClients.dispose();
+    }
+}
@@ -1,5 +1,7 @@
 package com.okta.developer.gateway.web.filter;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
@@ -7,24 +9,69 @@ import reactor.core.publisher.Mono;
 
 public class SpaWebFilter implements WebFilter {
 
+    private static final String[] EXCLUDED_PREFIXES = { "/api", "/management", "/v3/api-docs", "/login", "/oauth2", "/services" };
+
+    // the excluded prefixes, indexed by their character following the leading slash
+    private static final String[][] EXCLUDED_PREFIXES_BY_CHAR = excludedPrefixesByChar();
+
     /**
      * Forwards any unmapped paths (except those containing a period) to the client {@code index.html}.
      */
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
         String path = exchange.getRequest().getURI().getPath();
-        if (
-            !path.startsWith("/api") &&
-            !path.startsWith("/management") &&
-            !path.startsWith("/v3/api-docs") &&
-            !path.startsWith("/login") &&
-            !path.startsWith("/oauth2") &&
-            !path.startsWith("/services") &&
-            !path.contains(".") &&
-            path.matches("/(.*)")
-        ) {
+        if (isForwarded(path)) {
             return chain.filter(exchange.mutate().request(exchange.getRequest().mutate().path("/index.html").build()).build());
         }
         return chain.filter(exchange);
     }
+
+    /**
+     * Whether a path is an unmapped path of the client, checked in a single pass over the path rather than with a regular
+     * expression and a check per excluded prefix.
+     */
+    static boolean isForwarded(String path) {
+        int length = path.length();
+        if (length == 0 || path.charAt(0) != '/') {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            char c = path.charAt(i);
+            // a period, or a line terminator which the "/(.*)" pattern used to reject
+            if (c == '.' || c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return false;
+            }
+        }
+        if (length > 1 && path.charAt(1) < EXCLUDED_PREFIXES_BY_CHAR.length) {
+            String[] prefixes = EXCLUDED_PREFIXES_BY_CHAR[path.charAt(1)];
+            if (prefixes != null) {
+                for (String prefix : prefixes) {
+                    if (path.startsWith(prefix)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static String[][] excludedPrefixesByChar() {
+        List<List<String>> prefixesByChar = new ArrayList<>();
+        for (String prefix : EXCLUDED_PREFIXES) {
+            char c = prefix.charAt(1);
+            while (prefixesByChar.size() <= c) {
+                prefixesByChar.add(null);
+            }
+            if (prefixesByChar.get(c) == null) {
+                prefixesByChar.set(c, new ArrayList<>());
+            }
+            prefixesByChar.get(c).add(prefix);
+        }
+        String[][] result = new String[prefixesByChar.size()][];
+        for (int c = 0; c < result.length; c++) {
+            List<String> prefixes = prefixesByChar.get(c);
+            result[c] = prefixes != null ? prefixes.toArray(String[]::new) : null;
+        }
+        return result;
+    }
 }
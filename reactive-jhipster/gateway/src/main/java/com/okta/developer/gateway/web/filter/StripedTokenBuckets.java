@@ -0,0 +1,213 @@
+package com.okta.developer.gateway.web.filter;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets by key, taken from without locking.
+ * <p>
+ * A bucket is a single {@link AtomicLong}, the time at which it is full again, as in the generic cell rate algorithm: a token
+ * is added every {@code 1 / rate}, up to {@code burst} tokens, and taking tokens moves that time forward with a
+ * compare-and-set. The threads taking from the same bucket only retry when another one got there first.
+ * <p>
+ * The keys are spread over stripes, each a map swept of its idle buckets on its own, by the first thread to find its sweep
+ * due, so no sweep covers the whole table, nor needs a thread of its own. A bucket is idle once it has been full for the idle
+ * timeout, and evicting it loses nothing, a new bucket being full as well.
+ */
+final class StripedTokenBuckets {
+
+    // marks an evicted bucket, to be replaced in its stripe
+    private static final long EVICTED = Long.MIN_VALUE;
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final AtomicLongFieldUpdater<Bucket> GRANTED = AtomicLongFieldUpdater.newUpdater(Bucket.class, "granted");
+
+    private final Stripe[] stripes;
+
+    private final int shift;
+
+    private final long idleTimeout;
+
+    private final boolean counting;
+
+    private final LongSupplier nanoClock;
+
+    /**
+     * @param counting whether the tokens taken are counted, to be drained by {@link #drainGranted()}.
+     */
+    StripedTokenBuckets(Duration idleTimeout, boolean counting, LongSupplier nanoClock) {
+        this(4 * Runtime.getRuntime().availableProcessors(), idleTimeout, counting, nanoClock);
+    }
+
+    StripedTokenBuckets(int stripes, Duration idleTimeout, boolean counting, LongSupplier nanoClock) {
+        // a power of two, picked by the high bits of the hash, the map of a stripe spreading its keys by the low ones
+        int count = Math.max(2, Integer.highestOneBit(stripes));
+        this.stripes = new Stripe[count];
+        this.shift = Integer.numberOfLeadingZeros(count) + 1;
+        this.idleTimeout = idleTimeout.toNanos();
+        this.counting = counting;
+        this.nanoClock = nanoClock;
+        long now = nanoClock.getAsLong();
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe(now + this.idleTimeout);
+        }
+    }
+
+    /**
+     * Takes tokens from the bucket of a key, created full when there's none, or when its rate or burst changed.
+     *
+     * @param rate the tokens added to the bucket per second.
+     * @param burst the tokens the bucket holds at most.
+     * @param tokens the tokens to take.
+     * @return the tokens left in the bucket once taken, or -1 when it holds too few, and none are taken.
+     */
+    long tryConsume(String key, long rate, long burst, long tokens) {
+        long now = nanoClock.getAsLong();
+        long interval = Math.max(1, SECOND / rate);
+        long tolerance = burst * interval;
+        Stripe stripe = stripe(key);
+        Bucket bucket = stripe.bucket(key, interval, tolerance, now);
+        long left;
+        while ((left = bucket.take(tokens * interval, now)) == EVICTED) {
+            bucket = stripe.bucket(key, interval, tolerance, now);
+        }
+        if (left >= 0 && counting) {
+            GRANTED.addAndGet(bucket, tokens);
+        }
+        stripe.sweepIfDue(now);
+        return left >= 0 ? left / interval : -1;
+    }
+
+    /**
+     * Takes the tokens taken elsewhere from the bucket of a key, if there's one, at most emptying it.
+     */
+    void charge(String key, long tokens) {
+        Bucket bucket = stripe(key).buckets.get(key);
+        if (bucket != null && tokens > 0) {
+            bucket.charge(tokens, nanoClock.getAsLong());
+        }
+    }
+
+    /**
+     * @return the tokens taken from each bucket since the previous call, counting them from zero again.
+     */
+    Map<String, Long> drainGranted() {
+        Map<String, Long> granted = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            stripe.buckets.forEach((key, bucket) -> {
+                if (bucket.granted != 0) {
+                    granted.merge(key, GRANTED.getAndSet(bucket, 0), Long::sum);
+                }
+            });
+        }
+        return granted;
+    }
+
+    long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.buckets.mappingCount();
+        }
+        return size;
+    }
+
+    private Stripe stripe(String key) {
+        return stripes[(key.hashCode() * 0x9E3779B9) >>> shift];
+    }
+
+    private final class Stripe {
+
+        private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+        private final AtomicLong nextSweep;
+
+        private Stripe(long nextSweep) {
+            this.nextSweep = new AtomicLong(nextSweep);
+        }
+
+        private Bucket bucket(String key, long interval, long tolerance, long now) {
+            Bucket bucket = buckets.get(key);
+            if (bucket != null && bucket.matches(interval, tolerance)) {
+                return bucket;
+            }
+            return buckets.compute(
+                key,
+                (k, existing) -> existing != null && existing.matches(interval, tolerance) ? existing : new Bucket(interval, tolerance, now)
+            );
+        }
+
+        private void sweepIfDue(long now) {
+            long due = nextSweep.get();
+            if (now - due < 0 || !nextSweep.compareAndSet(due, now + idleTimeout)) {
+                return;
+            }
+            buckets.forEach((key, bucket) -> {
+                // full for the idle timeout, and with no tokens taken left to publish
+                long full = bucket.get();
+                if (full != EVICTED && now - full >= idleTimeout && bucket.granted == 0 && bucket.compareAndSet(full, EVICTED)) {
+                    buckets.remove(key, bucket);
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Bucket extends AtomicLong {
+
+        // between two tokens, and the time it takes to fill the bucket, in nanoseconds
+        private final long interval;
+
+        private final long tolerance;
+
+        private volatile long granted;
+
+        private Bucket(long interval, long tolerance, long now) {
+            super(now);
+            this.interval = interval;
+            this.tolerance = tolerance;
+        }
+
+        private boolean matches(long interval, long tolerance) {
+            return this.interval == interval && this.tolerance == tolerance && get() != EVICTED;
+        }
+
+        /**
+         * @return the tokens left once taken, as the time it takes to add them, -1 when it holds too few, or {@link #EVICTED}.
+         */
+        private long take(long cost, long now) {
+            long full;
+            long next;
+            do {
+                full = get();
+                if (full == EVICTED) {
+                    return EVICTED;
+                }
+                next = Math.max(full, now) + cost;
+                if (next - now > tolerance) {
+                    return -1;
+                }
+            } while (!compareAndSet(full, next));
+            return tolerance - (next - now);
+        }
+
+        private void charge(long tokens, long now) {
+            long cost = Math.min(tokens, tolerance / interval) * interval;
+            long full;
+            long next;
+            do {
+                full = get();
+                next = Math.min(Math.max(full, now) + cost, now + tolerance);
+                if (full == EVICTED || next <= full) {
+                    return;
+                }
+            } while (!compareAndSet(full, next));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.okta.developer.gateway.web.filter;
+
+import com.okta.developer.gateway.config.ApplicationProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.constraints.Min;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.annotation.Validated;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * The rate limiter of the {@code RequestRateLimiter} filter, taking from token buckets held in memory, in place of the
+ * {@code RedisRateLimiter}, which needs a Redis server.
+ * <p>
+ * Each route has a bucket per key, as resolved by the {@link PrincipalOrAddressKeyResolver}, configured with the
+ * {@code token-bucket-rate-limiter.*} args of the filter, or else the {@code application.rate-limiting} properties. The
+ * responses tell the tokens left with the same {@code X-RateLimit-*} headers as the {@code RedisRateLimiter}, and the requests
+ * denied are counted by route as the {@code gateway.ratelimit.denied} metric.
+ * <p>
+ * With a {@link RateLimitSyncTransport} bean, the tokens taken on each gateway are published to the others every sync
+ * interval, and taken from their buckets too, so that a client spreading its requests over the gateways is limited about as
+ * by a single one, give or take the tokens of an interval. The buckets a gateway doesn't have yet are left out.
+ */
+@Component
+public class TokenBucketRateLimiter extends AbstractRateLimiter<TokenBucketRateLimiter.Config> {
+
+    public static final String CONFIGURATION_PROPERTY_NAME = "token-bucket-rate-limiter";
+
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+
+    public static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+
+    public static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+
+    public static final String REQUESTED_TOKENS_HEADER = "X-RateLimit-Requested-Tokens";
+
+    private final Logger log = LoggerFactory.getLogger(TokenBucketRateLimiter.class);
+
+    private final MeterRegistry meterRegistry;
+
+    private final ApplicationProperties.RateLimiting properties;
+
+    private final RateLimitSyncTransport transport;
+
+    private final StripedTokenBuckets buckets;
+
+    // for the routes without args
+    private final Config defaultConfig;
+
+    private Disposable sync;
+
+    @Autowired
+    public TokenBucketRateLimiter(
+        ConfigurationService configurationService,
+        MeterRegistry meterRegistry,
+        ApplicationProperties applicationProperties,
+        ObjectProvider<RateLimitSyncTransport> transport
+    ) {
+        this(configurationService, meterRegistry, applicationProperties.getRateLimiting(), transport.getIfUnique(), System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(
+        ConfigurationService configurationService,
+        MeterRegistry meterRegistry,
+        ApplicationProperties.RateLimiting properties,
+        RateLimitSyncTransport transport,
+        LongSupplier nanoClock
+    ) {
+        super(Config.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+        this.transport = transport;
+        this.buckets = new StripedTokenBuckets(properties.getIdleTimeout(), transport != null, nanoClock);
+        this.defaultConfig = newConfig();
+        Gauge
+            .builder("gateway.ratelimit.buckets", buckets, b -> b.size())
+            .description("The token buckets of the users and client addresses")
+            .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (transport != null && sync == null) {
+            Disposable received = transport
+                .received()
+                .doOnError(e -> log.warn("Could not receive the tokens taken on the other gateways: {}", e.toString()))
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, properties.getSyncInterval()))
+                .subscribe(granted -> granted.forEach(buckets::charge));
+            Disposable published = Flux
+                .interval(properties.getSyncInterval())
+                .onBackpressureDrop()
+                .concatMap(tick -> publish())
+                .subscribe();
+            sync = Disposables.composite(received, published);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (sync != null) {
+            sync.dispose();
+            sync = null;
+        }
+    }
+
+    /**
+     * Publishes the tokens taken since the previous call to the other gateways.
+     */
+    Mono<Void> publish() {
+        return Mono
+            .defer(() -> {
+                Map<String, Long> granted = buckets.drainGranted();
+                return granted.isEmpty() ? Mono.<Void>empty() : transport.publish(granted);
+            })
+            .onErrorResume(e -> {
+                log.warn("Could not publish the tokens taken to the other gateways: {}", e.toString());
+                return Mono.empty();
+            });
+    }
+
+    @Override
+    public Config newConfig() {
+        // the args of a route override the properties one by one
+        return new Config().setReplenishRate(properties.getReplenishRate()).setBurstCapacity(properties.getBurstCapacity());
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        Config config = getConfig().getOrDefault(routeId, defaultConfig);
+        long left = buckets.tryConsume(
+            routeId + '/' + id,
+            config.getReplenishRate(),
+            config.getBurstCapacity(),
+            config.getRequestedTokens()
+        );
+        if (left < 0) {
+            log.debug("Denying a request of {} on the route {}, over its rate limit", id, routeId);
+            meterRegistry.counter("gateway.ratelimit.denied", "route", routeId).increment();
+        }
+        return Mono.just(new Response(left >= 0, headers(config, Math.max(0, left))));
+    }
+
+    private static Map<String, String> headers(Config config, long left) {
+        return Map.of(
+            REMAINING_HEADER,
+            String.valueOf(left),
+            REPLENISH_RATE_HEADER,
+            String.valueOf(config.getReplenishRate()),
+            BURST_CAPACITY_HEADER,
+            String.valueOf(config.getBurstCapacity()),
+            REQUESTED_TOKENS_HEADER,
+            String.valueOf(config.getRequestedTokens())
+        );
+    }
+
+    @Validated
+    public static class Config {
+
+        @Min(1)
+        private long replenishRate = 100;
+
+        @Min(1)
+        private long burstCapacity = 200;
+
+        @Min(1)
+        private long requestedTokens = 1;
+
+        public long getReplenishRate() {
+            return replenishRate;
+        }
+
+        public Config setReplenishRate(long replenishRate) {
+            this.replenishRate = replenishRate;
+            return this;
+        }
+
+        public long getBurstCapacity() {
+            return burstCapacity;
+        }
+
+        public Config setBurstCapacity(long burstCapacity) {
+            this.burstCapacity = burstCapacity;
+            return this;
+        }
+
+        public long getRequestedTokens() {
+            return requestedTokens;
+        }
+
+        public Config setRequestedTokens(long requestedTokens) {
+            this.requestedTokens = requestedTokens;
+            return this;
+        }
+    }
+}
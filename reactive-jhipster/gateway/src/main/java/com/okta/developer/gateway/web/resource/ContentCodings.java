@@ -0,0 +1,41 @@
+package com.okta.developer.gateway.web.resource;
+
+import java.util.List;
+
+/**
+ * Utility class for the content codings of the responses.
+ */
+public final class ContentCodings {
+
+    private ContentCodings() {}
+
+    /**
+     * Whether the Accept-Encoding header accepts a content coding, not weighing it against the other accepted codings.
+     *
+     * @param acceptEncoding the values of the Accept-Encoding header.
+     * @param coding the content coding, e.g. {@code gzip}.
+     * @return whether the coding has a non-zero quality.
+     */
+    public static boolean accepts(List<String> acceptEncoding, String coding) {
+        for (String value : acceptEncoding) {
+            for (String element : value.split(",")) {
+                String[] parameters = element.split(";");
+                if (!parameters[0].trim().equalsIgnoreCase(coding)) {
+                    continue;
+                }
+                for (int i = 1; i < parameters.length; i++) {
+                    String parameter = parameters[i].trim();
+                    if (parameter.startsWith("q=")) {
+                        try {
+                            return Double.parseDouble(parameter.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,172 @@
+package com.okta.developer.gateway.web.resource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * The client assets listed in the manifest written by the production build, along with their precompressed variants.
+ * <p>
+ * The assets are served from files, so they can be sent with zero-copy file region writes: when they're packaged in the
+ * application's jar, they're unpacked to a temporary directory once, on startup.
+ */
+public class PrecompressedAssets {
+
+    public static final String MANIFEST_FILENAME = "precompressed-manifest.json";
+
+    private static final Logger log = LoggerFactory.getLogger(PrecompressedAssets.class);
+
+    // in order of preference
+    private static final Map<String, String> EXTENSIONS_BY_ENCODING = new LinkedHashMap<>();
+
+    static {
+        EXTENSIONS_BY_ENCODING.put("br", ".br");
+        EXTENSIONS_BY_ENCODING.put("gzip", ".gz");
+    }
+
+    private final Map<String, Asset> assets;
+
+    private final Path unpackedDirectory;
+
+    /**
+     * An asset.
+     *
+     * @param identity the asset file.
+     * @param variants the precompressed variants, by content coding, in order of preference.
+     * @param immutable whether the name of the asset is content-hashed, so its content never changes.
+     */
+    public record Asset(Resource identity, Map<String, Resource> variants, boolean immutable) {}
+
+    private PrecompressedAssets(Map<String, Asset> assets, Path unpackedDirectory) {
+        this.assets = assets;
+        this.unpackedDirectory = unpackedDirectory;
+    }
+
+    /**
+     * Loads the manifest of a static location, unpacking its assets when they aren't files.
+     *
+     * @param location the static location, e.g. {@code classpath:/static/}.
+     * @return the assets, none when the location has no manifest, as the development build doesn't write it.
+     */
+    public static PrecompressedAssets load(Resource location) {
+        JsonNode manifest;
+        try {
+            Resource manifestResource = location.createRelative(MANIFEST_FILENAME);
+            if (!manifestResource.exists()) {
+                log.debug("No {} in {}, the assets won't be served precompressed", MANIFEST_FILENAME, location);
+                return new PrecompressedAssets(Map.of(), null);
+            }
+            try (InputStream in = manifestResource.getInputStream()) {
+                manifest = new ObjectMapper().readTree(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Path unpackedDirectory = null;
+        Map<String, Asset> assets = new HashMap<>();
+        try {
+            // files unless they're packaged in the jar
+            if (!location.isFile()) {
+                unpackedDirectory = Files.createTempDirectory("precompressed-assets-");
+            }
+            Iterator<Map.Entry<String, JsonNode>> entries = manifest.path("assets").fields();
+            while (entries.hasNext()) {
+                Map.Entry<String, JsonNode> entry = entries.next();
+                String name = entry.getKey();
+                Resource identity = file(location, name, unpackedDirectory);
+                if (identity == null) {
+                    continue;
+                }
+                Set<String> encodings = new HashSet<>();
+                entry.getValue().path("encodings").forEach(encoding -> encodings.add(encoding.asText()));
+                Map<String, Resource> variants = new LinkedHashMap<>();
+                for (Map.Entry<String, String> encoding : EXTENSIONS_BY_ENCODING.entrySet()) {
+                    Resource variant = encodings.contains(encoding.getKey())
+                        ? file(location, name + encoding.getValue(), unpackedDirectory)
+                        : null;
+                    if (variant != null) {
+                        variants.put(encoding.getKey(), variant);
+                    }
+                }
+                boolean immutable = entry.getValue().path("immutable").asBoolean();
+                assets.put(name, new Asset(identity, Collections.unmodifiableMap(variants), immutable));
+            }
+        } catch (IOException e) {
+            delete(unpackedDirectory);
+            throw new UncheckedIOException(e);
+        }
+        log.debug("Serving {} assets listed in {}", assets.size(), MANIFEST_FILENAME);
+        return new PrecompressedAssets(assets, unpackedDirectory);
+    }
+
+    private static Resource file(Resource location, String name, Path unpackedDirectory) throws IOException {
+        Resource source = location.createRelative(name);
+        if (!source.exists()) {
+            log.warn("{} is listed in {} but doesn't exist", name, MANIFEST_FILENAME);
+            return null;
+        }
+        return unpackedDirectory == null ? new FileSystemResource(source.getFile()) : unpack(source, unpackedDirectory, name);
+    }
+
+    private static Resource unpack(Resource source, Path directory, String name) throws IOException {
+        Path file = directory.resolve(name).normalize();
+        if (!file.startsWith(directory)) {
+            throw new IOException("Asset " + name + " is outside of the static location");
+        }
+        Files.createDirectories(file.getParent());
+        try (InputStream in = source.getInputStream()) {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // the same on every instance, as Last-Modified is derived from it
+        Files.setLastModifiedTime(file, FileTime.fromMillis(source.lastModified()));
+        return new FileSystemResource(file);
+    }
+
+    /**
+     * @param path the path of an asset, relative to the static location.
+     * @return the asset, or {@code null} when it's not listed in the manifest.
+     */
+    public Asset get(String path) {
+        return assets.get(path);
+    }
+
+    public boolean isEmpty() {
+        return assets.isEmpty();
+    }
+
+    /**
+     * Deletes the unpacked assets.
+     */
+    public void destroy() {
+        delete(unpackedDirectory);
+    }
+
+    private static void delete(Path directory) {
+        if (directory != null) {
+            try {
+                FileSystemUtils.deleteRecursively(directory);
+            } catch (IOException e) {
+                log.warn("Could not delete the unpacked assets in {}: {}", directory, e.getMessage());
+            }
+        }
+    }
+}
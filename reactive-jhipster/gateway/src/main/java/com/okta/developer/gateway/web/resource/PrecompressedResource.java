@@ -0,0 +1,115 @@
+package com.okta.developer.gateway.web.resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.channels.ReadableByteChannel;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.resource.HttpResource;
+
+/**
+ * A variant of an asset, with the response headers it's served with.
+ * <p>
+ * It's a file, so {@code ResourceHttpMessageWriter} sends it with a zero-copy write, and has the name of the asset, so it's
+ * served with the media type of the asset.
+ */
+class PrecompressedResource extends AbstractResource implements HttpResource {
+
+    // one year, the longest allowed
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    private final PrecompressedAssets.Asset asset;
+
+    private final Resource variant;
+
+    private final String coding;
+
+    /**
+     * @param asset the asset.
+     * @param coding the content coding of the variant, {@code null} for the asset itself.
+     */
+    PrecompressedResource(PrecompressedAssets.Asset asset, String coding) {
+        this.asset = asset;
+        this.coding = coding;
+        this.variant = coding != null ? asset.variants().get(coding) : asset.identity();
+    }
+
+    @Override
+    public boolean exists() {
+        return variant.exists();
+    }
+
+    @Override
+    public URL getURL() throws IOException {
+        return variant.getURL();
+    }
+
+    @Override
+    public URI getURI() throws IOException {
+        return variant.getURI();
+    }
+
+    @Override
+    public boolean isFile() {
+        return variant.isFile();
+    }
+
+    @Override
+    public File getFile() throws IOException {
+        return variant.getFile();
+    }
+
+    @Override
+    public ReadableByteChannel readableChannel() throws IOException {
+        return variant.readableChannel();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return variant.getInputStream();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return variant.contentLength();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+        return variant.lastModified();
+    }
+
+    @Override
+    public Resource createRelative(String relativePath) throws IOException {
+        return asset.identity().createRelative(relativePath);
+    }
+
+    @Override
+    public String getFilename() {
+        return asset.identity().getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+        return "Precompressed [" + variant.getDescription() + "]";
+    }
+
+    @Override
+    public HttpHeaders getResponseHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        if (coding != null) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, coding);
+        }
+        if (!asset.variants().isEmpty()) {
+            headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (asset.immutable()) {
+            headers.set(HttpHeaders.CACHE_CONTROL, IMMUTABLE_CACHE_CONTROL);
+        }
+        return headers;
+    }
+}
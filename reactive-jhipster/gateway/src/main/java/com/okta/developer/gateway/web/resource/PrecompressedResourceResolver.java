@@ -0,0 +1,52 @@
+package com.okta.developer.gateway.web.resource;
+
+import java.util.List;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.resource.AbstractResourceResolver;
+import org.springframework.web.reactive.resource.ResourceResolverChain;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Resolves the assets listed in the manifest of the production build to their precompressed variant preferred by the
+ * Accept-Encoding of the request, without looking up files on every request as {@code EncodedResourceResolver} does.
+ * <p>
+ * The assets whose name is content-hashed are marked immutable. Other resources are left to the rest of the chain.
+ */
+public class PrecompressedResourceResolver extends AbstractResourceResolver {
+
+    private final PrecompressedAssets assets;
+
+    public PrecompressedResourceResolver(PrecompressedAssets assets) {
+        this.assets = assets;
+    }
+
+    @Override
+    protected Mono<Resource> resolveResourceInternal(
+        @Nullable ServerWebExchange exchange,
+        String requestPath,
+        List<? extends Resource> locations,
+        ResourceResolverChain chain
+    ) {
+        PrecompressedAssets.Asset asset = assets.get(requestPath);
+        if (asset == null) {
+            return chain.resolveResource(exchange, requestPath, locations);
+        }
+        List<String> acceptEncoding = exchange != null
+            ? exchange.getRequest().getHeaders().getOrEmpty(HttpHeaders.ACCEPT_ENCODING)
+            : List.of();
+        for (String coding : asset.variants().keySet()) {
+            if (ContentCodings.accepts(acceptEncoding, coding)) {
+                return Mono.just(new PrecompressedResource(asset, coding));
+            }
+        }
+        return Mono.just(new PrecompressedResource(asset, null));
+    }
+
+    @Override
+    protected Mono<String> resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations, ResourceResolverChain chain) {
+        return chain.resolveUrlPath(resourceUrlPath, locations);
+    }
+}
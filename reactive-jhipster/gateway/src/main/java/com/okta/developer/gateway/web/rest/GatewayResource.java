@@ -2,16 +2,11 @@ package com.okta.developer.gateway.web.rest;
 
 import com.okta.developer.gateway.security.AuthoritiesConstants;
 import com.okta.developer.gateway.web.rest.vm.RouteVM;
-import java.util.ArrayList;
 import java.util.List;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.cloud.client.discovery.DiscoveryClient;
-import org.springframework.cloud.gateway.route.Route;
-import org.springframework.cloud.gateway.route.RouteLocator;
 import org.springframework.http.*;
 import org.springframework.security.access.annotation.Secured;
 import org.springframework.web.bind.annotation.*;
-import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 /**
  * REST controller for managing Gateway configuration.
@@ -20,42 +15,26 @@ import reactor.core.publisher.Flux;
 @RequestMapping("/api/gateway")
 public class GatewayResource {
 
-    private final RouteLocator routeLocator;
+    private final RouteTopology routeTopology;
 
-    private final DiscoveryClient discoveryClient;
-
-    @Value("${spring.application.name}")
-    private String appName;
-
-    public GatewayResource(RouteLocator routeLocator, DiscoveryClient discoveryClient) {
-        this.routeLocator = routeLocator;
-        this.discoveryClient = discoveryClient;
+    GatewayResource(RouteTopology routeTopology) {
+        this.routeTopology = routeTopology;
     }
 
     /**
      * {@code GET  /routes} : get the active routes.
+     * <p>
+     * The routes are served from a snapshot kept up to date by {@link RouteTopology}, with an ETag: polling them gets a
+     * {@code 304 (Not Modified)} while they don't change.
      *
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the list of routes.
      */
     @GetMapping("/routes")
     @Secured(AuthoritiesConstants.ADMIN)
-    public ResponseEntity<List<RouteVM>> activeRoutes() {
-        Flux<Route> routes = routeLocator.getRoutes();
-        List<RouteVM> routeVMs = new ArrayList<>();
-        routes.subscribe(route -> {
-            RouteVM routeVM = new RouteVM();
-            // Manipulate strings to make Gateway routes look like Zuul's
-            String predicate = route.getPredicate().toString();
-            String path = predicate.substring(predicate.indexOf("[") + 1, predicate.indexOf("]"));
-            routeVM.setPath(path);
-            String serviceId = route.getId().substring(route.getId().indexOf("_") + 1).toLowerCase();
-            routeVM.setServiceId(serviceId);
-            // Exclude gateway app from routes
-            if (!serviceId.equalsIgnoreCase(appName)) {
-                routeVM.setServiceInstances(discoveryClient.getInstances(serviceId));
-                routeVMs.add(routeVM);
-            }
-        });
-        return ResponseEntity.ok(routeVMs);
+    public Mono<ResponseEntity<List<RouteVM>>> activeRoutes() {
+        // the ETag is checked against If-None-Match when the entity is written
+        return routeTopology
+            .snapshot()
+            .map(snapshot -> ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(snapshot.eTag()).body(snapshot.routes()));
     }
 }
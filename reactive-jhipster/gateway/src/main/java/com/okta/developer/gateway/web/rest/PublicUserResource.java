@@ -36,15 +36,29 @@ public class PublicUserResource {
      *
      * @param request a {@link ServerHttpRequest} request.
      * @param pageable the pagination information.
+     * @param cursor the cursor of the page, empty for the first one, to list the users by cursor rather than by page number.
+     * @param count whether to count the users, when listed by cursor.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body all users.
      */
     @GetMapping("/users")
     public Mono<ResponseEntity<Flux<UserDTO>>> getAllPublicUsers(
         ServerHttpRequest request,
-        @org.springdoc.core.annotations.ParameterObject Pageable pageable
+        @org.springdoc.core.annotations.ParameterObject Pageable pageable,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "false") boolean count
     ) {
         log.debug("REST request to get all public User names");
 
+        if (cursor != null) {
+            return UserCursorPagination.page(
+                request,
+                cursor,
+                pageable,
+                userService::getAllPublicUsers,
+                (after, user) -> after.after(user.getId(), user.getLogin()),
+                count ? userService.countManagedUsers() : Mono.empty()
+            );
+        }
         return userService
             .countManagedUsers()
             .map(total -> new PageImpl<>(new ArrayList<>(), pageable, total))
@@ -0,0 +1,171 @@
+package com.okta.developer.gateway.web.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.okta.developer.gateway.web.filter.ServicePrefixRouter;
+import com.okta.developer.gateway.web.rest.vm.RouteVM;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.client.discovery.event.HeartbeatEvent;
+import org.springframework.cloud.gateway.event.RefreshRoutesResultEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Keeps a snapshot of the routes of the gateway and of the instances of their services, so that {@link GatewayResource}
+ * serves it without looking them up on every request.
+ * <p>
+ * The snapshot is recomputed when the routes are refreshed and on every Eureka heartbeat, as the local registry was then
+ * refreshed. Refreshes requested while one runs are coalesced into a single one, run once it completes.
+ */
+@Component
+class RouteTopology {
+
+    private static final Comparator<ServiceInstance> INSTANCE_ORDER = Comparator
+        .comparing((ServiceInstance instance) -> instance.getUri().toString())
+        .thenComparing(ServiceInstance::getInstanceId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Logger log = LoggerFactory.getLogger(RouteTopology.class);
+
+    /**
+     * The routes, and their weak ETag, which only changes when they do.
+     */
+    record Snapshot(List<RouteVM> routes, String eTag) {}
+
+    private final RouteLocator routeLocator;
+
+    private final ReactiveDiscoveryClient discoveryClient;
+
+    private final ServicePrefixRouter servicePrefixRouter;
+
+    private final ObjectMapper objectMapper;
+
+    private final String appName;
+
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final AtomicBoolean stale = new AtomicBoolean();
+
+    private volatile Snapshot current;
+
+    RouteTopology(
+        RouteLocator routeLocator,
+        ReactiveDiscoveryClient discoveryClient,
+        ServicePrefixRouter servicePrefixRouter,
+        ObjectMapper objectMapper,
+        @Value("${spring.application.name}") String appName
+    ) {
+        this.routeLocator = routeLocator;
+        this.discoveryClient = discoveryClient;
+        this.servicePrefixRouter = servicePrefixRouter;
+        this.objectMapper = objectMapper;
+        this.appName = appName;
+    }
+
+    /**
+     * @return the current snapshot, computed on the first call when no refresh completed yet.
+     */
+    Mono<Snapshot> snapshot() {
+        Snapshot snapshot = current;
+        return snapshot != null ? Mono.just(snapshot) : compute().doOnNext(this::update);
+    }
+
+    @EventListener(RefreshRoutesResultEvent.class)
+    public void onRoutesRefreshed() {
+        refresh();
+    }
+
+    @EventListener(HeartbeatEvent.class)
+    public void onHeartbeat() {
+        refresh();
+    }
+
+    void refresh() {
+        stale.set(true);
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        stale.set(false);
+        compute()
+            .doFinally(signal -> {
+                refreshing.set(false);
+                if (stale.get()) {
+                    refresh();
+                }
+            })
+            .subscribe(this::update, e -> log.warn("Could not refresh the routes snapshot: {}", e.getMessage()));
+    }
+
+    private synchronized void update(Snapshot snapshot) {
+        if (current == null || !current.eTag().equals(snapshot.eTag())) {
+            log.debug("Routes snapshot updated, {} routes", snapshot.routes().size());
+            current = snapshot;
+        }
+    }
+
+    private Mono<Snapshot> compute() {
+        return routeLocator
+            .getRoutes()
+            .concatMap(route ->
+                ServicePrefixRouter.ROUTE_ID.equals(route.getId())
+                    // a route per registered service, as the discovery locator had
+                    ? Flux.fromIterable(servicePrefixRouter.serviceIds()).sort().concatMap(this::toRouteVM)
+                    : toRouteVM(route.getId().substring(route.getId().indexOf("_") + 1).toLowerCase(), path(route)).flux()
+            )
+            .collectList()
+            .map(routes -> new Snapshot(List.copyOf(routes), eTag(routes)));
+    }
+
+    private Mono<RouteVM> toRouteVM(String serviceId) {
+        return toRouteVM(serviceId, "/services/" + serviceId + "/**");
+    }
+
+    private Mono<RouteVM> toRouteVM(String serviceId, String path) {
+        // Exclude gateway app from routes
+        if (serviceId.equalsIgnoreCase(appName)) {
+            return Mono.empty();
+        }
+        RouteVM routeVM = new RouteVM();
+        routeVM.setPath(path);
+        routeVM.setServiceId(serviceId);
+        // sorted, as the registry shuffles them, which would change the ETag
+        return discoveryClient
+            .getInstances(serviceId)
+            .sort(INSTANCE_ORDER)
+            .collectList()
+            .map(instances -> {
+                routeVM.setServiceInstances(instances);
+                return routeVM;
+            });
+    }
+
+    /**
+     * Manipulate strings to make Gateway routes look like Zuul's, e.g. {@code /services/blog/**} out of the predicate
+     * {@code Paths: [/services/blog/**], match trailing slash: true}.
+     */
+    static String path(Route route) {
+        String predicate = route.getPredicate().toString();
+        int start = predicate.indexOf('[');
+        int end = predicate.indexOf(']', start + 1);
+        return start >= 0 && end >= 0 ? predicate.substring(start + 1, end) : predicate;
+    }
+
+    private String eTag(List<RouteVM> routes) {
+        try {
+            return "W/\"" + DigestUtils.md5DigestAsHex(objectMapper.writeValueAsBytes(routes)) + "\"";
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the routes", e);
+        }
+    }
+}
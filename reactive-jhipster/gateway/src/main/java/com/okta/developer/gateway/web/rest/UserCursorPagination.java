@@ -0,0 +1,65 @@
+package com.okta.developer.gateway.web.rest;
+
+import com.okta.developer.gateway.service.dto.UserCursor;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * The listings of users by cursor: a page has the users after the cursor of the request, an empty one for the first page,
+ * and its {@code Link} header points to the next page, with the cursor of its last user. The users are only counted, in the
+ * {@code X-Total-Count} header, when the request asks for it with {@code count=true}.
+ */
+final class UserCursorPagination {
+
+    private UserCursorPagination() {}
+
+    /**
+     * @param users finds the given number of users after the given cursor.
+     * @param next the cursor after the given user.
+     * @param total the number of users, or empty when not asked for.
+     */
+    static <T> Mono<ResponseEntity<Flux<T>>> page(
+        ServerHttpRequest request,
+        String token,
+        Pageable pageable,
+        BiFunction<UserCursor, Integer, Flux<T>> users,
+        BiFunction<UserCursor, T, UserCursor> next,
+        Mono<Long> total
+    ) {
+        UserCursor cursor;
+        try {
+            cursor = token.isEmpty() ? UserCursor.first(pageable.getSort()) : UserCursor.decode(token);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+        int size = pageable.getPageSize();
+        // one more, telling whether there's a next page
+        return Mono
+            .zip(users.apply(cursor, size + 1).collectList(), total.map(Optional::of).defaultIfEmpty(Optional.empty()))
+            .map(found -> {
+                List<T> page = found.getT1();
+                HttpHeaders headers = new HttpHeaders();
+                if (page.size() > size) {
+                    page = page.subList(0, size);
+                    String nextLink = UriComponentsBuilder
+                        .fromHttpRequest(request)
+                        .replaceQueryParam("cursor", next.apply(cursor, page.get(size - 1)).encode())
+                        .replaceQueryParam("page")
+                        .toUriString();
+                    headers.add(HttpHeaders.LINK, "<" + nextLink + ">; rel=\"next\"");
+                }
+                found.getT2().ifPresent(count -> headers.add("X-Total-Count", Long.toString(count)));
+                return ResponseEntity.ok().headers(headers).body(Flux.fromIterable(page));
+            });
+    }
+}
@@ -0,0 +1,99 @@
+package com.okta.developer.gateway.web.rest;
+
+import com.okta.developer.gateway.security.AuthoritiesConstants;
+import com.okta.developer.gateway.service.UserService;
+import com.okta.developer.gateway.service.dto.AdminUserDTO;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.security.access.annotation.Secured;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import tech.jhipster.web.util.PaginationUtil;
+
+/**
+ * REST controller for the administration of the users, synchronized from the IdP.
+ */
+@RestController
+@RequestMapping("/api/admin")
+public class UserResource {
+
+    private static final List<String> ALLOWED_ORDERED_PROPERTIES = Collections.unmodifiableList(
+        Arrays.asList(
+            "id",
+            "login",
+            "firstName",
+            "lastName",
+            "email",
+            "activated",
+            "langKey",
+            "createdBy",
+            "createdDate",
+            "lastModifiedBy",
+            "lastModifiedDate"
+        )
+    );
+
+    private final Logger log = LoggerFactory.getLogger(UserResource.class);
+
+    private final UserService userService;
+
+    public UserResource(UserService userService) {
+        this.userService = userService;
+    }
+
+    /**
+     * {@code GET /admin/users} : get all users with all the details - calling this are only allowed for the administrators.
+     *
+     * @param request a {@link ServerHttpRequest} request.
+     * @param pageable the pagination information.
+     * @param cursor the cursor of the page, empty for the first one, to list the users by cursor rather than by page number.
+     * @param count whether to count the users, when listed by cursor.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body all users.
+     */
+    @GetMapping("/users")
+    @Secured(AuthoritiesConstants.ADMIN)
+    public Mono<ResponseEntity<Flux<AdminUserDTO>>> getAllUsers(
+        ServerHttpRequest request,
+        @org.springdoc.core.annotations.ParameterObject Pageable pageable,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "false") boolean count
+    ) {
+        log.debug("REST request to get all User for an admin");
+        if (!onlyContainsAllowedProperties(pageable)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST));
+        }
+
+        if (cursor != null) {
+            return UserCursorPagination.page(
+                request,
+                cursor,
+                pageable,
+                userService::getAllManagedUsers,
+                (after, user) -> after.after(user.getId(), user.getLogin()),
+                count ? userService.countManagedUsers() : Mono.empty()
+            );
+        }
+        return userService
+            .countManagedUsers()
+            .map(total -> new PageImpl<>(new ArrayList<>(), pageable, total))
+            .map(page -> PaginationUtil.generatePaginationHttpHeaders(UriComponentsBuilder.fromHttpRequest(request), page))
+            .map(headers -> ResponseEntity.ok().headers(headers).body(userService.getAllManagedUsers(pageable)));
+    }
+
+    private boolean onlyContainsAllowedProperties(Pageable pageable) {
+        return pageable.getSort().stream().map(Sort.Order::getProperty).allMatch(ALLOWED_ORDERED_PROPERTIES::contains);
+    }
+}
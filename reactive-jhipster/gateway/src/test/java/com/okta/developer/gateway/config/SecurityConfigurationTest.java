@@ -0,0 +1,132 @@
+package com.okta.developer.gateway.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.okta.developer.gateway.security.AuthoritiesConstants;
+import com.okta.developer.gateway.security.PathAuthorizationManager;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authorization.AuthenticatedReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorityReactiveAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.ReactiveAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.web.server.authorization.AuthorizationContext;
+import org.springframework.security.web.server.authorization.DelegatingReactiveAuthorizationManager;
+import org.springframework.security.web.server.util.matcher.PathPatternParserServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcherEntry;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the authorization rules of the {@link SecurityConfiguration}, checking the compiled
+ * {@link PathAuthorizationManager} takes the same decisions as the {@code pathMatchers(...)} rules it replaces.
+ */
+class SecurityConfigurationTest {
+
+    private static final List<String> PATHS = List.of(
+        "/",
+        "/index.html",
+        "/index.html/",
+        "/favicon.ico",
+        "/login",
+        "/api",
+        "/api/",
+        "/api/authenticate",
+        "/api/authenticate/",
+        "/api/auth-info",
+        "/api/auth-info/",
+        "/api/account",
+        "/API/account",
+        "/api/admin",
+        "/api/admin/users",
+        "/api/admin/users/",
+        "/api/%61dmin/users",
+        "/api//admin/users",
+        "/services/store/management/health/readiness",
+        "/services/store/management/health/readiness/",
+        "/services/store/management/health/liveness",
+        "/services/store/v3/api-docs",
+        "/services/store/v3/api-docs/",
+        "/services//v3/api-docs",
+        "/services/store/api/products",
+        "/services",
+        "/v3/api-docs",
+        "/v3/api-docs/swagger-config",
+        "/management",
+        "/management/health",
+        "/management/health/liveness",
+        "/management/info",
+        "/management/info/",
+        "/management/prometheus",
+        "/management/prometheus/",
+        "/management/env",
+        "/oauth2/authorization/oidc",
+        "/unknown/path/"
+    );
+
+    private static final List<Authentication> AUTHENTICATIONS = List.of(
+        new AnonymousAuthenticationToken("key", "anonymousUser", AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS")),
+        new TestingAuthenticationToken("user", null, AuthoritiesConstants.USER),
+        new TestingAuthenticationToken("admin", null, AuthoritiesConstants.USER, AuthoritiesConstants.ADMIN)
+    );
+
+    @Test
+    void shouldTakeTheSameDecisionsAsThePathMatchers() {
+        PathAuthorizationManager authorizationManager = SecurityConfiguration.authorizationManager();
+        ReactiveAuthorizationManager<ServerWebExchange> pathMatchers = pathMatchers();
+
+        for (String path : PATHS) {
+            for (Authentication authentication : AUTHENTICATIONS) {
+                ServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+                boolean granted = pathMatchers.check(Mono.just(authentication), exchange).map(AuthorizationDecision::isGranted).block();
+
+                assertThat(authorizationManager.check(Mono.just(authentication), new AuthorizationContext(exchange)).block().isGranted())
+                    .as("%s for %s", path, authentication.getName())
+                    .isEqualTo(granted);
+            }
+        }
+    }
+
+    /**
+     * @return the rules as they were declared with {@code authorizeExchange().pathMatchers(...)}.
+     */
+    private static ReactiveAuthorizationManager<ServerWebExchange> pathMatchers() {
+        ReactiveAuthorizationManager<AuthorizationContext> permitAll = (authentication, context) ->
+            Mono.just(new AuthorizationDecision(true));
+        ReactiveAuthorizationManager<AuthorizationContext> authenticated = AuthenticatedReactiveAuthorizationManager.authenticated();
+        ReactiveAuthorizationManager<AuthorizationContext> admin = AuthorityReactiveAuthorizationManager.hasAuthority(
+            AuthoritiesConstants.ADMIN
+        );
+        // prettier-ignore
+        return DelegatingReactiveAuthorizationManager.builder()
+            .add(rule("/", permitAll))
+            .add(rule("/*.*", permitAll))
+            .add(rule("/api/authenticate", permitAll))
+            .add(rule("/api/auth-info", permitAll))
+            .add(rule("/api/admin/**", admin))
+            .add(rule("/api/**", authenticated))
+            .add(rule("/services/*/management/health/readiness", permitAll))
+            .add(rule("/services/*/v3/api-docs", admin))
+            .add(rule("/services/**", authenticated))
+            .add(rule("/v3/api-docs/**", admin))
+            .add(rule("/management/health", permitAll))
+            .add(rule("/management/health/**", permitAll))
+            .add(rule("/management/info", permitAll))
+            .add(rule("/management/prometheus", permitAll))
+            .add(rule("/management/**", admin))
+            .build();
+    }
+
+    private static ServerWebExchangeMatcherEntry<ReactiveAuthorizationManager<AuthorizationContext>> rule(
+        String pattern,
+        ReactiveAuthorizationManager<AuthorizationContext> manager
+    ) {
+        return new ServerWebExchangeMatcherEntry<>(new PathPatternParserServerWebExchangeMatcher(pattern), manager);
+    }
+}
@@ -0,0 +1,139 @@
+package com.okta.developer.gateway.loadbalancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.RoundRobinLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+
+/**
+ * Simulates a minute of traffic to three instances of the blog, one of them being slow, on a virtual clock, to compare the
+ * tail latency of the requests balanced with round-robin, as done before, and with the {@link PeakEwmaLoadBalancer}.
+ * <p>
+ * The requests arrive at a steady rate, and each stand-in instance answers after its own latency, drawn from a shifted
+ * exponential distribution. The load balancer is told about the requests as the gateway's load balancer filter does.
+ */
+class PeakEwmaLoadBalancerSimulationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PeakEwmaLoadBalancerSimulationTest.class);
+
+    private static final int REQUESTS = 30_000;
+
+    private static final long ARRIVAL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private static final StandIn[] STAND_INS = {
+        new StandIn(new DefaultServiceInstance("blog-1", "blog", "10.0.0.1", 8081, false), 15, 5),
+        new StandIn(new DefaultServiceInstance("blog-2", "blog", "10.0.0.2", 8081, false), 15, 5),
+        // deliberately slow
+        new StandIn(new DefaultServiceInstance("blog-3", "blog", "10.0.0.3", 8081, false), 250, 50),
+    };
+
+    /**
+     * A stand-in instance, whose latency is a minimum plus an exponentially distributed delay.
+     */
+    private record StandIn(ServiceInstance instance, long minimumMillis, long meanDelayMillis) {
+        long latency(Random random) {
+            double delay = -Math.log(1 - random.nextDouble()) * meanDelayMillis;
+            return TimeUnit.MILLISECONDS.toNanos(minimumMillis) + (long) (delay * 1_000_000);
+        }
+    }
+
+    private record Completion(long time, Request<Object> request, Response<ServiceInstance> response) {}
+
+    @Test
+    void shouldLowerTheTailLatency() {
+        AtomicLong clock = new AtomicLong();
+        Random random = new Random(42);
+        long[] roundRobin = simulate(new RoundRobinLoadBalancer(supplier(), "blog"), null, clock);
+        PeakEwmaLoadBalancer peakEwma = new PeakEwmaLoadBalancer(
+            "blog",
+            supplier(),
+            Duration.ofSeconds(10),
+            Duration.ofSeconds(5),
+            clock::get,
+            () -> random
+        );
+        long[] peakEwmaLatencies = simulate(peakEwma, peakEwma, clock);
+
+        log.info(
+            "Round-robin: p50 {}ms, p99 {}ms, p99.9 {}ms - Peak EWMA: p50 {}ms, p99 {}ms, p99.9 {}ms",
+            percentile(roundRobin, 0.5),
+            percentile(roundRobin, 0.99),
+            percentile(roundRobin, 0.999),
+            percentile(peakEwmaLatencies, 0.5),
+            percentile(peakEwmaLatencies, 0.99),
+            percentile(peakEwmaLatencies, 0.999)
+        );
+        // a third of the requests go to the slow instance with round-robin
+        assertThat(percentile(roundRobin, 0.99)).isGreaterThan(250);
+        assertThat(percentile(peakEwmaLatencies, 0.99)).isLessThan(percentile(roundRobin, 0.99) / 4);
+        assertThat(percentile(peakEwmaLatencies, 0.5)).isLessThanOrEqualTo(percentile(roundRobin, 0.5));
+    }
+
+    private static long[] simulate(ReactorServiceInstanceLoadBalancer loadBalancer, PeakEwmaLoadBalancer lifecycle, AtomicLong clock) {
+        Random random = new Random(7);
+        PriorityQueue<Completion> completions = new PriorityQueue<>(Comparator.comparingLong(Completion::time));
+        long[] latencies = new long[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            long now = (i + 1) * ARRIVAL_INTERVAL;
+            while (!completions.isEmpty() && completions.peek().time() <= now) {
+                Completion completion = completions.poll();
+                clock.set(completion.time());
+                if (lifecycle != null) {
+                    lifecycle.onComplete(
+                        new CompletionContext<>(CompletionContext.Status.SUCCESS, completion.request(), completion.response())
+                    );
+                }
+            }
+            clock.set(now);
+            Request<Object> request = new DefaultRequest<>(new RequestDataContext());
+            Response<ServiceInstance> response = loadBalancer.choose(request).block();
+            if (lifecycle != null) {
+                lifecycle.onStartRequest(request, response);
+            }
+            long latency = standIn(response.getServer()).latency(random);
+            completions.add(new Completion(now + latency, request, response));
+            latencies[i] = latency;
+        }
+        return latencies;
+    }
+
+    private static StandIn standIn(ServiceInstance instance) {
+        return Arrays.stream(STAND_INS).filter(standIn -> standIn.instance().equals(instance)).findFirst().orElseThrow();
+    }
+
+    private static ObjectProvider<ServiceInstanceListSupplier> supplier() {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean(
+            "supplier",
+            ServiceInstanceListSuppliers.from("blog", Arrays.stream(STAND_INS).map(StandIn::instance).toArray(ServiceInstance[]::new))
+        );
+        return beanFactory.getBeanProvider(ServiceInstanceListSupplier.class);
+    }
+
+    private static long percentile(long[] latencies, double percentile) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return TimeUnit.NANOSECONDS.toMillis(sorted[(int) (percentile * (sorted.length - 1))]);
+    }
+}
@@ -0,0 +1,183 @@
+package com.okta.developer.gateway.loadbalancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+import com.okta.developer.gateway.web.filter.LoadBalancerDiscardFilter;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerProperties;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.gateway.config.GatewayLoadBalancerProperties;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.cloud.loadbalancer.support.ServiceInstanceListSuppliers;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the {@link PeakEwmaLoadBalancer}.
+ */
+class PeakEwmaLoadBalancerTest {
+
+    private static final ServiceInstance FAST = new DefaultServiceInstance("blog-1", "blog", "10.0.0.1", 8081, false);
+
+    private static final ServiceInstance SLOW = new DefaultServiceInstance("blog-2", "blog", "10.0.0.2", 8081, false);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    private PeakEwmaLoadBalancer loadBalancer;
+
+    @BeforeEach
+    void setup() {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("supplier", ServiceInstanceListSuppliers.from("blog", FAST, SLOW));
+        Random random = new Random(42);
+        loadBalancer =
+            new PeakEwmaLoadBalancer(
+                "blog",
+                beanFactory.getBeanProvider(ServiceInstanceListSupplier.class),
+                Duration.ofSeconds(10),
+                Duration.ofSeconds(5),
+                clock::get,
+                () -> random
+            );
+    }
+
+    @Test
+    void shouldPreferTheInstanceWithTheLowestLatency() {
+        complete(SLOW, Duration.ofMillis(200), CompletionContext.Status.SUCCESS);
+        complete(FAST, Duration.ofMillis(20), CompletionContext.Status.SUCCESS);
+
+        // with two instances, both are candidates
+        for (int i = 0; i < 10; i++) {
+            assertThat(loadBalancer.choose(new DefaultRequest<>(new RequestDataContext())).block().getServer()).isEqualTo(FAST);
+        }
+    }
+
+    @Test
+    void shouldWeighTheLatencyByTheRequestsInFlight() {
+        complete(SLOW, Duration.ofMillis(40), CompletionContext.Status.SUCCESS);
+        complete(FAST, Duration.ofMillis(20), CompletionContext.Status.SUCCESS);
+        for (int i = 0; i < 2; i++) {
+            loadBalancer.onStartRequest(new DefaultRequest<>(new RequestDataContext()), new DefaultResponse(FAST));
+        }
+
+        assertThat(loadBalancer.choose(new DefaultRequest<>(new RequestDataContext())).block().getServer()).isEqualTo(SLOW);
+    }
+
+    @Test
+    void shouldAvoidAnInstanceAtOnceWhenItSlowsDown() {
+        for (int i = 0; i < 100; i++) {
+            complete(SLOW, Duration.ofMillis(10), CompletionContext.Status.SUCCESS);
+        }
+        complete(FAST, Duration.ofMillis(20), CompletionContext.Status.SUCCESS);
+
+        complete(SLOW, Duration.ofMillis(500), CompletionContext.Status.SUCCESS);
+
+        assertThat(loadBalancer.cost(SLOW, clock.get())).isGreaterThan(loadBalancer.cost(FAST, clock.get()));
+    }
+
+    @Test
+    void shouldPenalizeTheFailures() {
+        complete(SLOW, Duration.ofMillis(5), CompletionContext.Status.FAILED);
+
+        assertThat(loadBalancer.cost(SLOW, clock.get())).isGreaterThanOrEqualTo(Duration.ofSeconds(5).toNanos());
+    }
+
+    @Test
+    void shouldDecayTheLatencyOfIdleInstances() {
+        complete(SLOW, Duration.ofMillis(200), CompletionContext.Status.SUCCESS);
+        complete(FAST, Duration.ofMillis(20), CompletionContext.Status.SUCCESS);
+        double cost = loadBalancer.cost(SLOW, clock.get());
+
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        assertThat(loadBalancer.cost(SLOW, clock.get())).isLessThan(cost / 10);
+    }
+
+    @Test
+    void shouldCountARequestWithoutResponseAsSlow() {
+        loadBalancer.onStartRequest(new DefaultRequest<>(new RequestDataContext()), new DefaultResponse(FAST));
+
+        assertThat(loadBalancer.cost(FAST, clock.get())).isGreaterThan(loadBalancer.cost(SLOW, clock.get()));
+    }
+
+    @Test
+    void shouldNotChooseTheExcludedInstance() {
+        complete(SLOW, Duration.ofMillis(200), CompletionContext.Status.SUCCESS);
+        complete(FAST, Duration.ofMillis(20), CompletionContext.Status.SUCCESS);
+        RequestData hedged = new RequestData(
+            MockServerHttpRequest.get("/api/blogs").header(PeakEwmaLoadBalancer.EXCLUDED_INSTANCE_HEADER, "blog-1").build()
+        );
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(loadBalancer.choose(new DefaultRequest<>(new RequestDataContext(hedged))).block().getServer()).isEqualTo(SLOW);
+        }
+    }
+
+    @Test
+    void shouldTakeTheDiscardedRequestsOutOfTheRequestsInFlight() {
+        Request<Object> request = new DefaultRequest<>(new RequestDataContext());
+        Response<ServiceInstance> response = new DefaultResponse(FAST);
+        loadBalancer.onStartRequest(request, response);
+
+        loadBalancer.onComplete(new CompletionContext<>(CompletionContext.Status.DISCARD, request, response));
+
+        assertThat(loadBalancer.cost(FAST, clock.get())).isZero();
+    }
+
+    @Test
+    void shouldTakeTheCancelledRequestsOutOfTheRequestsInFlight() {
+        LoadBalancerClientFactory clientFactory = mock(LoadBalancerClientFactory.class);
+        when(clientFactory.getInstance("blog", ReactorServiceInstanceLoadBalancer.class)).thenReturn(loadBalancer);
+        when(clientFactory.getInstances("blog", LoadBalancerLifecycle.class)).thenReturn(Map.of("loadBalancer", loadBalancer));
+        when(clientFactory.getProperties("blog")).thenReturn(new LoadBalancerProperties());
+        GlobalFilter loadBalancerFilter = new ReactiveLoadBalancerClientFilter(clientFactory, new GatewayLoadBalancerProperties());
+        GlobalFilter discardFilter = new LoadBalancerDiscardFilter(clientFactory);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/blogs"));
+        exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, URI.create("lb://blog/api/blogs"));
+
+        // a response which never comes, as from an instance which hangs
+        Disposable request = loadBalancerFilter.filter(exchange, chosen -> discardFilter.filter(chosen, sent -> Mono.never())).subscribe();
+        ServiceInstance instance = exchange.<Response<ServiceInstance>>getAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR).getServer();
+
+        assertThat(loadBalancer.cost(instance, clock.get())).isPositive();
+
+        request.dispose();
+
+        assertThat(loadBalancer.cost(instance, clock.get())).isZero();
+    }
+
+    private void complete(ServiceInstance instance, Duration latency, CompletionContext.Status status) {
+        Request<Object> request = new DefaultRequest<>(new RequestDataContext());
+        Response<ServiceInstance> response = new DefaultResponse(instance);
+        loadBalancer.onStartRequest(request, response);
+        clock.addAndGet(latency.toNanos());
+        loadBalancer.onComplete(new CompletionContext<>(status, request, response));
+    }
+}
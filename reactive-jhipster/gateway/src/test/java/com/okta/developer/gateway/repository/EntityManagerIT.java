@@ -0,0 +1,252 @@
+package com.okta.developer.gateway.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.okta.developer.gateway.IntegrationTest;
+import com.okta.developer.gateway.config.Constants;
+import com.okta.developer.gateway.domain.User;
+import com.okta.developer.gateway.security.AuthoritiesConstants;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryMetadata;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.dialect.R2dbcDialect;
+import org.springframework.data.r2dbc.query.UpdateMapper;
+import org.springframework.data.relational.core.sql.Condition;
+import org.springframework.data.relational.core.sql.Conditions;
+import org.springframework.data.relational.core.sql.SQL;
+import org.springframework.data.relational.core.sql.Select;
+import org.springframework.data.relational.core.sql.SelectBuilder;
+import org.springframework.data.relational.core.sql.Table;
+import org.springframework.data.relational.core.sql.render.SqlRenderer;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * Integration tests for {@link EntityManager}, counting the statements run.
+ */
+@IntegrationTest
+class EntityManagerIT {
+
+    private static final String NEW_AUTHORITY = "ROLE_LINKED";
+
+    private static final EntityManager.LinkTable USER_AUTHORITY = new EntityManager.LinkTable(
+        "jhi_user_authority",
+        "user_id",
+        "authority_name"
+    );
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AuthorityRepository authorityRepository;
+
+    @Autowired
+    private ConnectionFactory connectionFactory;
+
+    @Autowired
+    private R2dbcDialect dialect;
+
+    @Autowired
+    private R2dbcConverter converter;
+
+    @Autowired
+    private SqlRenderer sqlRenderer;
+
+    @Autowired
+    private UpdateMapper updateMapper;
+
+    // the statements run through the entity manager
+    private final List<String> statements = new ArrayList<>();
+
+    private EntityManager entityManager;
+
+    private String userId;
+
+    @BeforeEach
+    public void init() {
+        userRepository.deleteAllUserAuthorities().block();
+        userRepository.deleteAll().block();
+        userRepository.createMissingAuthorities(Set.of(NEW_AUTHORITY)).block();
+
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setLogin("johndoe");
+        user.setActivated(true);
+        user.setCreatedBy(Constants.SYSTEM);
+        userId = userRepository.create(user).block().getId();
+
+        DatabaseClient databaseClient = DatabaseClient
+            .builder()
+            .connectionFactory(counting(connectionFactory))
+            .bindMarkers(dialect.getBindMarkersFactory())
+            .build();
+        entityManager = new EntityManager(sqlRenderer, updateMapper, new R2dbcEntityTemplate(databaseClient, dialect, converter));
+    }
+
+    @AfterEach
+    public void cleanup() {
+        userRepository.deleteAllUserAuthorities().block();
+        authorityRepository.deleteById(NEW_AUTHORITY).block();
+    }
+
+    @Test
+    void shouldInsertAllTheLinksInOneStatement() {
+        Long updated = entityManager
+            .updateLinkTable(USER_AUTHORITY, userId, Stream.of(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER, NEW_AUTHORITY))
+            .block();
+
+        assertThat(updated).isEqualTo(3);
+        assertThat(statements).hasSize(2);
+        assertThat(statements.get(0)).startsWith("SELECT");
+        assertThat(statements.get(1)).startsWith("INSERT");
+        assertThat(links()).containsOnly(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER, NEW_AUTHORITY);
+    }
+
+    @Test
+    void shouldOnlySelectWhenTheLinksDidNotChange() {
+        userRepository.saveUserAuthorities(userId, List.of(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER)).block();
+
+        Long updated = entityManager
+            .updateLinkTable(USER_AUTHORITY, userId, Stream.of(AuthoritiesConstants.USER, AuthoritiesConstants.ADMIN))
+            .block();
+
+        assertThat(updated).isEqualTo(2);
+        assertThat(statements).hasSize(1);
+        assertThat(statements.get(0)).startsWith("SELECT");
+        assertThat(links()).containsOnly(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+    }
+
+    @Test
+    void shouldOnlyWriteTheLinksWhichChanged() {
+        userRepository.saveUserAuthorities(userId, List.of(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER)).block();
+
+        Long updated = entityManager.updateLinkTable(USER_AUTHORITY, userId, Stream.of(AuthoritiesConstants.USER, NEW_AUTHORITY)).block();
+
+        assertThat(updated).isEqualTo(2);
+        assertThat(statements).hasSize(3);
+        assertThat(statements.get(0)).startsWith("SELECT");
+        assertThat(statements.get(1)).startsWith("DELETE");
+        assertThat(statements.get(2)).startsWith("INSERT");
+        assertThat(links()).containsOnly(AuthoritiesConstants.USER, NEW_AUTHORITY);
+    }
+
+    @Test
+    void shouldDeleteAllTheLinksInOneStatement() {
+        userRepository.saveUserAuthorities(userId, List.of(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER)).block();
+
+        Long updated = entityManager.updateLinkTable(USER_AUTHORITY, userId, Stream.empty()).block();
+
+        assertThat(updated).isZero();
+        assertThat(statements).hasSize(1);
+        assertThat(statements.get(0)).startsWith("DELETE");
+        assertThat(links()).isEmpty();
+    }
+
+    @Test
+    void shouldRenderASelectOncePerShape() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        entityManager.bindTo(meterRegistry);
+        Table table = Table.create("jhi_user").as(EntityManager.ENTITY_ALIAS);
+        Condition where = Conditions.isEqual(table.column("activated"), SQL.bindMarker(":activated"));
+
+        String first = entityManager.createSelect(select(table), User.class, PageRequest.of(0, 20, Sort.by("login")), where);
+        String third = entityManager.createSelect(select(table), User.class, PageRequest.of(2, 20, Sort.by("login")), where);
+        String unpaged = entityManager.createSelect(select(table), User.class, null, where);
+
+        assertThat(first)
+            .isEqualTo(entityManager.renderSelect(select(table).limitOffset(20, 0).where(where), User.class, Sort.by("login")));
+        assertThat(third)
+            .isEqualTo(entityManager.renderSelect(select(table).limitOffset(20, 40).where(where), User.class, Sort.by("login")));
+        assertThat(unpaged).isEqualTo(entityManager.renderSelect(select(table).where(where), User.class, null));
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "gateway.sql.selects").tag("result", "hit").functionCounter().count())
+            .isEqualTo(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "gateway.sql.selects").tag("result", "miss").functionCounter().count())
+            .isEqualTo(2);
+    }
+
+    @Test
+    void shouldRenderTheSelectsWithValuesEachTime() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        entityManager.bindTo(meterRegistry);
+        Table table = Table.create("jhi_user").as(EntityManager.ENTITY_ALIAS);
+        Condition johndoe = Conditions.isEqual(table.column("login"), SQL.literalOf("johndoe"));
+        Condition janedoe = Conditions.isEqual(table.column("login"), SQL.literalOf("janedoe"));
+
+        String first = entityManager.createSelect(select(table), User.class, PageRequest.of(0, 20, Sort.by("login")), johndoe);
+        String second = entityManager.createSelect(select(table), User.class, PageRequest.of(0, 20, Sort.by("login")), janedoe);
+        String just = entityManager.createSelect(select(table), User.class, null, Conditions.just("e.login = 'johndoe'"));
+
+        assertThat(first)
+            .isEqualTo(entityManager.renderSelect(select(table).limitOffset(20, 0).where(johndoe), User.class, Sort.by("login")));
+        assertThat(second)
+            .isEqualTo(entityManager.renderSelect(select(table).limitOffset(20, 0).where(janedoe), User.class, Sort.by("login")));
+        assertThat(just).contains("'johndoe'");
+        assertThat(meterRegistry.get("cache.size").tag("cache", "gateway.sql.selects").gauge().value()).isZero();
+    }
+
+    private static SelectBuilder.SelectFromAndJoin select(Table table) {
+        return Select
+            .builder()
+            .select(
+                table.column("id").as(EntityManager.ALIAS_PREFIX + "id"),
+                table.column("login").as(EntityManager.ALIAS_PREFIX + "login")
+            )
+            .from(table);
+    }
+
+    private List<String> links() {
+        return userRepository.findOneWithAuthoritiesByLogin("johndoe").block().getAuthorities().stream().map(a -> a.getName()).toList();
+    }
+
+    /**
+     * Wraps the connection factory, to record the SQL of the statements created on its connections.
+     */
+    private ConnectionFactory counting(ConnectionFactory delegate) {
+        return new ConnectionFactory() {
+            @Override
+            public Publisher<? extends Connection> create() {
+                return Mono.from(delegate.create()).map(connection -> counting(connection));
+            }
+
+            @Override
+            public ConnectionFactoryMetadata getMetadata() {
+                return delegate.getMetadata();
+            }
+        };
+    }
+
+    private Connection counting(Connection delegate) {
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                if (method.getName().equals("createStatement")) {
+                    statements.add((String) args[0]);
+                }
+                try {
+                    return method.invoke(delegate, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        );
+    }
+}
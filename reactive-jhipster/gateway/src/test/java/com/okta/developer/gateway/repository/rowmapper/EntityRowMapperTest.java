@@ -0,0 +1,104 @@
+package com.okta.developer.gateway.repository.rowmapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.okta.developer.gateway.config.DatabaseConfiguration;
+import com.okta.developer.gateway.domain.User;
+import io.r2dbc.spi.Row;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.r2dbc.convert.MappingR2dbcConverter;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.dialect.H2Dialect;
+import org.springframework.data.r2dbc.mapping.R2dbcMappingContext;
+
+/**
+ * Test class for the {@link EntityRowMapper}.
+ */
+class EntityRowMapperTest {
+
+    private final R2dbcCustomConversions conversions = R2dbcCustomConversions.of(
+        H2Dialect.INSTANCE,
+        List.of(DatabaseConfiguration.InstantReadConverter.INSTANCE)
+    );
+
+    private final ColumnConverter converter = new ColumnConverter(
+        conversions,
+        new MappingR2dbcConverter(new R2dbcMappingContext(), conversions)
+    );
+
+    private final UserRowMapper userRowMapper = new UserRowMapper(converter);
+
+    @Test
+    void shouldReadTheColumnsAfterThePrefix() {
+        Row row = mock(Row.class);
+        when(row.get("e_id")).thenReturn("user-1");
+        when(row.get("e_login")).thenReturn("johndoe");
+        when(row.get("e_email")).thenReturn("johndoe@localhost");
+        when(row.get("e_activated")).thenReturn(true);
+
+        User user = userRowMapper.apply(row, "e");
+
+        assertThat(user.getId()).isEqualTo("user-1");
+        assertThat(user.getLogin()).isEqualTo("johndoe");
+        assertThat(user.getEmail()).isEqualTo("johndoe@localhost");
+        assertThat(user.isActivated()).isTrue();
+        assertThat(user.getFirstName()).isNull();
+        assertThat(user.getLangKey()).isNull();
+        verify(row, never()).get(anyString(), any(Class.class));
+    }
+
+    @Test
+    void shouldConvertTheValuesWithTheCustomConversions() {
+        EntityRowMapper<Event> mapper = EntityRowMapper
+            .builder(Event::new)
+            .column("created_date", Instant.class, Event::setCreatedDate)
+            .build(converter);
+        Row row = mock(Row.class);
+        when(row.get("e_created_date")).thenReturn(LocalDateTime.of(2023, 3, 15, 10, 30));
+
+        assertThat(mapper.apply(row, "e").getCreatedDate()).isEqualTo(Instant.parse("2023-03-15T10:30:00Z"));
+        verify(row, never()).get(anyString(), any(Class.class));
+    }
+
+    @Test
+    void shouldLetTheDriverConvertWhatTheConversionServiceCannot() {
+        EntityRowMapper<Event> mapper = EntityRowMapper
+            .builder(Event::new)
+            .column("created_date", Instant.class, Event::setCreatedDate)
+            .build(converter);
+        Object driverValue = new Object();
+        Row row = mock(Row.class);
+        when(row.get("e_created_date")).thenReturn(driverValue);
+        when(row.get("e_created_date", Instant.class)).thenReturn(Instant.EPOCH);
+
+        assertThat(mapper.apply(row, "e").getCreatedDate()).isEqualTo(Instant.EPOCH);
+    }
+
+    @Test
+    void shouldResolveAConversionOncePerPairOfTypes() {
+        assertThat(converter.resolve(LocalDateTime.class, Instant.class)).isSameAs(converter.resolve(LocalDateTime.class, Instant.class));
+        assertThat(converter.resolve(Object.class, Instant.class)).isNull();
+    }
+
+    private static class Event {
+
+        private Instant createdDate;
+
+        Instant getCreatedDate() {
+            return createdDate;
+        }
+
+        void setCreatedDate(Instant createdDate) {
+            this.createdDate = createdDate;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.okta.developer.gateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Test class for the {@link GrantedAuthorityMapper}.
+ */
+class GrantedAuthorityMapperTest {
+
+    private final GrantedAuthorityMapper mapper = new GrantedAuthorityMapper(100);
+
+    @Test
+    void shouldMapRolesToAuthorities() {
+        List<GrantedAuthority> authorities = mapper.map(List.of(AuthoritiesConstants.ADMIN, "Everyone", AuthoritiesConstants.USER));
+
+        assertThat(authorities)
+            .containsExactly(new SimpleGrantedAuthority(AuthoritiesConstants.ADMIN), new SimpleGrantedAuthority(AuthoritiesConstants.USER));
+    }
+
+    @Test
+    void shouldShareTheAuthoritiesOfTheSameRoles() {
+        List<GrantedAuthority> first = mapper.map(new ArrayList<>(List.of(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER)));
+        List<GrantedAuthority> second = mapper.map(new ArrayList<>(List.of(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER)));
+        List<GrantedAuthority> other = mapper.map(Set.of(AuthoritiesConstants.USER));
+
+        assertThat(second).isSameAs(first);
+        assertThat(other.get(0)).isSameAs(first.get(1));
+    }
+
+    @Test
+    void shouldNotBeAffectedByChangesToTheClaims() {
+        List<String> roles = new ArrayList<>(List.of(AuthoritiesConstants.USER));
+        List<GrantedAuthority> authorities = mapper.map(roles);
+
+        roles.add(AuthoritiesConstants.ADMIN);
+
+        assertThat(mapper.map(List.of(AuthoritiesConstants.USER))).isSameAs(authorities).hasSize(1);
+        assertThat(mapper.map(roles)).hasSize(2);
+        assertThatThrownBy(() -> authorities.add(new SimpleGrantedAuthority(AuthoritiesConstants.ADMIN)))
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+}
@@ -0,0 +1,157 @@
+package com.okta.developer.gateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.PathContainer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+/**
+ * Test class for the {@link PathPatternTrie}, checking it finds the same first matching pattern as Spring's {@link PathPattern}s.
+ */
+class PathPatternTrieTest {
+
+    private static final List<String> PATTERNS = List.of(
+        "/",
+        "/*.*",
+        "/api/authenticate",
+        "/api/admin/**",
+        "/api/**",
+        "/services/*/management/health/readiness",
+        "/services/*/v3/api-docs",
+        "/services/**",
+        "/files/*",
+        "/files/report-??.csv",
+        "/files/*/**",
+        "/management/health",
+        "/management/health/**",
+        "/management/**",
+        "/**"
+    );
+
+    private static final List<String> PATHS = List.of(
+        "",
+        "/",
+        "//",
+        "/index.html",
+        "/index.html/",
+        "/favicon",
+        "/api",
+        "/api/",
+        "/api/authenticate",
+        "/api/authenticate/",
+        "/api/authenticate/more",
+        "/API/authenticate",
+        "/api/admin",
+        "/api/admin/users",
+        "/api/%61dmin/users",
+        "/api/admin;jsessionid=1/users",
+        "/api//admin/users",
+        "/api/admin//users",
+        "api/admin/users",
+        "/services/store/management/health/readiness",
+        "/services/store/management/health/readiness/",
+        "/services/store/v3/api-docs",
+        "/services//v3/api-docs",
+        "/services/store/v3/api-docs/swagger-config",
+        "/services",
+        "/files",
+        "/files/",
+        "/files/report-01.csv",
+        "/files/report-001.csv",
+        "/files/report-01.csv/",
+        "/files/a/b",
+        "/management/health",
+        "/management/health/liveness",
+        "/management/env",
+        "/unknown/path/"
+    );
+
+    @Test
+    void shouldFindTheFirstMatchingPatternLikeSpring() {
+        // also without the last patterns, so the paths the catch-all patterns match are covered too
+        for (int last = PATTERNS.size(); last > 0; last--) {
+            List<String> patterns = PATTERNS.subList(0, last);
+            PathPatternTrie.Builder<Integer> builder = PathPatternTrie.builder();
+            for (int i = 0; i < patterns.size(); i++) {
+                builder.add(patterns.get(i), i);
+            }
+            PathPatternTrie<Integer> trie = builder.build();
+
+            for (String path : PATHS) {
+                PathContainer pathContainer = PathContainer.parsePath(path);
+                assertThat(trie.match(pathContainer)).as("%s with %d patterns", path, last).isEqualTo(firstMatch(patterns, pathContainer));
+            }
+        }
+    }
+
+    @Test
+    void shouldNotMatchAnExtraTrailingSeparator() {
+        PathPatternTrie<String> trie = PathPatternTrie
+            .<String>builder()
+            .add("/", "root")
+            .add("/api/authenticate", "literal")
+            .add("/files/*", "wildcard")
+            .add("/*.*", "segment pattern")
+            .add("/management/**", "catch-all")
+            .build();
+
+        assertThat(trie.match(PathContainer.parsePath("/"))).isEqualTo("root");
+        assertThat(trie.match(PathContainer.parsePath("/api/authenticate/"))).isNull();
+        assertThat(trie.match(PathContainer.parsePath("/files/report.csv/"))).isNull();
+        assertThat(trie.match(PathContainer.parsePath("/index.html/"))).isNull();
+        // but for the trailing '*' and '**', matching the empty segment after it
+        assertThat(trie.match(PathContainer.parsePath("/files/"))).isEqualTo("wildcard");
+        assertThat(trie.match(PathContainer.parsePath("/management/info/"))).isEqualTo("catch-all");
+    }
+
+    @Test
+    void shouldLetTheFirstPatternWin() {
+        PathPatternTrie<String> trie = PathPatternTrie
+            .<String>builder()
+            .add("/api/**", "first")
+            .add("/api/admin/**", "second")
+            .add("/api/**", "third")
+            .build();
+
+        assertThat(trie.match(PathContainer.parsePath("/api/admin/users"))).isEqualTo("first");
+    }
+
+    @Test
+    void shouldMatchExchangesLikeThePathMatchers() {
+        String[] patterns = { "/app/**", "/i18n/**", "/content/**", "/swagger-ui/**" };
+        ServerWebExchangeMatcher compiled = PathPatternTrie.matcher(patterns);
+        ServerWebExchangeMatcher pathMatchers = ServerWebExchangeMatchers.pathMatchers(patterns);
+
+        for (String path : List.of("/app/main.js", "/i18n/en.json", "/content/", "/swagger-ui", "/api/account", "/apps")) {
+            MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+            assertThat(compiled.matches(exchange).block().isMatch()).as(path).isEqualTo(pathMatchers.matches(exchange).block().isMatch());
+        }
+    }
+
+    @Test
+    void shouldRejectUnsupportedPatterns() {
+        PathPatternTrie.Builder<Integer> builder = PathPatternTrie.builder();
+
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.add("/api/{id}", 0));
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.add("/api/**/users", 0));
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.add("/api/", 0));
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.add("api", 0));
+    }
+
+    private static Integer firstMatch(List<String> patterns, PathContainer path) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (PathPatternParser.defaultInstance.parse(patterns.get(i)).matches(path)) {
+                return i;
+            }
+        }
+        return null;
+    }
+}
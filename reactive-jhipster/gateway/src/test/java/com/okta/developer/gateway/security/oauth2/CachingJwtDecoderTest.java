@@ -0,0 +1,137 @@
+package com.okta.developer.gateway.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the {@link CachingJwtDecoder}.
+ */
+class CachingJwtDecoderTest {
+
+    private static final Duration EXPIRY_MARGIN = Duration.ofSeconds(30);
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2023-03-01T10:00:00Z"));
+
+    private final AtomicInteger decodings = new AtomicInteger();
+
+    private final Map<String, Jwt> tokens = new HashMap<>();
+
+    private final ReactiveJwtDecoder delegate = token -> {
+        decodings.incrementAndGet();
+        Jwt jwt = tokens.get(token);
+        if (jwt == null) {
+            return Mono.error(new BadJwtException("Unknown token"));
+        }
+        JwtTimestampValidator validator = new JwtTimestampValidator();
+        validator.setClock(clock);
+        OAuth2TokenValidatorResult result = validator.validate(jwt);
+        if (result.hasErrors()) {
+            return Mono.error(new JwtValidationException("Expired token", result.getErrors()));
+        }
+        return Mono.just(jwt);
+    };
+
+    private final CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, 100, EXPIRY_MARGIN, clock);
+
+    @Test
+    void shouldVerifyATokenOnlyOnce() {
+        givenToken("token", clock.instant().plus(Duration.ofMinutes(5)));
+
+        Jwt first = decoder.decode("token").block();
+        Jwt second = decoder.decode("token").block();
+
+        assertThat(second).isSameAs(first);
+        assertThat(decodings.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepDistinctTokensApart() {
+        givenToken("first", clock.instant().plus(Duration.ofMinutes(5)));
+        givenToken("second", clock.instant().plus(Duration.ofMinutes(5)));
+
+        assertThat(decoder.decode("first").block().getTokenValue()).isEqualTo("first");
+        assertThat(decoder.decode("second").block().getTokenValue()).isEqualTo("second");
+        assertThat(decodings.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotCacheTokensAboutToExpire() {
+        givenToken("token", clock.instant().plus(EXPIRY_MARGIN).minusSeconds(1));
+
+        decoder.decode("token").block();
+        decoder.decode("token").block();
+
+        assertThat(decodings.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotCacheRejectedTokens() {
+        assertThatThrownBy(() -> decoder.decode("unknown").block()).isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> decoder.decode("unknown").block()).isInstanceOf(BadJwtException.class);
+
+        assertThat(decodings.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldRejectCachedTokensWhichAreNotValidAnymore() {
+        givenToken("token", clock.instant().plus(Duration.ofMinutes(5)));
+        decoder.decode("token").block();
+
+        clock.advance(Duration.ofMinutes(10));
+
+        assertThatThrownBy(() -> decoder.decode("token").block()).isInstanceOf(JwtValidationException.class);
+        assertThat(decodings.get()).isEqualTo(2);
+    }
+
+    private void givenToken(String token, Instant expiresAt) {
+        tokens.put(
+            token,
+            Jwt.withTokenValue(token).header("alg", "RS256").subject("admin").issuedAt(clock.instant()).expiresAt(expiresAt).build()
+        );
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
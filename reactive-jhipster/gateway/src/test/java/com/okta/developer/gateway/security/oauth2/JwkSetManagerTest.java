@@ -0,0 +1,168 @@
+package com.okta.developer.gateway.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the {@link JwkSetManager}, with an in-process stand-in for the JWKS endpoint of the IdP.
+ */
+class JwkSetManagerTest {
+
+    private static final Duration FETCH_TIMEOUT = Duration.ofMillis(200);
+
+    private final AtomicReference<JWKSet> publishedKeys = new AtomicReference<>();
+
+    private final AtomicReference<Duration> responseDelay = new AtomicReference<>(Duration.ofMillis(20));
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private RSAKey firstKey;
+
+    private RSAKey rotatedKey;
+
+    private JwkSetManager jwkSetManager;
+
+    @BeforeEach
+    void setup() throws JOSEException {
+        firstKey = new RSAKeyGenerator(2048).keyID("first").generate();
+        rotatedKey = new RSAKeyGenerator(2048).keyID("rotated").generate();
+        publishedKeys.set(new JWKSet(firstKey));
+        jwkSetManager = jwkSetManager(Duration.ofMinutes(5), Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jwkSetManager.stop();
+    }
+
+    @Test
+    void shouldServeKnownKeysWithoutFetching() throws Exception {
+        jwkSetManager.refresh().get(1, TimeUnit.SECONDS);
+
+        List<JWK> keys = jwkSetManager.apply(token("first")).collectList().block();
+
+        assertThat(keys).extracting(JWK::getKeyID).containsExactly("first");
+        assertThat(fetches.get()).isEqualTo(1);
+        assertThat(jwkSetManager.getStalledRequests()).isZero();
+    }
+
+    @Test
+    void shouldRefreshOnlyOnceForConcurrentRequestsWithAnUnknownKey() throws Exception {
+        jwkSetManager.refresh().get(1, TimeUnit.SECONDS);
+        publishedKeys.set(new JWKSet(List.of(firstKey, rotatedKey)));
+        responseDelay.set(Duration.ofMillis(100));
+
+        List<List<JWK>> selections = Flux
+            .range(0, 20)
+            .flatMap(i -> jwkSetManager.apply(token("rotated")).collectList())
+            .collectList()
+            .block();
+
+        assertThat(selections).hasSize(20).allSatisfy(keys -> assertThat(keys).extracting(JWK::getKeyID).containsExactly("rotated"));
+        assertThat(fetches.get()).isEqualTo(2);
+        assertThat(jwkSetManager.getStalledRequests()).isEqualTo(20);
+        assertThat(jwkSetManager.getLastRefreshLatency()).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+    }
+
+    @Test
+    void shouldNotRefetchForUnknownKeysWithinTheMinimumRefreshInterval() throws Exception {
+        jwkSetManager = jwkSetManager(Duration.ofMinutes(5), Duration.ofSeconds(30));
+        jwkSetManager.refresh().get(1, TimeUnit.SECONDS);
+
+        assertThat(jwkSetManager.apply(token("made-up")).collectList().block()).isEmpty();
+
+        assertThat(fetches.get()).isEqualTo(1);
+        assertThat(jwkSetManager.getStalledRequests()).isZero();
+    }
+
+    @Test
+    void shouldKeepTheLastGoodKeysWhenTheIdpIsSlow() throws Exception {
+        jwkSetManager.refresh().get(1, TimeUnit.SECONDS);
+        publishedKeys.set(new JWKSet(rotatedKey));
+        responseDelay.set(FETCH_TIMEOUT.multipliedBy(5));
+
+        JWKSet keys = jwkSetManager.refresh().get(2, TimeUnit.SECONDS);
+
+        assertThat(keys.getKeyByKeyId("first")).isNotNull();
+        assertThat(jwkSetManager.apply(token("first")).collectList().block()).extracting(JWK::getKeyID).containsExactly("first");
+        assertThat(jwkSetManager.getLastRefreshLatency()).isLessThan(FETCH_TIMEOUT.multipliedBy(5));
+    }
+
+    @Test
+    void shouldPickUpRotatedKeysInTheBackground() throws Exception {
+        jwkSetManager = jwkSetManager(Duration.ofMillis(50), Duration.ZERO);
+        jwkSetManager.start();
+        publishedKeys.set(new JWKSet(List.of(firstKey, rotatedKey)));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (jwkSetManager.getJwkSet().getKeyByKeyId("rotated") == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(jwkSetManager.apply(token("rotated")).collectList().block()).extracting(JWK::getKeyID).containsExactly("rotated");
+        assertThat(jwkSetManager.getStalledRequests()).isZero();
+    }
+
+    @Test
+    void shouldPublishRefreshMetrics() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        jwkSetManager.bindTo(registry);
+
+        jwkSetManager.refresh().get(1, TimeUnit.SECONDS);
+
+        assertThat(registry.get("oauth2.jwks.refresh").functionTimer().count()).isEqualTo(1);
+        assertThat(registry.get("oauth2.jwks.keys").gauge().value()).isEqualTo(1);
+    }
+
+    private JwkSetManager jwkSetManager(Duration refreshInterval, Duration minimumRefreshInterval) {
+        WebClient webClient = WebClient
+            .builder()
+            .exchangeFunction(request ->
+                // created when subscribed, as creating the first response loads the codecs, which blocks
+                Mono
+                    .fromSupplier(() ->
+                        ClientResponse
+                            .create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(publishedKeys.get().toString())
+                            .build()
+                    )
+                    .delayElement(responseDelay.get())
+                    .doOnSubscribe(subscription -> fetches.incrementAndGet())
+            )
+            .build();
+        return new JwkSetManager(webClient, "https://jhipster.org/oauth/jwk", refreshInterval, 0.1, minimumRefreshInterval, FETCH_TIMEOUT);
+    }
+
+    private static SignedJWT token(String keyId) {
+        return new SignedJWT(
+            new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(keyId).build(),
+            new JWTClaimsSet.Builder().subject("admin").build()
+        );
+    }
+}
@@ -0,0 +1,217 @@
+package com.okta.developer.gateway.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.mock.web.server.MockWebSession;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizeRequest;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.ReactiveOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.web.server.ServerOAuth2AuthorizedClientRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the {@link RefreshAheadAuthorizedClientManager}.
+ */
+class RefreshAheadAuthorizedClientManagerTest {
+
+    private static final Duration REFRESH_AHEAD = Duration.ofMinutes(2);
+
+    private static final Duration CLOCK_SKEW = Duration.ofSeconds(60);
+
+    private final Instant now = Instant.parse("2023-03-01T10:00:00Z");
+
+    private final ClientRegistration clientRegistration = ClientRegistration
+        .withRegistrationId("oidc")
+        .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+        .clientId("client-id")
+        .redirectUri("{baseUrl}/{action}/oauth2/code/{registrationId}")
+        .authorizationUri("https://jhipster.org/login/oauth/authorize")
+        .tokenUri("https://jhipster.org/login/oauth/access_token")
+        .build();
+
+    private final Authentication principal = new TestingAuthenticationToken("admin", null);
+
+    private final Map<String, OAuth2AuthorizedClient> authorizedClients = new ConcurrentHashMap<>();
+
+    private final AtomicInteger refreshes = new AtomicInteger();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private RefreshAheadAuthorizedClientManager authorizedClientManager;
+
+    @BeforeEach
+    void setup() {
+        ServerOAuth2AuthorizedClientRepository authorizedClientRepository = new ServerOAuth2AuthorizedClientRepository() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T extends OAuth2AuthorizedClient> Mono<T> loadAuthorizedClient(
+                String clientRegistrationId,
+                Authentication principal,
+                ServerWebExchange exchange
+            ) {
+                return exchange.getSession().mapNotNull(session -> (T) authorizedClients.get(session.getId()));
+            }
+
+            @Override
+            public Mono<Void> saveAuthorizedClient(
+                OAuth2AuthorizedClient authorizedClient,
+                Authentication principal,
+                ServerWebExchange exchange
+            ) {
+                return exchange.getSession().doOnNext(session -> authorizedClients.put(session.getId(), authorizedClient)).then();
+            }
+
+            @Override
+            public Mono<Void> removeAuthorizedClient(String clientRegistrationId, Authentication principal, ServerWebExchange exchange) {
+                return exchange.getSession().doOnNext(session -> authorizedClients.remove(session.getId())).then();
+            }
+        };
+        // stands for the refresh token grant, renewing the token for an hour
+        ReactiveOAuth2AuthorizedClientManager delegate = request -> {
+            ServerWebExchange exchange = request.getAttribute(ServerWebExchange.class.getName());
+            refreshes.incrementAndGet();
+            OAuth2AuthorizedClient renewed = authorizedClient("renewed", now.plus(Duration.ofHours(1)));
+            Mono<Void> save = exchange != null
+                ? authorizedClientRepository.saveAuthorizedClient(renewed, principal, exchange)
+                : Mono.empty();
+            return Mono.delay(Duration.ofMillis(50)).then(save).thenReturn(renewed);
+        };
+        authorizedClientManager =
+            new RefreshAheadAuthorizedClientManager(
+                delegate,
+                authorizedClientRepository,
+                REFRESH_AHEAD,
+                CLOCK_SKEW,
+                Clock.fixed(now, ZoneOffset.UTC)
+            );
+        authorizedClientManager.bindTo(meterRegistry);
+    }
+
+    @Test
+    void shouldReturnTheStoredClientWhileItsTokenIsFresh() {
+        ServerWebExchange exchange = exchange("first");
+        givenAuthorizedClient("first", authorizedClient("current", now.plus(Duration.ofMinutes(10))));
+
+        OAuth2AuthorizedClient authorizedClient = authorizedClientManager.authorize(authorizeRequest(exchange)).block();
+
+        assertThat(authorizedClient.getAccessToken().getTokenValue()).isEqualTo("current");
+        assertThat(refreshes.get()).isZero();
+        assertThat(meterRegistry.get("oauth2.authorized.clients.fast.path").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRenewTheTokenInTheBackgroundWithinTheRefreshAheadWindow() throws InterruptedException {
+        ServerWebExchange exchange = exchange("first");
+        givenAuthorizedClient("first", authorizedClient("current", now.plus(Duration.ofSeconds(90))));
+
+        OAuth2AuthorizedClient authorizedClient = authorizedClientManager.authorize(authorizeRequest(exchange)).block();
+
+        assertThat(authorizedClient.getAccessToken().getTokenValue()).isEqualTo("current");
+        assertThat(refreshes.get()).isEqualTo(1);
+
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (authorizedClients.get("first").getAccessToken().getTokenValue().equals("current") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(authorizedClients.get("first").getAccessToken().getTokenValue()).isEqualTo("renewed");
+        assertThat(meterRegistry.get("oauth2.authorized.clients.refreshes").tag("mode", "ahead").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRefreshOnlyOnceForConcurrentRequestsOfASession() {
+        givenAuthorizedClient("first", authorizedClient("current", now.plus(Duration.ofSeconds(30))));
+
+        List<OAuth2AuthorizedClient> authorizedClients = Flux
+            .range(0, 10)
+            .flatMap(i -> authorizedClientManager.authorize(authorizeRequest(exchange("first"))))
+            .collectList()
+            .block();
+
+        assertThat(authorizedClients)
+            .hasSize(10)
+            .allSatisfy(authorizedClient -> assertThat(authorizedClient.getAccessToken().getTokenValue()).isEqualTo("renewed"));
+        assertThat(refreshes.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("oauth2.authorized.clients.refreshes").tag("mode", "blocking").functionCounter().count())
+            .isEqualTo(1);
+        assertThat(meterRegistry.get("oauth2.authorized.clients.coalesced").functionCounter().count()).isEqualTo(9);
+    }
+
+    @Test
+    void shouldRefreshSessionsSeparately() {
+        givenAuthorizedClient("first", authorizedClient("current", now.plus(Duration.ofSeconds(30))));
+        givenAuthorizedClient("second", authorizedClient("current", now.plus(Duration.ofSeconds(30))));
+
+        Flux
+            .merge(
+                authorizedClientManager.authorize(authorizeRequest(exchange("first"))),
+                authorizedClientManager.authorize(authorizeRequest(exchange("second")))
+            )
+            .blockLast();
+
+        assertThat(refreshes.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldDelegateWithoutAnExchange() {
+        OAuth2AuthorizeRequest authorizeRequest = OAuth2AuthorizeRequest.withClientRegistrationId("oidc").principal(principal).build();
+
+        authorizedClientManager.authorize(authorizeRequest).block();
+
+        assertThat(refreshes.get()).isEqualTo(1);
+    }
+
+    private void givenAuthorizedClient(String sessionId, OAuth2AuthorizedClient authorizedClient) {
+        authorizedClients.put(sessionId, authorizedClient);
+    }
+
+    private OAuth2AuthorizedClient authorizedClient(String tokenValue, Instant expiresAt) {
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(
+            OAuth2AccessToken.TokenType.BEARER,
+            tokenValue,
+            expiresAt.minus(Duration.ofHours(1)),
+            expiresAt
+        );
+        return new OAuth2AuthorizedClient(clientRegistration, "admin", accessToken, new OAuth2RefreshToken("refresh-token", null));
+    }
+
+    private OAuth2AuthorizeRequest authorizeRequest(ServerWebExchange exchange) {
+        return OAuth2AuthorizeRequest
+            .withClientRegistrationId("oidc")
+            .principal(principal)
+            .attribute(ServerWebExchange.class.getName(), exchange)
+            .build();
+    }
+
+    private static ServerWebExchange exchange(String sessionId) {
+        return MockServerWebExchange
+            .builder(MockServerHttpRequest.get("/api/account"))
+            .session(new MockWebSession() {
+                @Override
+                public String getId() {
+                    return sessionId;
+                }
+            })
+            .build();
+    }
+}
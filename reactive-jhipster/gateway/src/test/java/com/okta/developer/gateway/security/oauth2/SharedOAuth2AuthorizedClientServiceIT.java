@@ -0,0 +1,119 @@
+package com.okta.developer.gateway.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.okta.developer.gateway.IntegrationTest;
+import com.okta.developer.gateway.repository.PersistentAuthorizedClientRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2RefreshToken;
+
+/**
+ * Integration tests for {@link SharedOAuth2AuthorizedClientService}, each service standing for a gateway instance.
+ */
+@IntegrationTest
+class SharedOAuth2AuthorizedClientServiceIT {
+
+    @Autowired
+    private PersistentAuthorizedClientRepository authorizedClientRepository;
+
+    @Autowired
+    private ReactiveClientRegistrationRepository clientRegistrationRepository;
+
+    @Autowired
+    private ClientRegistration clientRegistration;
+
+    @Autowired
+    private DatabaseClient db;
+
+    @AfterEach
+    public void cleanup() {
+        db.sql("DELETE FROM jhi_authorized_client").then().block();
+    }
+
+    @Test
+    void testAuthorizedClientIsSharedBetweenInstances() {
+        SharedOAuth2AuthorizedClientService first = authorizedClientService();
+        SharedOAuth2AuthorizedClientService second = authorizedClientService();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        second.bindTo(meterRegistry);
+
+        OAuth2AuthorizedClient authorizedClient = authorizedClient("access-token", "refresh-token");
+        first.saveAuthorizedClient(authorizedClient, new TestingAuthenticationToken("admin", null)).block();
+
+        OAuth2AuthorizedClient shared = second.loadAuthorizedClient("oidc", "admin").block();
+
+        assertThat(shared).isNotNull();
+        assertThat(shared.getClientRegistration().getRegistrationId()).isEqualTo("oidc");
+        assertThat(shared.getPrincipalName()).isEqualTo("admin");
+        assertThat(shared.getAccessToken().getTokenValue()).isEqualTo("access-token");
+        assertThat(shared.getAccessToken().getIssuedAt()).isEqualTo(authorizedClient.getAccessToken().getIssuedAt());
+        assertThat(shared.getAccessToken().getExpiresAt()).isEqualTo(authorizedClient.getAccessToken().getExpiresAt());
+        assertThat(shared.getAccessToken().getScopes()).containsExactlyInAnyOrder("openid", "profile");
+        assertThat(shared.getRefreshToken().getTokenValue()).isEqualTo("refresh-token");
+
+        assertThat(second.loadAuthorizedClient("oidc", "admin").block()).isSameAs(shared);
+        assertThat(meterRegistry.get("oauth2.authorized.clients.remote.reads").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testSavingAgainReplacesTheTokens() {
+        SharedOAuth2AuthorizedClientService service = authorizedClientService();
+        TestingAuthenticationToken principal = new TestingAuthenticationToken("admin", null);
+        service.saveAuthorizedClient(authorizedClient("access-token", "refresh-token"), principal).block();
+
+        service.saveAuthorizedClient(authorizedClient("refreshed-access-token", null), principal).block();
+
+        OAuth2AuthorizedClient shared = authorizedClientService().loadAuthorizedClient("oidc", "admin").block();
+        assertThat(shared.getAccessToken().getTokenValue()).isEqualTo("refreshed-access-token");
+        assertThat(shared.getRefreshToken()).isNull();
+    }
+
+    @Test
+    void testRemovedAuthorizedClientIsNotLoaded() {
+        SharedOAuth2AuthorizedClientService service = authorizedClientService();
+        TestingAuthenticationToken principal = new TestingAuthenticationToken("admin", null);
+        service.saveAuthorizedClient(authorizedClient("access-token", "refresh-token"), principal).block();
+
+        service.removeAuthorizedClient("oidc", "admin").block();
+
+        assertThat(service.loadAuthorizedClient("oidc", "admin").block()).isNull();
+        assertThat(authorizedClientRepository.findById("oidc", "admin").block()).isNull();
+    }
+
+    private OAuth2AuthorizedClient authorizedClient(String accessToken, String refreshToken) {
+        Instant issuedAt = Instant.parse("2023-03-01T10:00:00Z");
+        return new OAuth2AuthorizedClient(
+            clientRegistration,
+            "admin",
+            new OAuth2AccessToken(
+                OAuth2AccessToken.TokenType.BEARER,
+                accessToken,
+                issuedAt,
+                issuedAt.plusSeconds(300),
+                Set.of("openid", "profile")
+            ),
+            refreshToken != null ? new OAuth2RefreshToken(refreshToken, issuedAt) : null
+        );
+    }
+
+    private SharedOAuth2AuthorizedClientService authorizedClientService() {
+        return new SharedOAuth2AuthorizedClientService(
+            authorizedClientRepository,
+            clientRegistrationRepository,
+            100,
+            Duration.ofMinutes(1)
+        );
+    }
+}
@@ -0,0 +1,143 @@
+package com.okta.developer.gateway.security.oauth2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the {@link UserInfoEnrichingJwtDecoder}, with a stand-in userinfo endpoint.
+ */
+class UserInfoEnrichingJwtDecoderTest {
+
+    private static final String USER_INFO =
+        "{\"sub\":\"auth0|123\",\"preferred_username\":\"jane@jhipster.tech\",\"name\":\"Jane van Doe\"}";
+
+    private final AtomicInteger userInfoCalls = new AtomicInteger();
+
+    private WebClient webClient;
+
+    @BeforeEach
+    void setup() {
+        webClient =
+            WebClient
+                .builder()
+                .exchangeFunction(request ->
+                    // created when subscribed, as creating the first response loads the codecs, which blocks
+                    Mono
+                        .fromSupplier(() ->
+                            ClientResponse
+                                .create(HttpStatus.OK)
+                                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                                .body(USER_INFO)
+                                .build()
+                        )
+                        .delayElement(Duration.ofMillis(50))
+                        .doOnSubscribe(subscription -> userInfoCalls.incrementAndGet())
+                )
+                .build();
+    }
+
+    @Test
+    void shouldAddUserInfoClaims() {
+        UserInfoEnrichingJwtDecoder decoder = decoderFor(jwt("token", Instant.now().plusSeconds(300)));
+
+        Jwt jwt = decoder.decode("token").block();
+
+        assertThat(jwt.getTokenValue()).isEqualTo("token");
+        assertThat(jwt.getClaimAsString("email")).isEqualTo("jane@jhipster.tech");
+        assertThat(jwt.getClaimAsString("given_name")).isEqualTo("Jane");
+        assertThat(jwt.getClaimAsString("family_name")).isEqualTo("van Doe");
+    }
+
+    @Test
+    void shouldCoalesceConcurrentMissesAndServeHitsFromCache() {
+        UserInfoEnrichingJwtDecoder decoder = decoderFor(jwt("token", Instant.now().plusSeconds(300)));
+
+        Mono.zip(decoder.decode("token"), decoder.decode("token"), decoder.decode("token")).block();
+        decoder.decode("token").block();
+
+        assertThat(userInfoCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldKeepTheTokenOfEachRequestOnCacheHits() {
+        Instant expiresAt = Instant.now().plusSeconds(300);
+        UserInfoEnrichingJwtDecoder decoder = new UserInfoEnrichingJwtDecoder(
+            token -> Mono.just(jwt(token, expiresAt)),
+            webClient,
+            "https://jhipster.org/userinfo"
+        );
+
+        assertThat(decoder.decode("first").block().getTokenValue()).isEqualTo("first");
+        assertThat(decoder.decode("second").block().getTokenValue()).isEqualTo("second");
+        assertThat(userInfoCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldExpireEntriesWithTheToken() {
+        UserInfoEnrichingJwtDecoder decoder = decoderFor(jwt("token", Instant.now().minusSeconds(1)));
+
+        decoder.decode("token").block();
+        decoder.decode("token").block();
+
+        assertThat(userInfoCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotCallUserInfoWhenIdentityClaimsArePresent() {
+        Jwt complete = Jwt
+            .withTokenValue("token")
+            .header("alg", "none")
+            .subject("auth0|123")
+            .claim("given_name", "Jane")
+            .claim("family_name", "Doe")
+            .build();
+        UserInfoEnrichingJwtDecoder decoder = decoderFor(complete);
+
+        assertThat(decoder.decode("token").block()).isSameAs(complete);
+        assertThat(userInfoCalls.get()).isZero();
+    }
+
+    @Test
+    void shouldPublishCacheMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        UserInfoEnrichingJwtDecoder decoder = decoderFor(jwt("token", Instant.now().plusSeconds(300)));
+        decoder.bindTo(registry);
+
+        decoder.decode("token").block();
+        decoder.decode("token").block();
+
+        assertThat(cacheGets(registry, "hit")).isEqualTo(1);
+        assertThat(cacheGets(registry, "miss")).isEqualTo(1);
+    }
+
+    private static double cacheGets(SimpleMeterRegistry registry, String result) {
+        return registry.get("cache.gets").tag("cache", UserInfoEnrichingJwtDecoder.CACHE_NAME).tag("result", result).functionCounter().count();
+    }
+
+    private UserInfoEnrichingJwtDecoder decoderFor(Jwt jwt) {
+        return new UserInfoEnrichingJwtDecoder(token -> Mono.just(jwt), webClient, "https://jhipster.org/userinfo");
+    }
+
+    private static Jwt jwt(String token, Instant expiresAt) {
+        return Jwt
+            .withTokenValue(token)
+            .header("alg", "none")
+            .subject("auth0|123")
+            .issuedAt(expiresAt.minusSeconds(600))
+            .expiresAt(expiresAt)
+            .build();
+    }
+}
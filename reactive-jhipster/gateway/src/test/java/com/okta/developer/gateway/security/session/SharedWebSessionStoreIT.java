@@ -0,0 +1,180 @@
+package com.okta.developer.gateway.security.session;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.okta.developer.gateway.IntegrationTest;
+import com.okta.developer.gateway.repository.WebSessionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.web.server.WebSession;
+
+/**
+ * Integration tests for {@link SharedWebSessionStore}, each store standing for a gateway instance.
+ */
+@IntegrationTest
+class SharedWebSessionStoreIT {
+
+    private static final Duration MAX_IDLE_TIME = Duration.ofMinutes(30);
+
+    private static final Duration TOUCH_INTERVAL = Duration.ofMinutes(1);
+
+    @Autowired
+    private WebSessionRepository webSessionRepository;
+
+    @Autowired
+    private DatabaseClient db;
+
+    private final AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2023-03-01T10:00:00Z"));
+
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now.get();
+        }
+    };
+
+    @AfterEach
+    public void cleanup() {
+        db.sql("DELETE FROM jhi_web_session").then().block();
+    }
+
+    @Test
+    void testSessionIsSharedBetweenInstances() {
+        SharedWebSessionStore first = webSessionStore();
+        SharedWebSessionStore second = webSessionStore();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        second.bindTo(meterRegistry);
+
+        WebSession session = first.createWebSession().block();
+        SecurityContext securityContext = new SecurityContextImpl(new TestingAuthenticationToken("admin", null, "ROLE_ADMIN"));
+        session.getAttributes().put("SPRING_SECURITY_CONTEXT", securityContext);
+        session.getAttributes().put("redirect", "/admin/user-management");
+        session.save().block();
+
+        WebSession shared = second.retrieveSession(session.getId()).block();
+
+        assertThat(shared).isNotNull();
+        assertThat(shared.getCreationTime()).isEqualTo(session.getCreationTime());
+        assertThat(shared.getAttributes()).containsEntry("redirect", "/admin/user-management");
+        assertThat(shared.<SecurityContext>getAttribute("SPRING_SECURITY_CONTEXT").getAuthentication().getName()).isEqualTo("admin");
+
+        assertThat(second.retrieveSession(session.getId()).block()).isSameAs(shared);
+        assertThat(meterRegistry.get("web.sessions.remote.reads").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testUnchangedSessionIsNotWrittenAgain() {
+        SharedWebSessionStore store = webSessionStore();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        store.bindTo(meterRegistry);
+
+        WebSession session = store.createWebSession().block();
+        session.getAttributes().put("redirect", "/");
+        session.save().block();
+        session.save().block();
+        assertThat(meterRegistry.get("web.sessions.writes").functionCounter().count()).isEqualTo(1);
+
+        session.getAttributes().put("redirect", "/admin");
+        session.save().block();
+        assertThat(meterRegistry.get("web.sessions.writes").functionCounter().count()).isEqualTo(2);
+        assertThat(webSessionStore().retrieveSession(session.getId()).block().getAttributes()).containsEntry("redirect", "/admin");
+    }
+
+    @Test
+    void testLastAccessTimeIsRecordedOncePerTouchInterval() {
+        SharedWebSessionStore store = webSessionStore();
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        store.bindTo(meterRegistry);
+        WebSession session = store.createWebSession().block();
+        session.getAttributes().put("redirect", "/");
+        session.save().block();
+
+        now.set(now.get().plusSeconds(10));
+        store.updateLastAccessTime(session).block();
+        session.save().block();
+        assertThat(meterRegistry.get("web.sessions.touches").functionCounter().count()).isZero();
+
+        now.set(now.get().plus(TOUCH_INTERVAL));
+        store.updateLastAccessTime(session).block();
+        session.save().block();
+        assertThat(meterRegistry.get("web.sessions.touches").functionCounter().count()).isEqualTo(1);
+        assertThat(webSessionRepository.findById(session.getId()).block().lastAccessTime()).isEqualTo(now.get());
+    }
+
+    @Test
+    void testInvalidatedSessionIsRemoved() {
+        SharedWebSessionStore store = webSessionStore();
+        WebSession session = store.createWebSession().block();
+        session.getAttributes().put("redirect", "/");
+        session.save().block();
+
+        session.invalidate().block();
+
+        assertThat(webSessionRepository.findById(session.getId()).block()).isNull();
+        assertThat(store.retrieveSession(session.getId()).block()).isNull();
+        assertThat(webSessionStore().retrieveSession(session.getId()).block()).isNull();
+    }
+
+    @Test
+    void testChangedSessionIdIsWrittenUnderTheNewId() {
+        SharedWebSessionStore store = webSessionStore();
+        WebSession session = store.createWebSession().block();
+        session.getAttributes().put("redirect", "/");
+        session.save().block();
+        String oldId = session.getId();
+
+        session.changeSessionId().block();
+        session.save().block();
+
+        assertThat(session.getId()).isNotEqualTo(oldId);
+        assertThat(webSessionRepository.findById(oldId).block()).isNull();
+        assertThat(webSessionStore().retrieveSession(session.getId()).block().getAttributes()).containsEntry("redirect", "/");
+    }
+
+    @Test
+    void testExpiredSessionsAreDeleted() {
+        SharedWebSessionStore store = webSessionStore();
+        WebSession session = store.createWebSession().block();
+        session.getAttributes().put("redirect", "/");
+        session.save().block();
+
+        now.set(now.get().plus(MAX_IDLE_TIME).plusSeconds(1));
+
+        assertThat(store.deleteExpiredSessions().block()).isEqualTo(1);
+        assertThat(store.retrieveSession(session.getId()).block()).isNull();
+    }
+
+    private SharedWebSessionStore webSessionStore() {
+        return new SharedWebSessionStore(
+            webSessionRepository,
+            MAX_IDLE_TIME,
+            100,
+            Duration.ofMinutes(1),
+            TOUCH_INTERVAL,
+            Duration.ofHours(1),
+            clock
+        );
+    }
+}
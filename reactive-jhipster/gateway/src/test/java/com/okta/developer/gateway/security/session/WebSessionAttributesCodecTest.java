@@ -0,0 +1,139 @@
+package com.okta.developer.gateway.security.session;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URL;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+
+/**
+ * Test class for the {@link WebSessionAttributesCodec}.
+ */
+class WebSessionAttributesCodecTest {
+
+    @Test
+    void shouldDecodeTheEncodedAttributes() {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("string", "/admin/user-management");
+        attributes.put("boolean", true);
+        attributes.put("integer", 42);
+        attributes.put("long", 42L);
+        attributes.put("instant", Instant.parse("2023-03-01T10:00:00.123456789Z"));
+        attributes.put("serializable", new SecurityContextImpl(new TestingAuthenticationToken("admin", null, "ROLE_ADMIN")));
+
+        Map<String, Object> decoded = WebSessionAttributesCodec.decode(WebSessionAttributesCodec.encode(attributes));
+
+        assertThat(decoded).hasSize(6).containsAllEntriesOf(Map.of("string", "/admin/user-management", "boolean", true, "integer", 42));
+        assertThat(decoded).containsEntry("long", 42L).containsEntry("instant", Instant.parse("2023-03-01T10:00:00.123456789Z"));
+        assertThat(((SecurityContext) decoded.get("serializable")).getAuthentication().getName()).isEqualTo("admin");
+    }
+
+    @Test
+    void shouldDecodeTheAttributesOfAnOidcLogin() throws IOException {
+        OidcIdToken idToken = OidcIdToken
+            .withTokenValue("id-token")
+            .claim("iss", new URL("https://idp.example.com"))
+            .subject("admin")
+            .audience(List.of("gateway"))
+            .issuedAt(Instant.parse("2023-03-01T10:00:00Z"))
+            .expiresAt(Instant.parse("2023-03-01T11:00:00Z"))
+            .claim("groups", new ArrayList<>(List.of("Administrators")))
+            .claim("address", Map.of("country", "FR"))
+            .build();
+        DefaultOidcUser user = new DefaultOidcUser(List.of(new OidcUserAuthority(idToken)), idToken);
+        OAuth2AuthorizationRequest authorizationRequest = OAuth2AuthorizationRequest
+            .authorizationCode()
+            .authorizationUri("https://idp.example.com/authorize")
+            .clientId("gateway")
+            .scopes(Set.of("openid"))
+            .state("state")
+            .build();
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("SPRING_SECURITY_CONTEXT", new SecurityContextImpl(new OAuth2AuthenticationToken(user, user.getAuthorities(), "oidc")));
+        attributes.put("AUTHORIZATION_REQUEST", new HashMap<>(Map.of("state", authorizationRequest)));
+
+        Map<String, Object> decoded = WebSessionAttributesCodec.decode(WebSessionAttributesCodec.encode(attributes));
+
+        assertThat(decoded).containsOnlyKeys("SPRING_SECURITY_CONTEXT", "AUTHORIZATION_REQUEST");
+        OAuth2AuthenticationToken authentication = (OAuth2AuthenticationToken) ((SecurityContext) decoded.get("SPRING_SECURITY_CONTEXT"))
+            .getAuthentication();
+        assertThat(authentication.getPrincipal()).isEqualTo(user);
+        assertThat(((Map<?, ?>) decoded.get("AUTHORIZATION_REQUEST")).get("state"))
+            .extracting("authorizationRequestUri")
+            .isEqualTo(authorizationRequest.getAuthorizationRequestUri());
+    }
+
+    @Test
+    void shouldLeaveOutTheValuesOfOtherClasses() {
+        Map<String, Object> attributes = Map.of(
+            "payload",
+            new ArrayList<>(List.of(new Payload("calc.exe"))),
+            "nested",
+            nested(30),
+            "redirect",
+            "/admin/user-management"
+        );
+
+        Map<String, Object> decoded = WebSessionAttributesCodec.decode(WebSessionAttributesCodec.encode(attributes));
+
+        assertThat(decoded).containsOnlyKeys("redirect");
+    }
+
+    @Test
+    void shouldBeMoreCompactThanJavaSerialization() throws IOException {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("SPRING_SECURITY_CONTEXT", new SecurityContextImpl(new TestingAuthenticationToken("admin", null, "ROLE_ADMIN")));
+        attributes.put("redirect", "/admin/user-management");
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(new HashMap<>(attributes));
+        }
+
+        assertThat(WebSessionAttributesCodec.encode(attributes).length).isLessThan(serialized.size());
+    }
+
+    @Test
+    void shouldLeaveOutTheAttributesWhichCantBeSerialized() {
+        Map<String, Object> attributes = Map.of("thread", new Object(), "list", List.of("a", "b"));
+
+        Map<String, Object> decoded = WebSessionAttributesCodec.decode(WebSessionAttributesCodec.encode(attributes));
+
+        assertThat(decoded).containsOnlyKeys("list");
+    }
+
+    @Test
+    void shouldIgnoreUnknownVersions() {
+        byte[] encoded = WebSessionAttributesCodec.encode(Map.of("redirect", "/"));
+        encoded[0] = 42;
+
+        assertThat(WebSessionAttributesCodec.decode(encoded)).isEmpty();
+    }
+
+    private static List<Object> nested(int depth) {
+        List<Object> list = new ArrayList<>();
+        if (depth > 0) {
+            list.add(nested(depth - 1));
+        }
+        return list;
+    }
+
+    private record Payload(String command) implements Serializable {}
+}
@@ -1,14 +1,17 @@
 package com.okta.developer.gateway.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import com.okta.developer.gateway.IntegrationTest;
 import com.okta.developer.gateway.config.Constants;
+import com.okta.developer.gateway.domain.Authority;
 import com.okta.developer.gateway.domain.User;
 import com.okta.developer.gateway.repository.UserRepository;
 import com.okta.developer.gateway.security.AuthoritiesConstants;
 import com.okta.developer.gateway.service.dto.AdminUserDTO;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -18,9 +21,12 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.authentication.TestingAuthenticationToken;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
 import org.springframework.security.oauth2.core.user.OAuth2User;
@@ -141,6 +147,72 @@ class UserServiceIT {
         assertThat(userDTO.getLangKey()).isEqualTo("en");
     }
 
+    @Test
+    void testUserIsNotSynchronizedAgainWithUnchangedClaims() {
+        userDetails.put("preferred_username", "unchanged-claims");
+        OAuth2AuthenticationToken authentication = createMockOAuth2AuthenticationToken(userDetails);
+        userService.getUserFromAuthentication(authentication).block();
+
+        User synchronizedUser = userRepository.findOneByLogin("unchanged-claims").block();
+        synchronizedUser.setFirstName("local");
+        userRepository.save(synchronizedUser).block();
+
+        AdminUserDTO userDTO = userService.getUserFromAuthentication(authentication).block();
+
+        assertThat(userDTO.getFirstName()).isEqualTo(DEFAULT_FIRSTNAME);
+        assertThat(userRepository.findOneByLogin("unchanged-claims").block().getFirstName()).isEqualTo("local");
+
+        userDetails.put("given_name", "jane");
+        // as in a request of the user, whose profile is the one updated
+        userDTO =
+            userService
+                .getUserFromAuthentication(createMockOAuth2AuthenticationToken(userDetails))
+                .contextWrite(ReactiveSecurityContextHolder.withAuthentication(new TestingAuthenticationToken("unchanged-claims", null)))
+                .block();
+
+        assertThat(userDTO.getFirstName()).isEqualTo("jane");
+        assertThat(userRepository.findOneByLogin("unchanged-claims").block().getFirstName()).isEqualTo("jane");
+    }
+
+    @Test
+    void testGetAllManagedUsersSortedAndPaged() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User managedUser = new User();
+            managedUser.setId("managed-" + i);
+            managedUser.setLogin("managed-" + i);
+            managedUser.setActivated(true);
+            managedUser.setCreatedBy(Constants.SYSTEM);
+            managedUser.getAuthorities().add(authority(AuthoritiesConstants.USER));
+            if (i == 2) {
+                managedUser.getAuthorities().add(authority(AuthoritiesConstants.ADMIN));
+            }
+            users.add(managedUser);
+        }
+        userRepository.createAll(users).block();
+
+        List<AdminUserDTO> page = userService
+            .getAllManagedUsers(PageRequest.of(1, 2, Sort.by(Sort.Direction.DESC, "login")))
+            .collectList()
+            .block();
+
+        assertThat(page).extracting(AdminUserDTO::getLogin).containsExactly("managed-2", "managed-1");
+        assertThat(page.get(0).getAuthorities()).containsExactlyInAnyOrder(AuthoritiesConstants.USER, AuthoritiesConstants.ADMIN);
+        assertThat(page.get(1).getAuthorities()).containsExactly(AuthoritiesConstants.USER);
+    }
+
+    @Test
+    void testGetAllManagedUsersRefusesAnUnsortableProperty() {
+        assertThatThrownBy(() -> userService.getAllManagedUsers(PageRequest.of(0, 2, Sort.by("login; DROP TABLE jhi_user"))).blockFirst())
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Authority authority(String name) {
+        Authority authority = new Authority();
+        authority.setName(name);
+        return authority;
+    }
+
     private OAuth2AuthenticationToken createMockOAuth2AuthenticationToken(Map<String, Object> userDetails) {
         Collection<GrantedAuthority> authorities = Collections.singletonList(new SimpleGrantedAuthority(AuthoritiesConstants.ANONYMOUS));
         UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(
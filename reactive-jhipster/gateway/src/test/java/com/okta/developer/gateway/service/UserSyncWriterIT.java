@@ -0,0 +1,214 @@
+package com.okta.developer.gateway.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import com.okta.developer.gateway.IntegrationTest;
+import com.okta.developer.gateway.config.ApplicationProperties;
+import com.okta.developer.gateway.config.Constants;
+import com.okta.developer.gateway.domain.Authority;
+import com.okta.developer.gateway.domain.User;
+import com.okta.developer.gateway.repository.AuthorityRepository;
+import com.okta.developer.gateway.repository.UserRepository;
+import com.okta.developer.gateway.security.AuthoritiesConstants;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.ReactiveTransactionManager;
+
+/**
+ * Integration tests for {@link UserSyncWriter}.
+ */
+@IntegrationTest
+class UserSyncWriterIT {
+
+    private static final String NEW_AUTHORITY = "ROLE_SYNC_WRITER";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AuthorityRepository authorityRepository;
+
+    @Autowired
+    private ReactiveTransactionManager transactionManager;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private UserSyncWriter userSyncWriter;
+
+    @BeforeEach
+    public void init() {
+        userRepository.deleteAllUserAuthorities().block();
+        userRepository.deleteAll().block();
+        userSyncWriter = createWriter(userRepository);
+    }
+
+    @AfterEach
+    public void cleanup() {
+        userSyncWriter.stop();
+        userRepository.deleteAllUserAuthorities().block();
+        authorityRepository.deleteById(NEW_AUTHORITY).block();
+    }
+
+    @Test
+    void testUsersAreWrittenOnFlush() {
+        assertThat(userSyncWriter.submit(change(createUser("johndoe", "john"), null))).isTrue();
+        assertThat(userSyncWriter.submit(change(createUser("janedoe", "jane"), null))).isTrue();
+
+        assertThat(userRepository.count().block()).isZero();
+
+        userSyncWriter.flush().block();
+
+        User johndoe = userRepository.findOneWithAuthoritiesByLogin("johndoe").block();
+        assertThat(johndoe.getFirstName()).isEqualTo("john");
+        assertThat(johndoe.getCreatedBy()).isEqualTo(Constants.SYSTEM);
+        assertThat(johndoe.getAuthorities()).extracting(Authority::getName).containsOnly(AuthoritiesConstants.USER, NEW_AUTHORITY);
+        assertThat(userRepository.findOneByLogin("janedoe").block().getFirstName()).isEqualTo("jane");
+        assertThat(authorityRepository.findById(NEW_AUTHORITY).block()).isNotNull();
+        assertThat(meterRegistry.get("users.sync.written").functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("users.sync.batches").functionTimer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testChangesAreMergedByLogin() {
+        userSyncWriter.submit(change(createUser("johndoe", "john"), null));
+        userSyncWriter.submit(change(createUser("johndoe", "johnny"), null));
+
+        userSyncWriter.flush().block();
+
+        assertThat(userRepository.findOneByLogin("johndoe").block().getFirstName()).isEqualTo("johnny");
+        assertThat(meterRegistry.get("users.sync.merged").functionCounter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("users.sync.written").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testExistingUsersAreUpdatedUnlessTheIdpSaysOtherwise() {
+        userSyncWriter.submit(change(createUser("johndoe", "john"), null));
+        userSyncWriter.submit(change(createUser("janedoe", "jane"), null));
+        userSyncWriter.flush().block();
+
+        userSyncWriter.submit(change(createUser("johndoe", "johnny"), null));
+        userSyncWriter.submit(change(createUser("janedoe", "janet"), Instant.EPOCH));
+        userSyncWriter.flush().block();
+
+        assertThat(userRepository.findOneByLogin("johndoe").block().getFirstName()).isEqualTo("johnny");
+        assertThat(userRepository.findOneByLogin("janedoe").block().getFirstName()).isEqualTo("jane");
+    }
+
+    @Test
+    void testChangesAreRefusedWhenTooManyLoginsArePending() {
+        assertThat(userSyncWriter.submit(change(createUser("user1", "one"), null))).isTrue();
+        assertThat(userSyncWriter.submit(change(createUser("user2", "two"), null))).isTrue();
+        assertThat(userSyncWriter.submit(change(createUser("user3", "three"), null))).isTrue();
+
+        assertThat(userSyncWriter.submit(change(createUser("user4", "four"), null))).isFalse();
+        assertThat(userSyncWriter.submit(change(createUser("user1", "uno"), null))).isTrue();
+        assertThat(meterRegistry.get("users.sync.refused").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void testFailingUsersAreReportedWithoutLosingTheBatch() {
+        User duplicateEmail = createUser("janedoe", "jane");
+        duplicateEmail.setEmail("johndoe@localhost");
+        userSyncWriter.submit(change(createUser("johndoe", "john"), null));
+        userSyncWriter.submit(change(duplicateEmail, null));
+
+        userSyncWriter.flush().block();
+
+        assertThat(userRepository.findOneByLogin("johndoe").block()).isNotNull();
+        assertThat(userRepository.findOneByLogin("janedoe").block()).isNull();
+        assertThat(failures.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testTheFlushInProgressAndThePendingChangesAreWrittenOnStop() {
+        userSyncWriter = createSlowWriter();
+        userSyncWriter.submit(change(createUser("johndoe", "john"), null));
+        userSyncWriter.flush().subscribe();
+        userSyncWriter.submit(change(createUser("janedoe", "jane"), null));
+
+        userSyncWriter.stop();
+
+        assertThat(userRepository.findOneByLogin("johndoe").block()).isNotNull();
+        assertThat(userRepository.findOneByLogin("janedoe").block()).isNotNull();
+        assertThat(userSyncWriter.submit(change(createUser("user1", "one"), null))).isFalse();
+    }
+
+    @Test
+    void testChangesToTheLoginsBeingWrittenAreMergedWhenTooManyLoginsArePending() {
+        userSyncWriter = createSlowWriter();
+        userSyncWriter.submit(change(createUser("johndoe", "john"), null));
+        userSyncWriter.flush().subscribe();
+        userSyncWriter.submit(change(createUser("user1", "one"), null));
+        userSyncWriter.submit(change(createUser("user2", "two"), null));
+        userSyncWriter.submit(change(createUser("user3", "three"), null));
+
+        assertThat(userSyncWriter.submit(change(createUser("user4", "four"), null))).isFalse();
+        assertThat(userSyncWriter.submit(change(createUser("johndoe", "johnny"), null))).isTrue();
+
+        userSyncWriter.stop();
+
+        assertThat(userRepository.findOneByLogin("johndoe").block().getFirstName()).isEqualTo("johnny");
+        assertThat(userRepository.count().block()).isEqualTo(4);
+    }
+
+    private UserSyncWriter createWriter(UserRepository userRepository) {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        ApplicationProperties.UserSync.WriteBehind writeBehind = applicationProperties.getUserSync().getWriteBehind();
+        writeBehind.setEnabled(true);
+        writeBehind.setBatchSize(10);
+        // flush on demand only
+        writeBehind.setFlushInterval(Duration.ofHours(1));
+        writeBehind.setMaxPending(3);
+        UserSyncWriter writer = new UserSyncWriter(userRepository, transactionManager, applicationProperties);
+        writer.bindTo(meterRegistry);
+        writer.start();
+        return writer;
+    }
+
+    /**
+     * A writer whose batches take a while, so that a flush is still in progress when the test goes on.
+     */
+    private UserSyncWriter createSlowWriter() {
+        userSyncWriter.stop();
+        UserRepository slowUserRepository = mock(UserRepository.class, delegatesTo(userRepository));
+        Duration delay = Duration.ofMillis(500);
+        doAnswer(invocation -> userRepository.createMissingAuthorities(invocation.getArgument(0)).delaySubscription(delay))
+            .when(slowUserRepository)
+            .createMissingAuthorities(any());
+        return createWriter(slowUserRepository);
+    }
+
+    private UserSyncWriter.Change change(User user, Instant idpModifiedDate) {
+        return new UserSyncWriter.Change(user, idpModifiedDate, Constants.SYSTEM, failures::incrementAndGet);
+    }
+
+    private static User createUser(String login, String firstName) {
+        User user = new User();
+        user.setId(login + "-id");
+        user.setLogin(login);
+        user.setFirstName(firstName);
+        user.setLastName("doe");
+        user.setEmail(login + "@localhost");
+        user.setActivated(true);
+        user.setLangKey("en");
+        Authority userAuthority = new Authority();
+        userAuthority.setName(AuthoritiesConstants.USER);
+        Authority newAuthority = new Authority();
+        newAuthority.setName(NEW_AUTHORITY);
+        user.setAuthorities(Set.of(userAuthority, newAuthority));
+        return user;
+    }
+}
@@ -0,0 +1,41 @@
+package com.okta.developer.gateway.service.dto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+
+/**
+ * Test class for the {@link UserCursor}.
+ */
+class UserCursorTest {
+
+    @Test
+    void shouldStartInTheFirstOrderOfTheSort() {
+        assertThat(UserCursor.first(Sort.by(Sort.Direction.DESC, "login", "id")))
+            .isEqualTo(new UserCursor(Sort.Order.desc("login"), null, null));
+        assertThat(UserCursor.first(Sort.unsorted())).isEqualTo(new UserCursor(Sort.Order.asc("id"), null, null));
+    }
+
+    @Test
+    void shouldDecodeTheCursorAfterAUser() {
+        UserCursor cursor = UserCursor.first(Sort.by("login")).after("4c973896", "admin");
+
+        assertThat(UserCursor.decode(cursor.encode())).isEqualTo(new UserCursor(Sort.Order.asc("login"), "admin", "4c973896"));
+    }
+
+    @Test
+    void shouldRefuseAPropertyWhichIsNotUnique() {
+        assertThatThrownBy(() -> UserCursor.first(Sort.by("lastName"))).isInstanceOf(IllegalArgumentException.class);
+        String token = Base64.getUrlEncoder().encodeToString("lastName\nASC\nDoe\n4c973896".getBytes());
+        assertThatThrownBy(() -> UserCursor.decode(token)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRefuseAnInvalidToken() {
+        assertThatThrownBy(() -> UserCursor.decode("not a cursor")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UserCursor.decode("bG9naW4")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
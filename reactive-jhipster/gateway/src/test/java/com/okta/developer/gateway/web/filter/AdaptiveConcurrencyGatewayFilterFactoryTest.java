@@ -0,0 +1,81 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * Test class for the {@link AdaptiveConcurrencyGatewayFilterFactory}.
+ */
+class AdaptiveConcurrencyGatewayFilterFactoryTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private GatewayFilter filter;
+
+    @BeforeEach
+    void setup() {
+        AdaptiveConcurrencyGatewayFilterFactory.Config config = new AdaptiveConcurrencyGatewayFilterFactory.Config();
+        config.setRouteId(ServicePrefixRouter.ROUTE_ID);
+        config.setInitialLimit(1);
+        config.setMinLimit(1);
+        config.setMaxQueueSize(1);
+        config.setMaxWait(Duration.ofSeconds(5));
+        filter = new AdaptiveConcurrencyGatewayFilterFactory(meterRegistry).apply(config);
+    }
+
+    @Test
+    void shouldRejectTheRequestsOverTheLimitAndTheQueue() {
+        Sinks.Empty<Void> backend = Sinks.empty();
+        MockServerWebExchange inFlight = MockServerWebExchange.from(MockServerHttpRequest.get("/api/account"));
+        MockServerWebExchange waiting = MockServerWebExchange.from(MockServerHttpRequest.get("/api/account"));
+        MockServerWebExchange rejected = MockServerWebExchange.from(MockServerHttpRequest.get("/api/account"));
+
+        Disposable first = filter.filter(inFlight, exchange -> backend.asMono()).subscribe();
+        Disposable second = filter.filter(waiting, exchange -> Mono.empty()).subscribe();
+        filter.filter(rejected, exchange -> Mono.empty()).block(Duration.ofSeconds(5));
+
+        assertThat(rejected.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(meterRegistry.get("gateway.concurrency.rejected").tag("route", "services").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.concurrency.in.flight").tag("service", "services").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.concurrency.queued").tag("service", "services").gauge().value()).isEqualTo(1);
+
+        backend.tryEmitEmpty();
+
+        assertThat(first.isDisposed()).isTrue();
+        assertThat(second.isDisposed()).isTrue();
+        assertThat(waiting.getResponse().getStatusCode()).isNull();
+        assertThat(meterRegistry.get("gateway.concurrency.in.flight").tag("service", "services").gauge().value()).isZero();
+        assertThat(meterRegistry.get("gateway.concurrency.limit").tag("service", "services").gauge().value()).isPositive();
+    }
+
+    @Test
+    void shouldLimitEachServiceApart() {
+        ServicePrefixRouter router = new ServicePrefixRouter(mock(ReactiveDiscoveryClient.class), event -> {});
+        router.update(List.of("blog", "store"));
+        MockServerWebExchange blog = MockServerWebExchange.from(MockServerHttpRequest.get("/services/blog/api/blogs"));
+        MockServerWebExchange store = MockServerWebExchange.from(MockServerHttpRequest.get("/services/store/api/products"));
+        assertThat(router.matches(blog)).isTrue();
+        assertThat(router.matches(store)).isTrue();
+
+        filter.filter(blog, exchange -> Mono.never()).subscribe();
+        filter.filter(store, exchange -> Mono.empty()).block(Duration.ofSeconds(5));
+
+        assertThat(store.getResponse().getStatusCode()).isNotEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(meterRegistry.get("gateway.concurrency.in.flight").tag("service", "blog").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.concurrency.in.flight").tag("service", "store").gauge().value()).isZero();
+    }
+}
@@ -0,0 +1,125 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simulates 30 seconds of traffic to a stand-in of the blog, whose database degrades on purpose after 10 seconds, on a virtual
+ * clock, to compare the latency of the requests sent without limit, as done before, and limited by the
+ * {@link AdaptiveConcurrencyLimiter}.
+ * <p>
+ * The requests arrive at a steady 1000 per second. The stand-in runs 20 queries at once, the others waiting in line, each
+ * taking 10ms, then 40ms once degraded: it serves 2000 requests per second, then 500, fewer than it gets.
+ */
+class AdaptiveConcurrencyLimiterSimulationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiterSimulationTest.class);
+
+    private static final int REQUESTS = 30_000;
+
+    private static final long ARRIVAL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long DEGRADATION = TimeUnit.SECONDS.toNanos(10);
+
+    private static final int DATABASE_CONNECTIONS = 20;
+
+    /**
+     * The outcome of a simulation: the latency of the requests sent, by arrival time, and the requests rejected.
+     */
+    private record Outcome(List<long[]> latencies, int rejectedBeforeDegradation, int rejectedAfterDegradation, int lowestLimit) {
+        long percentile(long from, long to, double percentile) {
+            long[] sorted = latencies
+                .stream()
+                .filter(latency -> latency[0] >= from && latency[0] < to)
+                .mapToLong(latency -> latency[1])
+                .sorted()
+                .toArray();
+            return TimeUnit.NANOSECONDS.toMillis(sorted[(int) (percentile * (sorted.length - 1))]);
+        }
+    }
+
+    private record Completion(long time, AdaptiveConcurrencyLimiter.Permit permit) {}
+
+    @Test
+    void shouldKeepTheLatencyLowWhenTheBackendDegrades() {
+        Outcome unlimited = simulate(null, new AtomicLong());
+        AtomicLong clock = new AtomicLong();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+            new AdaptiveConcurrencyLimiter.Limits(20, 5, 500, 1.5, 0, Duration.ZERO),
+            clock::get
+        );
+        Outcome limited = simulate(limiter, clock);
+
+        long end = REQUESTS * ARRIVAL_INTERVAL;
+        long lastSeconds = end - TimeUnit.SECONDS.toNanos(5);
+        log.info(
+            "Before: p99 {}ms - After, unlimited: p50 {}ms, p99 {}ms - After, limited: p50 {}ms, p99 {}ms, {} rejected, limit down to {}",
+            limited.percentile(0, DEGRADATION, 0.99),
+            unlimited.percentile(lastSeconds, end, 0.5),
+            unlimited.percentile(lastSeconds, end, 0.99),
+            limited.percentile(lastSeconds, end, 0.5),
+            limited.percentile(lastSeconds, end, 0.99),
+            limited.rejectedAfterDegradation(),
+            limited.lowestLimit()
+        );
+        // the requests pile up in front of the database
+        assertThat(unlimited.percentile(lastSeconds, end, 0.99)).isGreaterThan(5_000);
+        assertThat(limited.percentile(lastSeconds, end, 0.99)).isLessThan(1_000);
+        assertThat(limited.rejectedBeforeDegradation()).isZero();
+        assertThat(limited.rejectedAfterDegradation()).isPositive();
+        assertThat(limited.lowestLimit()).isLessThan(DATABASE_CONNECTIONS);
+    }
+
+    private static Outcome simulate(AdaptiveConcurrencyLimiter limiter, AtomicLong clock) {
+        Random random = new Random(7);
+        // when each connection of the database is free again
+        PriorityQueue<Long> connections = new PriorityQueue<>();
+        for (int i = 0; i < DATABASE_CONNECTIONS; i++) {
+            connections.add(0L);
+        }
+        PriorityQueue<Completion> completions = new PriorityQueue<>(Comparator.comparingLong(Completion::time));
+        List<long[]> latencies = new ArrayList<>();
+        int[] rejected = new int[2];
+        int lowestLimit = Integer.MAX_VALUE;
+        for (int i = 0; i < REQUESTS; i++) {
+            long now = (i + 1) * ARRIVAL_INTERVAL;
+            while (!completions.isEmpty() && completions.peek().time() <= now) {
+                Completion completion = completions.poll();
+                clock.set(completion.time());
+                if (completion.permit() != null) {
+                    completion.permit().release(true);
+                }
+            }
+            clock.set(now);
+            boolean degraded = now > DEGRADATION;
+            AdaptiveConcurrencyLimiter.Permit permit = null;
+            if (limiter != null) {
+                lowestLimit = Math.min(lowestLimit, limiter.limit());
+                permit = limiter.acquire().block();
+                if (permit == null) {
+                    rejected[degraded ? 1 : 0]++;
+                    continue;
+                }
+            }
+            long queryTime = TimeUnit.MILLISECONDS.toNanos(degraded ? 40 : 10);
+            // half of it fixed, half of it exponentially distributed
+            long serviceTime = queryTime / 2 + (long) (-Math.log(1 - random.nextDouble()) * queryTime / 2);
+            long start = Math.max(now, connections.poll());
+            connections.add(start + serviceTime);
+            completions.add(new Completion(start + serviceTime, permit));
+            latencies.add(new long[] { now, start + serviceTime - now });
+        }
+        return new Outcome(latencies, rejected[0], rejected[1], lowestLimit);
+    }
+}
@@ -0,0 +1,162 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+/**
+ * Test class for the {@link AdaptiveConcurrencyLimiter}.
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void shouldRejectTheRequestsOverTheLimitWhenTheQueueIsFull() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 0, Duration.ofSeconds(1));
+
+        assertThat(limiter.acquire().block()).isNotNull();
+        assertThat(limiter.acquire().block()).isNotNull();
+        assertThat(limiter.acquire().block()).isNull();
+        assertThat(limiter.inFlight()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldGiveTheReleasedPermitToTheFirstWaitingRequest() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, Duration.ofSeconds(5));
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire().block();
+        List<AdaptiveConcurrencyLimiter.Permit> granted = new ArrayList<>();
+
+        limiter.acquire().subscribe(granted::add);
+        assertThat(limiter.queued()).isEqualTo(1);
+        // the queue is full
+        assertThat(limiter.acquire().block()).isNull();
+        first.release(false);
+
+        assertThat(granted).hasSize(1);
+        assertThat(limiter.inFlight()).isEqualTo(1);
+        assertThat(limiter.queued()).isZero();
+    }
+
+    @Test
+    void shouldRejectTheRequestsWaitingForTooLong() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, Duration.ofMillis(100));
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire().block();
+
+        StepVerifier.create(limiter.acquire()).expectComplete().verify(Duration.ofSeconds(5));
+        assertThat(limiter.queued()).isZero();
+
+        first.release(false);
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldReleaseThePermitOfACancelledWaitingRequest() {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, Duration.ofSeconds(5));
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire().block();
+
+        limiter.acquire().subscribe().dispose();
+        first.release(false);
+
+        assertThat(limiter.queued()).isZero();
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldReleaseAPermitOnce() {
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 0, Duration.ofSeconds(1));
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire().block();
+        limiter.acquire().block();
+
+        permit.release(false);
+        permit.release(false);
+
+        assertThat(limiter.inFlight()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldLowerTheLimitWhenTheLatencyGrows() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 0, Duration.ofSeconds(1));
+        for (int i = 0; i < 200; i++) {
+            saturate(limiter, Duration.ofMillis(10));
+        }
+        int limit = limiter.limit();
+
+        saturate(limiter, Duration.ofMillis(50));
+
+        assertThat(limiter.limit()).isLessThan(limit / 2);
+        assertThat(limiter.limit()).isGreaterThanOrEqualTo(5);
+    }
+
+    @Test
+    void shouldRaiseTheLimitWhileTheLatencyHolds() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 0, Duration.ofSeconds(1));
+
+        for (int i = 0; i < 5; i++) {
+            saturate(limiter, Duration.ofMillis(10));
+        }
+
+        assertThat(limiter.limit()).isGreaterThan(20);
+    }
+
+    @Test
+    void shouldNotRaiseTheLimitWhenItIsNotUsed() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 0, Duration.ofSeconds(1));
+
+        for (int i = 0; i < 100; i++) {
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire().block();
+            clock.addAndGet(Duration.ofMillis(10).toNanos());
+            permit.release(true);
+        }
+
+        assertThat(limiter.limit()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldTimeTheRequestsUntilTheirResponse() {
+        AdaptiveConcurrencyLimiter limiter = limiter(20, 0, Duration.ofSeconds(1));
+        for (int i = 0; i < 200; i++) {
+            saturate(limiter, Duration.ofMillis(10));
+        }
+        int limit = limiter.limit();
+
+        // slow clients, reading the responses for long
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquireAll(limiter);
+        clock.addAndGet(Duration.ofMillis(10).toNanos());
+        permits.forEach(AdaptiveConcurrencyLimiter.Permit::responded);
+        clock.addAndGet(Duration.ofSeconds(1).toNanos());
+        permits.forEach(permit -> permit.release(true));
+
+        assertThat(limiter.limit()).isGreaterThanOrEqualTo(limit);
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxQueueSize, Duration maxWait) {
+        return new AdaptiveConcurrencyLimiter(
+            new AdaptiveConcurrencyLimiter.Limits(initialLimit, Math.min(5, initialLimit), 100, 1.5, maxQueueSize, maxWait),
+            clock::get
+        );
+    }
+
+    /**
+     * Sends as many requests as the limit allows, which all take the given time.
+     */
+    private void saturate(AdaptiveConcurrencyLimiter limiter, Duration latency) {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = acquireAll(limiter);
+        clock.addAndGet(latency.toNanos());
+        permits.forEach(permit -> permit.release(true));
+    }
+
+    private static List<AdaptiveConcurrencyLimiter.Permit> acquireAll(AdaptiveConcurrencyLimiter limiter) {
+        List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        AdaptiveConcurrencyLimiter.Permit permit;
+        while ((permit = limiter.acquire().block()) != null) {
+            permits.add(permit);
+        }
+        return permits;
+    }
+}
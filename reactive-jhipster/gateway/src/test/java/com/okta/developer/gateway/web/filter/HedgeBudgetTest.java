@@ -0,0 +1,43 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the {@link HedgeBudget}.
+ */
+class HedgeBudgetTest {
+
+    @Test
+    void shouldKeepTheHedgedRequestsUnderTheirFractionOfTheRequests() {
+        HedgeBudget budget = new HedgeBudget(0.1, 100);
+        int hedged = 0;
+
+        for (int i = 0; i < 1000; i++) {
+            budget.deposit();
+            // every request is late
+            if (budget.withdraw()) {
+                hedged++;
+            }
+        }
+
+        assertThat(hedged).isEqualTo(100);
+    }
+
+    @Test
+    void shouldSaveUpToTheMaximumBurst() {
+        HedgeBudget budget = new HedgeBudget(0.1, 5);
+        for (int i = 0; i < 1000; i++) {
+            budget.deposit();
+        }
+        int hedged = 0;
+
+        while (budget.withdraw()) {
+            hedged++;
+        }
+
+        assertThat(hedged).isEqualTo(5);
+        assertThat(budget.available()).isLessThan(1);
+    }
+}
@@ -0,0 +1,234 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_LOADBALANCER_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.addOriginalRequestUrl;
+
+import com.okta.developer.gateway.loadbalancer.PeakEwmaLoadBalancer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+/**
+ * Test class for the {@link HedgingGatewayFilterFactory}.
+ */
+class HedgingGatewayFilterFactoryTest {
+
+    private static final Duration FAST = Duration.ofMillis(10);
+
+    private static final Duration SLOW = Duration.ofSeconds(1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+
+    private final LoadBalancerClientFactory loadBalancerClientFactory = mock(LoadBalancerClientFactory.class);
+
+    @SuppressWarnings("unchecked")
+    private final LoadBalancerLifecycle<Object, Object, Object> lifecycle = mock(LoadBalancerLifecycle.class);
+
+    // the requests sent to the stand-in instances, and the ones cancelled
+    private final List<String> sent = new ArrayList<>();
+
+    private final List<String> cancelled = new ArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        when(lifecycle.supports(any(), any(), any())).thenReturn(true);
+        when(loadBalancerClientFactory.getInstances("blog", LoadBalancerLifecycle.class)).thenReturn(Map.of("lifecycle", lifecycle));
+    }
+
+    @AfterEach
+    void teardown() {
+        scheduler.dispose();
+    }
+
+    @Test
+    void shouldHedgeALateRequestToAnotherInstance() {
+        GatewayFilter filter = filter(new HedgeBudget(0.1, 10));
+        warmUp(filter);
+
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/blogs"));
+        AtomicReference<Boolean> completed = new AtomicReference<>(false);
+        filter.filter(exchange, instances(SLOW, FAST)).subscribe(null, null, () -> completed.set(true));
+        scheduler.advanceTimeBy(Duration.ofMillis(15));
+
+        assertThat(sent).containsExactly("blog-1", "blog-2");
+        assertThat(completed.get()).isFalse();
+
+        scheduler.advanceTimeBy(FAST);
+
+        assertThat(completed.get()).isTrue();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.getResponse().getHeaders().getFirst("X-Instance")).isEqualTo("blog-2");
+        assertThat(exchange.<DefaultResponse>getAttribute(GATEWAY_LOADBALANCER_RESPONSE_ATTR).getServer().getInstanceId())
+            .isEqualTo("blog-2");
+        // the primary request is cancelled, and taken out of the requests in flight of its instance
+        assertThat(cancelled).containsExactly("blog-1");
+        verify(lifecycle)
+            .onComplete(
+                argThat(context ->
+                    context.status() == CompletionContext.Status.DISCARD &&
+                    ((ServiceInstance) context.getLoadBalancerResponse().getServer()).getInstanceId().equals("blog-1")
+                )
+            );
+        assertThat(meterRegistry.get("gateway.hedging.sent").tag("service", "services").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.hedging.won").tag("service", "services").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldUseThePrimaryResponseWhenItComesFirst() {
+        GatewayFilter filter = filter(new HedgeBudget(0.1, 10));
+        warmUp(filter);
+
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/blogs"));
+        filter.filter(exchange, instances(Duration.ofMillis(15), SLOW)).subscribe();
+        scheduler.advanceTimeBy(Duration.ofMillis(15));
+
+        assertThat(exchange.getResponse().getHeaders().getFirst("X-Instance")).isEqualTo("blog-1");
+        assertThat(cancelled).containsExactly("blog-2");
+        assertThat(meterRegistry.find("gateway.hedging.won").counter()).isNull();
+    }
+
+    @Test
+    void shouldNotHedgeOverTheBudget() {
+        GatewayFilter filter = filter(new HedgeBudget(0, 10));
+        warmUp(filter);
+
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.get("/api/blogs"));
+        filter.filter(exchange, instances(SLOW, FAST)).subscribe();
+        scheduler.advanceTimeBy(SLOW);
+
+        assertThat(sent).containsExactly("blog-1");
+        assertThat(exchange.getResponse().getHeaders().getFirst("X-Instance")).isEqualTo("blog-1");
+        assertThat(meterRegistry.get("gateway.hedging.throttled").tag("service", "services").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotHedgeTheRequestsWhichAreNotIdempotent() {
+        GatewayFilter filter = filter(new HedgeBudget(0.1, 10));
+        warmUp(filter);
+
+        MockServerWebExchange exchange = exchange(MockServerHttpRequest.post("/api/blogs"));
+        filter.filter(exchange, instances(SLOW, FAST)).subscribe();
+        scheduler.advanceTimeBy(SLOW);
+
+        assertThat(sent).containsExactly("blog-1");
+    }
+
+    @Test
+    void shouldOnlyHedgeTheRequestsMatchingThePaths() {
+        GatewayFilter filter = filter(new HedgeBudget(0.1, 10), "/api/**");
+        warmUp(filter);
+
+        filter.filter(exchange(MockServerHttpRequest.get("/management/health")), instances(SLOW, FAST)).subscribe();
+        scheduler.advanceTimeBy(SLOW);
+
+        assertThat(sent).containsExactly("blog-1");
+
+        sent.clear();
+        filter.filter(exchange(MockServerHttpRequest.get("/api/blogs")), instances(SLOW, FAST)).subscribe();
+        scheduler.advanceTimeBy(Duration.ofMillis(15));
+
+        assertThat(sent).containsExactly("blog-1", "blog-2");
+    }
+
+    @Test
+    void shouldFailWhenThePrimaryRequestFailsBeforeItIsHedged() {
+        GatewayFilter filter = filter(new HedgeBudget(0.1, 10));
+        warmUp(filter);
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        filter
+            .filter(exchange(MockServerHttpRequest.get("/api/blogs")), exchange -> Mono.error(new IllegalStateException("refused")))
+            .subscribe(null, error::set);
+        scheduler.advanceTimeBy(SLOW);
+
+        assertThat(error.get()).isInstanceOf(IllegalStateException.class).hasMessage("refused");
+        assertThat(meterRegistry.find("gateway.hedging.sent").counter()).isNull();
+    }
+
+    private GatewayFilter filter(HedgeBudget budget, String... paths) {
+        HedgingGatewayFilterFactory.Config config = new HedgingGatewayFilterFactory.Config();
+        config.setRouteId(ServicePrefixRouter.ROUTE_ID);
+        config.setMinDelay(Duration.ofMillis(10));
+        config.setPaths(List.of(paths));
+        LongSupplier clock = () -> scheduler.now(TimeUnit.NANOSECONDS);
+        return new HedgingGatewayFilterFactory(meterRegistry, budget, scheduler, clock).apply(config);
+    }
+
+    /**
+     * Sends enough fast requests for the percentile of their latency to be known.
+     */
+    private void warmUp(GatewayFilter filter) {
+        for (int i = 0; i < 64; i++) {
+            filter.filter(exchange(MockServerHttpRequest.get("/api/blogs")), instances(FAST, FAST)).subscribe();
+        }
+        scheduler.advanceTimeBy(FAST);
+        sent.clear();
+    }
+
+    private static MockServerWebExchange exchange(MockServerHttpRequest.BaseBuilder<?> request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        addOriginalRequestUrl(exchange, URI.create("lb://blog/api/blogs"));
+        return exchange;
+    }
+
+    /**
+     * Two stand-in instances of the blog, the second one only getting the hedged requests, as told by the load balancer, the
+     * cancelled requests being discarded as by the filters after the load balancer filter.
+     */
+    private GatewayFilterChain instances(Duration firstLatency, Duration secondLatency) {
+        LoadBalancerDiscardFilter discardFilter = new LoadBalancerDiscardFilter(loadBalancerClientFactory);
+        return exchange -> discardFilter.filter(exchange, instance -> send(instance, firstLatency, secondLatency));
+    }
+
+    private Mono<Void> send(ServerWebExchange exchange, Duration firstLatency, Duration secondLatency) {
+        boolean hedged = exchange.getRequest().getHeaders().containsKey(PeakEwmaLoadBalancer.EXCLUDED_INSTANCE_HEADER);
+        String instanceId = hedged ? "blog-2" : "blog-1";
+        sent.add(instanceId);
+        exchange
+            .getAttributes()
+            .put(
+                GATEWAY_LOADBALANCER_RESPONSE_ATTR,
+                new DefaultResponse(new DefaultServiceInstance(instanceId, "blog", "localhost", 8081, false))
+            );
+        return Mono
+            .delay(hedged ? secondLatency : firstLatency, scheduler)
+            .doOnCancel(() -> cancelled.add(instanceId))
+            .then(
+                Mono.fromRunnable(() -> {
+                    exchange.getResponse().setStatusCode(HttpStatus.OK);
+                    exchange.getResponse().getHeaders().set("X-Instance", instanceId);
+                })
+            );
+    }
+}
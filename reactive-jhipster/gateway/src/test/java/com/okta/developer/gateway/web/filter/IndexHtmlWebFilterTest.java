@@ -0,0 +1,174 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the {@link IndexHtmlWebFilter}.
+ */
+class IndexHtmlWebFilterTest {
+
+    private static final String INDEX_HTML =
+        "<!doctype html><html><head><title>Gateway</title></head><body>" + "<div id=\"app\"></div>".repeat(64) + "</body></html>";
+
+    @TempDir
+    Path staticDir;
+
+    private Path indexHtml;
+
+    private boolean chainCalled;
+
+    @BeforeEach
+    void setup() throws IOException {
+        indexHtml = Files.writeString(staticDir.resolve("index.html"), INDEX_HTML);
+        chainCalled = false;
+    }
+
+    @Test
+    void shouldServeIndexHtmlFromMemory() {
+        IndexHtmlWebFilter filter = new IndexHtmlWebFilter(new FileSystemResource(indexHtml), null);
+
+        MockServerWebExchange exchange = filter(filter, MockServerHttpRequest.get("/index.html").build());
+
+        assertThat(chainCalled).isFalse();
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.getResponse().getHeaders().getCacheControl()).isEqualTo("no-cache");
+        assertThat(exchange.getResponse().getHeaders().getETag()).startsWith("W/\"");
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(exchange.getResponse().getHeaders().getContentLength()).isEqualTo(INDEX_HTML.length());
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo(INDEX_HTML);
+    }
+
+    @Test
+    void shouldServeTheGzippedCopyWhenAccepted() throws IOException {
+        IndexHtmlWebFilter filter = new IndexHtmlWebFilter(new FileSystemResource(indexHtml), null);
+
+        MockServerWebExchange exchange = filter(
+            filter,
+            MockServerHttpRequest.get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate").build()
+        );
+
+        byte[] body = body(exchange);
+        assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(exchange.getResponse().getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(exchange.getResponse().getHeaders().getContentLength()).isEqualTo(body.length).isLessThan(INDEX_HTML.length());
+        assertThat(new String(new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes(), StandardCharsets.UTF_8))
+            .isEqualTo(INDEX_HTML);
+    }
+
+    @Test
+    void shouldServeTheBrotliCopyWhenBuiltAndAccepted() throws IOException {
+        Files.write(staticDir.resolve("index.html.br"), new byte[] { 1, 2, 3 });
+        IndexHtmlWebFilter filter = new IndexHtmlWebFilter(new FileSystemResource(indexHtml), null);
+
+        MockServerWebExchange brotli = filter(
+            filter,
+            MockServerHttpRequest.get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br").build()
+        );
+        MockServerWebExchange refused = filter(
+            filter,
+            MockServerHttpRequest.get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "gzip, br;q=0").build()
+        );
+
+        assertThat(brotli.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("br");
+        assertThat(body(brotli)).containsExactly(1, 2, 3);
+        assertThat(refused.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    }
+
+    @Test
+    void shouldAnswerConditionalRequestsWithNotModified() {
+        IndexHtmlWebFilter filter = new IndexHtmlWebFilter(new FileSystemResource(indexHtml), null);
+        String eTag = filter(filter, MockServerHttpRequest.get("/index.html").build()).getResponse().getHeaders().getETag();
+
+        MockServerWebExchange exchange = filter(filter, MockServerHttpRequest.get("/index.html").ifNoneMatch(eTag).build());
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(exchange.getResponse().getBodyAsString().block()).isNullOrEmpty();
+    }
+
+    @Test
+    void shouldReloadTheChangedFile() throws IOException {
+        IndexHtmlWebFilter filter = new IndexHtmlWebFilter(new FileSystemResource(indexHtml), Duration.ZERO);
+        String eTag = filter(filter, MockServerHttpRequest.get("/index.html").build()).getResponse().getHeaders().getETag();
+
+        Files.writeString(indexHtml, "<!doctype html><html></html>");
+        Files.setLastModifiedTime(indexHtml, FileTime.from(Instant.now().plusSeconds(10)));
+        MockServerWebExchange exchange = filter(filter, MockServerHttpRequest.get("/index.html").ifNoneMatch(eTag).build());
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("<!doctype html><html></html>");
+    }
+
+    @Test
+    void shouldNotReloadByDefault() throws IOException {
+        IndexHtmlWebFilter filter = new IndexHtmlWebFilter(new FileSystemResource(indexHtml), null);
+
+        Files.writeString(indexHtml, "<!doctype html><html></html>");
+        Files.setLastModifiedTime(indexHtml, FileTime.from(Instant.now().plusSeconds(10)));
+
+        assertThat(filter(filter, MockServerHttpRequest.get("/index.html").build()).getResponse().getBodyAsString().block())
+            .isEqualTo(INDEX_HTML);
+    }
+
+    @Test
+    void shouldLeaveOtherRequestsToTheChain() throws IOException {
+        IndexHtmlWebFilter filter = new IndexHtmlWebFilter(new FileSystemResource(indexHtml), null);
+
+        filter(filter, MockServerHttpRequest.get("/favicon.ico").build());
+        assertThat(chainCalled).isTrue();
+
+        chainCalled = false;
+        filter(filter, MockServerHttpRequest.post("/index.html").build());
+        assertThat(chainCalled).isTrue();
+
+        chainCalled = false;
+        Files.delete(indexHtml);
+        filter(new IndexHtmlWebFilter(new FileSystemResource(indexHtml), null), MockServerHttpRequest.get("/index.html").build());
+        assertThat(chainCalled).isTrue();
+    }
+
+    private MockServerWebExchange filter(IndexHtmlWebFilter filter, MockServerHttpRequest request) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        filter
+            .filter(
+                exchange,
+                filtered -> {
+                    chainCalled = true;
+                    return Mono.empty();
+                }
+            )
+            .block();
+        return exchange;
+    }
+
+    private byte[] body(MockServerWebExchange exchange) {
+        return DataBufferUtils
+            .join(exchange.getResponse().getBody())
+            .map(buffer -> {
+                byte[] bytes = new byte[buffer.readableByteCount()];
+                buffer.read(bytes);
+                DataBufferUtils.release(buffer);
+                return bytes;
+            })
+            .block();
+    }
+}
@@ -0,0 +1,58 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the {@link LatencyPercentile}.
+ */
+class LatencyPercentileTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    private final LatencyPercentile latencies = new LatencyPercentile(0.95, clock::get);
+
+    @Test
+    void shouldHaveNoValueUntilThereAreEnoughSamples() {
+        record(48, Duration.ofMillis(10));
+        assertThat(latencies.value()).isEqualTo(-1);
+
+        record(16, Duration.ofMillis(10));
+        assertThat(latencies.value()).isPositive();
+    }
+
+    @Test
+    void shouldComputeThePercentileWithinItsBucket() {
+        record(90, Duration.ofMillis(10));
+        record(6, Duration.ofMillis(200));
+
+        assertThat(latencies.value()).isBetween(Duration.ofMillis(200).toNanos(), Duration.ofMillis(225).toNanos());
+    }
+
+    @Test
+    void shouldForgetTheSamplesOfMoreThanTenSecondsAgo() {
+        record(64, Duration.ofMillis(200));
+        clock.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        record(80, Duration.ofMillis(10));
+
+        assertThat(latencies.value()).isBetween(Duration.ofMillis(10).toNanos(), Duration.ofMillis(12).toNanos());
+    }
+
+    @Test
+    void shouldBoundTheValuesOfEachBucketClosely() {
+        for (long micros = 0; micros < 100_000_000; micros = micros * 3 / 2 + 1) {
+            long upperBound = LatencyPercentile.upperBound(LatencyPercentile.bucket(micros));
+            assertThat(upperBound).isBetween(micros, micros + micros / 8 + 1);
+        }
+    }
+
+    private void record(int samples, Duration latency) {
+        for (int i = 0; i < samples; i++) {
+            latencies.record(latency.toNanos());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.okta.developer.gateway.web.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+/**
+ * A stand-in {@link RateLimitSyncTransport} between gateways in the same JVM: the tokens published by one are received at once
+ * by the others connected with it.
+ */
+final class LocalRateLimitSyncTransport implements RateLimitSyncTransport {
+
+    private final List<LocalRateLimitSyncTransport> gateways;
+
+    private final Sinks.Many<Map<String, Long>> received = Sinks.many().multicast().directBestEffort();
+
+    private LocalRateLimitSyncTransport(List<LocalRateLimitSyncTransport> gateways) {
+        this.gateways = gateways;
+    }
+
+    /**
+     * @return the transports of as many gateways, connected with each other.
+     */
+    static List<LocalRateLimitSyncTransport> connect(int count) {
+        List<LocalRateLimitSyncTransport> gateways = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            gateways.add(new LocalRateLimitSyncTransport(gateways));
+        }
+        return gateways;
+    }
+
+    @Override
+    public Mono<Void> publish(Map<String, Long> granted) {
+        return Mono.fromRunnable(() -> {
+            for (LocalRateLimitSyncTransport gateway : gateways) {
+                if (gateway != this) {
+                    gateway.received.emitNext(Map.copyOf(granted), Sinks.EmitFailureHandler.FAIL_FAST);
+                }
+            }
+        });
+    }
+
+    @Override
+    public Flux<Map<String, Long>> received() {
+        return received.asFlux();
+    }
+}
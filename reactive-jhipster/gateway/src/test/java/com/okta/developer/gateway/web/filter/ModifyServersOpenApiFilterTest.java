@@ -4,9 +4,13 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -16,7 +20,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.cloud.gateway.filter.GatewayFilterChain;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
 import org.springframework.mock.web.server.MockServerWebExchange;
 import org.springframework.web.server.ServerWebExchange;
@@ -48,7 +56,12 @@ class ModifyServersOpenApiFilterTest {
         modifyServersOpenApiFilter.filter(exchange, filterChain).subscribe();
 
         verify(modifyServersOpenApiFilter, times(1))
-            .createModifyServersOpenApiInterceptor(sample_url, exchange.getResponse(), exchange.getResponse().bufferFactory());
+            .createModifyServersOpenApiInterceptor(
+                sample_url,
+                exchange.getRequest(),
+                exchange.getResponse(),
+                exchange.getResponse().bufferFactory()
+            );
     }
 
     @Test
@@ -65,7 +78,12 @@ class ModifyServersOpenApiFilterTest {
         modifyServersOpenApiFilter.filter(exchange, filterChain).subscribe();
 
         verify(modifyServersOpenApiFilter, times(0))
-            .createModifyServersOpenApiInterceptor(sample_url, exchange.getResponse(), exchange.getResponse().bufferFactory());
+            .createModifyServersOpenApiInterceptor(
+                sample_url,
+                exchange.getRequest(),
+                exchange.getResponse(),
+                exchange.getResponse().bufferFactory()
+            );
     }
 
     @Test
@@ -86,6 +104,7 @@ class ModifyServersOpenApiFilterTest {
         void shouldRewriteBodyWhenBodyIsFluxAndResponseIsNotZipped() {
             ModifyServersOpenApiFilter.ModifyServersOpenApiInterceptor interceptor = modifyServersOpenApiFilter.createModifyServersOpenApiInterceptor(
                 path,
+                request,
                 exchange.getResponse(),
                 exchange.getResponse().bufferFactory()
             );
@@ -106,6 +125,7 @@ class ModifyServersOpenApiFilterTest {
             exchange.getResponse().getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
             ModifyServersOpenApiFilter.ModifyServersOpenApiInterceptor interceptor = modifyServersOpenApiFilter.createModifyServersOpenApiInterceptor(
                 path,
+                request,
                 exchange.getResponse(),
                 exchange.getResponse().bufferFactory()
             );
@@ -125,6 +145,7 @@ class ModifyServersOpenApiFilterTest {
         void shouldNotRewriteBodyWhenBodyIsNotFlux() {
             ModifyServersOpenApiFilter.ModifyServersOpenApiInterceptor interceptor = modifyServersOpenApiFilter.createModifyServersOpenApiInterceptor(
                 path,
+                request,
                 exchange.getResponse(),
                 exchange.getResponse().bufferFactory()
             );
@@ -149,4 +170,175 @@ class ModifyServersOpenApiFilterTest {
             return "{}".getBytes();
         }
     }
+
+    @Nested
+    class CachedRewriteTest {
+
+        private final String path = "/services/service-test/instance-test/v3/api-docs";
+        private final String apiDocs =
+            "{\"openapi\":\"3.0.1\",\"servers\":[{\"url\":\"http://10.0.0.1:8081\"}],\"paths\":{\"/api/blogs\":{\"get\":{}}}}";
+        private final ModifyServersOpenApiFilter modifyServersOpenApiFilter = new ModifyServersOpenApiFilter();
+        private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        private HttpHeaders upstreamRequestHeaders;
+
+        @BeforeEach
+        void bindMetrics() {
+            modifyServersOpenApiFilter.bindTo(meterRegistry);
+        }
+
+        @Test
+        void shouldReplaceTheServersInIdentityEncoding() {
+            MockServerWebExchange exchange = proxy(MockServerHttpRequest.get(path).build(), HttpStatus.OK, new HttpHeaders(), apiDocs);
+
+            assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(exchange.getResponse().getBodyAsString().block())
+                .isEqualTo(
+                    "{\"openapi\":\"3.0.1\"," +
+                    "\"servers\":[{\"url\":\"/services/service-test/instance-test\",\"description\":\"added by global filter\"}]," +
+                    "\"paths\":{\"/api/blogs\":{\"get\":{}}}}"
+                );
+            assertThat(exchange.getResponse().getHeaders().getContentLength()).isEqualTo(body(exchange).length);
+            assertThat(exchange.getResponse().getHeaders().getETag()).startsWith("W/\"");
+            assertThat(exchange.getResponse().getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        @Test
+        void shouldReplaceTheServersInGzipEncoding() throws IOException {
+            HttpHeaders upstreamHeaders = new HttpHeaders();
+            upstreamHeaders.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+            upstreamHeaders.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+
+            MockServerWebExchange exchange = proxy(MockServerHttpRequest.get(path).build(), HttpStatus.OK, upstreamHeaders, zip(apiDocs));
+
+            byte[] body = body(exchange);
+            assertThat(exchange.getResponse().getHeaders().getContentLength()).isEqualTo(body.length);
+            assertThat(new String(new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes(), StandardCharsets.UTF_8))
+                .contains("\"servers\":[{\"url\":\"/services/service-test/instance-test\",\"description\":\"added by global filter\"}]")
+                .doesNotContain("10.0.0.1");
+            assertThat(exchange.getResponse().getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        @Test
+        void shouldAddTheServersWhenMissing() {
+            MockServerHttpRequest request = MockServerHttpRequest.get(path).build();
+            MockServerWebExchange exchange = proxy(request, HttpStatus.OK, new HttpHeaders(), "{\"openapi\":\"3.0.1\"}");
+
+            assertThat(exchange.getResponse().getBodyAsString().block())
+                .isEqualTo(
+                    "{\"openapi\":\"3.0.1\"," +
+                    "\"servers\":[{\"url\":\"/services/service-test/instance-test\",\"description\":\"added by global filter\"}]}"
+                );
+        }
+
+        @Test
+        void shouldPassInvalidDocsThrough() {
+            MockServerWebExchange exchange = proxy(MockServerHttpRequest.get(path).build(), HttpStatus.OK, new HttpHeaders(), "[]");
+
+            assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("[]");
+        }
+
+        @Test
+        void shouldPassErrorsThrough() {
+            MockServerWebExchange exchange = proxy(MockServerHttpRequest.get(path).build(), HttpStatus.NOT_FOUND, new HttpHeaders(), "{}");
+
+            assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+            assertThat(exchange.getResponse().getBodyAsString().block()).isEqualTo("{}");
+        }
+
+        @Test
+        void shouldReuseTheRewrittenDocWhileTheUpstreamDocIsUnchanged() {
+            MockServerWebExchange first = proxy(MockServerHttpRequest.get(path).build(), HttpStatus.OK, new HttpHeaders(), apiDocs);
+            MockServerWebExchange second = proxy(MockServerHttpRequest.get(path).build(), HttpStatus.OK, new HttpHeaders(), apiDocs);
+
+            assertThat(second.getResponse().getBodyAsString().block()).isEqualTo(first.getResponse().getBodyAsString().block());
+            assertThat(meterRegistry.get("cache.gets").tag("cache", "gateway.api.docs").tag("result", "hit").functionCounter().count())
+                .isEqualTo(1);
+            assertThat(meterRegistry.get("cache.size").tag("cache", "gateway.api.docs").gauge().value()).isEqualTo(1);
+
+            MockServerWebExchange changed = proxy(
+                MockServerHttpRequest.get(path).build(),
+                HttpStatus.OK,
+                new HttpHeaders(),
+                apiDocs.replace("/api/blogs", "/api/posts")
+            );
+
+            assertThat(changed.getResponse().getBodyAsString().block()).contains("/api/posts");
+            assertThat(changed.getResponse().getHeaders().getETag()).isNotEqualTo(first.getResponse().getHeaders().getETag());
+        }
+
+        @Test
+        void shouldRevalidateTheCachedDocWithTheUpstreamETag() {
+            HttpHeaders upstreamHeaders = new HttpHeaders();
+            upstreamHeaders.setETag("\"v1\"");
+            upstreamHeaders.setContentType(MediaType.APPLICATION_JSON);
+            MockServerWebExchange first = proxy(MockServerHttpRequest.get(path).build(), HttpStatus.OK, upstreamHeaders, apiDocs);
+            assertThat(upstreamRequestHeaders.getIfNoneMatch()).isEmpty();
+
+            MockServerWebExchange second = proxy(MockServerHttpRequest.get(path).build(), HttpStatus.NOT_MODIFIED, new HttpHeaders(), "");
+
+            assertThat(upstreamRequestHeaders.getIfNoneMatch()).containsExactly("\"v1\"");
+            assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+            assertThat(second.getResponse().getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+            assertThat(second.getResponse().getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+            assertThat(second.getResponse().getHeaders().getETag()).isEqualTo(first.getResponse().getHeaders().getETag());
+            assertThat(second.getResponse().getBodyAsString().block()).isEqualTo(first.getResponse().getBodyAsString().block());
+        }
+
+        @Test
+        void shouldAnswerConditionalRequestsWithNotModified() {
+            MockServerWebExchange first = proxy(MockServerHttpRequest.get(path).build(), HttpStatus.OK, new HttpHeaders(), apiDocs);
+            String eTag = first.getResponse().getHeaders().getETag();
+
+            MockServerWebExchange second = proxy(
+                MockServerHttpRequest.get(path).ifNoneMatch(eTag).build(),
+                HttpStatus.OK,
+                new HttpHeaders(),
+                apiDocs
+            );
+
+            assertThat(upstreamRequestHeaders.getIfNoneMatch()).isEmpty();
+            assertThat(second.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+            assertThat(second.getResponse().getHeaders().getETag()).isEqualTo(eTag);
+            assertThat(second.getResponse().getHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+            assertThat(second.getResponse().getBodyAsString().block()).isNullOrEmpty();
+        }
+
+        private MockServerWebExchange proxy(MockServerHttpRequest request, HttpStatus status, HttpHeaders upstreamHeaders, String body) {
+            return proxy(request, status, upstreamHeaders, body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private MockServerWebExchange proxy(MockServerHttpRequest request, HttpStatus status, HttpHeaders upstreamHeaders, byte[] body) {
+            MockServerWebExchange exchange = MockServerWebExchange.from(request);
+            GatewayFilterChain upstream = proxied -> {
+                upstreamRequestHeaders = proxied.getRequest().getHeaders();
+                ServerHttpResponse response = proxied.getResponse();
+                response.setStatusCode(status);
+                response.getHeaders().addAll(upstreamHeaders);
+                return response.writeWith(Flux.just(response.bufferFactory().wrap(body)));
+            };
+            modifyServersOpenApiFilter.filter(exchange, upstream).block();
+            return exchange;
+        }
+
+        private byte[] body(MockServerWebExchange exchange) {
+            return DataBufferUtils
+                .join(exchange.getResponse().getBody())
+                .map(buffer -> {
+                    byte[] bytes = new byte[buffer.readableByteCount()];
+                    buffer.read(bytes);
+                    DataBufferUtils.release(buffer);
+                    return bytes;
+                })
+                .block();
+        }
+
+        private byte[] zip(String content) throws IOException {
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+                gzipOutputStream.write(content.getBytes(StandardCharsets.UTF_8));
+            }
+            return byteArrayOutputStream.toByteArray();
+        }
+    }
 }
@@ -0,0 +1,70 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.okta.developer.gateway.security.AuthoritiesConstants;
+import java.net.InetSocketAddress;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.ReactiveSecurityContextHolder;
+
+/**
+ * Test class for the {@link PrincipalOrAddressKeyResolver}.
+ */
+class PrincipalOrAddressKeyResolverTest {
+
+    private final PrincipalOrAddressKeyResolver keyResolver = new PrincipalOrAddressKeyResolver();
+
+    private final MockServerWebExchange exchange = MockServerWebExchange.from(
+        MockServerHttpRequest.get("/services/blog/api/blogs").remoteAddress(new InetSocketAddress("10.0.0.1", 52000))
+    );
+
+    @Test
+    void shouldResolveTheLoginOfTheUser() {
+        String key = keyResolver
+            .resolve(exchange)
+            .contextWrite(
+                ReactiveSecurityContextHolder.withAuthentication(
+                    new UsernamePasswordAuthenticationToken("admin", "admin", List.of(new SimpleGrantedAuthority(AuthoritiesConstants.USER)))
+                )
+            )
+            .block();
+
+        assertThat(key).isEqualTo("user:admin");
+    }
+
+    @Test
+    void shouldResolveTheAddressOfAnAnonymousClient() {
+        String key = keyResolver
+            .resolve(exchange)
+            .contextWrite(
+                ReactiveSecurityContextHolder.withAuthentication(
+                    new AnonymousAuthenticationToken(
+                        "key",
+                        "anonymousUser",
+                        List.of(new SimpleGrantedAuthority(AuthoritiesConstants.ANONYMOUS))
+                    )
+                )
+            )
+            .block();
+
+        assertThat(key).isEqualTo("ip:10.0.0.1");
+    }
+
+    @Test
+    void shouldResolveTheAddressWithoutSecurityContext() {
+        assertThat(keyResolver.resolve(exchange).block()).isEqualTo("ip:10.0.0.1");
+    }
+
+    @Test
+    void shouldResolveNoKeyWithoutAddress() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/services/blog/api/blogs"));
+
+        assertThat(keyResolver.resolve(exchange).blockOptional()).isEmpty();
+    }
+}
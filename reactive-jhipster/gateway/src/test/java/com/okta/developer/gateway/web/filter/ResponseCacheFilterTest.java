@@ -0,0 +1,300 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.okta.developer.gateway.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the {@link ResponseCacheFilter}.
+ */
+class ResponseCacheFilterTest {
+
+    private static final String PATH = "/services/blog/api/tags";
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    private final AtomicInteger forwarded = new AtomicInteger();
+
+    private ApplicationProperties.ResponseCache properties;
+
+    private ResponseCacheFilter filter;
+
+    @BeforeEach
+    void setup() {
+        properties = new ApplicationProperties().getResponseCache();
+        filter = new ResponseCacheFilter(properties, clock::get);
+    }
+
+    @Test
+    void shouldServeTheCachedResponse() {
+        GatewayFilterChain service = service("max-age=60");
+
+        ServerWebExchange first = get(MockServerHttpRequest.get(PATH + "?page=1"), service);
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        ServerWebExchange second = get(MockServerHttpRequest.get(PATH + "?page=1"), service);
+
+        assertThat(forwarded).hasValue(1);
+        assertThat(body(first)).isEqualTo("response 1");
+        assertThat(body(second)).isEqualTo("response 1");
+        assertThat(second.getResponse().getHeaders().getFirst(HttpHeaders.AGE)).isEqualTo("10");
+        assertThat(second.getResponse().getHeaders().getContentLength()).isEqualTo("response 1".length());
+    }
+
+    @Test
+    void shouldKeyOnTheQuery() {
+        GatewayFilterChain service = service("max-age=60");
+
+        get(MockServerHttpRequest.get(PATH + "?page=1"), service);
+        ServerWebExchange other = get(MockServerHttpRequest.get(PATH + "?page=2"), service);
+
+        assertThat(body(other)).isEqualTo("response 2");
+    }
+
+    @Test
+    void shouldNotCacheWhatTheServiceForbids() {
+        for (String cacheControl : List.of("no-store", "no-cache, max-age=60", "private, max-age=60", "")) {
+            forwarded.set(0);
+            GatewayFilterChain service = service(cacheControl);
+
+            get(MockServerHttpRequest.get(PATH + "?" + cacheControl.hashCode()), service);
+            get(MockServerHttpRequest.get(PATH + "?" + cacheControl.hashCode()), service);
+
+            assertThat(forwarded).as(cacheControl).hasValue(2);
+        }
+    }
+
+    @Test
+    void shouldForwardTheRequestsAskingForAResponseFromTheService() {
+        GatewayFilterChain service = service("max-age=60");
+
+        get(MockServerHttpRequest.get(PATH), service);
+        ServerWebExchange reloaded = get(MockServerHttpRequest.get(PATH).header(HttpHeaders.CACHE_CONTROL, "no-cache"), service);
+
+        assertThat(body(reloaded)).isEqualTo("response 2");
+    }
+
+    @Test
+    void shouldKeyOnTheVaryHeaders() {
+        GatewayFilterChain service = exchange -> {
+            exchange.getResponse().getHeaders().setVary(List.of(HttpHeaders.ACCEPT_LANGUAGE));
+            return service("max-age=60").filter(exchange);
+        };
+
+        get(MockServerHttpRequest.get(PATH).header(HttpHeaders.ACCEPT_LANGUAGE, "en"), service);
+        ServerWebExchange french = get(MockServerHttpRequest.get(PATH).header(HttpHeaders.ACCEPT_LANGUAGE, "fr"), service);
+        ServerWebExchange english = get(MockServerHttpRequest.get(PATH).header(HttpHeaders.ACCEPT_LANGUAGE, "en"), service);
+
+        assertThat(body(french)).isEqualTo("response 2");
+        assertThat(body(english)).isEqualTo("response 1");
+    }
+
+    @Test
+    void shouldOnlyServePublicResponsesToTheUsersWithTheSameAuthorities() {
+        GatewayFilterChain service = service("public, max-age=60");
+
+        get(MockServerHttpRequest.get(PATH), service, new TestingAuthenticationToken("alice", null, "ROLE_USER"));
+        ServerWebExchange sameAuthorities = get(
+            MockServerHttpRequest.get(PATH),
+            service,
+            new TestingAuthenticationToken("bob", null, "ROLE_USER")
+        );
+        ServerWebExchange otherAuthorities = get(
+            MockServerHttpRequest.get(PATH),
+            service,
+            new TestingAuthenticationToken("admin", null, "ROLE_ADMIN", "ROLE_USER")
+        );
+        ServerWebExchange anonymous = get(MockServerHttpRequest.get(PATH), service);
+
+        assertThat(body(sameAuthorities)).isEqualTo("response 1");
+        assertThat(body(otherAuthorities)).isEqualTo("response 2");
+        assertThat(body(anonymous)).isEqualTo("response 3");
+    }
+
+    @Test
+    void shouldNotCacheTheResponsesToAuthenticatedRequestsWhichArentPublic() {
+        GatewayFilterChain service = service("max-age=60");
+
+        get(MockServerHttpRequest.get(PATH), service, new TestingAuthenticationToken("alice", null, "ROLE_USER"));
+        get(MockServerHttpRequest.get(PATH), service, new TestingAuthenticationToken("alice", null, "ROLE_USER"));
+
+        assertThat(forwarded).hasValue(2);
+    }
+
+    @Test
+    void shouldServeAStaleResponseWhileRevalidatingIt() {
+        GatewayFilterChain service = service("max-age=60, stale-while-revalidate=30");
+        get(MockServerHttpRequest.get(PATH), service);
+        clock.addAndGet(Duration.ofSeconds(70).toNanos());
+
+        ServerWebExchange stale = get(MockServerHttpRequest.get(PATH), service);
+        ServerWebExchange revalidated = get(MockServerHttpRequest.get(PATH), service);
+
+        assertThat(body(stale)).isEqualTo("response 1");
+        assertThat(stale.getResponse().getHeaders().getFirst(HttpHeaders.AGE)).isEqualTo("70");
+        // revalidated in the background
+        assertThat(forwarded).hasValue(2);
+        assertThat(body(revalidated)).isEqualTo("response 2");
+    }
+
+    @Test
+    void shouldKeepAStaleResponseWhichIsNotModified() {
+        GatewayFilterChain service = exchange -> {
+            if (exchange.getRequest().getHeaders().getIfNoneMatch().contains("\"1\"")) {
+                forwarded.incrementAndGet();
+                exchange.getResponse().setStatusCode(HttpStatus.NOT_MODIFIED);
+                exchange.getResponse().getHeaders().setCacheControl("max-age=60");
+                return exchange.getResponse().setComplete();
+            }
+            return service("max-age=60").filter(exchange);
+        };
+        get(MockServerHttpRequest.get(PATH), service);
+        clock.addAndGet(Duration.ofSeconds(70).toNanos());
+
+        get(MockServerHttpRequest.get(PATH), service);
+        ServerWebExchange revalidated = get(MockServerHttpRequest.get(PATH), service);
+
+        assertThat(forwarded).hasValue(2);
+        assertThat(body(revalidated)).isEqualTo("response 1");
+        assertThat(revalidated.getResponse().getHeaders().getFirst(HttpHeaders.AGE)).isEqualTo("0");
+    }
+
+    @Test
+    void shouldNotServeStaleTheResponsesWhichMustBeRevalidated() {
+        GatewayFilterChain service = service("max-age=60, must-revalidate");
+        get(MockServerHttpRequest.get(PATH), service);
+        clock.addAndGet(Duration.ofSeconds(61).toNanos());
+
+        ServerWebExchange expired = get(MockServerHttpRequest.get(PATH), service);
+
+        assertThat(body(expired)).isEqualTo("response 2");
+    }
+
+    @Test
+    void shouldCoalesceTheConcurrentMisses() {
+        GatewayFilterChain service = exchange -> Mono.delay(Duration.ofMillis(100)).then(service("max-age=60").filter(exchange));
+        MockServerWebExchange first = MockServerWebExchange.from(MockServerHttpRequest.get(PATH));
+        MockServerWebExchange second = MockServerWebExchange.from(MockServerHttpRequest.get(PATH));
+
+        Mono.when(filter.filter(first, service), filter.filter(second, service)).block(Duration.ofSeconds(5));
+
+        assertThat(forwarded).hasValue(1);
+        assertThat(body(first)).isEqualTo("response 1");
+        assertThat(body(second)).isEqualTo("response 1");
+    }
+
+    @Test
+    void shouldAnswerTheConditionalRequestsFromTheCache() {
+        GatewayFilterChain service = service("max-age=60");
+        get(MockServerHttpRequest.get(PATH), service);
+
+        ServerWebExchange conditional = get(MockServerHttpRequest.get(PATH).ifNoneMatch("\"1\""), service);
+
+        assertThat(conditional.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(forwarded).hasValue(1);
+    }
+
+    @Test
+    void shouldNotCacheTheResponsesOverTheMaximumEntrySize() {
+        properties.setMaximumEntrySize(DataSize.ofBytes(4));
+        GatewayFilterChain service = service("max-age=60");
+
+        get(MockServerHttpRequest.get(PATH), service);
+        ServerWebExchange second = get(MockServerHttpRequest.get(PATH), service);
+
+        assertThat(body(second)).isEqualTo("response 2");
+    }
+
+    @Test
+    void shouldKeepTheBodiesOffHeap() {
+        properties.setOffHeap(true);
+        filter = new ResponseCacheFilter(properties, clock::get);
+        GatewayFilterChain service = service("max-age=60");
+
+        get(MockServerHttpRequest.get(PATH), service);
+        ServerWebExchange cached = get(MockServerHttpRequest.get(PATH), service);
+
+        assertThat(forwarded).hasValue(1);
+        assertThat(body(cached)).isEqualTo("response 1");
+    }
+
+    @Test
+    void shouldPublishTheHitsAndMisses() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        filter.bindTo(registry);
+        GatewayFilterChain service = service("max-age=60");
+
+        get(MockServerHttpRequest.get(PATH), service);
+        get(MockServerHttpRequest.get(PATH), service);
+        get(MockServerHttpRequest.get(PATH), service);
+
+        assertThat(registry.get("gateway.responses.cache.requests").tag("result", "hit").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("gateway.responses.cache.requests").tag("result", "miss").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("gateway.responses.cache.size").gauge().value()).isGreaterThan("response 1".length());
+    }
+
+    @Test
+    void shouldIgnoreTheOtherRequests() {
+        GatewayFilterChain service = service("max-age=60");
+
+        get(MockServerHttpRequest.post(PATH), service);
+        get(MockServerHttpRequest.post(PATH), service);
+        get(MockServerHttpRequest.get("/api/account"), service);
+        get(MockServerHttpRequest.get("/api/account"), service);
+
+        assertThat(forwarded).hasValue(4);
+    }
+
+    /**
+     * A stand-in for a service, which numbers its responses.
+     */
+    private GatewayFilterChain service(String cacheControl) {
+        return exchange -> {
+            int count = forwarded.incrementAndGet();
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatus.OK);
+            response.getHeaders().setCacheControl(cacheControl);
+            response.getHeaders().setETag("\"" + count + "\"");
+            byte[] body = ("response " + count).getBytes(StandardCharsets.UTF_8);
+            return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(body)));
+        };
+    }
+
+    private ServerWebExchange get(MockServerHttpRequest.BaseBuilder<?> request, GatewayFilterChain service) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        filter.filter(exchange, service).block(Duration.ofSeconds(5));
+        return exchange;
+    }
+
+    private ServerWebExchange get(
+        MockServerHttpRequest.BaseBuilder<?> request,
+        GatewayFilterChain service,
+        TestingAuthenticationToken user
+    ) {
+        ServerWebExchange exchange = MockServerWebExchange.from(request).mutate().principal(Mono.just(user)).build();
+        filter.filter(exchange, service).block(Duration.ofSeconds(5));
+        return exchange;
+    }
+
+    private static String body(ServerWebExchange exchange) {
+        return ((MockServerHttpResponse) exchange.getResponse()).getBodyAsString().block(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,139 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.okta.developer.gateway.config.ApplicationProperties;
+import io.micrometer.core.instrument.Metrics;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.config.HttpClientProperties;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Test class for the {@link ServiceHttpClients}, with stand-ins of a slow store and of a blog.
+ */
+class ServiceHttpClientsTest {
+
+    private static final Duration STORE_LATENCY = Duration.ofMillis(500);
+
+    private DisposableServer store;
+
+    private DisposableServer blog;
+
+    private ServiceHttpClients serviceHttpClients;
+
+    @BeforeEach
+    void setup() {
+        store =
+            HttpServer
+                .create()
+                .port(0)
+                .route(routes ->
+                    routes.get("/api/products", (request, response) -> response.sendString(Mono.just("[]").delayElement(STORE_LATENCY)))
+                )
+                .bindNow();
+        blog =
+            HttpServer
+                .create()
+                .port(0)
+                .route(routes -> routes.get("/api/blogs", (request, response) -> response.sendString(Mono.just("[]"))))
+                .bindNow();
+        ApplicationProperties.ConnectionPools connectionPools = new ApplicationProperties().getConnectionPools();
+        connectionPools.getDefaults().setMaxConnections(4);
+        connectionPools.getDefaults().setPendingAcquireMaxCount(4);
+        connectionPools.getDefaults().setPendingAcquireTimeout(Duration.ofSeconds(5));
+        ApplicationProperties.ConnectionPools.Pool storePool = new ApplicationProperties.ConnectionPools.Pool();
+        storePool.setMaxConnections(2);
+        connectionPools.getServices().put("store", storePool);
+        serviceHttpClients = new ServiceHttpClients(connectionPools, new HttpClientProperties(), List.of());
+    }
+
+    @AfterEach
+    void teardown() {
+        serviceHttpClients.dispose();
+        store.disposeNow();
+        blog.disposeNow();
+    }
+
+    @Test
+    void shouldMergeTheSettingsOfAServiceWithTheDefaults() {
+        ApplicationProperties.ConnectionPools connectionPools = new ApplicationProperties().getConnectionPools();
+        ApplicationProperties.ConnectionPools.Pool storePool = new ApplicationProperties.ConnectionPools.Pool();
+        storePool.setMaxConnections(50);
+        connectionPools.getServices().put("store", storePool);
+
+        ApplicationProperties.ConnectionPools.Pool pool = connectionPools.forService("store");
+
+        assertThat(pool.getMaxConnections()).isEqualTo(50);
+        assertThat(pool.getPendingAcquireMaxCount()).isEqualTo(connectionPools.getDefaults().getPendingAcquireMaxCount());
+        assertThat(pool.getPendingAcquireTimeout()).isEqualTo(connectionPools.getDefaults().getPendingAcquireTimeout());
+        assertThat(connectionPools.forService("blog")).isSameAs(connectionPools.getDefaults());
+    }
+
+    @Test
+    void shouldNotSlowDownAServiceWhenAnotherIsSaturated() {
+        AtomicInteger storeRejected = new AtomicInteger();
+        AtomicInteger storeServed = new AtomicInteger();
+        // 2 connections and 4 waiting requests at most: the others are rejected at once
+        Mono<Void> storeLoad = Flux
+            .range(0, 20)
+            .flatMap(
+                i ->
+                    serviceHttpClients
+                        .get("store")
+                        .get()
+                        .uri("http://localhost:" + store.port() + "/api/products")
+                        .responseContent()
+                        .aggregate()
+                        .asString()
+                        .doOnNext(body -> storeServed.incrementAndGet())
+                        .onErrorResume(e -> {
+                            storeRejected.incrementAndGet();
+                            return Mono.empty();
+                        }),
+                20
+            )
+            .subscribeOn(Schedulers.boundedElastic())
+            .then()
+            .cache();
+        storeLoad.subscribe();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            String body = serviceHttpClients
+                .get("blog")
+                .get()
+                .uri("http://localhost:" + blog.port() + "/api/blogs")
+                .responseContent()
+                .aggregate()
+                .asString()
+                .block(Duration.ofSeconds(5));
+            assertThat(body).isEqualTo("[]");
+        }
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(STORE_LATENCY);
+
+        storeLoad.block(Duration.ofSeconds(10));
+        assertThat(storeServed.get()).isGreaterThanOrEqualTo(2);
+        assertThat(storeRejected.get()).isGreaterThan(0);
+        assertThat(storeServed.get() + storeRejected.get()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldPublishThePoolMetricsByService() {
+        serviceHttpClients.get("blog").get().uri("http://localhost:" + blog.port() + "/api/blogs").response().block(Duration.ofSeconds(5));
+
+        assertThat(Metrics.globalRegistry.getMeters())
+            .anySatisfy(meter -> {
+                assertThat(meter.getId().getName()).startsWith("reactor.netty.connection.provider");
+                assertThat(meter.getId().getTag("name")).isEqualTo("blog");
+            });
+    }
+}
@@ -0,0 +1,109 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ORIGINAL_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.gateway.event.RefreshRoutesEvent;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the {@link ServicePrefixRouter}.
+ */
+class ServicePrefixRouterTest {
+
+    private final List<Object> events = new ArrayList<>();
+
+    private ServicePrefixRouter router;
+
+    private ServerWebExchange filteredExchange;
+
+    @BeforeEach
+    void setup() {
+        router = new ServicePrefixRouter(mock(ReactiveDiscoveryClient.class), events::add);
+        router.update(List.of("BLOG", "store"));
+        filteredExchange = null;
+    }
+
+    @Test
+    void shouldRouteToTheLoadBalancedService() {
+        route("/services/blog/api/blogs?page=1&sort=id%2Cdesc");
+
+        assertThat((URI) filteredExchange.getAttribute(GATEWAY_REQUEST_URL_ATTR)).hasToString("lb://blog/api/blogs?page=1&sort=id%2Cdesc");
+        assertThat(filteredExchange.getRequest().getURI().getRawPath()).isEqualTo("/api/blogs");
+        Set<URI> originalUrls = filteredExchange.getAttribute(GATEWAY_ORIGINAL_REQUEST_URL_ATTR);
+        assertThat(originalUrls).extracting(URI::getRawPath).containsExactly("/services/blog/api/blogs");
+    }
+
+    @Test
+    void shouldRouteTheServiceRootToTheRootOfTheService() {
+        route("/services/store");
+
+        assertThat((URI) filteredExchange.getAttribute(GATEWAY_REQUEST_URL_ATTR)).hasToString("lb://store/");
+    }
+
+    @Test
+    void shouldKeepTheEncodingOfThePath() {
+        route("/services/blog/api/tags/a%2Fb");
+
+        assertThat((URI) filteredExchange.getAttribute(GATEWAY_REQUEST_URL_ATTR)).hasToString("lb://blog/api/tags/a%2Fb");
+    }
+
+    @Test
+    void shouldNotMatchTheUnknownServices() {
+        assertThat(router.matches(MockServerWebExchange.from(MockServerHttpRequest.get("/services/unknown/api/blogs")))).isFalse();
+        assertThat(router.matches(MockServerWebExchange.from(MockServerHttpRequest.get("/services/")))).isFalse();
+        assertThat(router.matches(MockServerWebExchange.from(MockServerHttpRequest.get("/servicesblog/api")))).isFalse();
+        assertThat(router.matches(MockServerWebExchange.from(MockServerHttpRequest.get("/api/services/blog/")))).isFalse();
+    }
+
+    @Test
+    void shouldNotRouteTheRequestsOfOtherRoutes() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/services/blog/api/blogs"));
+        assertThat(router.matches(exchange)).isTrue();
+        exchange.getAttributes().put(GATEWAY_ROUTE_ATTR, Route.async().id("other").uri("http://localhost").predicate(e -> true).build());
+
+        router.filter(exchange, e -> Mono.fromRunnable(() -> filteredExchange = e)).block();
+
+        assertThat(filteredExchange).isSameAs(exchange);
+        assertThat((URI) exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR)).isNull();
+    }
+
+    @Test
+    void shouldRefreshTheRoutesOnlyWhenTheServicesChange() {
+        assertThat(events).hasSize(1).first().isInstanceOf(RefreshRoutesEvent.class);
+        assertThat(router.serviceIds()).containsExactlyInAnyOrder("blog", "store");
+
+        router.update(List.of("store", "blog"));
+        assertThat(events).hasSize(1);
+
+        router.update(List.of("store"));
+        assertThat(events).hasSize(2);
+        assertThat(router.serviceIds()).containsExactly("store");
+        assertThat(router.matches(MockServerWebExchange.from(MockServerHttpRequest.get("/services/blog/api/blogs")))).isFalse();
+    }
+
+    private void route(String uri) {
+        // as it is, rather than encoded again
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.method(HttpMethod.GET, URI.create(uri)));
+        assertThat(router.matches(exchange)).isTrue();
+        exchange
+            .getAttributes()
+            .put(GATEWAY_ROUTE_ATTR, Route.async().id(ServicePrefixRouter.ROUTE_ID).uri("no://op").predicate(e -> true).build());
+        router.filter(exchange, e -> Mono.fromRunnable(() -> filteredExchange = e)).block();
+    }
+}
@@ -0,0 +1,93 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the {@link SpaWebFilter}.
+ */
+class SpaWebFilterTest {
+
+    private static final List<String> PATHS = List.of(
+        "",
+        "/",
+        "/admin",
+        "/admin/user-management/admin/view",
+        "/account/settings",
+        "/api",
+        "/api/blogs",
+        "/apiary",
+        "/management/health",
+        "/managementx",
+        "/v3/api-docs",
+        "/v3/api-docs/swagger-config",
+        "/v3",
+        "/login",
+        "/login/oauth2/code/oidc",
+        "/logout",
+        "/oauth2/authorization/oidc",
+        "/services/blog/api/blogs",
+        "/servicesx",
+        "/index.html",
+        "/favicon.ico",
+        "/app/main.js",
+        "/blog/1.2/edit",
+        "/line\nbreak",
+        "/paragraph\u2029separator",
+        "/s",
+        "/a",
+        "/\u00e9/accented",
+        "admin"
+    );
+
+    @Test
+    void shouldForwardTheSamePathsAsTheChainOfChecks() {
+        for (String path : PATHS) {
+            assertThat(SpaWebFilter.isForwarded(path)).as(path).isEqualTo(isForwardedByChainOfChecks(path));
+        }
+    }
+
+    @Test
+    void shouldForwardUnmappedPathsToIndexHtml() {
+        assertThat(forwardedPath("/admin/user-management")).isEqualTo("/index.html");
+        assertThat(forwardedPath("/api/account")).isEqualTo("/api/account");
+        assertThat(forwardedPath("/content/logo.png")).isEqualTo("/content/logo.png");
+    }
+
+    private String forwardedPath(String path) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path).build());
+        ServerWebExchange[] forwarded = new ServerWebExchange[1];
+        new SpaWebFilter()
+            .filter(
+                exchange,
+                filtered -> {
+                    forwarded[0] = filtered;
+                    return Mono.empty();
+                }
+            )
+            .block();
+        return forwarded[0].getRequest().getURI().getPath();
+    }
+
+    /**
+     * The checks the filter used to make.
+     */
+    private static boolean isForwardedByChainOfChecks(String path) {
+        return (
+            !path.startsWith("/api") &&
+            !path.startsWith("/management") &&
+            !path.startsWith("/v3/api-docs") &&
+            !path.startsWith("/login") &&
+            !path.startsWith("/oauth2") &&
+            !path.startsWith("/services") &&
+            !path.contains(".") &&
+            path.matches("/(.*)")
+        );
+    }
+}
@@ -0,0 +1,151 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the {@link StripedTokenBuckets}.
+ */
+class StripedTokenBucketsTest {
+
+    private static final Duration IDLE_TIMEOUT = Duration.ofMinutes(1);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final StripedTokenBuckets buckets = new StripedTokenBuckets(4, IDLE_TIMEOUT, true, clock::get);
+
+    @Test
+    void shouldAllowABurstThenTheRate() {
+        for (int i = 0; i < 20; i++) {
+            assertThat(buckets.tryConsume("user:admin", 10, 20, 1)).isEqualTo(19 - i);
+        }
+        assertThat(buckets.tryConsume("user:admin", 10, 20, 1)).isEqualTo(-1);
+
+        advance(Duration.ofMillis(250));
+
+        assertThat(buckets.tryConsume("user:admin", 10, 20, 1)).isEqualTo(1);
+        assertThat(buckets.tryConsume("user:admin", 10, 20, 1)).isZero();
+        assertThat(buckets.tryConsume("user:admin", 10, 20, 1)).isEqualTo(-1);
+    }
+
+    @Test
+    void shouldNotTakeMoreTokensThanLeft() {
+        assertThat(buckets.tryConsume("user:admin", 10, 20, 15)).isEqualTo(5);
+        assertThat(buckets.tryConsume("user:admin", 10, 20, 10)).isEqualTo(-1);
+        assertThat(buckets.tryConsume("user:admin", 10, 20, 5)).isZero();
+    }
+
+    @Test
+    void shouldKeepTheKeysApart() {
+        assertThat(buckets.tryConsume("user:admin", 1, 1, 1)).isZero();
+        assertThat(buckets.tryConsume("user:admin", 1, 1, 1)).isEqualTo(-1);
+        assertThat(buckets.tryConsume("user:user", 1, 1, 1)).isZero();
+    }
+
+    @Test
+    void shouldStartAFullBucketWhenTheLimitsChange() {
+        assertThat(buckets.tryConsume("user:admin", 1, 1, 1)).isZero();
+
+        assertThat(buckets.tryConsume("user:admin", 1, 5, 1)).isEqualTo(4);
+    }
+
+    @Test
+    void shouldEvictTheBucketsFullForTheIdleTimeout() {
+        for (int i = 0; i < 100; i++) {
+            buckets.tryConsume("ip:10.0.0." + i, 10, 20, 1);
+        }
+        buckets.drainGranted();
+        // full again in 100ms
+        advance(Duration.ofMillis(100));
+        buckets.tryConsume("ip:10.0.1.0", 1, 100, 100);
+        assertThat(buckets.size()).isEqualTo(101);
+
+        advance(IDLE_TIMEOUT);
+        // taken from often enough to sweep every stripe
+        for (int i = 0; i < 100; i++) {
+            buckets.tryConsume("user:user-" + i, 10, 20, 1);
+        }
+
+        // the bucket taking 100s to fill again is kept, with the ones just created
+        assertThat(buckets.size()).isEqualTo(101);
+        assertThat(buckets.tryConsume("ip:10.0.1.0", 1, 100, 1)).isEqualTo(59);
+    }
+
+    @Test
+    void shouldCountTheTokensTakenUntilDrained() {
+        buckets.tryConsume("user:admin", 10, 20, 1);
+        buckets.tryConsume("user:admin", 10, 20, 2);
+        buckets.tryConsume("user:user", 10, 20, 1);
+        // denied
+        buckets.tryConsume("user:user", 10, 20, 100);
+
+        assertThat(buckets.drainGranted()).containsOnly(entry("user:admin", 3L), entry("user:user", 1L));
+        assertThat(buckets.drainGranted()).isEmpty();
+    }
+
+    @Test
+    void shouldChargeTheTokensTakenElsewhereUpToAnEmptyBucket() {
+        buckets.tryConsume("user:admin", 10, 20, 1);
+
+        buckets.charge("user:admin", 5);
+        assertThat(buckets.tryConsume("user:admin", 10, 20, 1)).isEqualTo(13);
+
+        buckets.charge("user:admin", 1000);
+        assertThat(buckets.tryConsume("user:admin", 10, 20, 1)).isEqualTo(-1);
+        advance(Duration.ofMillis(100));
+        assertThat(buckets.tryConsume("user:admin", 10, 20, 1)).isZero();
+
+        // no bucket yet
+        buckets.charge("user:user", 5);
+        assertThat(buckets.tryConsume("user:user", 10, 20, 1)).isEqualTo(19);
+    }
+
+    @Test
+    void shouldNotGrantMoreThanTheBurstToConcurrentThreads() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> granted = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                granted.add(
+                    executor.submit(() -> {
+                        start.await();
+                        int count = 0;
+                        for (int j = 0; j < 10_000; j++) {
+                            if (buckets.tryConsume("user:admin", 1, 1000, 1) >= 0) {
+                                count++;
+                            }
+                        }
+                        return count;
+                    })
+                );
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> future : granted) {
+                total += future.get(10, TimeUnit.SECONDS);
+            }
+
+            assertThat(total).isEqualTo(1000);
+            assertThat(buckets.drainGranted()).containsOnly(entry("user:admin", 1000L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void advance(Duration duration) {
+        clock.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,97 @@
+package com.okta.developer.gateway.web.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.okta.developer.gateway.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.ratelimit.RateLimiter;
+
+/**
+ * Test class for the {@link TokenBucketRateLimiter}.
+ */
+class TokenBucketRateLimiterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void shouldLimitTheRequestsOfAKeyWithTheProperties() {
+        TokenBucketRateLimiter rateLimiter = rateLimiter(null);
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(rateLimiter.isAllowed("services", "user:admin").block().isAllowed()).isTrue();
+        }
+        RateLimiter.Response response = rateLimiter.isAllowed("services", "user:admin").block();
+
+        assertThat(response.isAllowed()).isFalse();
+        assertThat(response.getHeaders())
+            .containsEntry(TokenBucketRateLimiter.REMAINING_HEADER, "0")
+            .containsEntry(TokenBucketRateLimiter.REPLENISH_RATE_HEADER, "10")
+            .containsEntry(TokenBucketRateLimiter.BURST_CAPACITY_HEADER, "20")
+            .containsEntry(TokenBucketRateLimiter.REQUESTED_TOKENS_HEADER, "1");
+        assertThat(rateLimiter.isAllowed("services", "user:user").block().isAllowed()).isTrue();
+        assertThat(meterRegistry.get("gateway.ratelimit.denied").tag("route", "services").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("gateway.ratelimit.buckets").gauge().value()).isEqualTo(2);
+
+        clock.addAndGet(Duration.ofMillis(100).toNanos());
+
+        assertThat(rateLimiter.isAllowed("services", "user:admin").block().isAllowed()).isTrue();
+    }
+
+    @Test
+    void shouldLimitTheRequestsOfAKeyWithTheArgsOfTheRoute() {
+        TokenBucketRateLimiter rateLimiter = rateLimiter(null);
+        rateLimiter.getConfig().put("blogs", rateLimiter.newConfig().setBurstCapacity(2));
+
+        RateLimiter.Response response = rateLimiter.isAllowed("blogs", "ip:10.0.0.1").block();
+        assertThat(response.getHeaders()).containsEntry(TokenBucketRateLimiter.REMAINING_HEADER, "1");
+        assertThat(rateLimiter.isAllowed("blogs", "ip:10.0.0.1").block().isAllowed()).isTrue();
+        assertThat(rateLimiter.isAllowed("blogs", "ip:10.0.0.1").block().isAllowed()).isFalse();
+        // a bucket by route
+        assertThat(rateLimiter.isAllowed("services", "ip:10.0.0.1").block().isAllowed()).isTrue();
+    }
+
+    @Test
+    void shouldTakeTheTokensTakenOnTheOtherGateways() {
+        List<LocalRateLimitSyncTransport> transports = LocalRateLimitSyncTransport.connect(2);
+        TokenBucketRateLimiter first = rateLimiter(transports.get(0));
+        TokenBucketRateLimiter second = rateLimiter(transports.get(1));
+        first.start();
+        second.start();
+        try {
+            assertThat(remaining(second.isAllowed("services", "user:admin").block())).isEqualTo(19);
+            for (int i = 0; i < 5; i++) {
+                first.isAllowed("services", "user:admin").block();
+            }
+
+            first.publish().block();
+            second.publish().block();
+
+            // 1 + 5 + 1 tokens taken
+            assertThat(remaining(second.isAllowed("services", "user:admin").block())).isEqualTo(13);
+            // 5 + 1 + 1 tokens taken
+            assertThat(remaining(first.isAllowed("services", "user:admin").block())).isEqualTo(13);
+        } finally {
+            first.stop();
+            second.stop();
+        }
+    }
+
+    private TokenBucketRateLimiter rateLimiter(RateLimitSyncTransport transport) {
+        ApplicationProperties.RateLimiting properties = new ApplicationProperties.RateLimiting();
+        properties.setReplenishRate(10);
+        properties.setBurstCapacity(20);
+        // published by the tests
+        properties.setSyncInterval(Duration.ofHours(1));
+        return new TokenBucketRateLimiter(null, meterRegistry, properties, transport, clock::get);
+    }
+
+    private static int remaining(RateLimiter.Response response) {
+        return Integer.parseInt(response.getHeaders().get(TokenBucketRateLimiter.REMAINING_HEADER));
+    }
+}
@@ -0,0 +1,22 @@
+package com.okta.developer.gateway.web.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for the {@link ContentCodings} utility class.
+ */
+class ContentCodingsTest {
+
+    @Test
+    void shouldParseAcceptEncoding() {
+        assertThat(ContentCodings.accepts(List.of("gzip, deflate, br"), "br")).isTrue();
+        assertThat(ContentCodings.accepts(List.of("GZIP;q=0.5"), "gzip")).isTrue();
+        assertThat(ContentCodings.accepts(List.of("gzip;q=0"), "gzip")).isFalse();
+        assertThat(ContentCodings.accepts(List.of("deflate", "br ; q=1.0"), "br")).isTrue();
+        assertThat(ContentCodings.accepts(List.of("identity"), "gzip")).isFalse();
+        assertThat(ContentCodings.accepts(List.of(), "gzip")).isFalse();
+    }
+}
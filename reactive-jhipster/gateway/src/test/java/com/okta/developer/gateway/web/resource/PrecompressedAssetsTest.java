@@ -0,0 +1,75 @@
+package com.okta.developer.gateway.web.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.UrlResource;
+
+/**
+ * Test class for the {@link PrecompressedAssets}.
+ */
+class PrecompressedAssetsTest {
+
+    private static final String MANIFEST =
+        "{\"version\":1,\"assets\":{\"app/main.0123abcd.js\":{\"size\":20,\"immutable\":true,\"encodings\":[\"gzip\"]}}}";
+
+    private static final long LAST_MODIFIED = 1_600_000_000_000L;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldUnpackTheAssetsPackagedInAJar() throws IOException {
+        Path jar = tempDir.resolve("gateway.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            entry(out, "static/" + PrecompressedAssets.MANIFEST_FILENAME, MANIFEST);
+            entry(out, "static/app/main.0123abcd.js", "console.log('main');");
+            entry(out, "static/app/main.0123abcd.js.gz", "gz");
+        }
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(LAST_MODIFIED));
+
+        PrecompressedAssets assets = PrecompressedAssets.load(new UrlResource("jar:" + jar.toUri() + "!/static/"));
+        try {
+            PrecompressedAssets.Asset asset = assets.get("app/main.0123abcd.js");
+            assertThat(asset.immutable()).isTrue();
+            assertThat(asset.identity().isFile()).isTrue();
+            assertThat(asset.identity().getFile()).hasContent("console.log('main');");
+            assertThat(asset.variants()).containsOnlyKeys("gzip");
+            assertThat(asset.variants().get("gzip").getFile()).hasContent("gz");
+            // the time of the jar, rather than of when the instance started
+            assertThat(asset.identity().lastModified()).isEqualTo(LAST_MODIFIED);
+        } finally {
+            assets.destroy();
+        }
+        assertThat(assets.get("app/main.0123abcd.js").identity().exists()).isFalse();
+    }
+
+    @Test
+    void shouldSkipTheMissingAssets() throws IOException {
+        Files.writeString(tempDir.resolve(PrecompressedAssets.MANIFEST_FILENAME), MANIFEST);
+
+        PrecompressedAssets assets = PrecompressedAssets.load(new FileSystemResource(tempDir.toString() + "/"));
+
+        assertThat(assets.isEmpty()).isTrue();
+    }
+
+    @Test
+    void shouldBeEmptyWithoutManifest() {
+        assertThat(PrecompressedAssets.load(new FileSystemResource(tempDir.toString() + "/")).isEmpty()).isTrue();
+    }
+
+    private static void entry(JarOutputStream out, String name, String content) throws IOException {
+        out.putNextEntry(new JarEntry(name));
+        out.write(content.getBytes(StandardCharsets.UTF_8));
+        out.closeEntry();
+    }
+}
@@ -0,0 +1,135 @@
+package com.okta.developer.gateway.web.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.resource.HttpResource;
+import org.springframework.web.reactive.resource.ResourceResolverChain;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Test class for the {@link PrecompressedResourceResolver}.
+ */
+class PrecompressedResourceResolverTest {
+
+    private static final String MANIFEST =
+        "{\"version\":1,\"assets\":{" +
+        "\"app/main.0123abcd.js\":{\"size\":4096,\"immutable\":true,\"encodings\":[\"br\",\"gzip\"]}," +
+        "\"manifest.webapp\":{\"size\":512,\"immutable\":false,\"encodings\":[]}}}";
+
+    @TempDir
+    Path staticDir;
+
+    private PrecompressedResourceResolver resolver;
+
+    private FallbackChain chain;
+
+    @BeforeEach
+    void setup() throws IOException {
+        Files.writeString(staticDir.resolve(PrecompressedAssets.MANIFEST_FILENAME), MANIFEST);
+        Files.createDirectories(staticDir.resolve("app"));
+        Files.writeString(staticDir.resolve("app/main.0123abcd.js"), "console.log('main');");
+        Files.writeString(staticDir.resolve("app/main.0123abcd.js.br"), "br");
+        Files.writeString(staticDir.resolve("app/main.0123abcd.js.gz"), "gz");
+        Files.writeString(staticDir.resolve("manifest.webapp"), "{}");
+        resolver = new PrecompressedResourceResolver(PrecompressedAssets.load(new FileSystemResource(staticDir.toString() + "/")));
+        chain = new FallbackChain();
+    }
+
+    @Test
+    void shouldPreferTheBrotliVariant() throws IOException {
+        HttpResource resource = resolve("app/main.0123abcd.js", "gzip, deflate, br");
+
+        assertThat(resource.isFile()).isTrue();
+        assertThat(resource.getFile().toPath()).isEqualTo(staticDir.resolve("app/main.0123abcd.js.br"));
+        assertThat(resource.getFilename()).isEqualTo("main.0123abcd.js");
+        assertThat(resource.contentLength()).isEqualTo(2);
+        assertThat(resource.getResponseHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("br");
+        assertThat(resource.getResponseHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(resource.getResponseHeaders().getCacheControl()).isEqualTo("public, max-age=31536000, immutable");
+        assertThat(chain.called).isFalse();
+    }
+
+    @Test
+    void shouldServeTheGzipVariantWhenBrotliIsNotAccepted() throws IOException {
+        HttpResource resource = resolve("app/main.0123abcd.js", "gzip, br;q=0");
+
+        assertThat(resource.getFile().toPath()).isEqualTo(staticDir.resolve("app/main.0123abcd.js.gz"));
+        assertThat(resource.getResponseHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+    }
+
+    @Test
+    void shouldServeTheAssetWhenNoVariantIsAccepted() throws IOException {
+        HttpResource resource = resolve("app/main.0123abcd.js", null);
+
+        assertThat(resource.getFile().toPath()).isEqualTo(staticDir.resolve("app/main.0123abcd.js"));
+        assertThat(resource.getResponseHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(resource.getResponseHeaders().getVary()).containsExactly(HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    @Test
+    void shouldNotMarkAssetsWithoutHashAsImmutable() {
+        HttpResource resource = resolve("manifest.webapp", "gzip, br");
+
+        assertThat(resource.getResponseHeaders().getCacheControl()).isNull();
+        assertThat(resource.getResponseHeaders().getVary()).isEmpty();
+        assertThat(resource.getResponseHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+    }
+
+    @Test
+    void shouldDelegateTheResourcesNotInTheManifest() {
+        Resource resource = resolver.resolveResource(exchange("i18n/en.json", "gzip"), "i18n/en.json", List.of(), chain).block();
+
+        assertThat(chain.called).isTrue();
+        assertThat(resource).isSameAs(FallbackChain.RESOURCE);
+    }
+
+    private HttpResource resolve(String path, String acceptEncoding) {
+        Resource resource = resolver.resolveResource(exchange(path, acceptEncoding), path, List.of(), chain).block();
+        assertThat(resource).isInstanceOf(HttpResource.class);
+        return (HttpResource) resource;
+    }
+
+    private static MockServerWebExchange exchange(String path, String acceptEncoding) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/" + path);
+        if (acceptEncoding != null) {
+            request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        return MockServerWebExchange.from(request);
+    }
+
+    private static class FallbackChain implements ResourceResolverChain {
+
+        private static final Resource RESOURCE = new FileSystemResource("en.json");
+
+        private boolean called;
+
+        @Override
+        public Mono<Resource> resolveResource(
+            @Nullable ServerWebExchange exchange,
+            String requestPath,
+            List<? extends Resource> locations
+        ) {
+            called = true;
+            return Mono.just(RESOURCE);
+        }
+
+        @Override
+        public Mono<String> resolveUrlPath(String resourcePath, List<? extends Resource> locations) {
+            return Mono.just(resourcePath);
+        }
+    }
+}
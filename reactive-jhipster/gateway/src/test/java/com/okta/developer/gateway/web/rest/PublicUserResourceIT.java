@@ -11,12 +11,16 @@ import com.okta.developer.gateway.repository.EntityManager;
 import com.okta.developer.gateway.repository.UserRepository;
 import com.okta.developer.gateway.security.AuthoritiesConstants;
 import com.okta.developer.gateway.service.dto.UserDTO;
+import java.net.URI;
+import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.reactive.server.EntityExchangeResult;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
 /**
@@ -72,6 +76,69 @@ class PublicUserResourceIT {
         assertThat(foundUser.getLogin()).isEqualTo(DEFAULT_LOGIN);
     }
 
+    @Test
+    void getAllPublicUsersByCursor() {
+        for (String login : List.of("user-c", "user-a", "user-b")) {
+            User activatedUser = UserResourceIT.createEntity(em);
+            activatedUser.setLogin(login);
+            userRepository.create(activatedUser).block();
+        }
+        User deactivatedUser = UserResourceIT.createEntity(em);
+        deactivatedUser.setLogin("user-aa");
+        deactivatedUser.setActivated(false);
+        userRepository.create(deactivatedUser).block();
+
+        EntityExchangeResult<List<UserDTO>> firstPage = webTestClient
+            .get()
+            .uri("/api/users?cursor=&size=2&sort=login,asc")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .doesNotExist("X-Total-Count")
+            .expectBodyList(UserDTO.class)
+            .returnResult();
+
+        assertThat(firstPage.getResponseBody()).extracting(UserDTO::getLogin).containsExactly("user-a", "user-b");
+        String next = firstPage.getResponseHeaders().getFirst(HttpHeaders.LINK);
+        assertThat(next).endsWith("; rel=\"next\"");
+
+        EntityExchangeResult<List<UserDTO>> lastPage = webTestClient
+            .get()
+            .uri(URI.create(next.substring(1, next.indexOf('>'))))
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .doesNotExist(HttpHeaders.LINK)
+            .expectBodyList(UserDTO.class)
+            .returnResult();
+
+        assertThat(lastPage.getResponseBody()).extracting(UserDTO::getLogin).containsExactly("user-c");
+    }
+
+    @Test
+    void getAllPublicUsersByCursorWithTheirCount() {
+        userRepository.create(user).block();
+
+        webTestClient
+            .get()
+            .uri("/api/users?cursor=&count=true")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals("X-Total-Count", "1");
+    }
+
+    @Test
+    void getAllPublicUsersByCursorRefusesAnInvalidCursor() {
+        webTestClient.get().uri("/api/users?cursor=invalid").accept(MediaType.APPLICATION_JSON).exchange().expectStatus().isBadRequest();
+    }
+
     @Test
     void getAllAuthorities() {
         webTestClient
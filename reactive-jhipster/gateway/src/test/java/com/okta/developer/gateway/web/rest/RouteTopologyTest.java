@@ -0,0 +1,117 @@
+package com.okta.developer.gateway.web.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.okta.developer.gateway.web.filter.ServicePrefixRouter;
+import com.okta.developer.gateway.web.rest.vm.RouteVM;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+import org.springframework.cloud.gateway.handler.predicate.PathRoutePredicateFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.route.RouteLocator;
+import reactor.core.publisher.Flux;
+
+/**
+ * Test class for the {@link RouteTopology}.
+ */
+class RouteTopologyTest {
+
+    private RouteLocator routeLocator;
+
+    private ReactiveDiscoveryClient discoveryClient;
+
+    private RouteTopology routeTopology;
+
+    @BeforeEach
+    void setup() {
+        routeLocator = mock(RouteLocator.class);
+        discoveryClient = mock(ReactiveDiscoveryClient.class);
+        when(routeLocator.getRoutes()).thenAnswer(invocation -> Flux.just(route("gateway"), route("blog"), route("store")));
+        when(discoveryClient.getInstances("blog")).thenAnswer(invocation -> Flux.just(instance("blog", 2), instance("blog", 1)));
+        when(discoveryClient.getInstances("store")).thenAnswer(invocation -> Flux.just(instance("store", 1)));
+        ServicePrefixRouter servicePrefixRouter = new ServicePrefixRouter(discoveryClient, event -> {});
+        routeTopology = new RouteTopology(routeLocator, discoveryClient, servicePrefixRouter, new ObjectMapper(), "gateway");
+    }
+
+    @Test
+    void shouldComputeTheSnapshotOnFirstUse() {
+        RouteTopology.Snapshot snapshot = routeTopology.snapshot().block();
+
+        assertThat(snapshot.routes()).extracting(RouteVM::getServiceId).containsExactly("blog", "store");
+        assertThat(snapshot.routes()).extracting(RouteVM::getPath).containsExactly("/services/blog/**", "/services/store/**");
+        assertThat(snapshot.routes().get(0).getServiceInstances())
+            .extracting(ServiceInstance::getInstanceId)
+            .containsExactly("blog-1", "blog-2");
+        assertThat(snapshot.eTag()).startsWith("W/\"");
+    }
+
+    @Test
+    void shouldServeTheSnapshotWithoutLookingUpTheRoutesAgain() {
+        RouteTopology.Snapshot snapshot = routeTopology.snapshot().block();
+
+        assertThat(routeTopology.snapshot().block()).isSameAs(snapshot);
+        verify(routeLocator, times(1)).getRoutes();
+    }
+
+    @Test
+    void shouldKeepTheSnapshotWhenNothingChanged() {
+        RouteTopology.Snapshot snapshot = routeTopology.snapshot().block();
+
+        when(discoveryClient.getInstances("blog")).thenAnswer(invocation -> Flux.just(instance("blog", 1), instance("blog", 2)));
+        routeTopology.onHeartbeat();
+
+        assertThat(routeTopology.snapshot().block()).isSameAs(snapshot);
+    }
+
+    @Test
+    void shouldUpdateTheSnapshotWhenTheInstancesChange() {
+        RouteTopology.Snapshot snapshot = routeTopology.snapshot().block();
+
+        when(discoveryClient.getInstances("store")).thenAnswer(invocation -> Flux.just(instance("store", 1), instance("store", 2)));
+        routeTopology.onHeartbeat();
+
+        RouteTopology.Snapshot refreshed = routeTopology.snapshot().block();
+        assertThat(refreshed.eTag()).isNotEqualTo(snapshot.eTag());
+        assertThat(refreshed.routes().get(1).getServiceInstances()).hasSize(2);
+    }
+
+    @Test
+    void shouldListARoutePerServiceOfTheServicePrefixRouter() {
+        ServicePrefixRouter servicePrefixRouter = new ServicePrefixRouter(discoveryClient, event -> {});
+        when(discoveryClient.getServices()).thenReturn(Flux.just("store", "blog", "gateway"));
+        servicePrefixRouter.refresh();
+        when(routeLocator.getRoutes())
+            .thenAnswer(invocation ->
+                Flux.just(Route.async().id(ServicePrefixRouter.ROUTE_ID).uri("no://op").predicate(exchange -> true).build())
+            );
+        routeTopology = new RouteTopology(routeLocator, discoveryClient, servicePrefixRouter, new ObjectMapper(), "gateway");
+
+        RouteTopology.Snapshot snapshot = routeTopology.snapshot().block();
+
+        assertThat(snapshot.routes()).extracting(RouteVM::getServiceId).containsExactly("blog", "store");
+        assertThat(snapshot.routes()).extracting(RouteVM::getPath).containsExactly("/services/blog/**", "/services/store/**");
+        assertThat(snapshot.routes().get(0).getServiceInstances()).hasSize(2);
+    }
+
+    private static Route route(String serviceId) {
+        return Route
+            .async()
+            .id("ReactiveCompositeDiscoveryClient_" + serviceId.toUpperCase())
+            .uri("lb://" + serviceId.toUpperCase())
+            .predicate(new PathRoutePredicateFactory().apply(config -> config.setPatterns(List.of("/services/" + serviceId + "/**"))))
+            .build();
+    }
+
+    private static ServiceInstance instance(String serviceId, int index) {
+        return new DefaultServiceInstance(serviceId + "-" + index, serviceId, "10.0.0." + index, 8081, false);
+    }
+}
@@ -21,6 +21,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.reactive.server.WebTestClient;
@@ -118,6 +119,61 @@ class UserResourceIT {
         user = initTestUser(userRepository, em);
     }
 
+    @Test
+    void getAllUsers() {
+        userRepository.create(user).block();
+        userRepository.saveUserAuthority(user.getId(), AuthoritiesConstants.USER).block();
+
+        webTestClient
+            .get()
+            .uri("/api/admin/users?sort=id,desc")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .valueEquals("X-Total-Count", "1")
+            .expectBody()
+            .jsonPath("$.[*].login")
+            .isEqualTo(DEFAULT_LOGIN)
+            .jsonPath("$.[*].authorities[0]")
+            .isEqualTo(AuthoritiesConstants.USER);
+    }
+
+    @Test
+    void getAllUsersByCursor() {
+        userRepository.create(user).block();
+        User otherUser = createEntity(em);
+        otherUser.setActivated(false);
+        userRepository.create(otherUser).block();
+
+        webTestClient
+            .get()
+            .uri("/api/admin/users?cursor=&size=1&sort=login,asc")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isOk()
+            .expectHeader()
+            .doesNotExist("X-Total-Count")
+            .expectHeader()
+            .value(HttpHeaders.LINK, link -> assertThat(link).contains("cursor=").endsWith("; rel=\"next\""))
+            .expectBody()
+            .jsonPath("$.[*].login")
+            .isEqualTo(DEFAULT_LOGIN);
+    }
+
+    @Test
+    void getAllUsersRefusesAnUnsortableProperty() {
+        webTestClient
+            .get()
+            .uri("/api/admin/users?sort=password,asc")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus()
+            .isBadRequest();
+    }
+
     @Test
     void testUserEquals() throws Exception {
         TestUtil.equalsVerifier(User.class);
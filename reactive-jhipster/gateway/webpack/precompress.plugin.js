@@ -0,0 +1,70 @@
+'use strict';
+const crypto = require('crypto');
+const { promisify } = require('util');
+const zlib = require('zlib');
+const { Compilation, sources } = require('webpack');
+
+const brotliCompress = promisify(zlib.brotliCompress);
+const gzip = promisify(zlib.gzip);
+
+const MANIFEST_FILENAME = 'precompressed-manifest.json';
+
+/**
+ * Emits brotli and gzip siblings of the compressible assets, and a manifest of all the assets with their content hash,
+ * whether their name is content-hashed, so they never change, and their precompressed variants.
+ *
+ * The gateway serves the assets listed in the manifest, and picks their variant from the Accept-Encoding of the requests.
+ */
+class PrecompressPlugin {
+  constructor(options = {}) {
+    this.test = options.test || /\.(js|css|html|json|svg|txt|map|ico|xml|webapp|ttf|eot)$/;
+    // smaller assets fit in a packet anyway
+    this.threshold = options.threshold || 1024;
+    // variants which don't save more are left out
+    this.minRatio = options.minRatio || 0.8;
+  }
+
+  apply(compiler) {
+    compiler.hooks.thisCompilation.tap('PrecompressPlugin', compilation => {
+      compilation.hooks.processAssets.tapPromise(
+        // after the other plugins, the service worker included
+        { name: 'PrecompressPlugin', stage: Compilation.PROCESS_ASSETS_STAGE_OPTIMIZE_TRANSFER },
+        async () => {
+          const manifest = { version: 1, assets: {} };
+          for (const asset of compilation.getAssets()) {
+            if (asset.info.precompressed) {
+              continue;
+            }
+            const content = asset.source.buffer();
+            const entry = {
+              hash: `sha256-${crypto.createHash('sha256').update(content).digest('base64')}`,
+              size: content.length,
+              immutable: Boolean(asset.info.immutable),
+              encodings: [],
+            };
+            if (this.test.test(asset.name) && content.length >= this.threshold) {
+              const variants = [
+                ['br', '.br', () => brotliCompress(content, { params: { [zlib.constants.BROTLI_PARAM_QUALITY]: 11 } })],
+                ['gzip', '.gz', () => gzip(content, { level: 9 })],
+              ];
+              for (const [encoding, extension, compress] of variants) {
+                const compressed = await compress();
+                if (compressed.length < content.length * this.minRatio) {
+                  compilation.emitAsset(asset.name + extension, new sources.RawSource(compressed), {
+                    immutable: asset.info.immutable,
+                    precompressed: true,
+                  });
+                  entry.encodings.push(encoding);
+                }
+              }
+            }
+            manifest.assets[asset.name] = entry;
+          }
+          compilation.emitAsset(MANIFEST_FILENAME, new sources.RawSource(JSON.stringify(manifest, null, 2)), { precompressed: true });
+        }
+      );
+    });
+  }
+}
+
+module.exports = PrecompressPlugin;
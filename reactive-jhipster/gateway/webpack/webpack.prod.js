@@ -5,6 +5,7 @@ const CssMinimizerPlugin = require('css-minimizer-webpack-plugin');
 const WorkboxPlugin = require('workbox-webpack-plugin');
 const TerserPlugin = require('terser-webpack-plugin');
 const ForkTsCheckerWebpackPlugin = require('fork-ts-checker-webpack-plugin');
+const PrecompressPlugin = require('./precompress.plugin');
 
 const { styleLoaders } = require('./vue.utils');
 const config = require('./config');
@@ -97,8 +98,10 @@ const webpackConfig = {
     new WorkboxPlugin.GenerateSW({
       clientsClaim: true,
       skipWaiting: true,
-      exclude: [/swagger-ui/],
+      exclude: [/swagger-ui/, /\.(br|gz)$/, /precompressed-manifest\.json$/],
     }),
+    // precompressed variants of the assets, served by the gateway
+    new PrecompressPlugin(),
   ],
 };
 
@@ -1,12 +1,16 @@
 package com.okta.developer.store.config;
 
 import static org.springframework.security.config.Customizer.withDefaults;
-import static org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers.pathMatchers;
 
 import com.okta.developer.store.security.AuthoritiesConstants;
+import com.okta.developer.store.security.PathAuthorizationManager;
+import com.okta.developer.store.security.PathPatternTrie;
 import com.okta.developer.store.security.SecurityUtils;
 import com.okta.developer.store.security.oauth2.AudienceValidator;
+import com.okta.developer.store.security.oauth2.CachingJwtDecoder;
+import com.okta.developer.store.security.oauth2.JwkSetManager;
 import com.okta.developer.store.security.oauth2.JwtGrantedAuthorityConverter;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.HashSet;
 import java.util.Set;
 import org.springframework.beans.factory.annotation.Value;
@@ -21,6 +25,7 @@ import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcReactiveOAuth2UserService;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
+import org.springframework.security.oauth2.client.registration.ReactiveClientRegistrationRepository;
 import org.springframework.security.oauth2.client.userinfo.ReactiveOAuth2UserService;
 import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
 import org.springframework.security.oauth2.core.OAuth2TokenValidator;
@@ -37,7 +42,7 @@ import org.springframework.security.web.server.header.ReferrerPolicyServerHttpHe
 import org.springframework.security.web.server.header.XFrameOptionsServerHttpHeadersWriter.Mode;
 import org.springframework.security.web.server.savedrequest.NoOpServerRequestCache;
 import org.springframework.security.web.server.util.matcher.NegatedServerWebExchangeMatcher;
-import org.springframework.security.web.server.util.matcher.OrServerWebExchangeMatcher;
+import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 import tech.jhipster.config.JHipsterProperties;
 import tech.jhipster.web.filter.reactive.CookieCsrfFilter;
@@ -49,20 +54,32 @@ public class SecurityConfiguration {
 
     private final JHipsterProperties jHipsterProperties;
 
+    private final ApplicationProperties applicationProperties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final WebClient webClient;
+
     @Value("${spring.security.oauth2.client.provider.oidc.issuer-uri}")
     private String issuerUri;
 
-    public SecurityConfiguration(JHipsterProperties jHipsterProperties) {
+    public SecurityConfiguration(
+        JHipsterProperties jHipsterProperties,
+        ApplicationProperties applicationProperties,
+        MeterRegistry meterRegistry,
+        WebClient.Builder webClientBuilder
+    ) {
         this.jHipsterProperties = jHipsterProperties;
+        this.applicationProperties = applicationProperties;
+        this.meterRegistry = meterRegistry;
+        this.webClient = webClientBuilder.build();
     }
 
     @Bean
     public SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity http) {
         http
             .securityMatcher(
-                new NegatedServerWebExchangeMatcher(
-                    new OrServerWebExchangeMatcher(pathMatchers("/app/**", "/i18n/**", "/content/**", "/swagger-ui/**"))
-                )
+                new NegatedServerWebExchangeMatcher(PathPatternTrie.matcher("/app/**", "/i18n/**", "/content/**", "/swagger-ui/**"))
             )
             .csrf(csrf -> csrf.disable())
             .headers(headers ->
@@ -79,25 +96,34 @@ public class SecurityConfiguration {
                     )
             )
             .requestCache(cache -> cache.requestCache(NoOpServerRequestCache.getInstance()))
-            .authorizeExchange(authz ->
-                // prettier-ignore
-                authz
-                    .pathMatchers("/api/authenticate").permitAll()
-                    .pathMatchers("/api/auth-info").permitAll()
-                    .pathMatchers("/api/admin/**").hasAuthority(AuthoritiesConstants.ADMIN)
-                    .pathMatchers("/api/**").authenticated()
-                    .pathMatchers("/v3/api-docs/**").hasAuthority(AuthoritiesConstants.ADMIN)
-                    .pathMatchers("/management/health").permitAll()
-                    .pathMatchers("/management/health/**").permitAll()
-                    .pathMatchers("/management/info").permitAll()
-                    .pathMatchers("/management/prometheus").permitAll()
-                    .pathMatchers("/management/**").hasAuthority(AuthoritiesConstants.ADMIN)
-            )
+            .authorizeExchange(authz -> authz.anyExchange().access(authorizationManager()))
             .oauth2Client(withDefaults())
             .oauth2ResourceServer(oauth2 -> oauth2.jwt(jwt -> jwt.jwtAuthenticationConverter(jwtAuthenticationConverter())));
         return http.build();
     }
 
+    /**
+     * The authorization rules, the first rule whose path pattern matches applying. They're compiled once into a single trie
+     * rather than tried one after another on every request, see {@link PathAuthorizationManager}.
+     *
+     * @return the authorization manager of the exchanges.
+     */
+    static PathAuthorizationManager authorizationManager() {
+        // prettier-ignore
+        return PathAuthorizationManager.builder()
+            .pathMatchers("/api/authenticate").permitAll()
+            .pathMatchers("/api/auth-info").permitAll()
+            .pathMatchers("/api/admin/**").hasAuthority(AuthoritiesConstants.ADMIN)
+            .pathMatchers("/api/**").authenticated()
+            .pathMatchers("/v3/api-docs/**").hasAuthority(AuthoritiesConstants.ADMIN)
+            .pathMatchers("/management/health").permitAll()
+            .pathMatchers("/management/health/**").permitAll()
+            .pathMatchers("/management/info").permitAll()
+            .pathMatchers("/management/prometheus").permitAll()
+            .pathMatchers("/management/**").hasAuthority(AuthoritiesConstants.ADMIN)
+            .build();
+    }
+
     Converter<Jwt, Mono<AbstractAuthenticationToken>> jwtAuthenticationConverter() {
         JwtAuthenticationConverter jwtAuthenticationConverter = new JwtAuthenticationConverter();
         jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(new JwtGrantedAuthorityConverter());
@@ -136,9 +162,30 @@ public class SecurityConfiguration {
         };
     }
 
+    /**
+     * Keeps the keys of the IdP up to date in the background, see {@link JwkSetManager}.
+     *
+     * @return the JWK set manager of the "oidc" provider.
+     */
+    @Bean(destroyMethod = "stop")
+    JwkSetManager jwkSetManager(ReactiveClientRegistrationRepository registrations) {
+        ApplicationProperties.Security.Jwks jwks = applicationProperties.getSecurity().getJwks();
+        String jwkSetUri = registrations.findByRegistrationId("oidc").map(oidc -> oidc.getProviderDetails().getJwkSetUri()).block();
+        return new JwkSetManager(
+            webClient,
+            jwkSetUri,
+            jwks.getRefreshInterval(),
+            jwks.getJitter(),
+            jwks.getMinimumRefreshInterval(),
+            jwks.getFetchTimeout()
+        );
+    }
+
     @Bean
-    ReactiveJwtDecoder jwtDecoder() {
-        NimbusReactiveJwtDecoder jwtDecoder = (NimbusReactiveJwtDecoder) ReactiveJwtDecoders.fromOidcIssuerLocation(issuerUri);
+    ReactiveJwtDecoder jwtDecoder(JwkSetManager jwkSetManager) {
+        NimbusReactiveJwtDecoder jwtDecoder = NimbusReactiveJwtDecoder.withJwkSource(jwkSetManager).build();
+        // Prefetch the keys, so the first requests don't have to wait for them
+        jwkSetManager.start();
 
         OAuth2TokenValidator<Jwt> audienceValidator = new AudienceValidator(jHipsterProperties.getSecurity().getOauth2().getAudience());
         OAuth2TokenValidator<Jwt> withIssuer = JwtValidators.createDefaultWithIssuer(issuerUri);
@@ -146,6 +193,16 @@ public class SecurityConfiguration {
 
         jwtDecoder.setJwtValidator(withAudience);
 
-        return jwtDecoder;
+        return withJwtCache(jwtDecoder);
+    }
+
+    private ReactiveJwtDecoder withJwtCache(ReactiveJwtDecoder jwtDecoder) {
+        ApplicationProperties.Security.JwtCache jwtCache = applicationProperties.getSecurity().getJwtCache();
+        if (!jwtCache.isEnabled()) {
+            return jwtDecoder;
+        }
+        CachingJwtDecoder cachingJwtDecoder = new CachingJwtDecoder(jwtDecoder, jwtCache.getMaximumSize(), jwtCache.getExpiryMargin());
+        cachingJwtDecoder.bindTo(meterRegistry);
+        return cachingJwtDecoder;
     }
 }
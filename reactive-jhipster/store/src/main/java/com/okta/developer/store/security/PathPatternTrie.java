@@ -0,0 +1,239 @@
+package com.okta.developer.store.security;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.springframework.http.server.PathContainer;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+/**
+ * Matches paths against an ordered list of path patterns in a single walk of a segment trie, returning the value of the first
+ * matching pattern, as a list of {@code pathMatchers(...)} would.
+ * <p>
+ * Supports literal segments, {@code *} segments, segments with {@code *} or {@code ?} wildcards such as {@code *.*}, and a
+ * trailing {@code **}. Paths which are not in canonical form, e.g. with empty segments, are matched against the
+ * {@link PathPattern}s one after another instead, so the edge cases behave exactly as with Spring.
+ *
+ * @param <T> the type of the values associated with the patterns.
+ */
+public final class PathPatternTrie<T> {
+
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final Node root;
+
+    private final List<PathPattern> patterns;
+
+    private final List<T> values;
+
+    private PathPatternTrie(Node root, List<PathPattern> patterns, List<T> values) {
+        this.root = root;
+        this.patterns = patterns;
+        this.values = values;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Compiles the patterns into a matcher equivalent to {@code ServerWebExchangeMatchers.pathMatchers(patterns)}.
+     *
+     * @param patterns the path patterns.
+     * @return a matcher of the exchanges whose path matches any of the patterns.
+     */
+    public static ServerWebExchangeMatcher matcher(String... patterns) {
+        Builder<Boolean> builder = builder();
+        for (String pattern : patterns) {
+            builder.add(pattern, Boolean.TRUE);
+        }
+        PathPatternTrie<Boolean> trie = builder.build();
+        return exchange ->
+            trie.match(exchange.getRequest().getPath().pathWithinApplication()) != null
+                ? ServerWebExchangeMatcher.MatchResult.match()
+                : ServerWebExchangeMatcher.MatchResult.notMatch();
+    }
+
+    /**
+     * @param path the path to match, usually the path within the application.
+     * @return the value of the first pattern matching the path, or {@code null} if none matches.
+     */
+    public T match(PathContainer path) {
+        List<PathContainer.Element> elements = path.elements();
+        int index = isCanonical(elements)
+            ? walk(root, elements, 0, elements.size() / 2, elements.size() % 2 == 1)
+            : matchPatterns(path);
+        return index != NONE ? values.get(index) : null;
+    }
+
+    /**
+     * Walks the remaining segments from the node, and returns the index of the first pattern matching them.
+     */
+    private static int walk(Node node, List<PathContainer.Element> elements, int segment, int segments, boolean trailingSeparator) {
+        int first = node.catchAll;
+        if (segment == segments) {
+            // like with Spring, a pattern doesn't match a path with an extra trailing separator, but for the root path
+            if (!trailingSeparator || segments == 0) {
+                first = Math.min(first, node.terminal);
+            }
+            if (trailingSeparator && node.wildcard != null) {
+                // while a '*' ending the pattern matches the empty segment after a trailing separator
+                first = Math.min(first, node.wildcard.terminal);
+            }
+            return first;
+        }
+        String value = ((PathContainer.PathSegment) elements.get(2 * segment + 1)).valueToMatch();
+        Node literal = node.literals.get(value);
+        if (literal != null) {
+            first = Math.min(first, walk(literal, elements, segment + 1, segments, trailingSeparator));
+        }
+        if (node.wildcard != null) {
+            first = Math.min(first, walk(node.wildcard, elements, segment + 1, segments, trailingSeparator));
+        }
+        for (SegmentPattern segmentPattern : node.segmentPatterns) {
+            if (segmentPattern.pattern.matcher(value).matches()) {
+                first = Math.min(first, walk(segmentPattern.node, elements, segment + 1, segments, trailingSeparator));
+            }
+        }
+        return first;
+    }
+
+    private int matchPatterns(PathContainer path) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (patterns.get(i).matches(path)) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return whether the path starts with a separator, and alternates separators and non empty segments.
+     */
+    private static boolean isCanonical(List<PathContainer.Element> elements) {
+        if (elements.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < elements.size(); i++) {
+            boolean separator = elements.get(i) instanceof PathContainer.Separator;
+            if (separator != (i % 2 == 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static final class Builder<T> {
+
+        private final Node root = new Node();
+
+        private final List<PathPattern> patterns = new ArrayList<>();
+
+        private final List<T> values = new ArrayList<>();
+
+        private Builder() {}
+
+        /**
+         * Adds a pattern, which has a lower priority than the ones added before.
+         *
+         * @param pattern the path pattern.
+         * @param value the value returned when the pattern is the first to match.
+         * @return this builder.
+         * @throws IllegalArgumentException if the pattern isn't supported.
+         */
+        public Builder<T> add(String pattern, T value) {
+            if (!pattern.startsWith("/") || (pattern.length() > 1 && pattern.endsWith("/")) || pattern.contains("{")) {
+                throw new IllegalArgumentException("Unsupported path pattern: " + pattern);
+            }
+            int index = values.size();
+            String[] segments = pattern.length() > 1 ? pattern.substring(1).split("/") : new String[0];
+            Node node = root;
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.equals("**")) {
+                    if (i != segments.length - 1) {
+                        throw new IllegalArgumentException("'**' is only supported at the end of a path pattern: " + pattern);
+                    }
+                    node.catchAll = Math.min(node.catchAll, index);
+                    node = null;
+                    break;
+                }
+                node = node.child(segment, pattern);
+            }
+            if (node != null) {
+                node.terminal = Math.min(node.terminal, index);
+            }
+            patterns.add(PathPatternParser.defaultInstance.parse(pattern));
+            values.add(value);
+            return this;
+        }
+
+        public PathPatternTrie<T> build() {
+            return new PathPatternTrie<>(root, List.copyOf(patterns), new ArrayList<>(values));
+        }
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> literals = new HashMap<>();
+
+        private final List<SegmentPattern> segmentPatterns = new ArrayList<>();
+
+        private Node wildcard;
+
+        private int terminal = NONE;
+
+        private int catchAll = NONE;
+
+        private Node child(String segment, String pattern) {
+            if (segment.isEmpty() || segment.contains("**")) {
+                throw new IllegalArgumentException("Unsupported path pattern: " + pattern);
+            }
+            if (segment.equals("*")) {
+                if (wildcard == null) {
+                    wildcard = new Node();
+                }
+                return wildcard;
+            }
+            if (segment.indexOf('*') < 0 && segment.indexOf('?') < 0) {
+                return literals.computeIfAbsent(segment, literal -> new Node());
+            }
+            for (SegmentPattern segmentPattern : segmentPatterns) {
+                if (segmentPattern.source.equals(segment)) {
+                    return segmentPattern.node;
+                }
+            }
+            SegmentPattern segmentPattern = new SegmentPattern(segment);
+            segmentPatterns.add(segmentPattern);
+            return segmentPattern.node;
+        }
+    }
+
+    private static final class SegmentPattern {
+
+        private final String source;
+
+        private final Pattern pattern;
+
+        private final Node node = new Node();
+
+        private SegmentPattern(String source) {
+            this.source = source;
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (char c : source.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    regex.append(Pattern.quote(literal.toString())).append(c == '*' ? ".*" : ".");
+                    literal.setLength(0);
+                } else {
+                    literal.append(c);
+                }
+            }
+            this.pattern = Pattern.compile(regex.append(Pattern.quote(literal.toString())).toString());
+        }
+    }
+}
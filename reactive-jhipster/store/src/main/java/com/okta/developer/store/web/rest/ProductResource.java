@@ -1,5 +1,6 @@
 package com.okta.developer.store.web.rest;
 
+import com.okta.developer.store.config.ApplicationProperties;
 import com.okta.developer.store.domain.Product;
 import com.okta.developer.store.repository.ProductRepository;
 import com.okta.developer.store.web.rest.errors.BadRequestAlertException;
@@ -17,6 +18,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -47,8 +49,17 @@ public class ProductResource {
 
     private final ProductRepository productRepository;
 
-    public ProductResource(ProductRepository productRepository) {
+    // the lists of products being the same for every user, shared caches may keep them
+    private final CacheControl listCacheControl;
+
+    public ProductResource(ProductRepository productRepository, ApplicationProperties applicationProperties) {
         this.productRepository = productRepository;
+        ApplicationProperties.ResponseCaching responseCaching = applicationProperties.getResponseCaching();
+        this.listCacheControl =
+            CacheControl
+                .maxAge(responseCaching.getMaxAge())
+                .cachePublic()
+                .staleWhileRevalidate(responseCaching.getStaleWhileRevalidate());
     }
 
     /**
@@ -201,6 +212,7 @@ public class ProductResource {
             .map(countWithEntities ->
                 ResponseEntity
                     .ok()
+                    .cacheControl(listCacheControl)
                     .headers(
                         PaginationUtil.generatePaginationHttpHeaders(
                             UriComponentsBuilder.fromHttpRequest(request),